@@ -48,6 +48,7 @@ public class Constants {
   public static final String MONTHLY_BLOG = "monthlyBlog";
   public static final String DAILY_BLOG = "dailyBlog";
   public static final String BLOG_ENTRIES = "blogEntries";
+  public static final String BLOG_ENTRY_IDS = "blogEntryIds";
   public static final String RESPONSES = "responses";
 
   public static final String RECENT_BLOG_ENTRIES = "recentBlogEntries";
@@ -34,7 +34,10 @@ package net.sourceforge.pebble;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 import java.io.InputStream;
 import java.io.IOException;
@@ -91,6 +94,29 @@ public class ContentCache {
     return blogEntry;
   }
 
+  /**
+   * Gets a number of blog entries from the cache with a single lookup.
+   *
+   * @param blog            the Blog that the blog entries belong to
+   * @param blogEntryIds    the ids of the blog entries
+   * @return  a Map of the blog entries that are in the cache, keyed on id
+   */
+  public synchronized Map<String,BlogEntry> getBlogEntries(Blog blog, Collection<String> blogEntryIds) {
+    Map<String,String> ids = new HashMap<String,String>();
+    for (String blogEntryId : blogEntryIds) {
+      ids.put(getCompositeKeyForBlogEntry(blog, blogEntryId), blogEntryId);
+    }
+
+    Map<String,BlogEntry> blogEntries = new HashMap<String,BlogEntry>();
+    for (Map.Entry<Object,Element> entry : cache.getAll(ids.keySet()).entrySet()) {
+      if (entry.getValue() != null) {
+        blogEntries.put(ids.get(entry.getKey()), (BlogEntry)entry.getValue().getValue());
+      }
+    }
+
+    return blogEntries;
+  }
+
   public synchronized void removeBlogEntry(BlogEntry blogEntry) {
     cache.remove(getCompositeKeyForBlogEntry(blogEntry));
   }
@@ -33,6 +33,7 @@ package net.sourceforge.pebble;
 
 import net.sourceforge.pebble.security.SecurityRealm;
 import net.sourceforge.pebble.util.RelativeDate;
+import net.sourceforge.pebble.util.TaskScheduler;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.context.ApplicationContext;
@@ -68,6 +69,9 @@ public class PebbleContext {
   /** the directory where Pebble is deployed */
   private String webApplicationRoot;
 
+  /** the scheduler shared by all blogs, created on first use */
+  private TaskScheduler scheduler;
+
   private static final PebbleContext instance = new PebbleContext();
 
   public static PebbleContext getInstance() {
@@ -154,6 +158,36 @@ public class PebbleContext {
     return webApplicationRoot;
   }
 
+  /**
+   * Gets the scheduler used to run background tasks.
+   *
+   * @return  a TaskScheduler instance
+   */
+  public synchronized TaskScheduler getScheduler() {
+    if (scheduler == null) {
+      scheduler = new TaskScheduler();
+    }
+
+    return scheduler;
+  }
+
+  /**
+   * Cancels all background tasks; called when Pebble is stopped. The
+   * scheduler isn't recreated afterwards, so any work submitted after this
+   * is rejected.
+   */
+  public void shutdownScheduler() {
+    TaskScheduler s;
+    synchronized (this) {
+      if (scheduler == null) {
+        scheduler = new TaskScheduler();
+      }
+      s = scheduler;
+    }
+
+    s.shutdown();
+  }
+
   public void setApplicationContext(ApplicationContext applicationContext) {
     this.applicationContext = applicationContext;
   }
@@ -63,6 +63,11 @@ public class PluginProperties {
    */
   private Blog blog;
 
+  /**
+   * incremented whenever the properties are (or may have been) changed
+   */
+  private volatile int modificationCount;
+
   /**
    * Creates a new instance with the specified owning blog.
    *
@@ -77,6 +82,7 @@ public class PluginProperties {
    * Helper method to load the properties from disk.
    */
   private void loadProperties() {
+    modificationCount++;
     try {
       properties = new Properties();
       properties.setProperty(ContentSpamListener.REGEX_LIST_KEY, ContentSpamListener.DEFAULT_REGEX_LIST);
@@ -154,12 +160,26 @@ public class PluginProperties {
    */
   public void setProperty(String name, String value) {
     properties.setProperty(name, value);
+    modificationCount++;
+  }
+
+  /**
+   * Gets a number that changes whenever the properties are changed, so
+   * that plugins can cache values derived from them.
+   * Changes made directly to the underlying Properties object are only
+   * picked up when they are stored.
+   *
+   * @return  an int
+   */
+  public int getModificationCount() {
+    return modificationCount;
   }
 
   /**
    * Helper method to store the properties to disk.
    */
   public void store() {
+    modificationCount++;
     try {
       FileOutputStream fout = new FileOutputStream(blog.getPluginPropertiesFile());
       if (fout != null) {
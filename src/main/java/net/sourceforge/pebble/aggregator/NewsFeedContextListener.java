@@ -34,28 +34,28 @@ package net.sourceforge.pebble.aggregator;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import net.sourceforge.pebble.PebbleContext;
+
 import javax.servlet.ServletContextListener;
 import javax.servlet.ServletContextEvent;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Manages a timer that regularly updates all news feeds that have been
+ * Schedules a task that regularly updates all news feeds that have been
  * subscribed to.
  *
  * @author    Simon Brown
  */
 public class NewsFeedContextListener implements ServletContextListener {
 
-  private static final long ONE_MINUTE = 1000 * 60;
   private static final Log log = LogFactory.getLog(NewsFeedContextListener.class);
 
-  private Timer timer;
+  private ScheduledFuture<?> task;
 
   public void contextInitialized(ServletContextEvent servletContextEvent) {
     log.info("Starting newsfeed updater");
-    timer = new Timer();
-    timer.scheduleAtFixedRate(new TimerTask() {
+    task = PebbleContext.getInstance().getScheduler().scheduleAtFixedRate("newsfeed-updater", new Runnable() {
       public void run() {
         try {
           NewsFeedCache.getInstance().refreshFeeds();
@@ -64,12 +64,14 @@ public class NewsFeedContextListener implements ServletContextListener {
           e.printStackTrace();
         }
       }
-    }, 0, ONE_MINUTE * 15);
+    }, 0, 15, TimeUnit.MINUTES);
   }
 
   public void contextDestroyed(ServletContextEvent servletContextEvent) {
     log.info("Stopping newsfeed updater");
-    timer.cancel();
+    if (task != null) {
+      task.cancel(false);
+    }
   }
 
 }
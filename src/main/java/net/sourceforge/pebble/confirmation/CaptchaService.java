@@ -32,25 +32,204 @@
 
 package net.sourceforge.pebble.confirmation;
 
-import com.octo.captcha.service.image.DefaultManageableImageCaptchaService;
-import com.octo.captcha.service.image.ImageCaptchaService;
+import com.octo.captcha.Captcha;
+import com.octo.captcha.engine.image.ImageCaptchaEngine;
+import com.octo.captcha.engine.image.gimpy.DefaultGimpyEngine;
+import com.octo.captcha.image.ImageCaptcha;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.imageio.ImageIO;
+import javax.servlet.http.HttpSession;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Singleton wrapper for the JCaptcha services.
+ * Hands out JCaptcha image captchas from a pool of pre-rendered JPEGs,
+ * which is topped up in the background. Issuing a captcha is then just a
+ * case of taking one from the pool; it's only rendered on demand if the
+ * pool has run dry. The captcha itself (and therefore the answer) is kept
+ * in the session it was issued to.
  *
  * @author    Simon Brown
  */
 public class CaptchaService {
 
-  private static final ImageCaptchaService instance = new DefaultManageableImageCaptchaService();
+  /** the log used by this class */
+  private static final Log log = LogFactory.getLog(CaptchaService.class);
+
+  /** the session attribute holding the captcha that was last issued */
+  static final String CAPTCHA_KEY = "net.sourceforge.pebble.confirmation.Captcha";
+
+  public static final int DEFAULT_POOL_SIZE = 50;
+  public static final int DEFAULT_REFILL_RATE = 10;
+
+  private static final String JPG_FORMAT = "JPG";
+
+  private static final CaptchaService instance = new CaptchaService();
+
+  private final ImageCaptchaEngine engine = new DefaultGimpyEngine();
+
+  private volatile BlockingQueue<RenderedCaptcha> pool = new ArrayBlockingQueue<RenderedCaptcha>(DEFAULT_POOL_SIZE);
+  private ScheduledExecutorService refiller;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
 
   /**
-   * Gets the singleton ImageCaptchaService instance.
+   * Gets the singleton CaptchaService instance.
    *
-   * @return  an ImageCaptchaService instance
+   * @return  a CaptchaService instance
    */
-  public static ImageCaptchaService getInstance(){
+  public static CaptchaService getInstance(){
       return instance;
   }
 
+  /**
+   * Starts filling the pool in the background.
+   *
+   * @param poolSize      the maximum number of pre-rendered captchas to keep
+   * @param refillRate    the maximum number of captchas to render per second
+   * @param metricsInterval   how often (in seconds) to log the hit/miss counts, or 0 to never log them
+   */
+  public synchronized void start(int poolSize, int refillRate, int metricsInterval) {
+    stop();
+
+    pool = new ArrayBlockingQueue<RenderedCaptcha>(Math.max(1, poolSize));
+    refiller = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "pebble-captcha-refill");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+      }
+    });
+
+    long period = TimeUnit.SECONDS.toMicros(1) / Math.max(1, refillRate);
+    refiller.scheduleAtFixedRate(new Runnable() {
+      public void run() {
+        refill();
+      }
+    }, 0, period, TimeUnit.MICROSECONDS);
+
+    if (metricsInterval > 0) {
+      refiller.scheduleAtFixedRate(new Runnable() {
+        public void run() {
+          log.info("Captchas issued from pool: " + getHits() + ", rendered on demand: " + getMisses() + ", pooled: " + getPoolSize());
+        }
+      }, metricsInterval, metricsInterval, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Stops filling the pool.
+   */
+  public synchronized void stop() {
+    if (refiller != null) {
+      refiller.shutdownNow();
+      refiller = null;
+    }
+  }
+
+  /**
+   * Renders a single captcha into the pool, if there's room.
+   */
+  void refill() {
+    BlockingQueue<RenderedCaptcha> queue = pool;
+    if (queue.remainingCapacity() > 0) {
+      try {
+        queue.offer(render());
+      } catch (Exception e) {
+        log.warn("Could not render captcha", e);
+      }
+    }
+  }
+
+  /**
+   * Issues a captcha to the given session, replacing any that was issued
+   * previously.
+   *
+   * @param session   the HttpSession the captcha is for
+   * @return  the captcha challenge as a JPEG image
+   * @throws IOException    if the captcha can't be rendered
+   */
+  public byte[] issueChallenge(HttpSession session) throws IOException {
+    RenderedCaptcha captcha = pool.poll();
+    if (captcha != null) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+      captcha = render();
+    }
+
+    session.setAttribute(CAPTCHA_KEY, captcha.captcha);
+    return captcha.jpeg;
+  }
+
+  /**
+   * Determines whether the response is the answer to the captcha last issued
+   * to the given session. A captcha can only be answered once.
+   *
+   * @param session   the HttpSession the captcha was issued to
+   * @param response  the response entered by the user
+   * @return  true if the response is correct, false otherwise
+   */
+  public boolean validateResponse(HttpSession session, String response) {
+    Captcha captcha = (Captcha)session.getAttribute(CAPTCHA_KEY);
+    if (captcha == null || response == null) {
+      return false;
+    }
+
+    session.removeAttribute(CAPTCHA_KEY);
+    return captcha.validateResponse(response).booleanValue();
+  }
+
+  private RenderedCaptcha render() throws IOException {
+    ImageCaptcha captcha = engine.getNextImageCaptcha();
+    BufferedImage image = captcha.getImageChallenge();
+
+    ByteArrayOutputStream jpegOutputStream = new ByteArrayOutputStream();
+    ImageIO.write(image, JPG_FORMAT, jpegOutputStream);
+
+    // only the answer needs to be kept from here on
+    captcha.disposeChallenge();
+
+    return new RenderedCaptcha(captcha, jpegOutputStream.toByteArray());
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public int getPoolSize() {
+    return pool.size();
+  }
+
+  /**
+   * A captcha, along with its pre-rendered challenge.
+   */
+  private static class RenderedCaptcha {
+
+    private final Captcha captcha;
+    private final byte[] jpeg;
+
+    private RenderedCaptcha(Captcha captcha, byte[] jpeg) {
+      this.captcha = captcha;
+      this.jpeg = jpeg;
+    }
+
+  }
+
 }
@@ -31,10 +31,6 @@
  */
 package net.sourceforge.pebble.confirmation;
 
-import com.octo.captcha.service.CaptchaServiceException;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
-
 import javax.servlet.http.HttpServletRequest;
 
 /**
@@ -44,9 +40,6 @@ import javax.servlet.http.HttpServletRequest;
  */
 public class ImageCaptchaConfirmationStrategy extends AbstractConfirmationStrategy {
 
-  /** the log used by this class */
-  private static final Log log = LogFactory.getLog(ImageCaptchaConfirmationStrategy.class);
-
   /**
    * Called before showing the confirmation page.
    *
@@ -71,15 +64,8 @@ public class ImageCaptchaConfirmationStrategy extends AbstractConfirmationStrate
    * @return  true if the confirmation was successful, false otherwise
    */
   public boolean isConfirmed(HttpServletRequest request) {
-    String captchaId = request.getSession().getId();
     String response = request.getParameter("j_captcha_response");
-    try {
-      return CaptchaService.getInstance().validateResponseForID(captchaId, response);
-    } catch (CaptchaServiceException e) {
-      ImageCaptchaConfirmationStrategy.log.error("Exception encountered", e);
-    }
-
-    return false;
+    return CaptchaService.getInstance().validateResponse(request.getSession(), response);
   }
 
 }
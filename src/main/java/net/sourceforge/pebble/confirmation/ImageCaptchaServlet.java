@@ -32,20 +32,23 @@
 
 package net.sourceforge.pebble.confirmation;
 
-import com.octo.captcha.service.CaptchaServiceException;
-
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 /**
- * Servlet that serves up the JCaptcha image captcha.
+ * Servlet that serves up the JCaptcha image captcha, from the pool of
+ * pre-rendered captchas. The pool can be configured with the following
+ * init parameters:
+ * <ul>
+ * <li>poolSize - the number of captchas to keep (50 by default)</li>
+ * <li>refillRate - the number of captchas rendered per second to top up the pool (10 by default)</li>
+ * <li>metricsInterval - how often, in seconds, to log the pool hits and misses (0, never, by default)</li>
+ * </ul>
  *
  * @author Simon Brown
  */
@@ -53,8 +56,6 @@ public class ImageCaptchaServlet extends HttpServlet {
 
   private static final long serialVersionUID = -6227490839816434342L;
 
-  private static final String JPG_FORMAT = "JPG";
-  
   /**
    * Called to initialise the servlet.
    *
@@ -63,6 +64,34 @@ public class ImageCaptchaServlet extends HttpServlet {
    */
   public void init(ServletConfig servletConfig) throws ServletException {
     super.init(servletConfig);
+
+    CaptchaService.getInstance().start(
+        getIntParameter(servletConfig, "poolSize", CaptchaService.DEFAULT_POOL_SIZE),
+        getIntParameter(servletConfig, "refillRate", CaptchaService.DEFAULT_REFILL_RATE),
+        getIntParameter(servletConfig, "metricsInterval", 0));
+  }
+
+  /**
+   * Called when the servlet is taken out of service.
+   */
+  public void destroy() {
+    CaptchaService.getInstance().stop();
+
+    super.destroy();
+  }
+
+  private int getIntParameter(ServletConfig servletConfig, String name, int defaultValue) {
+    String value = servletConfig.getInitParameter(name);
+    if (value == null || value.trim().length() == 0) {
+      return defaultValue;
+    }
+
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException nfe) {
+      log("Ignoring invalid value for " + name + ": " + value);
+      return defaultValue;
+    }
   }
 
   /**
@@ -74,35 +103,15 @@ public class ImageCaptchaServlet extends HttpServlet {
    * @throws IOException
    */
   protected void doGet(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) throws ServletException, IOException {
-    byte[] captchaChallengeAsJpeg;
-    // the output stream to render the captcha image as jpeg into
-    ByteArrayOutputStream jpegOutputStream = new ByteArrayOutputStream();
-    try {
-      // get the session id that will identify the generated captcha.
-      // the same id must be used to validate the response, the session id is a good candidate!
-      String captchaId = httpServletRequest.getSession().getId();
-      // call the CaptchaService getChallenge method
-      BufferedImage challenge =
-          CaptchaService.getInstance().getImageChallengeForID(captchaId,
-              httpServletRequest.getLocale());
-
-      javax.imageio.ImageIO.write(challenge, JPG_FORMAT, jpegOutputStream);
-      
-    } catch (IllegalArgumentException e) {
-      httpServletResponse.sendError(HttpServletResponse.SC_NOT_FOUND);
-      return;
-    } catch (CaptchaServiceException e) {
-      httpServletResponse.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-      return;
-    }
-
-    captchaChallengeAsJpeg = jpegOutputStream.toByteArray();
+    // the captcha is kept in the session, so that the response can be validated
+    byte[] captchaChallengeAsJpeg = CaptchaService.getInstance().issueChallenge(httpServletRequest.getSession());
 
     // flush it in the response
     httpServletResponse.setHeader("Cache-Control", "no-store");
     httpServletResponse.setHeader("Pragma", "no-cache");
     httpServletResponse.setDateHeader("Expires", 0);
     httpServletResponse.setContentType("image/jpeg");
+    httpServletResponse.setContentLength(captchaChallengeAsJpeg.length);
     ServletOutputStream responseOutputStream =
         httpServletResponse.getOutputStream();
     responseOutputStream.write(captchaChallengeAsJpeg);
@@ -110,4 +119,4 @@ public class ImageCaptchaServlet extends HttpServlet {
     responseOutputStream.close();
   }
 
-}
\ No newline at end of file
+}
@@ -59,6 +59,15 @@ public interface BlogEntryDAO {
    */
   public Collection<BlogEntry> loadBlogEntries(Blog blog) throws PersistenceException;
 
+  /**
+   * Loads the comments and TrackBacks for a blog entry whose responses were
+   * deferred when it was loaded.
+   *
+   * @param blogEntry   the blog entry to add the responses to
+   * @throws PersistenceException   if the responses cannot be loaded
+   */
+  public void loadResponses(BlogEntry blogEntry) throws PersistenceException;
+
   /**
    * Stores the specified blog entry.
    *
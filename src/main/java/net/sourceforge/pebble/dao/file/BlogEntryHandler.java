@@ -75,6 +75,9 @@ public class BlogEntryHandler extends DefaultHandler {
   private static final int TIME_ZONE = 21;
   private static final int AUTHENTICATED = 22;
   private static final int AVATAR = 23;
+  private static final int NUMBER_OF_COMMENTS = 24;
+  private static final int NUMBER_OF_TRACKBACKS = 25;
+  private static final int LAST_MODIFIED = 26;
 
   private static final int IN_BLOG_ENTRY = 100;
   private static final int IN_COMMENT = 101;
@@ -112,6 +115,11 @@ public class BlogEntryHandler extends DefaultHandler {
   private Date trackBackDate;
   private State trackBackState = State.APPROVED;
 
+  /** the response counts, only present when responses are stored separately */
+  private int numberOfComments = -1;
+  private int numberOfTrackBacks = -1;
+  private Date lastModified;
+
   public BlogEntryHandler(BlogEntry blogEntry) {
     this.blogEntry = blogEntry;
 
@@ -195,6 +203,12 @@ public class BlogEntryHandler extends DefaultHandler {
       elementStatus = SIZE;
     } else if (name.equals("type")) {
       elementStatus = TYPE;
+    } else if (name.equals("numberOfComments")) {
+      elementStatus = NUMBER_OF_COMMENTS;
+    } else if (name.equals("numberOfTrackBacks")) {
+      elementStatus = NUMBER_OF_TRACKBACKS;
+    } else if (name.equals("lastModified")) {
+      elementStatus = LAST_MODIFIED;
     } else if (name.equals("attachment")) {
       groupStatus = IN_ATTACHMENT;
       elementStatus = NOT_DEFINED;
@@ -256,6 +270,15 @@ public class BlogEntryHandler extends DefaultHandler {
         case TRACKBACKS_ENABLED :
           blogEntry.setTrackBacksEnabled(Boolean.valueOf(elementContent.toString()).booleanValue());
           break;
+        case NUMBER_OF_COMMENTS :
+          numberOfComments = Integer.parseInt(elementContent.toString());
+          break;
+        case NUMBER_OF_TRACKBACKS :
+          numberOfTrackBacks = Integer.parseInt(elementContent.toString());
+          break;
+        case LAST_MODIFIED :
+          lastModified = getDate(elementContent.toString());
+          break;
       }
     } else if (groupStatus == IN_ATTACHMENT && name.equals("attachment")) {
       Attachment attachment = new Attachment();
@@ -379,6 +402,29 @@ public class BlogEntryHandler extends DefaultHandler {
     elementStatus = NOT_DEFINED;
   }
 
+  /**
+   * Determines whether the blog entry that was read stores its comments and
+   * TrackBacks separately, with just their counts in the blog entry itself.
+   *
+   * @return  true if the responses are stored separately, false if they
+   *          were read along with the blog entry
+   */
+  public boolean isResponsesStoredSeparately() {
+    return numberOfComments != -1;
+  }
+
+  public int getNumberOfComments() {
+    return numberOfComments;
+  }
+
+  public int getNumberOfTrackBacks() {
+    return Math.max(numberOfTrackBacks, 0);
+  }
+
+  public Date getLastModified() {
+    return lastModified;
+  }
+
   public void characters(char ch[], int start, int length) throws SAXException {
     elementContent.append(new String(ch, start, length));
     //log.info("characters : " + s);
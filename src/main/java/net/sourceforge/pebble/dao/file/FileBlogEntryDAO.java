@@ -32,6 +32,7 @@
 
 package net.sourceforge.pebble.dao.file;
 
+import net.sourceforge.pebble.comparator.ResponseByDateComparator;
 import net.sourceforge.pebble.dao.BlogEntryDAO;
 import net.sourceforge.pebble.dao.PersistenceException;
 import net.sourceforge.pebble.domain.*;
@@ -50,6 +51,9 @@ import javax.xml.transform.*;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -99,13 +103,17 @@ public class FileBlogEntryDAO implements BlogEntryDAO {
       BlogEntry blogEntry = new BlogEntry(blog);
 
       try {
-        DefaultHandler handler = new BlogEntryHandler(blogEntry);
+        BlogEntryHandler handler = new BlogEntryHandler(blogEntry);
         SAXParserFactory saxFactory = SAXParserFactory.newInstance();
         saxFactory.setValidating(false);
         saxFactory.setNamespaceAware(true);
         SAXParser parser = saxFactory.newSAXParser();
         parser.parse(source, handler);
 
+        if (handler.isResponsesStoredSeparately()) {
+          // only the counts are needed until the responses are asked for
+          blogEntry.deferResponses(this, handler.getNumberOfComments(), handler.getNumberOfTrackBacks(), handler.getLastModified());
+        }
       } catch (Exception e) {
         log.error(e.getMessage() + " while loading blog enty from " + source.getAbsolutePath(), e);
         e.printStackTrace();
@@ -118,6 +126,51 @@ public class FileBlogEntryDAO implements BlogEntryDAO {
     }
   }
 
+  /**
+   * Loads the comments and TrackBacks for a blog entry, which are stored
+   * alongside it as a sequence of comment and trackback elements.
+   *
+   * @param blogEntry   the blog entry to add the responses to
+   * @throws PersistenceException   if the responses cannot be loaded
+   */
+  public void loadResponses(BlogEntry blogEntry) throws PersistenceException {
+    File source = getResponsesFile(blogEntry);
+    if (!source.exists()) {
+      return;
+    }
+
+    log.debug("Loading " + source.getAbsolutePath());
+    InputStream in = null;
+    try {
+      // the file is appended to, so it has no root element of its own
+      Vector<InputStream> streams = new Vector<InputStream>();
+      streams.add(new ByteArrayInputStream("<responses>".getBytes("UTF-8")));
+      streams.add(new FileInputStream(source));
+      streams.add(new ByteArrayInputStream("</responses>".getBytes("UTF-8")));
+      in = new SequenceInputStream(streams.elements());
+
+      DefaultHandler handler = new BlogEntryHandler(blogEntry);
+      SAXParserFactory saxFactory = SAXParserFactory.newInstance();
+      saxFactory.setValidating(false);
+      saxFactory.setNamespaceAware(true);
+      SAXParser parser = saxFactory.newSAXParser();
+      parser.parse(in, handler);
+
+      blogEntry.setStoredResponses(new StoredResponses(getFingerprints(getResponses(blogEntry)), source.length()));
+    } catch (Exception e) {
+      log.error(e.getMessage() + " while loading responses from " + source.getAbsolutePath(), e);
+      throw new PersistenceException(e.getMessage());
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException ioe) {
+          log.warn("Exception encountered", ioe);
+        }
+      }
+    }
+  }
+
   /**
    * Loads all blog entries.
    *
@@ -199,6 +252,9 @@ public class FileBlogEntryDAO implements BlogEntryDAO {
       Element staticNameNode = doc.createElement("staticName");
       Element commentsEnabledNode = doc.createElement("commentsEnabled");
       Element trackBacksEnabledNode = doc.createElement("trackBacksEnabled");
+      Element numberOfCommentsNode = doc.createElement("numberOfComments");
+      Element numberOfTrackBacksNode = doc.createElement("numberOfTrackBacks");
+      Element lastModifiedNode = doc.createElement("lastModified");
       Element attachmentNode = doc.createElement("attachment");
 
       root.appendChild(titleNode);
@@ -271,18 +327,17 @@ public class FileBlogEntryDAO implements BlogEntryDAO {
         attachmentNode.appendChild(attachmentTypeNode);
       }
 
-      // and now store the comments
-      it = blogEntry.getComments().iterator();
-      while (it.hasNext()) {
-        Comment comment = (Comment) it.next();
-        storeComment(comment, doc, root);
-      }
-
-      // and finally the trackbacks
-      it = blogEntry.getTrackBacks().iterator();
-      while (it.hasNext()) {
-        TrackBack trackBack = (TrackBack) it.next();
-        storeTrackBack(trackBack, doc, root);
+      // the responses are stored separately, with just their counts here
+      root.appendChild(numberOfCommentsNode);
+      numberOfCommentsNode.appendChild(createTextNode(doc, "" + blogEntry.getNumberOfComments()));
+      root.appendChild(numberOfTrackBacksNode);
+      numberOfTrackBacksNode.appendChild(createTextNode(doc, "" + blogEntry.getNumberOfTrackBacks()));
+      root.appendChild(lastModifiedNode);
+      lastModifiedNode.appendChild(createTextNode(doc, sdf.format(blogEntry.getLastModified())));
+
+      // responses that haven't been loaded can't have changed
+      if (blogEntry.isResponsesLoaded()) {
+        storeResponses(blogEntry, builder);
       }
 
       // write the XMl to a String, and then write this string to a file
@@ -316,6 +371,126 @@ public class FileBlogEntryDAO implements BlogEntryDAO {
     }
   }
 
+  /**
+   * Stores the comments and TrackBacks for a blog entry, oldest first. When
+   * the file is known to hold what was last loaded or stored, and responses
+   * have only been added since, just the new responses are appended.
+   * Otherwise (a response has been changed or removed, or the file has been
+   * written by somebody else) the whole file is rewritten.
+   *
+   * @param blogEntry   the BlogEntry whose responses are being stored
+   * @param builder     the DocumentBuilder to create response elements with
+   * @throws Exception  if something goes wrong
+   */
+  private void storeResponses(BlogEntry blogEntry, DocumentBuilder builder) throws Exception {
+    List<Response> allResponses = getResponses(blogEntry);
+    Map<String,Integer> fingerprints = getFingerprints(allResponses);
+    File destination = getResponsesFile(blogEntry);
+
+    // only trust what was stored before if the file hasn't changed since
+    StoredResponses stored = null;
+    if (blogEntry.getStoredResponses() instanceof StoredResponses) {
+      stored = (StoredResponses)blogEntry.getStoredResponses();
+      if (destination.length() != stored.length) {
+        stored = null;
+      }
+    }
+
+    if (allResponses.isEmpty()) {
+      if (destination.exists()) {
+        log.debug("Removing " + destination.getAbsolutePath());
+        Files.delete(destination.toPath());
+      }
+    } else if (stored != null && fingerprints.entrySet().containsAll(stored.fingerprints.entrySet())) {
+      List<Response> newResponses = new ArrayList<Response>();
+      for (Response response : allResponses) {
+        if (!stored.fingerprints.containsKey(response.getGuid())) {
+          newResponses.add(response);
+        }
+      }
+
+      if (!newResponses.isEmpty()) {
+        log.debug("Appending to " + destination.getAbsolutePath());
+        Files.write(destination.toPath(), toXml(newResponses, builder).getBytes("UTF-8"), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+      }
+    } else {
+      log.debug("Saving to " + destination.getAbsolutePath());
+      File temporary = new File(destination.getParentFile(), destination.getName() + ".tmp");
+      Files.write(temporary.toPath(), toXml(allResponses, builder).getBytes("UTF-8"));
+      Files.move(temporary.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    blogEntry.setStoredResponses(new StoredResponses(fingerprints, destination.length()));
+  }
+
+  /**
+   * Gets the comments and TrackBacks for a blog entry, oldest first.
+   */
+  private List<Response> getResponses(BlogEntry blogEntry) {
+    List<Response> allResponses = new ArrayList<Response>();
+    allResponses.addAll(blogEntry.getComments());
+    allResponses.addAll(blogEntry.getTrackBacks());
+    Collections.sort(allResponses, Collections.reverseOrder(new ResponseByDateComparator()));
+
+    return allResponses;
+  }
+
+  /**
+   * Serializes the given responses as a sequence of comment and trackback
+   * elements, one per line.
+   */
+  private String toXml(List<Response> responses, DocumentBuilder builder) throws Exception {
+    Transformer xformer = TransformerFactory.newInstance().newTransformer();
+    xformer.setOutputProperty(OutputKeys.METHOD, "xml");
+    xformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+    xformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+    xformer.setOutputProperty(OutputKeys.INDENT, "yes");
+
+    StringBuilder buf = new StringBuilder();
+    for (Response response : responses) {
+      Document doc = builder.newDocument();
+      if (response instanceof Comment) {
+        storeComment((Comment)response, doc, doc);
+      } else {
+        storeTrackBack((TrackBack)response, doc, doc);
+      }
+
+      StringWriter sw = new StringWriter();
+      xformer.transform(new DOMSource(doc), new StreamResult(sw));
+      buf.append(sw.toString().trim());
+      buf.append("\n");
+    }
+
+    return buf.toString();
+  }
+
+  /**
+   * Works out a fingerprint for each response, from everything that is
+   * stored for it, so that changes can be spotted without serializing it.
+   *
+   * @return  a Map of fingerprints, keyed on response GUID
+   */
+  private Map<String,Integer> getFingerprints(List<Response> responses) {
+    Map<String,Integer> fingerprints = new HashMap<String,Integer>();
+    for (Response response : responses) {
+      List<Object> fields;
+      if (response instanceof Comment) {
+        Comment comment = (Comment)response;
+        fields = Arrays.<Object>asList(comment.getTitle(), comment.getBody(), comment.getAuthor(),
+            comment.getEmail(), comment.getWebsite(), comment.getAvatar(), comment.getIpAddress(),
+            comment.getDate(), comment.getState(), comment.isAuthenticated(),
+            comment.getParent() != null ? comment.getParent().getId() : null);
+      } else {
+        TrackBack trackBack = (TrackBack)response;
+        fields = Arrays.<Object>asList(trackBack.getTitle(), trackBack.getExcerpt(), trackBack.getUrl(),
+            trackBack.getBlogName(), trackBack.getIpAddress(), trackBack.getDate(), trackBack.getState());
+      }
+      fingerprints.put(response.getGuid(), fields.hashCode());
+    }
+
+    return fingerprints;
+  }
+
   /**
    * Helper method to store an individual comment.
    *
@@ -440,6 +615,23 @@ public class FileBlogEntryDAO implements BlogEntryDAO {
     if (!success) {
       throw new PersistenceException("Deletion of blog entry " + blogEntry.getGuid() + " failed");
     }
+
+    File responsesFile = getResponsesFile(blogEntry);
+    if (responsesFile.exists() && !responsesFile.delete()) {
+      log.warn("Deletion of responses for blog entry " + blogEntry.getGuid() + " failed");
+    }
+  }
+
+  /**
+   * Gets the file that the comments and TrackBacks for a blog entry are
+   * stored in.
+   *
+   * @param blogEntry   a BlogEntry instance
+   * @return  a File of the form blogroot/yyyy/MM/dd/id-responses.xml
+   */
+  File getResponsesFile(BlogEntry blogEntry) {
+    File path = new File(getPath(blogEntry.getBlog(), blogEntry.getId(), GMT));
+    return new File(path, blogEntry.getId() + "-responses.xml");
   }
 
   /**
@@ -473,4 +665,20 @@ public class FileBlogEntryDAO implements BlogEntryDAO {
     return buf.toString();
   }
 
-}
\ No newline at end of file
+  /**
+   * What was last loaded from, or stored to, the responses file for a blog
+   * entry.
+   */
+  private static class StoredResponses {
+
+    private final Map<String,Integer> fingerprints;
+    private final long length;
+
+    StoredResponses(Map<String,Integer> fingerprints, long length) {
+      this.fingerprints = fingerprints;
+      this.length = length;
+    }
+
+  }
+
+}
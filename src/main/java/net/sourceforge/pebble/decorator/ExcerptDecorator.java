@@ -52,6 +52,9 @@ public class ExcerptDecorator extends ContentDecoratorSupport {
   /** the name of the maxLength property */
   public static final String MAX_LENGTH_KEY = "ExcerptDecorator.maxLength";
 
+  /** the configuration, resolved from the plugin properties of the blog */
+  private volatile Configuration configuration;
+
   /**
    * Decorates the specified blog entry.
    *
@@ -59,22 +62,26 @@ public class ExcerptDecorator extends ContentDecoratorSupport {
    * @param blogEntry the blog entry to be decorated
    */
   public void decorate(ContentDecoratorContext context, BlogEntry blogEntry) {
-    PluginProperties props = blogEntry.getBlog().getPluginProperties();
-    int maxLength = StringUtils.MAX_CONTENT_LENGTH;
-    if (props.hasProperty(MAX_LENGTH_KEY)) {
-      try {
-        maxLength = Integer.parseInt(props.getProperty(MAX_LENGTH_KEY));
-      } catch (NumberFormatException nfe) {
-        log.error(nfe.getMessage());
-        // do nothing, the value has already been defaulted
-      }
-    }
-
     if (blogEntry.getExcerpt() == null || blogEntry.getExcerpt().length() == 0) {
+      int maxLength = getConfiguration(blogEntry.getBlog().getPluginProperties()).maxLength;
       blogEntry.setExcerpt(StringUtils.truncate(blogEntry.getBody(), maxLength));
     }
   }
 
+  /**
+   * Gets the configuration for the given plugin properties, only reading
+   * them again if they have been changed.
+   */
+  private Configuration getConfiguration(PluginProperties props) {
+    Configuration config = configuration;
+    if (config == null || config.props != props || config.modificationCount != props.getModificationCount()) {
+      config = new Configuration(props);
+      configuration = config;
+    }
+
+    return config;
+  }
+
   /**
    * Decorates the specified static page.
    *
@@ -84,4 +91,28 @@ public class ExcerptDecorator extends ContentDecoratorSupport {
   public void decorate(ContentDecoratorContext context, StaticPage staticPage) {
   }
 
+  private static class Configuration {
+
+    private final PluginProperties props;
+    private final int modificationCount;
+    private final int maxLength;
+
+    Configuration(PluginProperties props) {
+      this.props = props;
+      this.modificationCount = props.getModificationCount();
+
+      int length = StringUtils.MAX_CONTENT_LENGTH;
+      if (props.hasProperty(MAX_LENGTH_KEY)) {
+        try {
+          length = Integer.parseInt(props.getProperty(MAX_LENGTH_KEY));
+        } catch (NumberFormatException nfe) {
+          log.error(nfe.getMessage());
+          // do nothing, the value has already been defaulted
+        }
+      }
+      this.maxLength = length;
+    }
+
+  }
+
 }
\ No newline at end of file
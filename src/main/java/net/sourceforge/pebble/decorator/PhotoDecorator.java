@@ -54,8 +54,12 @@ public class PhotoDecorator extends ContentDecoratorSupport {
 
   private static final Log log = LogFactory.getLog(PhotoDecorator.class);
 
-  private static final String PHOTOS_START_TAG = "<photos>";
-  private static final String PHOTOS_END_TAG = "</photos>";
+  // this pattern says "take the shortest match you can find where there are
+  // one or more characters between photos tags"
+  //  - the match is case insensitive and DOTALL means that newlines are
+  //  - considered as a character match
+  private static final Pattern PHOTOS_PATTERN = Pattern.compile("<photos>(.+?)</photos>",
+      Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
 
   /**
    * Decorates the specified blog entry.
@@ -84,24 +88,19 @@ public class PhotoDecorator extends ContentDecoratorSupport {
       return "";
     }
 
-    // this pattern says "take the shortest match you can find where there are
-    // one or more characters between escape tags"
-    //  - the match is case insensitive and DOTALL means that newlines are
-    //  - considered as a character match
-    Pattern p = Pattern.compile(PHOTOS_START_TAG + ".+?" + PHOTOS_END_TAG,
-        Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-    Matcher m = p.matcher(content);
-
-    // while there are blocks to be escaped
-    while (m.find()) {
-      int start = m.start();
-      int end = m.end();
+    Matcher m = PHOTOS_PATTERN.matcher(content);
+    if (!m.find()) {
+      return content;
+    }
 
-      // grab the text, strip off the "photos" tags and transform it
-      String textToMarkup = content.substring(start, end);
-      textToMarkup = textToMarkup.substring(PHOTOS_START_TAG.length(), textToMarkup.length() - PHOTOS_END_TAG.length());
+    // copy the content across in a single pass, replacing each block of
+    // photos as it's found
+    StringBuilder buf = new StringBuilder(content.length() * 2);
+    do {
+      m.appendReplacement(buf, "");
 
-      StringBuffer buf = new StringBuffer();
+      // grab the text between the "photos" tags and transform it
+      String textToMarkup = m.group(1);
       buf.append("<div class=\"photos\">\n");
 
       try {
@@ -135,13 +134,10 @@ public class PhotoDecorator extends ContentDecoratorSupport {
       }
 
       buf.append("</div>");
+    } while (m.find());
+    m.appendTail(buf);
 
-      // now add it back into the original text
-      content = content.substring(0, start) + buf.toString() + content.substring(end, content.length());
-      m = p.matcher(content);
-    }
-
-    return content;
+    return buf.toString();
   }
 
 }
@@ -54,31 +54,29 @@ public class ReadMoreDecorator extends ContentDecoratorSupport {
    * @param blogEntry the blog entry to be decorated
    */
   public void decorate(ContentDecoratorContext context, BlogEntry blogEntry) {
-    Blog blog = blogEntry.getBlog();
-
     if ((blogEntry.getExcerpt() != null && blogEntry.getExcerpt().length() > 0 && context.getView() == ContentDecoratorContext.SUMMARY_VIEW)) {
-      StringBuffer buf = new StringBuffer();
-      buf.append(blogEntry.getExcerpt());
-
-      buf.append("<p class=\"readMore\"><a href=\"");
-      buf.append(blogEntry.getPermalink());
-      buf.append("\">");
-      buf.append(I18n.getMessage(blog, "common.readMore"));
-      buf.append("</a></p>");
-
-      blogEntry.setExcerpt(buf.toString());
+      blogEntry.setExcerpt(appendReadMoreLink(blogEntry.getExcerpt(), blogEntry));
     } else if (blogEntry.isAggregated()) {
-      StringBuffer buf = new StringBuffer();
-      buf.append(blogEntry.getBody());
+      blogEntry.setBody(appendReadMoreLink(blogEntry.getBody(), blogEntry));
+    }
+  }
 
-      buf.append("<p class=\"readMore\"><a href=\"");
-      buf.append(blogEntry.getPermalink());
-      buf.append("\">");
-      buf.append(I18n.getMessage(blog, "common.readMore"));
-      buf.append("</a></p>");
+  private String appendReadMoreLink(String content, BlogEntry blogEntry) {
+    Blog blog = blogEntry.getBlog();
+    String permalink = blogEntry.getPermalink();
+    String readMore = I18n.getMessage(blog, "common.readMore");
 
-      blogEntry.setBody(buf.toString());
+    StringBuilder buf = new StringBuilder(256);
+    if (content != null) {
+      buf.append(content);
     }
+    buf.append("<p class=\"readMore\"><a href=\"");
+    buf.append(permalink);
+    buf.append("\">");
+    buf.append(readMore);
+    buf.append("</a></p>");
+
+    return buf.toString();
   }
 
 }
\ No newline at end of file
@@ -38,7 +38,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.sourceforge.pebble.PebbleContext;
 
@@ -77,6 +80,13 @@ public abstract class AbstractBlog extends TimePeriod {
   /** the properties for this blog */
   protected Properties properties;
 
+  /** the time zone and locale, derived from the properties when first needed */
+  private volatile TimeZone timeZone;
+  private volatile Locale locale;
+
+  /** date/time formatters for this blog's locale and time zone, keyed by pattern */
+  private final Map<String,DateTimeFormatter> dateTimeFormatters = new ConcurrentHashMap<String,DateTimeFormatter>();
+
   /**
    * Creates a new Blog instance, based at the specified location.
    * Note: You must call init() before being able to use this object -
@@ -106,6 +116,7 @@ public abstract class AbstractBlog extends TimePeriod {
   protected void loadProperties() {
     try {
       this.properties = new Properties(getDefaultProperties());
+      propertiesChanged();
 
       File blogPropertiesFile = new File(getRoot(), BLOG_PROPERTIES_FILE);
       if (!blogPropertiesFile.exists()) {
@@ -186,6 +197,7 @@ public abstract class AbstractBlog extends TimePeriod {
     if (key != null) {
       if (value != null) {
         properties.setProperty(key, value);
+        propertiesChanged();
       } else {
         removeProperty(key);
       }
@@ -199,6 +211,17 @@ public abstract class AbstractBlog extends TimePeriod {
    */
   public void removeProperty(String key) {
     properties.remove(key);
+    propertiesChanged();
+  }
+
+  /**
+   * Called when the properties have changed, to discard anything
+   * derived from them.
+   */
+  private void propertiesChanged() {
+    timeZone = null;
+    locale = null;
+    dateTimeFormatters.clear();
   }
 
   /**
@@ -319,11 +342,45 @@ public abstract class AbstractBlog extends TimePeriod {
 
   /**
    * Gets the TimeZone instance representing the timezone for the blog.
+   * The same instance is shared between callers, so it must not be modified.
    *
    * @return    a TimeZone instance
    */
   public TimeZone getTimeZone() {
-    return TimeZone.getTimeZone(getTimeZoneId());
+    TimeZone tz = timeZone;
+    if (tz == null) {
+      tz = TimeZone.getTimeZone(getTimeZoneId());
+      timeZone = tz;
+    }
+
+    return tz;
+  }
+
+  /**
+   * Gets the ZoneId representing the timezone for the blog.
+   *
+   * @return    a ZoneId instance
+   */
+  public ZoneId getZoneId() {
+    return getTimeZone().toZoneId();
+  }
+
+  /**
+   * Gets a formatter for the given pattern, using the locale and timezone
+   * of this blog. Formatters are immutable and thread-safe, so they are
+   * created once and shared.
+   *
+   * @param pattern   a DateTimeFormatter pattern
+   * @return    a DateTimeFormatter instance
+   */
+  public DateTimeFormatter getDateTimeFormatter(String pattern) {
+    DateTimeFormatter formatter = dateTimeFormatters.get(pattern);
+    if (formatter == null) {
+      formatter = DateTimeFormatter.ofPattern(pattern, getLocale()).withZone(getZoneId());
+      dateTimeFormatters.put(pattern, formatter);
+    }
+
+    return formatter;
   }
 
   /**
@@ -388,7 +445,13 @@ public abstract class AbstractBlog extends TimePeriod {
    * @return  a Locale instance based upon the language and country.
    */
   public Locale getLocale() {
-    return new Locale(getLanguage(), getCountry());
+    Locale l = locale;
+    if (l == null) {
+      l = new Locale(getLanguage(), getCountry());
+      locale = l;
+    }
+
+    return l;
   }
 
   /**
@@ -427,6 +490,25 @@ public abstract class AbstractBlog extends TimePeriod {
     return getIndexesDirectory() + File.separator + "search";
   }
 
+  /**
+   * Gets the location where the search suggestions (for autocomplete)
+   * are stored.
+   *
+   * @return    an absolute, local path on the filing system
+   */
+  public String getSuggestionIndexDirectory() {
+    return getIndexesDirectory() + File.separator + "suggestions";
+  }
+
+  /**
+   * Gets the location where generated content, such as PDFs, is cached.
+   *
+   * @return    an absolute, local path on the filing system
+   */
+  public String getCacheDirectory() {
+    return getRoot() + File.separator + "cache";
+  }
+
   /**
    * Gets the location where the blog logs are stored.
    *
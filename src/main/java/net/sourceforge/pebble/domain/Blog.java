@@ -42,13 +42,17 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.StringTokenizer;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -100,6 +104,7 @@ import net.sourceforge.pebble.logging.AbstractLogger;
 import net.sourceforge.pebble.logging.CombinedLogFormatLogger;
 import net.sourceforge.pebble.permalink.DefaultPermalinkProvider;
 import net.sourceforge.pebble.util.StringUtils;
+import net.sourceforge.pebble.web.view.PdfCacheListener;
 
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.logging.Log;
@@ -197,12 +202,28 @@ public class Blog extends AbstractBlog {
 
   private EmailSubscriptionList emailSubscriptionList;
 
+  /** the background tasks scheduled for this blog, cancelled when it's stopped */
+  private final List<ScheduledFuture<?>> scheduledTasks = new CopyOnWriteArrayList<ScheduledFuture<?>>();
+
   /** the ApplicationContext to instantiate plugins with */
   private final AutowireCapableBeanFactory beanFactory;
 
   /** the Cache that can be used by services to cache arbitrary config */
   private final ConcurrentMap<String, Supplier<?>> serviceCache = new ConcurrentHashMap<String, Supplier<?>>();
 
+  /** the maximum number of rendered widgets (calendars, archive lists, etc) to keep */
+  private static final int MAXIMUM_RENDERED_WIDGETS = 64;
+
+  /** rendered widget HTML, least recently used first */
+  private final Map<String, String> renderedWidgets = new LinkedHashMap<String, String>(16, 0.75f, true) {
+    protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+      return size() > MAXIMUM_RENDERED_WIDGETS;
+    }
+  };
+
+  /** incremented (under the renderedWidgets lock) each time the rendered widgets are cleared */
+  private long renderedWidgetGeneration = 0;
+
   /**
    * Creates a new Blog instance, based at the specified location.
    *
@@ -373,6 +394,7 @@ public class Blog extends AbstractBlog {
     eventListenerList.addBlogEntryListener(new AuthorIndexListener());
     eventListenerList.addBlogEntryListener(new SearchIndexListener());
     eventListenerList.addBlogEntryListener(new AuditListener());
+    eventListenerList.addBlogEntryListener(new PdfCacheListener());
     try {
       eventListenerList.addBlogEntryListener(new EmailSubscriptionListener());
     } catch (Throwable t) {
@@ -497,7 +519,7 @@ public class Blog extends AbstractBlog {
     defaultProperties.setProperty(RECENT_RESPONSES_ON_HOME_PAGE_KEY, "3");
     defaultProperties.setProperty(THEME_KEY, "default");
     defaultProperties.setProperty(PRIVATE_KEY, FALSE);
-    defaultProperties.setProperty(LUCENE_ANALYZER_KEY, "org.apache.lucene.analysis.SimpleAnalyzer");
+    defaultProperties.setProperty(LUCENE_ANALYZER_KEY, "net.sourceforge.pebble.index.LanguageAnalyzer");
     defaultProperties.setProperty(CONTENT_DECORATORS_KEY,
         "net.sourceforge.pebble.decorator.RadeoxDecorator\n" +
         "net.sourceforge.pebble.decorator.HtmlDecorator\n" +
@@ -1036,19 +1058,7 @@ public class Blog extends AbstractBlog {
    * @return  a List of BlogEntry objects
    */
   public List<BlogEntry> getUnpublishedBlogEntries() {
-    List<BlogEntry> blogEntries = new ArrayList<BlogEntry>();
-    BlogService service = new BlogService();
-
-    List<String> blogEntryIds = blogEntryIndex.getUnpublishedBlogEntries();
-    for (String blogEntryId : blogEntryIds) {
-      try {
-        blogEntries.add(service.getBlogEntry(this, blogEntryId));
-      } catch (BlogServiceException e) {
-        log.error("Exception encountered", e);
-      }
-    }
-
-    return blogEntries;
+    return getBlogEntries(blogEntryIndex.getUnpublishedBlogEntries());
   }
 
   /**
@@ -1095,23 +1105,7 @@ public class Blog extends AbstractBlog {
    * @return a List containing the most recent blog entries
    */
   public List<BlogEntry> getRecentBlogEntries(int numberOfEntries) {
-    BlogService service = new BlogService();
-    List<String> blogEntryIds = blogEntryIndex.getBlogEntries();
-    List<BlogEntry> blogEntries = new ArrayList<BlogEntry>();
-    for (String blogEntryId : blogEntryIds) {
-      try {
-        BlogEntry blogEntry = service.getBlogEntry(this, blogEntryId);
-        blogEntries.add(blogEntry);
-      } catch (BlogServiceException e) {
-        log.error("Exception encountered", e);
-      }
-
-      if (blogEntries.size() == numberOfEntries) {
-        break;
-      }
-    }
-
-    return blogEntries;
+    return getFirstBlogEntries(blogEntryIndex.getBlogEntries(), numberOfEntries);
   }
 
   /**
@@ -1132,22 +1126,20 @@ public class Blog extends AbstractBlog {
    * @return a List containing the most recent blog entries
    */
   public List<BlogEntry> getRecentPublishedBlogEntries(int number) {
-    BlogService service = new BlogService();
-    List<String> blogEntryIds = blogEntryIndex.getPublishedBlogEntries();
-    List<BlogEntry> blogEntries = new ArrayList<BlogEntry>();
-    for (String blogEntryId : blogEntryIds) {
-      if (blogEntries.size() == number) {
-        break;
-      }
+    return getFirstBlogEntries(blogEntryIndex.getPublishedBlogEntries(), number);
+  }
 
-      try {
-        BlogEntry blogEntry = service.getBlogEntry(this, blogEntryId);
-        if (blogEntry != null) {
-          blogEntries.add(blogEntry);
-        }
-      } catch (BlogServiceException e) {
-        log.error("Exception encountered", e);
-      }
+  /**
+   * Gets the blog entries for the first of the given IDs, loading more if
+   * some of them can't be found.
+   */
+  private List<BlogEntry> getFirstBlogEntries(List<String> blogEntryIds, int number) {
+    List<BlogEntry> blogEntries = new ArrayList<BlogEntry>();
+    int from = 0;
+    while (blogEntries.size() < number && from < blogEntryIds.size()) {
+      int to = Math.min(blogEntryIds.size(), from + (number - blogEntries.size()));
+      blogEntries.addAll(getBlogEntries(blogEntryIds.subList(from, to)));
+      from = to;
     }
 
     return blogEntries;
@@ -1161,7 +1153,14 @@ public class Blog extends AbstractBlog {
    */
   public List<BlogEntry> getBlogEntries(List<String> blogEntryIds) {
     BlogService service = new BlogService();
-    List<BlogEntry> blogEntries = new LinkedList<BlogEntry>();
+    try {
+      return service.getBlogEntries(this, blogEntryIds);
+    } catch (BlogServiceException e) {
+      log.error("Exception encountered", e);
+    }
+
+    // load them one at a time, skipping those that can't be loaded
+    List<BlogEntry> blogEntries = new ArrayList<BlogEntry>();
     for (String blogEntryId : blogEntryIds) {
       try {
         BlogEntry blogEntry = service.getBlogEntry(this, blogEntryId);
@@ -1586,9 +1585,11 @@ public class Blog extends AbstractBlog {
    *
    * @param request   the HttpServletRequest instance for this request
    */
-  public synchronized void log(HttpServletRequest request, int status) {
+  public void log(HttpServletRequest request, int status) {
+    // the logger does its own locking, so there's no need to hold the
+    // blog monitor (and block writers) while a request is being logged
     String externalUri = (String)request.getAttribute(Constants.EXTERNAL_URI);
-    if (externalUri.matches("/images/.+")) {
+    if (externalUri.startsWith("/images/") && externalUri.length() > "/images/".length()) {
       // do nothing, we don't want to log the following types of requests
       // - a blog's images
     } else {
@@ -1681,6 +1682,9 @@ public class Blog extends AbstractBlog {
     if (!indexes.exists()) {
       indexes.mkdir();
       reindex();
+    } else if (!searchIndex.isUpToDate()) {
+      log.info("Search index for blog with ID " + getId() + " is out of date");
+      reindex();
     }
 
     File imagesDirectory = new File(getImagesDirectory());
@@ -1712,6 +1716,12 @@ public class Blog extends AbstractBlog {
   void stop() {
     log.debug("Stopping blog with ID " + getId());
 
+    for (ScheduledFuture<?> task : scheduledTasks) {
+      task.cancel(false);
+    }
+    scheduledTasks.clear();
+
+    searchIndex.close();
     logger.stop();
     editableTheme.backup();
 
@@ -1720,6 +1730,32 @@ public class Blog extends AbstractBlog {
     log.info("Stopped blog with ID " + getId());
   }
 
+  /**
+   * Schedules a task to run periodically on behalf of this blog, using
+   * the scheduler shared by all blogs. The first run happens at a random
+   * point within the first period so that the tasks for different blogs
+   * are spread out, and the task is cancelled when this blog is stopped.
+   *
+   * @param name      the name of the task (the blog ID is added to this)
+   * @param task      the task to run
+   * @param period    the delay between runs
+   * @param unit      the unit of the period
+   * @return  a ScheduledFuture that can be used to cancel the task
+   */
+  public ScheduledFuture<?> scheduleTask(String name, Runnable task, long period, TimeUnit unit) {
+    ScheduledFuture<?> future = PebbleContext.getInstance().getScheduler().scheduleWithJitter(getId() + "/" + name, task, period, unit);
+    scheduledTasks.add(future);
+
+    // forget about tasks that have been cancelled elsewhere
+    for (ScheduledFuture<?> scheduledTask : scheduledTasks) {
+      if (scheduledTask.isDone()) {
+        scheduledTasks.remove(scheduledTask);
+      }
+    }
+
+    return future;
+  }
+
   /**
    * Gets the logger associated with this blog.
    *
@@ -1870,6 +1906,7 @@ public class Blog extends AbstractBlog {
   public void setPermalinkProvider(PermalinkProvider provider) {
     this.permalinkProvider = provider;
     this.permalinkProvider.setBlog(this);
+    clearRenderedWidgets();
   }
 
   public List<PageDecorator> getPageDecorators() {
@@ -2036,6 +2073,62 @@ public class Blog extends AbstractBlog {
     serviceCache.remove(key);
   }
 
+  /**
+   * Gets the HTML for a previously rendered widget, such as the calendar.
+   *
+   * @param key   a key identifying the widget and everything it depends upon
+   * @return  the HTML as a String, or null if it's not been rendered
+   */
+  public String getRenderedWidget(String key) {
+    synchronized (renderedWidgets) {
+      return renderedWidgets.get(key);
+    }
+  }
+
+  /**
+   * Gets the generation of the rendered widgets, which should be taken
+   * before a widget is rendered and handed back when it's stored.
+   *
+   * @return  the number of times the rendered widgets have been cleared
+   */
+  public long getRenderedWidgetGeneration() {
+    synchronized (renderedWidgets) {
+      return renderedWidgetGeneration;
+    }
+  }
+
+  /**
+   * Stores the HTML for a rendered widget, unless the rendered widgets have
+   * been cleared since it started being rendered, in which case it may
+   * be out of date.
+   *
+   * @param key         a key identifying the widget and everything it depends upon
+   * @param html        the HTML as a String
+   * @param generation  the generation taken before the widget was rendered
+   * @return  true if the HTML was stored, false otherwise
+   */
+  public boolean putRenderedWidget(String key, String html, long generation) {
+    synchronized (renderedWidgets) {
+      if (generation != renderedWidgetGeneration) {
+        return false;
+      }
+
+      renderedWidgets.put(key, html);
+      return true;
+    }
+  }
+
+  /**
+   * Discards all rendered widgets; called when the set of published blog
+   * entries changes.
+   */
+  public void clearRenderedWidgets() {
+    synchronized (renderedWidgets) {
+      renderedWidgetGeneration++;
+      renderedWidgets.clear();
+    }
+  }
+
   private List<String> getStringsFromProperty(String key) {
     List<String> strings = new ArrayList<String>();
     String value = getProperty(key);
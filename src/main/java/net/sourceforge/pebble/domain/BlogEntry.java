@@ -35,6 +35,8 @@ import net.sourceforge.pebble.api.event.blogentry.BlogEntryEvent;
 import net.sourceforge.pebble.api.event.comment.CommentEvent;
 import net.sourceforge.pebble.api.event.trackback.TrackBackEvent;
 import net.sourceforge.pebble.comparator.ResponseByDateComparator;
+import net.sourceforge.pebble.dao.BlogEntryDAO;
+import net.sourceforge.pebble.dao.PersistenceException;
 import net.sourceforge.pebble.web.validation.ValidationContext;
 import net.sourceforge.pebble.trackback.TrackBackTokenManager;
 import org.apache.commons.logging.Log;
@@ -93,6 +95,30 @@ public class BlogEntry extends PageBasedContent {
    */
   private List trackBacks = new ArrayList();
 
+  /**
+   * false if the comments and TrackBacks haven't been loaded yet, which is
+   * only set once they have all been added, so that the methods that check
+   * it without synchronizing never see half of them
+   */
+  private volatile boolean responsesLoaded = true;
+
+  /** true while the comments and TrackBacks are being loaded */
+  private boolean loadingResponses;
+
+  /** the DAO that the comments and TrackBacks will be loaded from */
+  private BlogEntryDAO responseDAO;
+
+  /** or the blog entry that they will be copied from, if this is a clone */
+  private BlogEntry responseSource;
+
+  /** what the DAO last loaded or stored for the responses, which is opaque to this class */
+  private Object storedResponses;
+
+  /** the number of comments, TrackBacks and the last modified date, until the responses are loaded */
+  private int numberOfComments;
+  private int numberOfTrackBacks;
+  private Date lastModified;
+
   /** the attachment for this blog entry, if applicable */
   private Attachment attachment;
 
@@ -293,6 +319,10 @@ public class BlogEntry extends PageBasedContent {
    * @return  a Date instance representing the time of the last comment/TrackBack
    */
   public Date getLastModified() {
+    if (!responsesLoaded) {
+      return lastModified != null ? lastModified : getDate();
+    }
+
     Date date = getDate();
 
     Iterator it = comments.iterator();
@@ -454,6 +484,8 @@ public class BlogEntry extends PageBasedContent {
    * @return a List of Comment instances
    */
   public List<Comment> getComments() {
+    loadResponses();
+
     List<Comment> allComments = new ArrayList();
     Iterator it = comments.iterator();
     while (it.hasNext()) {
@@ -480,7 +512,20 @@ public class BlogEntry extends PageBasedContent {
    * @return the number of comments as a int
    */
   public int getNumberOfComments() {
-    return getComments().size();
+    if (!responsesLoaded) {
+      return numberOfComments;
+    }
+
+    return countComments(comments);
+  }
+
+  private int countComments(List<Comment> list) {
+    int count = list.size();
+    for (Comment comment : list) {
+      count += countComments(comment.getComments());
+    }
+
+    return count;
   }
 
   /**
@@ -489,6 +534,8 @@ public class BlogEntry extends PageBasedContent {
    * @return a List of TrackBack instances
    */
   public List<TrackBack> getTrackBacks() {
+    loadResponses();
+
     return new ArrayList<TrackBack>(trackBacks);
   }
 
@@ -498,6 +545,10 @@ public class BlogEntry extends PageBasedContent {
    * @return the number of trackbacks as a int
    */
   public int getNumberOfTrackBacks() {
+    if (!responsesLoaded) {
+      return numberOfTrackBacks;
+    }
+
     return trackBacks.size();
   }
 
@@ -507,7 +558,98 @@ public class BlogEntry extends PageBasedContent {
    * @return the number of responses as a int
    */
   public int getNumberOfResponses() {
-    return getResponses().size();
+    return getNumberOfComments() + getNumberOfTrackBacks();
+  }
+
+  /**
+   * Determines whether the comments and TrackBacks for this blog entry have
+   * been loaded.
+   *
+   * @return  false if they are still to be loaded from disk, true otherwise
+   */
+  public boolean isResponsesLoaded() {
+    return responsesLoaded;
+  }
+
+  /**
+   * Defers loading the comments and TrackBacks for this blog entry until
+   * they are first needed. Until then, the given counts and date are used.
+   * This is intended for use by DAOs that store responses separately.
+   *
+   * @param dao                   the BlogEntryDAO to load the responses from
+   * @param numberOfComments      the number of comments
+   * @param numberOfTrackBacks    the number of TrackBacks
+   * @param lastModified          the date of the last response, or the blog entry
+   */
+  public void deferResponses(BlogEntryDAO dao, int numberOfComments, int numberOfTrackBacks, Date lastModified) {
+    this.responseDAO = dao;
+    this.numberOfComments = numberOfComments;
+    this.numberOfTrackBacks = numberOfTrackBacks;
+    this.lastModified = lastModified;
+    this.responsesLoaded = false;
+  }
+
+  /**
+   * Gets what the DAO recorded when the responses were last loaded or stored,
+   * so that it can work out what has changed since.
+   *
+   * @return  an object that only the DAO understands, or null
+   */
+  public Object getStoredResponses() {
+    return storedResponses;
+  }
+
+  /**
+   * Records what the responses looked like when they were loaded or stored.
+   * This is intended for use by DAOs that store responses separately, and
+   * the object must not be changed afterwards since copies share it.
+   *
+   * @param storedResponses   an object that only the DAO understands
+   */
+  public void setStoredResponses(Object storedResponses) {
+    this.storedResponses = storedResponses;
+  }
+
+  /**
+   * Loads the comments and TrackBacks, if they haven't been loaded yet.
+   */
+  private synchronized void loadResponses() {
+    if (responsesLoaded || loadingResponses) {
+      return;
+    }
+
+    // adding them calls back into this method
+    loadingResponses = true;
+    boolean eventsEnabled = areEventsEnabled();
+    super.setEventsEnabled(false);
+    try {
+      if (responseSource != null) {
+        for (Comment comment : responseSource.getComments()) {
+          addComment((Comment)comment.clone());
+        }
+        for (TrackBack trackBack : responseSource.getTrackBacks()) {
+          TrackBack clonedTrackBack = (TrackBack)trackBack.clone();
+          clonedTrackBack.setBlogEntry(this);
+          addTrackBack(clonedTrackBack);
+        }
+        storedResponses = responseSource.getStoredResponses();
+      } else {
+        responseDAO.loadResponses(this);
+      }
+      responseSource = null;
+      responseDAO = null;
+      responsesLoaded = true;
+    } catch (PersistenceException pe) {
+      throw new RuntimeException("Error loading responses for " + getGuid(), pe);
+    } finally {
+      if (!responsesLoaded) {
+        // never carry on with some of them, they could be saved over the real ones
+        comments.clear();
+        trackBacks.clear();
+      }
+      loadingResponses = false;
+      setEventsEnabled(eventsEnabled);
+    }
   }
 
   /**
@@ -555,6 +697,8 @@ public class BlogEntry extends PageBasedContent {
       return;
     }
 
+    loadResponses();
+
     Comment existingComment = getComment(comment.getId());
     if (existingComment != null && existingComment != comment) {
       // there is an existing comment with the same ID, but it's
@@ -621,6 +765,7 @@ public class BlogEntry extends PageBasedContent {
    * @param trackBack a TrackBack instance
    */
   public synchronized void addTrackBack(TrackBack trackBack) {
+    loadResponses();
     if (trackBack == null || trackBacks.contains(trackBack)) {
       return;
     }
@@ -801,49 +946,59 @@ public class BlogEntry extends PageBasedContent {
    * @see Cloneable
    */
   public Object clone() {
+    return copy(false);
+  }
+
+  /**
+   * Creates a copy of this blog entry, which must be a snapshot that is never
+   * changed, such as the blog entries held in the content cache. The copy
+   * only copies the comments and TrackBacks from the snapshot if and when
+   * it needs them.
+   *
+   * @return  a BlogEntry that can be changed independently of this one
+   */
+  BlogEntry copyOfSnapshot() {
+    return copy(true);
+  }
+
+  private BlogEntry copy(boolean snapshot) {
     BlogEntry entry = new BlogEntry(getBlog());
     entry.setEventsEnabled(false);
-    entry.setPersistent(isPersistent());
-    entry.setPublished(isPublished());
-    entry.setTitle(getTitle());
-    entry.setSubtitle(getSubtitle());
-    entry.setExcerpt(getExcerpt());
-    entry.setBody(getBody());
-    entry.setDate(getDate());
-    entry.setTimeZoneId(timeZoneId);
-    entry.setState(getState());
-    entry.setAuthor(getAuthor());
-    entry.setOriginalPermalink(getOriginalPermalink());
-    entry.setCommentsEnabled(commentsEnabled);
-    entry.setTrackBacksEnabled(trackBacksEnabled);
+    copyTo(entry);
+    entry.permalink = permalink;
+    entry.excerpt = excerpt;
+    entry.commentsEnabled = commentsEnabled;
+    entry.trackBacksEnabled = trackBacksEnabled;
+    entry.timeZoneId = timeZoneId;
+    entry.categories = new HashSet(categories);
 
     if (attachment != null) {
       entry.setAttachment((Attachment)attachment.clone());
     }
 
-    // copy the categories
-    Iterator it = categories.iterator();
-    while (it.hasNext()) {
-      entry.addCategory((Category)it.next());
-    }
-
-    entry.setTags(getTags());
-
-    // also copy the comments
-    it = getComments().iterator();
-    while (it.hasNext()) {
-      Comment comment = (Comment)it.next();
-      Comment clonedComment = (Comment)comment.clone();
-      entry.addComment(clonedComment);
-    }
+    synchronized (this) {
+      if (snapshot) {
+        // copy them from this entry if and when they're needed, so that they
+        // are only ever loaded once, by this entry
+        entry.deferResponses(null, getNumberOfComments(), getNumberOfTrackBacks(), getLastModified());
+        entry.responseSource = this;
+      } else if (!responsesLoaded) {
+        // this entry can change, so the copy loads them from wherever this
+        // entry would have, which is either the DAO or a snapshot
+        entry.deferResponses(responseDAO, numberOfComments, numberOfTrackBacks, lastModified);
+        entry.responseSource = responseSource;
+      } else {
+        for (Comment comment : getComments()) {
+          entry.addComment((Comment)comment.clone());
+        }
 
-    // and TrackBacks
-    it = getTrackBacks().iterator();
-    while (it.hasNext()) {
-      TrackBack trackBack = (TrackBack)it.next();
-      TrackBack clonedTrackBack = (TrackBack)trackBack.clone();
-      clonedTrackBack.setBlogEntry(entry);
-      entry.addTrackBack(clonedTrackBack);
+        for (TrackBack trackBack : getTrackBacks()) {
+          TrackBack clonedTrackBack = (TrackBack)trackBack.clone();
+          clonedTrackBack.setBlogEntry(entry);
+          entry.addTrackBack(clonedTrackBack);
+        }
+        entry.storedResponses = storedResponses;
+      }
     }
 
     return entry;
@@ -857,17 +1012,21 @@ public class BlogEntry extends PageBasedContent {
   void setEventsEnabled(boolean b) {
     super.setEventsEnabled(b);
 
-    // and cascade
-    for (Response response : getResponses()) {
-      response.setEventsEnabled(b);
+    // and cascade, to any responses that have been loaded
+    if (responsesLoaded) {
+      for (Response response : getResponses()) {
+        response.setEventsEnabled(b);
+      }
     }
   }
 
   public void clearEvents() {
     super.clearEvents();
 
-    for (Response response : getResponses()) {
-      response.clearEvents();
+    if (responsesLoaded) {
+      for (Response response : getResponses()) {
+        response.clearEvents();
+      }
     }
   }
 
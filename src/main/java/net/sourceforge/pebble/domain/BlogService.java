@@ -38,13 +38,29 @@ import net.sourceforge.pebble.dao.BlogEntryDAO;
 import net.sourceforge.pebble.dao.DAOFactory;
 import net.sourceforge.pebble.dao.PersistenceException;
 import net.sourceforge.pebble.ContentCache;
+import net.sourceforge.pebble.PebbleContext;
+import net.sourceforge.pebble.index.ResponseIndex;
+import net.sourceforge.pebble.index.ResponseSummary;
+import net.sourceforge.pebble.util.TaskScheduler;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Service that encompasses all functionality related to getting, putting
@@ -56,6 +72,11 @@ public class BlogService {
 
   private static final Log log = LogFactory.getLog(BlogService.class);
 
+  /** the moderation operations that can be applied to responses in bulk */
+  private static final int APPROVE = 0;
+  private static final int REJECT = 1;
+  private static final int REMOVE = 2;
+
   /**
    * Gets the blog entry with the specified id.
    *
@@ -86,14 +107,24 @@ public class BlogService {
     }
 
     if (blogEntry != null) {
-      blogEntry = (BlogEntry)blogEntry.clone();
-      blogEntry.setEventsEnabled(true);
-      blogEntry.setPersistent(true);
+      blogEntry = copyOf(blogEntry);
     }
 
     return blogEntry;
   }
 
+  /**
+   * Cached blog entries are snapshots that are never handed out, so this
+   * makes a copy that can be.
+   */
+  private BlogEntry copyOf(BlogEntry snapshot) {
+    BlogEntry blogEntry = snapshot.copyOfSnapshot();
+    blogEntry.setEventsEnabled(true);
+    blogEntry.setPersistent(true);
+
+    return blogEntry;
+  }
+
   public List<BlogEntry> getBlogEntries(Blog blog, int year, int month, int day) throws BlogServiceException {
     Day d = blog.getBlogForDay(year, month, day);
     List<String> blogEntryIds = d.getBlogEntries();
@@ -127,12 +158,113 @@ public class BlogService {
     return blogEntries;
   }
 
-  private List<BlogEntry> getBlogEntries(Blog blog, List<String> blogEntryIds) throws BlogServiceException {
-    List<BlogEntry> blogEntries = new ArrayList<BlogEntry>();
+  /**
+   * Gets the blog entries with the specified ids. The cache is asked for
+   * all of them at once, and those that aren't cached are loaded in
+   * parallel.
+   *
+   * @param blog            the Blog that the blog entries belong to
+   * @param blogEntryIds    the ids of the blog entries
+   * @return  a List of BlogEntry instances, in the same order as the ids,
+   *          without those that couldn't be found
+   */
+  public List<BlogEntry> getBlogEntries(Blog blog, List<String> blogEntryIds) throws BlogServiceException {
+    Map<String,BlogEntry> cachedBlogEntries = ContentCache.getInstance().getBlogEntries(blog, blogEntryIds);
+
+    List<String> uncachedBlogEntryIds = new ArrayList<String>();
+    for (String blogEntryId : blogEntryIds) {
+      if (!cachedBlogEntries.containsKey(blogEntryId)) {
+        uncachedBlogEntryIds.add(blogEntryId);
+      }
+    }
+    Map<String,BlogEntry> loadedBlogEntries = loadBlogEntries(blog, uncachedBlogEntryIds);
 
+    List<BlogEntry> blogEntries = new ArrayList<BlogEntry>();
     for (String blogEntryId : blogEntryIds) {
-      BlogEntry blogEntry = getBlogEntry(blog, blogEntryId);
-      blogEntries.add(blogEntry);
+      BlogEntry blogEntry = cachedBlogEntries.get(blogEntryId);
+      if (blogEntry == null) {
+        blogEntry = loadedBlogEntries.get(blogEntryId);
+      }
+      if (blogEntry != null) {
+        blogEntries.add(copyOf(blogEntry));
+      }
+    }
+
+    return blogEntries;
+  }
+
+  /**
+   * Loads blog entries from disk and caches them. The work is shared
+   * between the calling thread and some of the scheduler's threads, and
+   * the calling thread only waits for loads that have already started, so
+   * this completes even when the scheduler is busy.
+   */
+  private Map<String,BlogEntry> loadBlogEntries(final Blog blog, List<String> blogEntryIds) throws BlogServiceException {
+    final Map<String,BlogEntry> blogEntries = new ConcurrentHashMap<String,BlogEntry>();
+    final Queue<String> queue = new ConcurrentLinkedQueue<String>(blogEntryIds);
+    final List<PersistenceException> failures = Collections.synchronizedList(new ArrayList<PersistenceException>());
+    final BlogEntryDAO dao = DAOFactory.getConfiguredFactory().getBlogEntryDAO();
+
+    final Runnable loader = new Runnable() {
+      public void run() {
+        String blogEntryId = queue.poll();
+        while (blogEntryId != null) {
+          log.debug("Loading blog entry " + blogEntryId + " from disk");
+          try {
+            BlogEntry blogEntry = dao.loadBlogEntry(blog, blogEntryId);
+            if (blogEntry != null) {
+              ContentCache.getInstance().putBlogEntry(blogEntry);
+              blogEntries.put(blogEntryId, blogEntry);
+            }
+          } catch (PersistenceException pe) {
+            failures.add(pe);
+          }
+          blogEntryId = queue.poll();
+        }
+      }
+    };
+
+    // a running task can still be cancelled, so each one is claimed by
+    // whichever of it and the calling thread gets to it first
+    List<Future<?>> futures = new ArrayList<Future<?>>();
+    List<AtomicBoolean> claims = new ArrayList<AtomicBoolean>();
+    int numberOfLoaders = Math.min(blogEntryIds.size(), TaskScheduler.DEFAULT_THREADS);
+    try {
+      for (int i = 1; i < numberOfLoaders; i++) {
+        final AtomicBoolean claimed = new AtomicBoolean();
+        futures.add(PebbleContext.getInstance().getScheduler().execute("blog-entry-loader", new Runnable() {
+          public void run() {
+            if (claimed.compareAndSet(false, true)) {
+              loader.run();
+            }
+          }
+        }));
+        claims.add(claimed);
+      }
+    } catch (RejectedExecutionException ree) {
+      // the scheduler is shutting down, so the calling thread does all of the work
+    }
+
+    loader.run();
+    for (int i = 0; i < futures.size(); i++) {
+      Future<?> future = futures.get(i);
+      if (claims.get(i).compareAndSet(false, true)) {
+        // it hasn't started, and now it never will
+        future.cancel(false);
+      } else {
+        try {
+          future.get();
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw new BlogServiceException(blog, ie);
+        } catch (ExecutionException ee) {
+          log.error("Exception encountered", ee);
+        }
+      }
+    }
+
+    if (!failures.isEmpty()) {
+      throw new BlogServiceException(blog, failures.get(0));
     }
 
     return blogEntries;
@@ -241,4 +373,202 @@ public class BlogService {
     }
   }
 
+  /**
+   * Gets summaries of the specified responses from the response index,
+   * which is enough to show them in a list. Blog entries are only loaded
+   * for responses that don't have a summary yet.
+   *
+   * @param blog          the Blog that the responses belong to
+   * @param responseIds   the ids of the responses (of the form type/blogEntryId/responseId)
+   * @return  a List of ResponseSummary instances, in the same order as the ids
+   */
+  public List<ResponseSummary> getResponseSummaries(Blog blog, Collection<String> responseIds) {
+    ResponseIndex responseIndex = blog.getResponseIndex();
+    List<ResponseSummary> summaries = new ArrayList<ResponseSummary>();
+    for (String responseId : responseIds) {
+      ResponseSummary summary = responseIndex.getSummary(responseId);
+      if (summary == null) {
+        try {
+          Response response = getResponse(blog, responseId);
+          if (response != null) {
+            summary = responseIndex.summarize(response);
+          }
+        } catch (BlogServiceException e) {
+          log.error("Exception encountered", e);
+        }
+      }
+
+      if (summary != null) {
+        summaries.add(summary);
+      }
+    }
+
+    return summaries;
+  }
+
+  /**
+   * Approves a number of responses.
+   *
+   * @param blog          the Blog that the responses belong to
+   * @param responseIds   the ids of the responses (of the form type/blogEntryId/responseId)
+   * @return  a List of the responses that were approved
+   * @see #moderateResponses(Blog, Collection, int)
+   */
+  public List<Response> approveResponses(Blog blog, Collection<String> responseIds) throws BlogServiceException {
+    return moderateResponses(blog, responseIds, APPROVE);
+  }
+
+  /**
+   * Rejects a number of responses.
+   *
+   * @param blog          the Blog that the responses belong to
+   * @param responseIds   the ids of the responses (of the form type/blogEntryId/responseId)
+   * @return  a List of the responses that were rejected
+   * @see #moderateResponses(Blog, Collection, int)
+   */
+  public List<Response> rejectResponses(Blog blog, Collection<String> responseIds) throws BlogServiceException {
+    return moderateResponses(blog, responseIds, REJECT);
+  }
+
+  /**
+   * Removes a number of responses.
+   *
+   * @param blog          the Blog that the responses belong to
+   * @param responseIds   the ids of the responses (of the form type/blogEntryId/responseId)
+   * @return  a List of the responses that were removed
+   * @see #moderateResponses(Blog, Collection, int)
+   */
+  public List<Response> removeResponses(Blog blog, Collection<String> responseIds) throws BlogServiceException {
+    return moderateResponses(blog, responseIds, REMOVE);
+  }
+
+  /**
+   * Applies a moderation operation to a number of responses. The responses
+   * are grouped by blog entry so that each blog entry is loaded, stored and
+   * has its events fired once, however many of its responses are selected
+   * (and however many times each one is).
+   * The response index is written once, after all blog entries have been
+   * stored.
+   */
+  private List<Response> moderateResponses(Blog blog, Collection<String> responseIds, int operation) throws BlogServiceException {
+    Map<String,Set<String>> responseIdsByBlogEntry = new LinkedHashMap<String,Set<String>>();
+    for (String responseId : responseIds) {
+      int start = responseId.indexOf("/");
+      int end = responseId.lastIndexOf("/");
+      if (start < 0 || end <= start) {
+        log.warn("Ignoring malformed response id " + responseId);
+        continue;
+      }
+
+      String blogEntryId = responseId.substring(start+1, end);
+      Set<String> ids = responseIdsByBlogEntry.get(blogEntryId);
+      if (ids == null) {
+        ids = new LinkedHashSet<String>();
+        responseIdsByBlogEntry.put(blogEntryId, ids);
+      }
+      ids.add(responseId);
+    }
+
+    List<Response> responses = new ArrayList<Response>();
+    blog.getResponseIndex().beginUpdate();
+    try {
+      for (String blogEntryId : responseIdsByBlogEntry.keySet()) {
+        BlogEntry blogEntry = getBlogEntry(blog, blogEntryId);
+        if (blogEntry == null) {
+          continue;
+        }
+
+        List<Response> moderated = new ArrayList<Response>();
+        for (String responseId : responseIdsByBlogEntry.get(blogEntryId)) {
+          Response response;
+          try {
+            response = blogEntry.getResponse(responseId);
+          } catch (NumberFormatException nfe) {
+            log.warn(nfe);
+            continue;
+          }
+
+          if (response == null) {
+            continue;
+          }
+
+          if (operation == APPROVE) {
+            response.setApproved();
+          } else if (operation == REJECT) {
+            response.setRejected();
+          } else {
+            blogEntry.removeResponse(response);
+          }
+          moderated.add(response);
+        }
+
+        if (!moderated.isEmpty()) {
+          try {
+            putBlogEntry(blogEntry);
+            responses.addAll(moderated);
+          } catch (BlogServiceException be) {
+            log.error("Error updating state for responses", be);
+          }
+        }
+      }
+    } finally {
+      blog.getResponseIndex().endUpdate();
+    }
+
+    return responses;
+  }
+
+  /**
+   * Publishes a number of blog entries, as-is (i.e. with the dates/times
+   * they already have).
+   *
+   * @param blog            the Blog that the blog entries belong to
+   * @param blogEntryIds    the ids of the blog entries
+   * @return  a List of the blog entries that were published
+   */
+  public List<BlogEntry> publishBlogEntries(Blog blog, Collection<String> blogEntryIds) throws BlogServiceException {
+    List<BlogEntry> blogEntries = new ArrayList<BlogEntry>();
+    blog.getResponseIndex().beginUpdate();
+    try {
+      for (String blogEntryId : blogEntryIds) {
+        BlogEntry blogEntry = getBlogEntry(blog, blogEntryId);
+        if (blogEntry != null) {
+          blogEntry.setPublished(true);
+          putBlogEntry(blogEntry);
+          blogEntries.add(blogEntry);
+        }
+      }
+    } finally {
+      blog.getResponseIndex().endUpdate();
+    }
+
+    return blogEntries;
+  }
+
+  /**
+   * Removes a number of blog entries, along with their responses. The
+   * response index is written once, after all blog entries have been removed.
+   *
+   * @param blog            the Blog that the blog entries belong to
+   * @param blogEntryIds    the ids of the blog entries
+   * @return  a List of the blog entries that were removed
+   */
+  public List<BlogEntry> removeBlogEntries(Blog blog, Collection<String> blogEntryIds) throws BlogServiceException {
+    List<BlogEntry> blogEntries = new ArrayList<BlogEntry>();
+    blog.getResponseIndex().beginUpdate();
+    try {
+      for (String blogEntryId : blogEntryIds) {
+        BlogEntry blogEntry = getBlogEntry(blog, blogEntryId);
+        if (blogEntry != null) {
+          removeBlogEntry(blogEntry);
+          blogEntries.add(blogEntry);
+        }
+      }
+    } finally {
+      blog.getResponseIndex().endUpdate();
+    }
+
+    return blogEntries;
+  }
+
 }
\ No newline at end of file
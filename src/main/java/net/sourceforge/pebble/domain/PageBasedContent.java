@@ -123,6 +123,31 @@ public abstract class PageBasedContent extends Content {
     setDate(new Date());
   }
 
+  /**
+   * Copies the state of this content into the given copy, directly rather
+   * than through the setters, so that no property change events are raised
+   * and nothing is parsed again. The parsed list of tags is shared, since it
+   * is only ever replaced and never modified.
+   *
+   * @param copy    the PageBasedContent to copy into
+   */
+  protected void copyTo(PageBasedContent copy) {
+    copy.id = id;
+    copy.title = title;
+    copy.subtitle = subtitle;
+    copy.body = body;
+    copy.date = date;
+    copy.author = author;
+    copy.user = user;
+    copy.originalPermalink = originalPermalink;
+    copy.tags = tags;
+    copy.tagsAsList = tagsAsList;
+    copy.tagsAsCommaSeparated = tagsAsCommaSeparated;
+    copy.persistent = persistent;
+    copy.lockedBy = lockedBy;
+    copy.setState(getState());
+  }
+
   /**
    * Gets the unique id of this blog entry.
    *
@@ -31,19 +31,30 @@
  */
 package net.sourceforge.pebble.domain;
 
+import net.sourceforge.pebble.PebbleContext;
 import net.sourceforge.pebble.util.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Represents the user's editable theme.
+ * <br />
+ * The theme is kept in two places - the backup copy under the blog.dir
+ * and the live copy under the webapp, from where it is served. Moving the
+ * theme between the two only touches files whose size, modification time or
+ * content differ. When restoring into an empty live directory, files are
+ * hard linked rather than copied where the filing system allows it, so the
+ * container serves the very same files that are stored in the blog.dir.
  *
  * @author Simon Brown
  */
@@ -74,6 +85,11 @@ public class Theme {
    */
   private String pathToLiveThemes;
 
+  /**
+   * the outstanding background restore, if any
+   */
+  private Future<?> restoration;
+
   /**
    * Creates a new Theme instance with the specified details.
    *
@@ -109,22 +125,48 @@ public class Theme {
   }
 
   /**
-   * Restores the theme from the blog.dir to the webapp.
+   * Restores the theme from the blog.dir to the webapp. If there is no live
+   * theme yet, this happens straight away so that the blog is never served
+   * without one. Otherwise the live theme is only brought up to date, and
+   * that is done in the background.
    */
-  public void restore(String themeName) {
-    File blogTheme = new File(getBackupThemeDirectory());
+  public synchronized void restore(String themeName) {
+    awaitRestoration();
+
+    final File blogTheme = new File(getBackupThemeDirectory());
     if (!blogTheme.exists() || blogTheme.listFiles().length == 0) {
       copy(themeName);
     }
 
-    log.debug("Restoring " + name + " theme from " + getBackupThemeDirectory());
-    copy(blogTheme, getPathToLiveTheme());
+    final File liveTheme = getPathToLiveTheme();
+    if (liveTheme.exists()) {
+      log.debug("Synchronizing " + name + " theme from " + getBackupThemeDirectory());
+
+      // wrapped in a FutureTask so that a failure is reported to awaitRestoration()
+      FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+        public void run() {
+          synchronize(blogTheme, liveTheme, false, true);
+        }
+      }, null);
+      restoration = task;
+      try {
+        PebbleContext.getInstance().getScheduler().execute(blog.getId() + "/theme-restore", task);
+      } catch (RejectedExecutionException ree) {
+        // the scheduler has been shut down
+        task.run();
+      }
+    } else {
+      log.debug("Restoring " + name + " theme from " + getBackupThemeDirectory());
+      synchronize(blogTheme, liveTheme, false, true);
+    }
   }
 
   /**
    * Restores the theme from the blog.dir to the webapp.
    */
-  public void restoreToSpecifiedTheme(String themeName) {
+  public synchronized void restoreToSpecifiedTheme(String themeName) {
+    awaitRestoration();
+
     File blogTheme = new File(getBackupThemeDirectory());
     FileUtils.deleteFile(blogTheme);
     FileUtils.deleteFile(getPathToLiveTheme());
@@ -134,107 +176,185 @@ public class Theme {
   /**
    * Backs up the theme from the webapp to the blog.dir.
    */
-  public void backup() {
-    backup(name);
+  public synchronized void backup() {
+    // a live theme that wasn't fully restored must never replace the backup
+    if (!awaitRestoration()) {
+      log.error("Not backing up " + name + " theme because it could not be restored");
+      return;
+    }
+
+    File liveTheme = getPathToLiveTheme();
+    if (!liveTheme.exists()) {
+      log.warn("Not backing up " + name + " theme because " + liveTheme + " does not exist");
+      return;
+    }
+
+    log.debug("Backing up " + name + " theme to " + getBackupThemeDirectory());
+    synchronize(liveTheme, new File(getBackupThemeDirectory()), true, false);
   }
 
   /**
-   * Backs up the named theme from the webapp to the blog.dir.
+   * Copies the named theme from the webapp to blog.dir/theme.
    *
    * @param themeName the name of the theme to backup
    */
-  private void backup(String themeName) {
-    log.debug("Backing up " + themeName + " theme to " + getBackupThemeDirectory());
+  private void copy(String themeName) {
+    log.info("Copying " + themeName + " theme to " + getBackupThemeDirectory());
     File liveTheme = new File(pathToLiveThemes, themeName);
     File blogTheme = new File(getBackupThemeDirectory());
-    File blogThemeBackup = getUniqueBackupBackupDirectory();
 
-    if (blogTheme.exists()) {
-      blogTheme.renameTo(blogThemeBackup);
-    }
-    copy(liveTheme, blogTheme);
-    FileUtils.deleteFile(blogThemeBackup);
+    // never link here, otherwise editing this theme would edit the shared one
+    synchronize(liveTheme, blogTheme, true, false);
   }
 
   /**
-   * Copies the named theme from the webapp to blog.dir/theme.
+   * Waits for any outstanding background restore to finish.
    *
-   * @param themeName the name of the theme to backup
+   * @return  true if there was nothing to wait for or the restore succeeded,
+   *          false if it failed
    */
-  private void copy(String themeName) {
-    log.info("Copying " + themeName + " theme to " + getBackupThemeDirectory());
-    File liveTheme = new File(pathToLiveThemes, themeName);
-    File blogTheme = new File(getBackupThemeDirectory());
-    File blogThemeBackup = getUniqueBackupBackupDirectory();
+  private boolean awaitRestoration() {
+    if (restoration == null) {
+      return true;
+    }
 
-    if (blogTheme.exists()) {
-      blogTheme.renameTo(blogThemeBackup);
+    try {
+      restoration.get();
+      return true;
+    } catch (ExecutionException ee) {
+      log.error("Error restoring " + name + " theme", ee.getCause());
+      return false;
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      return false;
+    } finally {
+      restoration = null;
     }
-    copy(liveTheme, blogTheme);
-    FileUtils.deleteFile(blogThemeBackup);
   }
 
   /**
-   * Copies one file to another.
+   * Brings the destination directory up to date with the source directory,
+   * copying only those files that have changed.
    *
    * @param source      the source
    * @param destination the destination
+   * @param prune       true if files that are not in the source should be
+   *                    removed from the destination
+   * @param link        true if new files may be hard linked rather than copied
    */
-  private void copy(File source, File destination) {
+  private void synchronize(File source, File destination, boolean prune, boolean link) {
     if (!destination.exists()) {
-      destination.mkdir();
+      destination.mkdirs();
     }
 
     File files[] = source.listFiles();
-    if (files != null) {
-      for (int i = 0; i < files.length; i++) {
-        if (files[i].isDirectory()) {
-          copy(files[i], new File(destination, files[i].getName()));
+    if (files == null) {
+      return;
+    }
+
+    try {
+      for (File file : files) {
+        File target = new File(destination, file.getName());
+        if (file.isDirectory()) {
+          if (target.isFile()) {
+            Files.delete(target.toPath());
+          }
+          synchronize(file, target, prune, link);
         } else {
-          FileInputStream is = null;
-          FileOutputStream os = null;
-          try {
-            is = new FileInputStream(files[i]);
-            FileChannel srcChannel = is.getChannel();
-            long size = srcChannel.size();
-            os = new FileOutputStream(new File(destination, files[i].getName()));
-            FileChannel dstChannel = os.getChannel();
-            dstChannel.transferFrom(srcChannel, 0, size);
-          } catch (IOException ioe) {
-            // We MUST throw an exception here, otherwise very bad things will happen.  For example, if some error
-            // prevented us from copying a theme file from the blog directory to the live directory, if we don't
-            // complain now, Pebble will happily start up, and that file will end up blank.  Then, when pebble shuts
-            // down, backup will be called, and the blank file will be copied over the file in the blog directory, and
-            // so that file will be lost.  It's simple to reproduce this, just shutdown pebble while its coming up,
-            // Tomcat will interrupt the thread that is bringing it up and consequently all NIO the operations above will
-            // throw exceptions.  Pebble never checks if the threads been interrupted, so if you ignore the exceptions,
-            // pebble keeps on coming up, each time writing a blank file to the webapp directory.  Then Tomcat shuts
-            // down the context listener, and that causes backup to be called, the thread is now not interrupted, and
-            // so backup successfully writes all our blank files back to the blog directory, and all your themes are
-            // lost.  I speak from experience.  Thankfully I had backups.
-            throw new RuntimeException("Error copying files", ioe);
-          } finally {
-            IOUtils.closeQuietly(is);
-            IOUtils.closeQuietly(os);
+          if (target.isDirectory()) {
+            FileUtils.deleteFile(target);
+          }
+          if (!target.exists()) {
+            if (!link || !link(file, target)) {
+              copy(file, target);
+            }
+          } else if (!isUpToDate(file, target)) {
+            copy(file, target);
+          }
+        }
+      }
+
+      if (prune) {
+        File existing[] = destination.listFiles();
+        if (existing != null) {
+          for (File file : existing) {
+            if (!new File(source, file.getName()).exists()) {
+              FileUtils.deleteFile(file);
+            }
           }
         }
       }
+    } catch (IOException ioe) {
+      // We MUST throw an exception here, otherwise very bad things will happen.  For example, if some error
+      // prevented us from copying a theme file from the blog directory to the live directory, if we don't
+      // complain now, Pebble will happily start up, and that file will end up blank.  Then, when pebble shuts
+      // down, backup will be called, and the blank file will be copied over the file in the blog directory, and
+      // so that file will be lost.  It's simple to reproduce this, just shutdown pebble while its coming up,
+      // Tomcat will interrupt the thread that is bringing it up and consequently all NIO the operations above will
+      // throw exceptions.  Pebble never checks if the threads been interrupted, so if you ignore the exceptions,
+      // pebble keeps on coming up, each time writing a blank file to the webapp directory.  Then Tomcat shuts
+      // down the context listener, and that causes backup to be called, the thread is now not interrupted, and
+      // so backup successfully writes all our blank files back to the blog directory, and all your themes are
+      // lost.  I speak from experience.  Thankfully I had backups.
+      throw new RuntimeException("Error copying files", ioe);
     }
   }
 
   /**
-   * If there is still a backup directory lying around, it means that something went wrong in a previous shutdown.  We
-   * don't want to use it in case a user is starting/restarting pebble multiple times and hasn't realised they've
-   * corrupted their theme yet.
+   * Determines whether the destination file already has the same content as
+   * the source. Only files with the same size but a different modification
+   * time have their content compared.
+   */
+  private boolean isUpToDate(File source, File destination) throws IOException {
+    if (source.length() != destination.length()) {
+      return false;
+    } else if (source.lastModified() == destination.lastModified()) {
+      return true;
+    } else if (org.apache.commons.io.FileUtils.contentEquals(source, destination)) {
+      // remember that they are the same, so the content isn't compared again
+      destination.setLastModified(source.lastModified());
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  /**
+   * Hard links the destination to the source file.
    *
-   * @return A unique directory name
+   * @return  true if the link was created, false if the filing system
+   *          doesn't support it (e.g. the files are on different devices)
    */
-  private File getUniqueBackupBackupDirectory() {
-    File dir = new File(getBackupThemeDirectory() + ".bak");
-    if (dir.exists()) {
-      dir = new File(getBackupThemeDirectory() + "-" + System.currentTimeMillis() + ".bak");
+  private boolean link(File source, File destination) {
+    try {
+      Files.createLink(destination.toPath(), source.toPath());
+      return true;
+    } catch (IOException ioe) {
+      return false;
+    } catch (UnsupportedOperationException uoe) {
+      return false;
+    }
+  }
+
+  /**
+   * Copies one file to another, keeping its modification time. The copy is
+   * made alongside the destination and then moved over it, so that the
+   * destination is never left half written.
+   */
+  private void copy(File source, File destination) throws IOException {
+    File temporary = new File(destination.getParentFile(), "." + destination.getName() + ".tmp");
+    try {
+      Files.copy(source.toPath(), temporary.toPath(),
+          StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+      try {
+        Files.move(temporary.toPath(), destination.toPath(),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException amnse) {
+        Files.move(temporary.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temporary.toPath());
     }
-    return dir;
   }
 
   /**
@@ -246,4 +366,4 @@ public class Theme {
     return name;
   }
 
-}
\ No newline at end of file
+}
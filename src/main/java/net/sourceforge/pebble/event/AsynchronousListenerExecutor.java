@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.event;
+
+import net.sourceforge.pebble.PebbleContext;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs asynchronous listeners off the thread that fired the event.
+ * <br /><br />
+ * Each listener class gets its own small, fixed set of single-threaded
+ * lanes with bounded queues. Events are assigned to a lane by key (the
+ * blog entry), so a listener sees the events for a given blog entry in
+ * the order they were fired, while a slow listener can't hold up other
+ * listeners. Failed calls are retried, calls that run for too long are
+ * interrupted (by a watchdog on the shared TaskScheduler), and the time
+ * taken is recorded in ListenerStatistics.
+ * Lane threads are daemons and go away when idle.
+ *
+ * @author Simon Brown
+ */
+public class AsynchronousListenerExecutor {
+
+  private static final Log log = LogFactory.getLog(AsynchronousListenerExecutor.class);
+
+  /** the number of lanes (threads) per listener class */
+  private static final int LANES = 2;
+
+  /** the number of calls that can be waiting in each lane */
+  private static final int QUEUE_SIZE = 500;
+
+  /** the number of times a failing call is attempted */
+  private static final int MAX_ATTEMPTS = 3;
+
+  /** the delay before a failed call is retried, multiplied by the attempt number */
+  private static final long RETRY_DELAY = 2000;
+
+  /** how long a call can run for before it's interrupted */
+  private static final long TIMEOUT = 60000;
+
+  /** how long an idle lane thread is kept for */
+  private static final long KEEP_ALIVE = 60000;
+
+  private static final AsynchronousListenerExecutor instance = new AsynchronousListenerExecutor();
+
+  private final ConcurrentMap<Class<?>,ThreadPoolExecutor[]> lanes = new ConcurrentHashMap<Class<?>,ThreadPoolExecutor[]>();
+
+  private AsynchronousListenerExecutor() {
+  }
+
+  public static AsynchronousListenerExecutor getInstance() {
+    return instance;
+  }
+
+  /**
+   * Queues a call to a listener.
+   *
+   * @param listener    the listener being called
+   * @param key         calls with the same key are run in order
+   * @param call        the call to the listener
+   */
+  public void execute(final Object listener, String key, final Runnable call) {
+    final Class<?> listenerClass = listener.getClass();
+    ThreadPoolExecutor[] executors = getLanes(listenerClass);
+    int lane = (key == null ? 0 : (key.hashCode() & Integer.MAX_VALUE)) % executors.length;
+
+    try {
+      executors[lane].execute(new Runnable() {
+        public void run() {
+          call(listenerClass, call, MAX_ATTEMPTS);
+        }
+      });
+    } catch (RejectedExecutionException ree) {
+      // the lane is full (or we're shutting down), so fall back to calling
+      // the listener directly, without retries
+      log.warn("Queue for " + listenerClass.getName() + " is full, calling listener synchronously");
+      call(listenerClass, call, 1);
+    }
+  }
+
+  /**
+   * Waits for all queued calls to complete; intended for tests and shutdown.
+   *
+   * @param timeout   the maximum time to wait, in milliseconds
+   * @return  true if all calls completed, false otherwise
+   */
+  public boolean awaitIdle(long timeout) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeout;
+    for (ThreadPoolExecutor[] executors : lanes.values()) {
+      for (ThreadPoolExecutor executor : executors) {
+        while (executor.getActiveCount() > 0 || !executor.getQueue().isEmpty()) {
+          if (System.currentTimeMillis() > deadline) {
+            return false;
+          }
+          Thread.sleep(10);
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Stops all lanes, giving queued calls a short time to complete.
+   */
+  public synchronized void shutdown() {
+    for (ThreadPoolExecutor[] executors : lanes.values()) {
+      for (ThreadPoolExecutor executor : executors) {
+        executor.shutdown();
+      }
+    }
+    try {
+      for (ThreadPoolExecutor[] executors : lanes.values()) {
+        for (ThreadPoolExecutor executor : executors) {
+          if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+          }
+        }
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+    lanes.clear();
+  }
+
+  private void call(Class<?> listenerClass, Runnable call, int maxAttempts) {
+    ListenerStatistics stats = ListenerStatistics.getStatistics(listenerClass);
+    for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+      final Thread thread = Thread.currentThread();
+      final AtomicBoolean running = new AtomicBoolean(true);
+      final AtomicBoolean timedOut = new AtomicBoolean();
+      ScheduledFuture<?> timer = scheduleWatchdog(new Runnable() {
+        public void run() {
+          // only interrupt while the call is still running, otherwise the
+          // interrupt would leak into whatever the lane thread does next
+          synchronized (running) {
+            if (running.get()) {
+              timedOut.set(true);
+              thread.interrupt();
+            }
+          }
+        }
+      });
+
+      long start = System.nanoTime();
+      boolean failed = false;
+      try {
+        call.run();
+        return;
+      } catch (RuntimeException e) {
+        failed = true;
+        log.warn(listenerClass.getName() + " failed (attempt " + attempt + " of " + maxAttempts + ")", e);
+      } finally {
+        if (timer != null) {
+          timer.cancel(false);
+        }
+        synchronized (running) {
+          running.set(false);
+        }
+        stats.record(System.nanoTime() - start, failed);
+        if (timedOut.get()) {
+          stats.recordTimeout();
+          log.warn(listenerClass.getName() + " took longer than " + TIMEOUT + "ms and was interrupted");
+          // clear the interrupt raised by the watchdog
+          Thread.interrupted();
+        }
+      }
+
+      if (attempt < maxAttempts) {
+        try {
+          Thread.sleep(RETRY_DELAY * attempt);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  private ThreadPoolExecutor[] getLanes(final Class<?> listenerClass) {
+    ThreadPoolExecutor[] executors = lanes.get(listenerClass);
+    if (executors == null) {
+      executors = new ThreadPoolExecutor[LANES];
+      for (int i = 0; i < LANES; i++) {
+        final String name = "pebble-" + listenerClass.getSimpleName() + "-" + i;
+        executors[i] = new ThreadPoolExecutor(1, 1, KEEP_ALIVE, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(QUEUE_SIZE), new ThreadFactory() {
+              public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+              }
+            });
+        executors[i].allowCoreThreadTimeOut(true);
+      }
+
+      ThreadPoolExecutor[] existing = lanes.putIfAbsent(listenerClass, executors);
+      if (existing != null) {
+        for (ThreadPoolExecutor executor : executors) {
+          executor.shutdown();
+        }
+        executors = existing;
+      }
+    }
+
+    return executors;
+  }
+
+  /**
+   * Schedules the watchdog for a call on the shared scheduler.
+   *
+   * @return  the scheduled watchdog, or null if the scheduler has been shut
+   *          down, in which case the call runs without a timeout
+   */
+  private ScheduledFuture<?> scheduleWatchdog(Runnable watchdog) {
+    try {
+      return PebbleContext.getInstance().getScheduler().schedule("listener-watchdog", watchdog, TIMEOUT, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException ree) {
+      return null;
+    }
+  }
+
+}
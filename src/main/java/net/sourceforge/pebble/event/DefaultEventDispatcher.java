@@ -31,6 +31,7 @@
  */
 package net.sourceforge.pebble.event;
 
+import net.sourceforge.pebble.api.event.AsynchronousListener;
 import net.sourceforge.pebble.api.event.blog.BlogEvent;
 import net.sourceforge.pebble.api.event.blog.BlogListener;
 import net.sourceforge.pebble.api.event.blogentry.BlogEntryEvent;
@@ -40,12 +41,19 @@ import net.sourceforge.pebble.api.event.comment.CommentListener;
 import net.sourceforge.pebble.api.event.EventDispatcher;
 import net.sourceforge.pebble.api.event.trackback.TrackBackEvent;
 import net.sourceforge.pebble.api.event.trackback.TrackBackListener;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.Comment;
+import net.sourceforge.pebble.domain.TrackBack;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Responsible for dispatching events to registered listeners, which are
- * called in the order they were added.
+ * called in the order they were added. Listeners that implement
+ * AsynchronousListener are called afterwards, off the calling thread,
+ * via the AsynchronousListenerExecutor.
  *
  * @author Simon Brown
  */
@@ -60,11 +68,13 @@ public class DefaultEventDispatcher extends EventDispatcher {
     Iterator it = getEventListenerList().getBlogListeners().iterator();
     while (it.hasNext()) {
       BlogListener listener = (BlogListener)it.next();
+      long start = System.nanoTime();
       if (event.getType() == BlogEvent.BLOG_STARTED) {
         listener.blogStarted(event);
       } else if (event.getType() == BlogEvent.BLOG_STOPPED) {
         listener.blogStopped(event);
       }
+      ListenerStatistics.getStatistics(listener.getClass()).record(System.nanoTime() - start, false);
 
       // has the event been vetoed?
       if (event.isVetoed()) {
@@ -79,24 +89,42 @@ public class DefaultEventDispatcher extends EventDispatcher {
    * @param event   the BlogEntryEvent instance
    */
   public void fireBlogEntryEvent(BlogEntryEvent event) {
+    List<BlogEntryListener> asynchronousListeners = new ArrayList<BlogEntryListener>();
     Iterator it = getEventListenerList().getBlogEntryListeners().iterator();
     while (it.hasNext()) {
       BlogEntryListener listener = (BlogEntryListener)it.next();
-      if (event.getType() == BlogEntryEvent.BLOG_ENTRY_ADDED) {
-        listener.blogEntryAdded(event);
-      } else if (event.getType() == BlogEntryEvent.BLOG_ENTRY_REMOVED) {
-        listener.blogEntryRemoved(event);
-      } else if (event.getType() == BlogEntryEvent.BLOG_ENTRY_CHANGED) {
-        listener.blogEntryChanged(event);
-      } else if (event.getType() == BlogEntryEvent.BLOG_ENTRY_PUBLISHED) {
-        listener.blogEntryPublished(event);
-      } else if (event.getType() == BlogEntryEvent.BLOG_ENTRY_UNPUBLISHED) {
-        listener.blogEntryUnpublished(event);
+      if (listener instanceof AsynchronousListener) {
+        asynchronousListeners.add(listener);
+        continue;
       }
 
+      long start = System.nanoTime();
+      dispatch(listener, event);
+      ListenerStatistics.getStatistics(listener.getClass()).record(System.nanoTime() - start, false);
+
       // has the event been vetoed?
       if (event.isVetoed()) {
-        break;
+        return;
+      }
+    }
+
+    if (!asynchronousListeners.isEmpty()) {
+      // asynchronous listeners get their own copy of the blog entry, since
+      // the caller carries on using (and changing) the original
+      BlogEntry blogEntry = (BlogEntry)event.getBlogEntry().clone();
+      final BlogEntryEvent copy;
+      if (event.getType() == BlogEntryEvent.BLOG_ENTRY_CHANGED && event.getPropertyChangeEvents() != null) {
+        copy = new BlogEntryEvent(blogEntry, event.getPropertyChangeEvents());
+      } else {
+        copy = new BlogEntryEvent(blogEntry, event.getType());
+      }
+
+      for (final BlogEntryListener listener : asynchronousListeners) {
+        AsynchronousListenerExecutor.getInstance().execute(listener, getKey(blogEntry), new Runnable() {
+          public void run() {
+            dispatch(listener, copy);
+          }
+        });
       }
     }
   }
@@ -106,23 +134,35 @@ public class DefaultEventDispatcher extends EventDispatcher {
    *
    * @param event   the CommentEvent instance
    */
-  public void fireCommentEvent(CommentEvent event) {
+  public void fireCommentEvent(final CommentEvent event) {
+    List<CommentListener> asynchronousListeners = new ArrayList<CommentListener>();
     Iterator it = getEventListenerList().getCommentListeners().iterator();
     while (it.hasNext()) {
       CommentListener listener = (CommentListener)it.next();
-      if (event.getType() == CommentEvent.COMMENT_ADDED) {
-        listener.commentAdded(event);
-      } else if (event.getType() == CommentEvent.COMMENT_REMOVED) {
-        listener.commentRemoved(event);
-      } else if (event.getType() == CommentEvent.COMMENT_APPROVED) {
-        listener.commentApproved(event);
-      } else if (event.getType() == CommentEvent.COMMENT_REJECTED) {
-        listener.commentRejected(event);
+      if (listener instanceof AsynchronousListener) {
+        asynchronousListeners.add(listener);
+        continue;
       }
 
+      long start = System.nanoTime();
+      dispatch(listener, event);
+      ListenerStatistics.getStatistics(listener.getClass()).record(System.nanoTime() - start, false);
+
       // has the event been vetoed?
       if (event.isVetoed()) {
-        break;
+        return;
+      }
+    }
+
+    if (!asynchronousListeners.isEmpty()) {
+      // as with blog entry events, asynchronous listeners get their own copy
+      final CommentEvent copy = new CommentEvent(copyOf(event.getComment()), event.getType());
+      for (final CommentListener listener : asynchronousListeners) {
+        AsynchronousListenerExecutor.getInstance().execute(listener, getKey(copy.getComment().getBlogEntry()), new Runnable() {
+          public void run() {
+            dispatch(listener, copy);
+          }
+        });
       }
     }
   }
@@ -132,25 +172,119 @@ public class DefaultEventDispatcher extends EventDispatcher {
    *
    * @param event   the TrackBackEvent instance
    */
-  public void fireTrackBackEvent(TrackBackEvent event) {
+  public void fireTrackBackEvent(final TrackBackEvent event) {
+    List<TrackBackListener> asynchronousListeners = new ArrayList<TrackBackListener>();
     Iterator it = getEventListenerList().getTrackBackListeners().iterator();
     while (it.hasNext()) {
       TrackBackListener listener = (TrackBackListener)it.next();
-      if (event.getType() == TrackBackEvent.TRACKBACK_ADDED) {
-        listener.trackBackAdded(event);
-      } else if (event.getType() == TrackBackEvent.TRACKBACK_REMOVED) {
-        listener.trackBackRemoved(event);
-      } else if (event.getType() == TrackBackEvent.TRACKBACK_APPROVED) {
-        listener.trackBackApproved(event);
-      } else if (event.getType() == TrackBackEvent.TRACKBACK_REJECTED) {
-        listener.trackBackRejected(event);
+      if (listener instanceof AsynchronousListener) {
+        asynchronousListeners.add(listener);
+        continue;
       }
 
+      long start = System.nanoTime();
+      dispatch(listener, event);
+      ListenerStatistics.getStatistics(listener.getClass()).record(System.nanoTime() - start, false);
+
       // has the event been vetoed?
       if (event.isVetoed()) {
-        break;
+        return;
+      }
+    }
+
+    if (!asynchronousListeners.isEmpty()) {
+      // as with blog entry events, asynchronous listeners get their own copy
+      final TrackBackEvent copy = new TrackBackEvent(copyOf(event.getTrackBack()), event.getType());
+      for (final TrackBackListener listener : asynchronousListeners) {
+        AsynchronousListenerExecutor.getInstance().execute(listener, getKey(copy.getTrackBack().getBlogEntry()), new Runnable() {
+          public void run() {
+            dispatch(listener, copy);
+          }
+        });
       }
     }
   }
 
-}
\ No newline at end of file
+  private void dispatch(BlogEntryListener listener, BlogEntryEvent event) {
+    if (event.getType() == BlogEntryEvent.BLOG_ENTRY_ADDED) {
+      listener.blogEntryAdded(event);
+    } else if (event.getType() == BlogEntryEvent.BLOG_ENTRY_REMOVED) {
+      listener.blogEntryRemoved(event);
+    } else if (event.getType() == BlogEntryEvent.BLOG_ENTRY_CHANGED) {
+      listener.blogEntryChanged(event);
+    } else if (event.getType() == BlogEntryEvent.BLOG_ENTRY_PUBLISHED) {
+      listener.blogEntryPublished(event);
+    } else if (event.getType() == BlogEntryEvent.BLOG_ENTRY_UNPUBLISHED) {
+      listener.blogEntryUnpublished(event);
+    }
+  }
+
+  private void dispatch(CommentListener listener, CommentEvent event) {
+    if (event.getType() == CommentEvent.COMMENT_ADDED) {
+      listener.commentAdded(event);
+    } else if (event.getType() == CommentEvent.COMMENT_REMOVED) {
+      listener.commentRemoved(event);
+    } else if (event.getType() == CommentEvent.COMMENT_APPROVED) {
+      listener.commentApproved(event);
+    } else if (event.getType() == CommentEvent.COMMENT_REJECTED) {
+      listener.commentRejected(event);
+    }
+  }
+
+  private void dispatch(TrackBackListener listener, TrackBackEvent event) {
+    if (event.getType() == TrackBackEvent.TRACKBACK_ADDED) {
+      listener.trackBackAdded(event);
+    } else if (event.getType() == TrackBackEvent.TRACKBACK_REMOVED) {
+      listener.trackBackRemoved(event);
+    } else if (event.getType() == TrackBackEvent.TRACKBACK_APPROVED) {
+      listener.trackBackApproved(event);
+    } else if (event.getType() == TrackBackEvent.TRACKBACK_REJECTED) {
+      listener.trackBackRejected(event);
+    }
+  }
+
+  /**
+   * Copies a comment along with the blog entry it belongs to, so that the
+   * copy doesn't share any state with the original.
+   */
+  private Comment copyOf(Comment comment) {
+    if (comment.getBlogEntry() != null) {
+      BlogEntry blogEntry = (BlogEntry)comment.getBlogEntry().clone();
+      Comment copy = blogEntry.getComment(comment.getId());
+      if (copy != null) {
+        return copy;
+      }
+    }
+
+    // the comment isn't (or is no longer) part of the blog entry
+    return (Comment)comment.clone();
+  }
+
+  /**
+   * Copies a TrackBack along with the blog entry it belongs to, so that the
+   * copy doesn't share any state with the original.
+   */
+  private TrackBack copyOf(TrackBack trackBack) {
+    if (trackBack.getBlogEntry() != null) {
+      BlogEntry blogEntry = (BlogEntry)trackBack.getBlogEntry().clone();
+      TrackBack copy = blogEntry.getTrackBack(trackBack.getId());
+      if (copy != null) {
+        return copy;
+      }
+    }
+
+    // the TrackBack isn't (or is no longer) part of the blog entry
+    return (TrackBack)trackBack.clone();
+  }
+
+  /**
+   * Gets the key used to keep events for the same blog entry in order.
+   */
+  private String getKey(BlogEntry blogEntry) {
+    if (blogEntry == null) {
+      return null;
+    }
+    return blogEntry.getBlog().getId() + "/" + blogEntry.getId();
+  }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.event;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of how many times the listeners of a given class have been
+ * called, and how long they took.
+ *
+ * @author Simon Brown
+ */
+public class ListenerStatistics {
+
+  private static final ConcurrentMap<String,ListenerStatistics> statistics = new ConcurrentHashMap<String,ListenerStatistics>();
+
+  private final String listenerName;
+  private final AtomicLong invocations = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  private final AtomicLong timeouts = new AtomicLong();
+  private final AtomicLong totalTime = new AtomicLong();
+  private final AtomicLong maxTime = new AtomicLong();
+
+  private ListenerStatistics(String listenerName) {
+    this.listenerName = listenerName;
+  }
+
+  /**
+   * Gets the statistics for the given listener class.
+   *
+   * @param listenerClass   the class of listener
+   * @return  a ListenerStatistics instance
+   */
+  public static ListenerStatistics getStatistics(Class<?> listenerClass) {
+    String name = listenerClass.getName();
+    ListenerStatistics stats = statistics.get(name);
+    if (stats == null) {
+      statistics.putIfAbsent(name, new ListenerStatistics(name));
+      stats = statistics.get(name);
+    }
+
+    return stats;
+  }
+
+  /**
+   * Gets the statistics for all listener classes that have been called.
+   *
+   * @return  a Collection of ListenerStatistics instances
+   */
+  public static Collection<ListenerStatistics> getAllStatistics() {
+    return new ArrayList<ListenerStatistics>(statistics.values());
+  }
+
+  /**
+   * Records a call to a listener.
+   *
+   * @param nanos     how long the call took, in nanoseconds
+   * @param failed    whether the listener threw an exception
+   */
+  public void record(long nanos, boolean failed) {
+    invocations.incrementAndGet();
+    totalTime.addAndGet(nanos);
+    if (failed) {
+      failures.incrementAndGet();
+    }
+
+    long max = maxTime.get();
+    while (nanos > max && !maxTime.compareAndSet(max, nanos)) {
+      max = maxTime.get();
+    }
+  }
+
+  /**
+   * Records that a call to a listener took too long.
+   */
+  public void recordTimeout() {
+    timeouts.incrementAndGet();
+  }
+
+  public String getListenerName() {
+    return listenerName;
+  }
+
+  public long getInvocations() {
+    return invocations.get();
+  }
+
+  public long getFailures() {
+    return failures.get();
+  }
+
+  public long getTimeouts() {
+    return timeouts.get();
+  }
+
+  /**
+   * Gets the average time taken per call.
+   *
+   * @return  the time in milliseconds
+   */
+  public double getAverageTime() {
+    long count = invocations.get();
+    return count == 0 ? 0 : (totalTime.get() / (double)count) / 1000000;
+  }
+
+  /**
+   * Gets the longest time taken by a single call.
+   *
+   * @return  the time in milliseconds
+   */
+  public double getMaxTime() {
+    return maxTime.get() / 1000000.0;
+  }
+
+  public String toString() {
+    return listenerName + " : " + getInvocations() + " calls, avg " + getAverageTime() + "ms, max " + getMaxTime() + "ms, " + getFailures() + " failures, " + getTimeouts() + " timeouts";
+  }
+
+}
@@ -41,6 +41,8 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.xmlrpc.XmlRpcClient;
 
 import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Blog listener that polls a Pebble blog, using the Pebble XML-RPC API,
@@ -49,9 +51,8 @@ import java.util.*;
  *
  * @author Simon Brown
  */
-public abstract class PebbleAPIBlogEntryAggregator extends TimerTask implements BlogListener {
+public abstract class PebbleAPIBlogEntryAggregator implements Runnable, BlogListener {
 
-  private static final int ONE_HOUR = 1000 * 60 * 60;
   private static final Log log = LogFactory.getLog(PebbleAPIBlogEntryAggregator.class);
 
   public static final String XMLRPC_URL_KEY = ".xmlrpcUrl";
@@ -61,7 +62,7 @@ public abstract class PebbleAPIBlogEntryAggregator extends TimerTask implements
   public static final String BLOG_ENTRIES_KEY = ".blogEntries";
 
   private Blog blog;
-  private Timer timer = new Timer();
+  private ScheduledFuture<?> task;
 
   /**
    * Called when a blog has been started.
@@ -70,7 +71,7 @@ public abstract class PebbleAPIBlogEntryAggregator extends TimerTask implements
    */
   public void blogStarted(BlogEvent event) {
     this.blog = event.getBlog();
-    timer.schedule(this, 0, ONE_HOUR);
+    task = blog.scheduleTask(getClass().getSimpleName(), this, 1, TimeUnit.HOURS);
   }
 
   /**
@@ -79,11 +80,14 @@ public abstract class PebbleAPIBlogEntryAggregator extends TimerTask implements
    * @param event   a BlogEvent instance
    */
   public void blogStopped(BlogEvent event) {
-    timer.cancel();
+    if (task != null) {
+      task.cancel(false);
+      task = null;
+    }
   }
 
   /**
-   *
+   * Pulls across the most recent blog entries from the remote blog.
    */
   public void run() {
     try {
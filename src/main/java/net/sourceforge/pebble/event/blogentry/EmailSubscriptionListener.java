@@ -31,6 +31,7 @@
  */
 package net.sourceforge.pebble.event.blogentry;
 
+import net.sourceforge.pebble.api.event.AsynchronousListener;
 import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
 import net.sourceforge.pebble.api.event.blogentry.BlogEntryEvent;
 import net.sourceforge.pebble.domain.Blog;
@@ -39,7 +40,6 @@ import net.sourceforge.pebble.util.MailUtils;
 
 import javax.mail.Session;
 import java.text.SimpleDateFormat;
-import java.util.List;
 
 /**
  * Sends an e-mail notification to e-mail subscribers when new blog entries
@@ -47,7 +47,7 @@ import java.util.List;
  *
  * @author Simon Brown
  */
-public class EmailSubscriptionListener extends BlogEntryListenerSupport {
+public class EmailSubscriptionListener extends BlogEntryListenerSupport implements AsynchronousListener {
 
   /** a token to be replaced when sending e-mails */
   private static final String EMAIL_ADDRESS_TOKEN = "EMAIL_ADDRESS";
@@ -90,13 +90,11 @@ public class EmailSubscriptionListener extends BlogEntryListenerSupport {
     message += " | ";
     message += "<a href=\"" + blog.getUrl() + "unsubscribe.action?email=" + EMAIL_ADDRESS_TOKEN + "\">Opt-out</a>";
 
-    List<String> to = blog.getEmailSubscriptionList().getEmailAddresses();
-
     // now send personalized e-mails to the blog owner and everybody
     // that left a comment specifying their e-mail address
     try {
       Session session = MailUtils.createSession();
-      for (String emailAddress : to) {
+      for (String emailAddress : blog.getEmailSubscriptionList()) {
         // customize the opt-out link and send the message
         MailUtils.sendMail(session, blog, emailAddress, subject,
             message.replaceAll(EMAIL_ADDRESS_TOKEN, emailAddress));
@@ -109,4 +107,4 @@ public class EmailSubscriptionListener extends BlogEntryListenerSupport {
     }
   }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -32,6 +32,7 @@
 
 package net.sourceforge.pebble.event.blogentry;
 
+import net.sourceforge.pebble.api.event.AsynchronousListener;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -57,7 +58,7 @@ import twitter4j.Twitter;
  * 
  * @author Steve Carton, Olaf Kock
  */
-public class PostToTwitterBlogEntryListener extends BlogEntryListenerSupport {
+public class PostToTwitterBlogEntryListener extends BlogEntryListenerSupport implements AsynchronousListener {
 
 	/** the log used by this class */
 	private static final Log log = LogFactory
@@ -31,6 +31,7 @@
  */
 package net.sourceforge.pebble.event.blogentry;
 
+import net.sourceforge.pebble.api.event.AsynchronousListener;
 import net.sourceforge.pebble.api.event.blogentry.BlogEntryEvent;
 import net.sourceforge.pebble.audit.AuditTrail;
 import net.sourceforge.pebble.decorator.PubSubHubBubFeedDecorator;
@@ -54,7 +55,7 @@ import java.util.Collections;
  *
  * @author James Roper
  */
-public class PubSubHubBubBlogEntryListener extends BlogEntryListenerSupport {
+public class PubSubHubBubBlogEntryListener extends BlogEntryListenerSupport implements AsynchronousListener {
   private final static String HUB_MODE_PARAM = "hub.mode";
   private final static String HUB_URL_PARAM = "hub.url";
   private final static String HUB_MODE = "publish";
@@ -33,20 +33,36 @@ package net.sourceforge.pebble.event.blogentry;
 
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.api.event.blogentry.BlogEntryEvent;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.w3c.dom.Document;
+import org.w3c.tidy.Configuration;
 import org.w3c.tidy.Tidy;
 
 import java.beans.PropertyChangeEvent;
-import java.util.Iterator;
-import java.util.List;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * Runs W3C Tidy over the excerpt and body of blog entries so that
  * they are valid XHTML.
+ * <br /><br />
+ * Configuring a Tidy instance is relatively expensive, so configured
+ * instances are pooled and reused, each being used by one thread at a
+ * time. Content that this listener has already tidied (e.g. an
+ * excerpt that hasn't changed when the body has) is recognised by its
+ * hash and left alone.
  *
  * @author Simon Brown
  */
@@ -55,6 +71,26 @@ public class TidyListener extends BlogEntryListenerSupport {
   /** the log used by this class */
   private static final Log log = LogFactory.getLog(TidyListener.class);
 
+  private static final String HEADER =
+      "<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Transitional//EN\" \"http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd\">\n" +
+      "<html xmlns=\"http://www.w3.org/1999/xhtml\"><title></title><body>";
+  private static final String FOOTER = "</body></html>";
+
+  /** the maximum number of idle Tidy instances kept */
+  private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+  /** the number of hashes of tidied content that are remembered */
+  private static final int MAXIMUM_NUMBER_OF_HASHES = 1000;
+
+  private static final BlockingQueue<Tidier> pool = new ArrayBlockingQueue<Tidier>(POOL_SIZE);
+
+  /** hashes of content that has been produced by this listener */
+  private final Map<String,Boolean> tidiedContent = Collections.synchronizedMap(new LinkedHashMap<String,Boolean>(16, 0.75f, true) {
+    protected boolean removeEldestEntry(Map.Entry<String,Boolean> eldest) {
+      return size() > MAXIMUM_NUMBER_OF_HASHES;
+    }
+  });
+
   /**
    * Called when a blog entry has been added.
    *
@@ -78,6 +114,7 @@ public class TidyListener extends BlogEntryListenerSupport {
       if (property.equals(BlogEntry.EXCERPT_PROPERTY) ||
           property.equals(BlogEntry.BODY_PROPERTY)) {
         tidy(event.getBlogEntry());
+        return;
       }
     }
   }
@@ -87,29 +124,70 @@ public class TidyListener extends BlogEntryListenerSupport {
     blogEntry.setBody(tidy(blogEntry.getBody()));
   }
 
-  private String tidy(String s) {
-    if (s != null && s.length() > 0) {
-      s = "<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Transitional//EN\" \"http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd\">\n" +
-          "<html xmlns=\"http://www.w3.org/1999/xhtml\"><title></title><body>" + s + "</body></html>";
-      ByteArrayInputStream in = new ByteArrayInputStream(s.getBytes());
-      ByteArrayOutputStream out = new ByteArrayOutputStream();
-      Tidy tidy = new Tidy();
+  String tidy(String s) {
+    if (s == null || s.length() == 0) {
+      return "";
+    }
+
+    if (tidiedContent.containsKey(DigestUtils.shaHex(s))) {
+      return s;
+    }
+
+    Tidier tidier = pool.poll();
+    if (tidier == null) {
+      tidier = new Tidier();
+    }
+
+    // a Tidy instance that has thrown may be left in a bad state, so it's
+    // only returned to the pool if it completed normally
+    String tidied = tidier.tidy(s);
+    pool.offer(tidier);
+
+    tidiedContent.put(DigestUtils.shaHex(tidied), Boolean.TRUE);
+    return tidied;
+  }
+
+  /**
+   * A configured Tidy instance, along with the buffer that it writes to.
+   * Neither is thread-safe, so an instance must only be used by one
+   * thread at a time.
+   */
+  private static class Tidier {
+
+    private final Tidy tidy = new Tidy();
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(8 * 1024);
+
+    Tidier() {
       tidy.setXHTML(true);
       tidy.setDocType("\"-//W3C//DTD XHTML 1.0 Transitional//EN\"");
+      tidy.setCharEncoding(Configuration.UTF8);
       tidy.setQuiet(true);
       tidy.setShowWarnings(false);
+      tidy.setErrout(new PrintWriter(Writer.nullWriter()));
       tidy.setIndentContent(false);
       tidy.setSmartIndent(false);
       tidy.setIndentAttributes(false);
       tidy.setWraplen(0);
-      Document doc = tidy.parseDOM(in, null);
+    }
+
+    String tidy(String s) {
+      byte[] in = (HEADER + s + FOOTER).getBytes(StandardCharsets.UTF_8);
+      out.reset();
+
+      Document doc = tidy.parseDOM(new ByteArrayInputStream(in), null);
       tidy.pprint(doc, out);
+      String tidied = out.toString(StandardCharsets.UTF_8);
 
-      String tidied = new String(out.toByteArray());
-      return tidied.substring(tidied.indexOf("<body>")+"<body>".length(), tidied.indexOf("</body>")).trim();
-    } else {
-      return "";
+      int start = tidied.indexOf("<body>");
+      int end = tidied.lastIndexOf("</body>");
+      if (start == -1 || end < start) {
+        log.warn("Tidy didn't produce a body, leaving content as it is");
+        return s;
+      }
+
+      return tidied.substring(start + "<body>".length(), end).trim();
     }
+
   }
 
 }
@@ -31,6 +31,7 @@
  */
 package net.sourceforge.pebble.event.blogentry;
 
+import net.sourceforge.pebble.api.event.AsynchronousListener;
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.webservice.UpdateNotificationPingsClient;
@@ -41,7 +42,7 @@ import net.sourceforge.pebble.api.event.blogentry.BlogEntryEvent;
  *
  * @author Simon Brown
  */
-public class XmlRpcNotificationListener extends BlogEntryListenerSupport {
+public class XmlRpcNotificationListener extends BlogEntryListenerSupport implements AsynchronousListener {
 
   /** the name of the URL list property */
   public static final String URL_LIST_KEY = "XmlRpcNotificationListener.urlList";
@@ -44,6 +44,11 @@ import java.util.*;
 
 /**
  * Keeps an index of all blog entries, allowing efficient access at runtime.
+ * <br /><br />
+ * The lists of blog entry ids are never changed once they have been built;
+ * instead, a changed copy replaces them. This means that they can be handed
+ * out (and paged through) without being copied, since they won't change
+ * underneath whoever is using them.
  *
  * @author    Simon Brown
  */
@@ -51,28 +56,37 @@ public class BlogEntryIndex {
 
   private static final Log log = LogFactory.getLog(BlogEntryIndex.class);
 
+  private static final ReverseBlogEntryIdComparator BLOG_ENTRY_ID_COMPARATOR = new ReverseBlogEntryIdComparator();
+
   private Blog blog;
 
-  private List<String> indexEntries = new ArrayList<String>();
-  private List<String> publishedIndexEntries = new ArrayList<String>();
-  private List<String> unpublishedIndexEntries = new ArrayList<String>();
+  private volatile List<String> indexEntries = Collections.emptyList();
+  private volatile List<String> publishedIndexEntries = Collections.emptyList();
+  private volatile List<String> unpublishedIndexEntries = Collections.emptyList();
 
   public BlogEntryIndex(Blog blog) {
     this.blog = blog;
 
-    readIndex(true);
-    readIndex(false);
+    List<String> published = readIndex(true);
+    List<String> unpublished = readIndex(false);
+    List<String> all = new ArrayList<String>(published);
+    all.addAll(unpublished);
+
+    indexEntries = sort(all);
+    publishedIndexEntries = sort(published);
+    unpublishedIndexEntries = sort(unpublished);
   }
 
   /**
    * Clears the index.
    */
-  public void clear() {
-    indexEntries = new ArrayList<String>();
-    publishedIndexEntries = new ArrayList<String>();
-    unpublishedIndexEntries = new ArrayList<String>();
+  public synchronized void clear() {
+    indexEntries = Collections.emptyList();
+    publishedIndexEntries = Collections.emptyList();
+    unpublishedIndexEntries = Collections.emptyList();
     writeIndex(true);
     writeIndex(false);
+    blog.clearRenderedWidgets();
   }
 
   /**
@@ -81,24 +95,28 @@ public class BlogEntryIndex {
    * @param blogEntries   a List of BlogEntry instances
    */
   public synchronized void index(Collection<BlogEntry> blogEntries) {
+    List<String> all = new ArrayList<String>(indexEntries);
+    List<String> published = new ArrayList<String>(publishedIndexEntries);
+    List<String> unpublished = new ArrayList<String>(unpublishedIndexEntries);
     for (BlogEntry blogEntry : blogEntries) {
       Day day = blog.getBlogForDay(blogEntry.getDate());
       if (blogEntry.isPublished()) {
-        publishedIndexEntries.add(blogEntry.getId());
+        published.add(blogEntry.getId());
         day.addPublishedBlogEntry(blogEntry.getId());
       } else {
-        unpublishedIndexEntries.add(blogEntry.getId());
+        unpublished.add(blogEntry.getId());
         day.addUnpublishedBlogEntry(blogEntry.getId());
       }
-      indexEntries.add(blogEntry.getId());
+      all.add(blogEntry.getId());
     }
 
-    Collections.sort(indexEntries, new ReverseBlogEntryIdComparator());
-    Collections.sort(publishedIndexEntries, new ReverseBlogEntryIdComparator());
-    Collections.sort(unpublishedIndexEntries, new ReverseBlogEntryIdComparator());
+    indexEntries = sort(all);
+    publishedIndexEntries = sort(published);
+    unpublishedIndexEntries = sort(unpublished);
 
     writeIndex(true);
     writeIndex(false);
+    blog.clearRenderedWidgets();
   }
 
   /**
@@ -109,19 +127,17 @@ public class BlogEntryIndex {
   public synchronized void index(BlogEntry blogEntry) {
     Day day = blog.getBlogForDay(blogEntry.getDate());
     if (blogEntry.isPublished()) {
-      publishedIndexEntries.add(blogEntry.getId());
+      publishedIndexEntries = insert(publishedIndexEntries, blogEntry.getId());
       day.addPublishedBlogEntry(blogEntry.getId());
       writeIndex(true);
     } else {
-      unpublishedIndexEntries.add(blogEntry.getId());
+      unpublishedIndexEntries = insert(unpublishedIndexEntries, blogEntry.getId());
       day.addUnpublishedBlogEntry(blogEntry.getId());
       writeIndex(false);
     }
-    indexEntries.add(blogEntry.getId());
+    indexEntries = insert(indexEntries, blogEntry.getId());
 
-    Collections.sort(indexEntries, new ReverseBlogEntryIdComparator());
-    Collections.sort(publishedIndexEntries, new ReverseBlogEntryIdComparator());
-    Collections.sort(unpublishedIndexEntries, new ReverseBlogEntryIdComparator());
+    blog.clearRenderedWidgets();
   }
 
   /**
@@ -133,18 +149,57 @@ public class BlogEntryIndex {
     Day day = blog.getBlogForDay(blogEntry.getDate());
     day.removeBlogEntry(blogEntry);
 
-    indexEntries.remove(blogEntry.getId());
-    publishedIndexEntries.remove(blogEntry.getId());
-    unpublishedIndexEntries.remove(blogEntry.getId());
+    indexEntries = remove(indexEntries, blogEntry.getId());
+    publishedIndexEntries = remove(publishedIndexEntries, blogEntry.getId());
+    unpublishedIndexEntries = remove(unpublishedIndexEntries, blogEntry.getId());
 
     writeIndex(true);
     writeIndex(false);
+    blog.clearRenderedWidgets();
+  }
+
+  /**
+   * Returns a sorted, read-only copy of the given list.
+   */
+  private List<String> sort(List<String> blogEntryIds) {
+    List<String> sorted = new ArrayList<String>(blogEntryIds);
+    Collections.sort(sorted, BLOG_ENTRY_ID_COMPARATOR);
+    return Collections.unmodifiableList(sorted);
+  }
+
+  /**
+   * Returns a read-only copy of the given sorted list, with the given
+   * blog entry id inserted in order.
+   */
+  private List<String> insert(List<String> blogEntryIds, String blogEntryId) {
+    List<String> list = new ArrayList<String>(blogEntryIds.size() + 1);
+    list.addAll(blogEntryIds);
+    int index = Collections.binarySearch(list, blogEntryId, BLOG_ENTRY_ID_COMPARATOR);
+    list.add(index < 0 ? -index - 1 : index, blogEntryId);
+    return Collections.unmodifiableList(list);
+  }
+
+  /**
+   * Returns a read-only copy of the given list, without the given blog
+   * entry id. The list is returned as is if it doesn't contain the id.
+   */
+  private List<String> remove(List<String> blogEntryIds, String blogEntryId) {
+    if (!blogEntryIds.contains(blogEntryId)) {
+      return blogEntryIds;
+    }
+
+    List<String> list = new ArrayList<String>(blogEntryIds);
+    list.remove(blogEntryId);
+    return Collections.unmodifiableList(list);
   }
 
   /**
    * Helper method to load the index.
+   *
+   * @return  the blog entry ids in the index
    */
-  private void readIndex(boolean published) {
+  private List<String> readIndex(boolean published) {
+    List<String> blogEntryIds = new ArrayList<String>();
     File indexFile;
     if (published) {
       indexFile = new File(blog.getIndexesDirectory(), "blogentries-published.index");
@@ -157,17 +212,15 @@ public class BlogEntryIndex {
         BufferedReader reader = new BufferedReader(new FileReader(indexFile));
         String indexEntry = reader.readLine();
         while (indexEntry != null) {
-          indexEntries.add(indexEntry);
+          blogEntryIds.add(indexEntry);
 
           // and add it to the internal memory structures
           Date date = new Date(Long.parseLong(indexEntry));
           Day day = blog.getBlogForDay(date);
 
           if (published) {
-            publishedIndexEntries.add(indexEntry);
             day.addPublishedBlogEntry(indexEntry);
           } else {
-            unpublishedIndexEntries.add(indexEntry);
             day.addUnpublishedBlogEntry(indexEntry);
           }
 
@@ -180,9 +233,7 @@ public class BlogEntryIndex {
       }
     }
 
-    Collections.sort(indexEntries, new ReverseBlogEntryIdComparator());
-    Collections.sort(publishedIndexEntries, new ReverseBlogEntryIdComparator());
-    Collections.sort(unpublishedIndexEntries, new ReverseBlogEntryIdComparator());
+    return blogEntryIds;
   }
 
   /**
@@ -245,30 +296,35 @@ public class BlogEntryIndex {
   }
 
   /**
-   * Gets the full list of blog entries.
+   * Gets the full list of blog entries, most recent first. The list is
+   * read-only and doesn't reflect blog entries indexed or unindexed after
+   * it was returned, so a range of it can be taken with subList() without
+   * copying anything.
    *
    * @return  a List of blog entry IDs
    */
   public List<String> getBlogEntries() {
-    return new ArrayList<String>(indexEntries);
+    return indexEntries;
   }
 
   /**
-   * Gets the full list of published blog entries.
+   * Gets the full list of published blog entries, most recent first. Like
+   * getBlogEntries(), the list is a read-only snapshot.
    *
    * @return  a List of blog entry IDs
    */
   public List<String> getPublishedBlogEntries() {
-    return new ArrayList<String>(publishedIndexEntries);
+    return publishedIndexEntries;
   }
 
   /**
-   * Gets the full list of unpublished blog entries.
+   * Gets the full list of unpublished blog entries, most recent first. Like
+   * getBlogEntries(), the list is a read-only snapshot.
    *
    * @return  a List of blog entry IDs
    */
   public List<String> getUnpublishedBlogEntries() {
-    return new ArrayList<String>(unpublishedIndexEntries);
+    return unpublishedIndexEntries;
   }
 
 }
\ No newline at end of file
@@ -33,39 +33,91 @@ package net.sourceforge.pebble.index;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import net.sourceforge.pebble.PebbleContext;
 import net.sourceforge.pebble.domain.Blog;
-import net.sourceforge.pebble.domain.Tag;
-import net.sourceforge.pebble.domain.BlogEntry;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
 
 /**
- * Represents the tag index for a blog.
+ * Represents the list of e-mail addresses subscribed to a blog.
+ * <br /><br />
+ * The addresses are held in a hashed set, so that membership checks are
+ * cheap, and iterating over them doesn't require a copy. Rather than
+ * rewriting the index on every change, each change is appended to a log
+ * that is replayed on startup and periodically compacted into the index,
+ * on the shared scheduler. Subscriptions can also be made through a double opt-in,
+ * where the e-mail address is only added once a token (sent to that address)
+ * has been confirmed.
  *
  * @author    Simon Brown
  */
-public class EmailSubscriptionList {
+public class EmailSubscriptionList implements Iterable<String> {
 
   private static final Log log = LogFactory.getLog(EmailSubscriptionList.class);
 
+  /** the name of the index file, containing one e-mail address per line */
+  private static final String INDEX_FILE = "email-subscriptions.index";
+
+  /** the name of the file containing pending (unconfirmed) subscriptions */
+  private static final String PENDING_INDEX_FILE = "email-subscriptions-pending.index";
+
+  /** the name of the log file that changes are appended to */
+  private static final String LOG_FILE = "email-subscriptions.log";
+
+  /**
+   * the name of the log that is being compacted into the index, which is
+   * left behind (and replayed before the log) if the compaction is interrupted
+   */
+  private static final String COMPACTING_LOG_FILE = "email-subscriptions.log.compacting";
+
+  /** the minimum number of log entries before the log is compacted */
+  private static final int COMPACTION_THRESHOLD = 1000;
+
+  /** how long a pending subscription can wait to be confirmed (7 days) */
+  static final long PENDING_SUBSCRIPTION_EXPIRY = 7L * 24 * 60 * 60 * 1000;
+
+  private static final SecureRandom random = new SecureRandom();
+
   private Blog blog;
 
-  /** the list of e-mail addresses */
-  private List<String> emailAddresses = new LinkedList<String>();
+  /** the set of e-mail addresses */
+  private Set<String> emailAddresses = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+
+  /** pending subscriptions, keyed on token, in the order that they were requested */
+  private Map<String,PendingSubscription> pendingSubscriptions = new LinkedHashMap<String,PendingSubscription>();
+
+  /** the number of entries in the log since it was last compacted */
+  private int logEntries = 0;
+
+  /** whether a compaction has been scheduled, but hasn't run yet */
+  private boolean compactionScheduled = false;
 
   public EmailSubscriptionList(Blog blog) {
     this.blog = blog;
 
     readIndex();
+    readPendingIndex();
+    readLog(new File(blog.getIndexesDirectory(), COMPACTING_LOG_FILE));
+    logEntries = readLog(new File(blog.getIndexesDirectory(), LOG_FILE));
+    removeExpiredSubscriptions();
   }
 
   /**
    * Clears the index.
    */
-  public void clear() {
-    emailAddresses = new LinkedList<String>();
-    writeIndex();
+  public synchronized void clear() {
+    emailAddresses.clear();
+    pendingSubscriptions.clear();
+    writeIndex(new ArrayList<String>(), new ArrayList<PendingSubscription>());
+    new File(blog.getIndexesDirectory(), COMPACTING_LOG_FILE).delete();
+    new File(blog.getIndexesDirectory(), LOG_FILE).delete();
+    logEntries = 0;
   }
 
   /**
@@ -74,9 +126,8 @@ public class EmailSubscriptionList {
    * @param emailAddress    an e-mail address
    */
   public synchronized void addEmailAddress(String emailAddress) {
-    if (!emailAddresses.contains(emailAddress)) {
-      emailAddresses.add(emailAddress);
-      writeIndex();
+    if (isValid(emailAddress) && emailAddresses.add(emailAddress)) {
+      appendToLog("+" + emailAddress);
     }
   }
 
@@ -86,21 +137,222 @@ public class EmailSubscriptionList {
    * @param emailAddress    an e-mail address
    */
   public synchronized void removeEmailAddress(String emailAddress) {
-    emailAddresses.remove(emailAddress);
-    writeIndex();
+    if (emailAddress != null && emailAddresses.remove(emailAddress)) {
+      appendToLog("-" + emailAddress);
+    }
+  }
+
+  /**
+   * Determines whether the given e-mail address is subscribed.
+   *
+   * @param emailAddress    an e-mail address
+   * @return  true if subscribed, false otherwise
+   */
+  public boolean isSubscribed(String emailAddress) {
+    return emailAddress != null && emailAddresses.contains(emailAddress);
+  }
+
+  /**
+   * Requests a subscription for the given e-mail address, which won't be
+   * added until the returned token has been confirmed.
+   *
+   * @param emailAddress    an e-mail address
+   * @return  the token used to confirm the subscription, or null if the
+   *          e-mail address isn't valid
+   * @see #confirmSubscription(String)
+   */
+  public synchronized String requestSubscription(String emailAddress) {
+    if (!isValid(emailAddress)) {
+      return null;
+    }
+
+    byte[] bytes = new byte[16];
+    random.nextBytes(bytes);
+    StringBuilder token = new StringBuilder();
+    for (byte b : bytes) {
+      token.append(Character.forDigit((b >> 4) & 0xf, 16));
+      token.append(Character.forDigit(b & 0xf, 16));
+    }
+
+    removeExpiredSubscriptions();
+    PendingSubscription subscription = new PendingSubscription(token.toString(), System.currentTimeMillis(), emailAddress);
+    pendingSubscriptions.put(subscription.token, subscription);
+    appendToLog("?" + subscription);
+
+    return subscription.token;
+  }
+
+  /**
+   * Confirms a pending subscription, adding the e-mail address.
+   *
+   * @param token   the token returned when the subscription was requested
+   * @return  the e-mail address that has been subscribed, or null if the
+   *          token is unknown or has expired
+   */
+  public synchronized String confirmSubscription(String token) {
+    PendingSubscription subscription = pendingSubscriptions.remove(token);
+    if (subscription == null) {
+      return null;
+    }
+
+    appendToLog("!" + token);
+    if (subscription.isExpired()) {
+      return null;
+    }
+
+    addEmailAddress(subscription.emailAddress);
+    return subscription.emailAddress;
+  }
+
+  /**
+   * Gets the number of subscribed e-mail addresses.
+   *
+   * @return  an int
+   */
+  public int getNumberOfEmailAddresses() {
+    return emailAddresses.size();
+  }
+
+  /**
+   * Gets the list of e-mail addresses, sorted alphabetically.
+   */
+  public List<String> getEmailAddresses() {
+    List<String> list = new ArrayList<String>(emailAddresses);
+    Collections.sort(list);
+    return list;
+  }
+
+  /**
+   * Iterates over the e-mail addresses, in no particular order and without
+   * taking a copy; changes made during iteration may or may not be seen.
+   *
+   * @return  an Iterator over the e-mail addresses
+   */
+  public Iterator<String> iterator() {
+    return Collections.unmodifiableSet(emailAddresses).iterator();
+  }
+
+  /**
+   * Gets the number of subscriptions waiting to be confirmed.
+   *
+   * @return  an int
+   */
+  synchronized int getNumberOfPendingSubscriptions() {
+    return pendingSubscriptions.size();
+  }
+
+  /**
+   * Compacts the log, writing the current set of e-mail addresses and pending
+   * subscriptions out to the index. This holds the lock for the duration, so
+   * that a change (or a clear) can't slip in between taking the snapshot and
+   * replacing the index with it.
+   * <br /><br />
+   * The log is moved aside before the index is written, so that if the
+   * compaction is interrupted, the changes in it are still replayed (before
+   * any made since) on startup.
+   */
+  public synchronized void compact() {
+    compactionScheduled = false;
+    removeExpiredSubscriptions();
+
+    File compactingLogFile = new File(blog.getIndexesDirectory(), COMPACTING_LOG_FILE);
+    try {
+      moveLog(new File(blog.getIndexesDirectory(), LOG_FILE), compactingLogFile);
+    } catch (IOException e) {
+      log.error("Error while compacting index", e);
+      return;
+    }
+
+    if (writeIndex(new ArrayList<String>(emailAddresses), new ArrayList<PendingSubscription>(pendingSubscriptions.values()))) {
+      // everything in the logs is now in the index
+      compactingLogFile.delete();
+      logEntries = 0;
+    }
+  }
+
+  /**
+   * Moves the log aside to be compacted, adding it to the end of any log
+   * left behind by a compaction that didn't finish.
+   */
+  private void moveLog(File logFile, File compactingLogFile) throws IOException {
+    if (!logFile.exists()) {
+      return;
+    }
+
+    if (compactingLogFile.exists()) {
+      OutputStream out = new FileOutputStream(compactingLogFile, true);
+      try {
+        Files.copy(logFile.toPath(), out);
+      } finally {
+        out.close();
+      }
+      logFile.delete();
+    } else {
+      Files.move(logFile.toPath(), compactingLogFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+  }
+
+  /**
+   * Forgets the pending subscriptions that have expired which, as they're
+   * held in the order that they were requested, are the oldest ones.
+   */
+  private void removeExpiredSubscriptions() {
+    Iterator<PendingSubscription> it = pendingSubscriptions.values().iterator();
+    while (it.hasNext() && it.next().isExpired()) {
+      it.remove();
+    }
+  }
+
+  private boolean isValid(String emailAddress) {
+    return emailAddress != null && emailAddress.trim().length() > 0 &&
+        emailAddress.indexOf('\n') == -1 && emailAddress.indexOf('\r') == -1;
+  }
+
+  /**
+   * Appends a change to the log, scheduling a compaction once the log is
+   * big enough.
+   */
+  private void appendToLog(String entry) {
+    try {
+      File logFile = new File(blog.getIndexesDirectory(), LOG_FILE);
+      BufferedWriter writer = new BufferedWriter(new FileWriter(logFile, true));
+      writer.write(entry);
+      writer.newLine();
+      writer.flush();
+      writer.close();
+    } catch (Exception e) {
+      log.error("Error while writing index", e);
+    }
+
+    logEntries++;
+    if (!compactionScheduled && logEntries >= Math.max(COMPACTION_THRESHOLD, emailAddresses.size())) {
+      compactionScheduled = true;
+      try {
+        PebbleContext.getInstance().getScheduler().execute(blog.getId() + "/email-subscriptions", new Runnable() {
+          public void run() {
+            compact();
+          }
+        });
+      } catch (RejectedExecutionException ree) {
+        // the scheduler has been shut down, and the log is replayed on startup anyway
+        compactionScheduled = false;
+      }
+    }
   }
 
   /**
    * Helper method to load the index.
    */
   private void readIndex() {
-    File indexFile = new File(blog.getIndexesDirectory(), "email-subscriptions.index");
+    File indexFile = new File(blog.getIndexesDirectory(), INDEX_FILE);
     if (indexFile.exists()) {
       try {
         BufferedReader reader = new BufferedReader(new FileReader(indexFile));
         String emailAddress = reader.readLine();
         while (emailAddress != null) {
-          emailAddresses.add(emailAddress);
+          if (emailAddress.length() > 0) {
+            emailAddresses.add(emailAddress);
+          }
           emailAddress = reader.readLine();
         }
 
@@ -112,32 +364,139 @@ public class EmailSubscriptionList {
   }
 
   /**
-   * Helper method to write out the index to disk.
+   * Helper method to load the pending subscriptions.
    */
-  private void writeIndex() {
-    try {
-      File indexFile = new File(blog.getIndexesDirectory(), "email-subscriptions.index");
-      BufferedWriter writer = new BufferedWriter(new FileWriter(indexFile));
+  private void readPendingIndex() {
+    File indexFile = new File(blog.getIndexesDirectory(), PENDING_INDEX_FILE);
+    if (indexFile.exists()) {
+      try {
+        BufferedReader reader = new BufferedReader(new FileReader(indexFile));
+        String line = reader.readLine();
+        while (line != null) {
+          addPendingSubscription(line);
+          line = reader.readLine();
+        }
 
-      for (String emailAddress : emailAddresses) {
+        reader.close();
+      } catch (Exception e) {
+        log.error("Error while reading index", e);
+      }
+    }
+  }
+
+  /**
+   * Helper method to replay a log over the index.
+   *
+   * @return  the number of entries in the log
+   */
+  private int readLog(File logFile) {
+    int entries = 0;
+    if (logFile.exists()) {
+      try {
+        BufferedReader reader = new BufferedReader(new FileReader(logFile));
+        String entry = reader.readLine();
+        while (entry != null) {
+          if (entry.length() > 1) {
+            char type = entry.charAt(0);
+            String value = entry.substring(1);
+            if (type == '+') {
+              emailAddresses.add(value);
+            } else if (type == '-') {
+              emailAddresses.remove(value);
+            } else if (type == '?') {
+              addPendingSubscription(value);
+            } else if (type == '!') {
+              pendingSubscriptions.remove(value);
+            }
+            entries++;
+          }
+          entry = reader.readLine();
+        }
+
+        reader.close();
+      } catch (Exception e) {
+        log.error("Error while reading index", e);
+      }
+    }
+
+    return entries;
+  }
+
+  private void addPendingSubscription(String s) {
+    String[] tuple = s.split(" ", 3);
+    if (tuple.length == 3) {
+      try {
+        PendingSubscription subscription = new PendingSubscription(tuple[0], Long.parseLong(tuple[1]), tuple[2]);
+        pendingSubscriptions.put(subscription.token, subscription);
+      } catch (NumberFormatException nfe) {
+        log.warn("Ignoring pending subscription " + s);
+      }
+    }
+  }
+
+  /**
+   * Helper method to write out the index (and pending subscriptions) to disk,
+   * via temporary files so that a failure part way through doesn't lose the
+   * existing index.
+   *
+   * @return  true if the index was written successfully, false otherwise
+   */
+  private boolean writeIndex(List<String> addresses, List<PendingSubscription> pending) {
+    try {
+      File indexFile = new File(blog.getIndexesDirectory(), INDEX_FILE);
+      File tempFile = new File(blog.getIndexesDirectory(), INDEX_FILE + ".tmp");
+      BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile));
+      for (String emailAddress : addresses) {
         writer.write(emailAddress);
         writer.newLine();
       }
+      writer.flush();
+      writer.close();
 
+      File pendingIndexFile = new File(blog.getIndexesDirectory(), PENDING_INDEX_FILE);
+      File pendingTempFile = new File(blog.getIndexesDirectory(), PENDING_INDEX_FILE + ".tmp");
+      writer = new BufferedWriter(new FileWriter(pendingTempFile));
+      for (PendingSubscription subscription : pending) {
+        if (!subscription.isExpired()) {
+          writer.write(subscription.toString());
+          writer.newLine();
+        }
+      }
       writer.flush();
       writer.close();
+
+      Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      Files.move(pendingTempFile.toPath(), pendingIndexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      return true;
     } catch (Exception e) {
       log.error("Error while writing index", e);
+      return false;
     }
   }
 
   /**
-   * Gets the list of e-mail addresses.
+   * A subscription that is waiting to be confirmed.
    */
-  public List<String> getEmailAddresses() {
-    List list = new ArrayList<String>(emailAddresses);
-    Collections.sort(list);
-    return list;
+  private static class PendingSubscription {
+
+    private final String token;
+    private final long requested;
+    private final String emailAddress;
+
+    PendingSubscription(String token, long requested, String emailAddress) {
+      this.token = token;
+      this.requested = requested;
+      this.emailAddress = emailAddress;
+    }
+
+    boolean isExpired() {
+      return System.currentTimeMillis() - requested > PENDING_SUBSCRIPTION_EXPIRY;
+    }
+
+    public String toString() {
+      return token + " " + requested + " " + emailAddress;
+    }
+
   }
 
 }
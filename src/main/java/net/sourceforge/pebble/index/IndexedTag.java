@@ -46,7 +46,9 @@ import java.util.Collections;
  */
 public class IndexedTag extends Tag {
 
-  /** the blog entries associated with this tag */
+  private static final ReverseBlogEntryIdComparator BLOG_ENTRY_ID_COMPARATOR = new ReverseBlogEntryIdComparator();
+
+  /** the blog entries associated with this tag, most recent first */
   private List<String> blogEntries = new ArrayList<String>();
 
   /**
@@ -74,9 +76,11 @@ public class IndexedTag extends Tag {
    * @param blogEntryId   a blog entry ID
    */
   public synchronized void addBlogEntry(String blogEntryId) {
-    if (blogEntryId != null && !blogEntries.contains(blogEntryId)) {
-      blogEntries.add(blogEntryId);
-      Collections.sort(blogEntries, new ReverseBlogEntryIdComparator());
+    if (blogEntryId != null) {
+      int index = Collections.binarySearch(blogEntries, blogEntryId, BLOG_ENTRY_ID_COMPARATOR);
+      if (index < 0) {
+        blogEntries.add(-index - 1, blogEntryId);
+      }
     }
   }
 
@@ -87,7 +91,10 @@ public class IndexedTag extends Tag {
    */
   public synchronized void removeBlogEntry(String blogEntryId) {
     if (blogEntryId != null) {
-      blogEntries.remove(blogEntryId);
+      int index = Collections.binarySearch(blogEntries, blogEntryId, BLOG_ENTRY_ID_COMPARATOR);
+      if (index >= 0) {
+        blogEntries.remove(index);
+      }
     }
   }
 
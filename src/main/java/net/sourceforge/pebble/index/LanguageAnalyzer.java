@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.DelegatingAnalyzerWrapper;
+import org.apache.lucene.analysis.cjk.CJKAnalyzer;
+import org.apache.lucene.analysis.cz.CzechAnalyzer;
+import org.apache.lucene.analysis.da.DanishAnalyzer;
+import org.apache.lucene.analysis.de.GermanAnalyzer;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.analysis.es.SpanishAnalyzer;
+import org.apache.lucene.analysis.fi.FinnishAnalyzer;
+import org.apache.lucene.analysis.fr.FrenchAnalyzer;
+import org.apache.lucene.analysis.hi.HindiAnalyzer;
+import org.apache.lucene.analysis.hu.HungarianAnalyzer;
+import org.apache.lucene.analysis.it.ItalianAnalyzer;
+import org.apache.lucene.analysis.nl.DutchAnalyzer;
+import org.apache.lucene.analysis.no.NorwegianAnalyzer;
+import org.apache.lucene.analysis.pt.PortugueseAnalyzer;
+import org.apache.lucene.analysis.ru.RussianAnalyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.sv.SwedishAnalyzer;
+
+/**
+ * An analyzer that stems and removes the stop words of a given language,
+ * which is normally the language of the blog being indexed. Languages
+ * that Lucene doesn't have an analyzer for are analyzed with the
+ * StandardAnalyzer.
+ *
+ * @author    Simon Brown
+ */
+public class LanguageAnalyzer extends DelegatingAnalyzerWrapper {
+
+  private final String language;
+  private final Analyzer analyzer;
+
+  /**
+   * Creates an analyzer for English.
+   */
+  public LanguageAnalyzer() {
+    this("en");
+  }
+
+  /**
+   * Creates an analyzer for the given language.
+   *
+   * @param language    an ISO 639 language code (e.g. en)
+   */
+  public LanguageAnalyzer(String language) {
+    super(PER_FIELD_REUSE_STRATEGY);
+    this.language = language != null ? language.toLowerCase() : "";
+    this.analyzer = createAnalyzer(this.language);
+  }
+
+  private static Analyzer createAnalyzer(String language) {
+    if (language.equals("en")) {
+      return new EnglishAnalyzer();
+    } else if (language.equals("cs") || language.equals("sk")) {
+      return new CzechAnalyzer();
+    } else if (language.equals("da")) {
+      return new DanishAnalyzer();
+    } else if (language.equals("de")) {
+      return new GermanAnalyzer();
+    } else if (language.equals("es")) {
+      return new SpanishAnalyzer();
+    } else if (language.equals("fi")) {
+      return new FinnishAnalyzer();
+    } else if (language.equals("fr")) {
+      return new FrenchAnalyzer();
+    } else if (language.equals("hi")) {
+      return new HindiAnalyzer();
+    } else if (language.equals("hu")) {
+      return new HungarianAnalyzer();
+    } else if (language.equals("it")) {
+      return new ItalianAnalyzer();
+    } else if (language.equals("nl")) {
+      return new DutchAnalyzer();
+    } else if (language.equals("no") || language.equals("nb") || language.equals("nn")) {
+      return new NorwegianAnalyzer();
+    } else if (language.equals("pt")) {
+      return new PortugueseAnalyzer();
+    } else if (language.equals("ru")) {
+      return new RussianAnalyzer();
+    } else if (language.equals("sv")) {
+      return new SwedishAnalyzer();
+    } else if (language.equals("ja") || language.equals("ko") || language.equals("zh")) {
+      return new CJKAnalyzer();
+    } else {
+      return new StandardAnalyzer();
+    }
+  }
+
+  /**
+   * Gets the language that this analyzer is for.
+   *
+   * @return  an ISO 639 language code
+   */
+  public String getLanguage() {
+    return language;
+  }
+
+  @Override
+  protected Analyzer getWrappedAnalyzer(String fieldName) {
+    return analyzer;
+  }
+
+  @Override
+  public void close() {
+    analyzer.close();
+    super.close();
+  }
+
+  public String toString() {
+    return getClass().getSimpleName() + "(" + language + ")";
+  }
+
+}
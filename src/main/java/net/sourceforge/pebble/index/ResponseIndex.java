@@ -32,6 +32,7 @@
 
 package net.sourceforge.pebble.index;
 
+import net.sourceforge.pebble.PebbleContext;
 import net.sourceforge.pebble.comparator.ReverseResponseIdComparator;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.BlogEntry;
@@ -41,13 +42,24 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
- * Keeps an index of all responses.
+ * Keeps an index of all responses, along with a summary of each one so that
+ * lists of responses can be shown without loading their blog entries.
+ * Changes to the summaries are appended to the summary file, which is
+ * compacted when it is next read, or on the shared scheduler once it has
+ * grown to be much bigger than the summaries it holds.
  *
  * @author    Simon Brown
  */
@@ -55,24 +67,43 @@ public class ResponseIndex {
 
   private static final Log log = LogFactory.getLog(ResponseIndex.class);
 
+  /** the minimum number of lines in the summary file before it is compacted */
+  private static final int COMPACTION_THRESHOLD = 1000;
+
   private Blog blog;
 
   private List<String> approvedResponses = new ArrayList<String>();
   private List<String> pendingResponses = new ArrayList<String>();
   private List<String> rejectedResponses = new ArrayList<String>();
 
+  /**
+   * the bulk update that each thread has in progress, so that one thread's
+   * bulk update doesn't hold back the changes made by others
+   */
+  private final ThreadLocal<BulkUpdate> bulkUpdate = new ThreadLocal<BulkUpdate>();
+
+  /** response summaries, keyed on response id */
+  private Map<String, ResponseSummary> summaries = new HashMap<String, ResponseSummary>();
+
+  /** the number of lines in the summary file */
+  private int summaryLines = 0;
+
+  /** whether a compaction has been scheduled, but hasn't run yet */
+  private boolean compactionScheduled = false;
+
   public ResponseIndex(Blog blog) {
     this.blog = blog;
 
     approvedResponses = readIndex(State.APPROVED);
     pendingResponses = readIndex(State.PENDING);
     rejectedResponses = readIndex(State.REJECTED);
+    readSummaries();
   }
 
   /**
    * Clears the index.
    */
-  public void clear() {
+  public synchronized void clear() {
     approvedResponses = new ArrayList<String>();
     writeIndex(State.APPROVED);
 
@@ -81,6 +112,9 @@ public class ResponseIndex {
 
     rejectedResponses = new ArrayList<String>();
     writeIndex(State.REJECTED);
+
+    summaries = new HashMap<String, ResponseSummary>();
+    writeSummaries();
   }
 
   /**
@@ -98,6 +132,7 @@ public class ResponseIndex {
         } else if (response.isRejected()) {
           rejectedResponses.add(response.getGuid());
         }
+        summaries.put(response.getGuid(), new ResponseSummary(response));
       }
     }
 
@@ -107,6 +142,43 @@ public class ResponseIndex {
     writeIndex(State.APPROVED);
     writeIndex(State.PENDING);
     writeIndex(State.REJECTED);
+    writeSummaries();
+  }
+
+  /**
+   * Starts a bulk update, during which changes made to the index by the
+   * calling thread are kept in memory. Each call must be matched with a call
+   * to endUpdate() from the same thread.
+   */
+  public void beginUpdate() {
+    BulkUpdate update = bulkUpdate.get();
+    if (update == null) {
+      update = new BulkUpdate();
+      bulkUpdate.set(update);
+    }
+    update.depth++;
+  }
+
+  /**
+   * Ends a bulk update, writing each index changed by the calling thread
+   * to disk once its outermost bulk update has ended.
+   */
+  public void endUpdate() {
+    BulkUpdate update = bulkUpdate.get();
+    if (update == null) {
+      return;
+    }
+
+    update.depth--;
+    if (update.depth == 0) {
+      bulkUpdate.remove();
+      synchronized (this) {
+        for (State state : update.changedStates) {
+          Collections.sort(getResponses(state), new ReverseResponseIdComparator());
+          writeIndex(state);
+        }
+      }
+    }
   }
 
   /**
@@ -117,17 +189,15 @@ public class ResponseIndex {
   public synchronized void index(Response response) {
     if (response.isApproved()) {
       approvedResponses.add(response.getGuid());
-      Collections.sort(approvedResponses, new ReverseResponseIdComparator());
-      writeIndex(State.APPROVED);
+      changed(State.APPROVED);
     } else if (response.isPending()) {
       pendingResponses.add(response.getGuid());
-      Collections.sort(pendingResponses, new ReverseResponseIdComparator());
-      writeIndex(State.PENDING);
+      changed(State.PENDING);
     } else if (response.isRejected()) {
       rejectedResponses.add(response.getGuid());
-      Collections.sort(rejectedResponses, new ReverseResponseIdComparator());
-      writeIndex(State.REJECTED);
+      changed(State.REJECTED);
     }
+    summarize(response);
   }
 
   /**
@@ -136,15 +206,65 @@ public class ResponseIndex {
    * @param response    a Response instance
    */
   public synchronized void unindex(Response response) {
-    if (approvedResponses.contains(response.getGuid())) {
-      approvedResponses.remove(response.getGuid());
-      writeIndex(State.APPROVED);
-    } else if (pendingResponses.contains(response.getGuid())) {
-      pendingResponses.remove(response.getGuid());
-      writeIndex(State.PENDING);
-    } else if (rejectedResponses.contains(response.getGuid())) {
-      rejectedResponses.remove(response.getGuid());
-      writeIndex(State.REJECTED);
+    if (approvedResponses.remove(response.getGuid())) {
+      changed(State.APPROVED);
+    } else if (pendingResponses.remove(response.getGuid())) {
+      changed(State.PENDING);
+    } else if (rejectedResponses.remove(response.getGuid())) {
+      changed(State.REJECTED);
+    }
+    if (summaries.remove(response.getGuid()) != null) {
+      appendSummary("-" + response.getGuid());
+    }
+  }
+
+  /**
+   * Stores a summary of the given response, without indexing it. This is
+   * used to fill in summaries that are missing from older indexes.
+   *
+   * @param response    a Response instance
+   * @return  the ResponseSummary for the response
+   */
+  public synchronized ResponseSummary summarize(Response response) {
+    ResponseSummary summary = new ResponseSummary(response);
+    summaries.put(summary.getGuid(), summary);
+    appendSummary("+" + summary.format());
+
+    return summary;
+  }
+
+  /**
+   * Gets the summary of the specified response.
+   *
+   * @param responseId    the id of a response
+   * @return  a ResponseSummary instance, or null if there is no summary
+   */
+  public synchronized ResponseSummary getSummary(String responseId) {
+    return summaries.get(responseId);
+  }
+
+  /**
+   * Called when the index for the given state has changed; the index is
+   * sorted and written straight away, unless the calling thread has a bulk
+   * update in progress.
+   */
+  private void changed(State state) {
+    BulkUpdate update = bulkUpdate.get();
+    if (update != null) {
+      update.changedStates.add(state);
+    } else {
+      Collections.sort(getResponses(state), new ReverseResponseIdComparator());
+      writeIndex(state);
+    }
+  }
+
+  private List<String> getResponses(State state) {
+    if (state == State.APPROVED) {
+      return approvedResponses;
+    } else if (state == State.PENDING) {
+      return pendingResponses;
+    } else {
+      return rejectedResponses;
     }
   }
 
@@ -216,6 +336,112 @@ public class ResponseIndex {
     }
   }
 
+  /**
+   * Helper method to load the summaries, replaying the changes that were
+   * appended since the file was last written in full.
+   */
+  private void readSummaries() {
+    File summaryFile = new File(blog.getIndexesDirectory(), "responses-summary.index");
+    if (!summaryFile.exists()) {
+      return;
+    }
+
+    int lines = 0;
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(summaryFile), "UTF-8"));
+      try {
+        String line = reader.readLine();
+        while (line != null) {
+          if (line.startsWith("+")) {
+            ResponseSummary summary = ResponseSummary.parse(blog, line.substring(1));
+            if (summary != null) {
+              summaries.put(summary.getGuid(), summary);
+            }
+          } else if (line.startsWith("-")) {
+            summaries.remove(line.substring(1));
+          }
+          lines++;
+          line = reader.readLine();
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (Exception e) {
+      log.error("Error while reading index", e);
+    }
+
+    summaryLines = lines;
+    if (lines > summaries.size()) {
+      writeSummaries();
+    }
+  }
+
+  /**
+   * Compacts the summary file, writing out just the current summaries.
+   */
+  synchronized void compact() {
+    compactionScheduled = false;
+    writeSummaries();
+  }
+
+  /**
+   * Helper method to write out all of the summaries to disk, via a temporary
+   * file so that a failure part way through doesn't lose the existing ones.
+   */
+  private void writeSummaries() {
+    try {
+      File summaryFile = new File(blog.getIndexesDirectory(), "responses-summary.index");
+      File tempFile = new File(blog.getIndexesDirectory(), "responses-summary.index.tmp");
+      BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"));
+
+      for (ResponseSummary summary : summaries.values()) {
+        writer.write("+");
+        writer.write(summary.format());
+        writer.newLine();
+      }
+
+      writer.flush();
+      writer.close();
+
+      Files.move(tempFile.toPath(), summaryFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      summaryLines = summaries.size();
+    } catch (Exception e) {
+      log.error("Error while writing index", e);
+    }
+  }
+
+  /**
+   * Helper method to append a single change to the summaries on disk,
+   * scheduling a compaction once the file is big enough.
+   */
+  private void appendSummary(String line) {
+    try {
+      File summaryFile = new File(blog.getIndexesDirectory(), "responses-summary.index");
+      BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(summaryFile, true), "UTF-8"));
+      writer.write(line);
+      writer.newLine();
+      writer.flush();
+      writer.close();
+    } catch (Exception e) {
+      log.error("Error while writing index", e);
+    }
+
+    summaryLines++;
+    if (!compactionScheduled && summaryLines >= Math.max(COMPACTION_THRESHOLD, summaries.size() * 2)) {
+      compactionScheduled = true;
+      try {
+        PebbleContext.getInstance().getScheduler().execute(blog.getId() + "/response-summaries", new Runnable() {
+          public void run() {
+            compact();
+          }
+        });
+      } catch (RejectedExecutionException ree) {
+        // the scheduler has been shut down, and the file is compacted on startup anyway
+        compactionScheduled = false;
+      }
+    }
+  }
+
   /**
    * Gets the number of approved responses for this blog.
    *
@@ -301,4 +527,17 @@ public class ResponseIndex {
     return new ArrayList<String>(rejectedResponses);
   }
 
-}
\ No newline at end of file
+  /**
+   * A bulk update in progress on a single thread.
+   */
+  private static class BulkUpdate {
+
+    /** the number of nested calls to beginUpdate() */
+    private int depth;
+
+    /** the states whose index has changed */
+    private final Set<State> changedStates = new HashSet<State>();
+
+  }
+
+}
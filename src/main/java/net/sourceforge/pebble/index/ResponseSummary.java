@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.Comment;
+import net.sourceforge.pebble.domain.Response;
+import net.sourceforge.pebble.domain.State;
+
+import java.util.Date;
+
+/**
+ * A compact, read-only summary of a response (comment or TrackBack) that is
+ * kept by the response index, so that lists of responses can be shown
+ * without loading their blog entries.
+ *
+ * @author    Simon Brown
+ */
+public class ResponseSummary {
+
+  private static final char SEPARATOR = '\t';
+
+  private Blog blog;
+  private String guid;
+  private State state;
+  private String title;
+  private String sourceName;
+  private String sourceLink;
+  private String email;
+  private String ipAddress;
+  private String truncatedContent;
+
+  private ResponseSummary(Blog blog) {
+    this.blog = blog;
+  }
+
+  /**
+   * Creates a summary of the given response.
+   *
+   * @param response    a Response instance
+   */
+  ResponseSummary(Response response) {
+    this(response.getBlogEntry().getBlog());
+
+    this.guid = response.getGuid();
+    this.state = response.getState();
+    this.title = response.getTitle();
+    this.sourceName = response.getSourceName();
+    this.sourceLink = response.getSourceLink();
+    if (response instanceof Comment) {
+      this.email = ((Comment)response).getEmail();
+    }
+    this.ipAddress = response.getIpAddress();
+    this.truncatedContent = response.getTruncatedContent();
+  }
+
+  /**
+   * Gets the globally unique id of the response.
+   *
+   * @return  a String of the form type/blogEntryId/responseId
+   */
+  public String getGuid() {
+    return guid;
+  }
+
+  /**
+   * Gets the id of the response.
+   *
+   * @return    the id as a primitive long
+   */
+  public long getId() {
+    return Long.parseLong(guid.substring(guid.lastIndexOf('/') + 1));
+  }
+
+  /**
+   * Gets the id of the blog entry that the response belongs to.
+   *
+   * @return  a blog entry id
+   */
+  public String getBlogEntryId() {
+    return guid.substring(2, guid.lastIndexOf('/'));
+  }
+
+  /**
+   * Determines whether the response is a comment.
+   *
+   * @return  true if the response is a comment, false if it is a TrackBack
+   */
+  public boolean isComment() {
+    return guid.startsWith("c/");
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  public boolean isApproved() {
+    return State.APPROVED.equals(state);
+  }
+
+  public boolean isPending() {
+    return State.PENDING.equals(state);
+  }
+
+  public boolean isRejected() {
+    return State.REJECTED.equals(state);
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  public String getSourceName() {
+    return sourceName;
+  }
+
+  public String getSourceLink() {
+    return sourceLink;
+  }
+
+  public String getEmail() {
+    return email;
+  }
+
+  public boolean isHasEmail() {
+    return email != null && email.length() > 0;
+  }
+
+  public String getIpAddress() {
+    return ipAddress;
+  }
+
+  /**
+   * Gets the date that the response was left, which is also its id.
+   *
+   * @return  a Date instance
+   */
+  public Date getDate() {
+    return new Date(getId());
+  }
+
+  public String getTruncatedContent() {
+    return truncatedContent;
+  }
+
+  /**
+   * Gets a permalink for the response. Since the permalink of the blog
+   * entry depends on its current title and date, this links to the blog
+   * entry by id so that it doesn't go stale.
+   *
+   * @return  an absolute URL as a String
+   */
+  public String getPermalink() {
+    return blog.getUrl() + "viewBlogEntry.action?entry=" + getBlogEntryId() +
+        (isComment() ? "#comment" : "#trackback") + getId();
+  }
+
+  /**
+   * Formats this summary as a single line, for storing in the index.
+   *
+   * @return  a String
+   */
+  String format() {
+    StringBuilder buf = new StringBuilder();
+    buf.append(guid);
+    buf.append(SEPARATOR).append(state.getName());
+    buf.append(SEPARATOR).append(escape(title));
+    buf.append(SEPARATOR).append(escape(sourceName));
+    buf.append(SEPARATOR).append(escape(sourceLink));
+    buf.append(SEPARATOR).append(escape(email));
+    buf.append(SEPARATOR).append(escape(ipAddress));
+    buf.append(SEPARATOR).append(escape(truncatedContent));
+
+    return buf.toString();
+  }
+
+  /**
+   * Parses a summary previously created by format().
+   *
+   * @param blog    the owning Blog instance
+   * @param line    the formatted summary
+   * @return  a ResponseSummary instance, or null if the line is malformed
+   */
+  static ResponseSummary parse(Blog blog, String line) {
+    String fields[] = line.split(String.valueOf(SEPARATOR), -1);
+    if (fields.length != 8) {
+      return null;
+    }
+
+    ResponseSummary summary = new ResponseSummary(blog);
+    summary.guid = fields[0];
+    summary.state = State.getState(fields[1]);
+    summary.title = unescape(fields[2]);
+    summary.sourceName = unescape(fields[3]);
+    summary.sourceLink = unescape(fields[4]);
+    summary.email = unescape(fields[5]);
+    summary.ipAddress = unescape(fields[6]);
+    summary.truncatedContent = unescape(fields[7]);
+
+    return summary;
+  }
+
+  private static String escape(String s) {
+    if (s == null) {
+      return "";
+    }
+
+    StringBuilder buf = new StringBuilder(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '\\' : buf.append("\\\\"); break;
+        case '\t' : buf.append("\\t"); break;
+        case '\n' : buf.append("\\n"); break;
+        case '\r' : buf.append("\\r"); break;
+        default : buf.append(c);
+      }
+    }
+
+    return buf.toString();
+  }
+
+  private static String unescape(String s) {
+    if (s.length() == 0) {
+      return null;
+    }
+
+    StringBuilder buf = new StringBuilder(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '\\' && i + 1 < s.length()) {
+        char next = s.charAt(++i);
+        switch (next) {
+          case 't' : buf.append('\t'); break;
+          case 'n' : buf.append('\n'); break;
+          case 'r' : buf.append('\r'); break;
+          default : buf.append(next);
+        }
+      } else {
+        buf.append(c);
+      }
+    }
+
+    return buf.toString();
+  }
+
+}
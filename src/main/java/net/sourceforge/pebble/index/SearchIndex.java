@@ -35,39 +35,73 @@ import net.sourceforge.pebble.domain.*;
 import net.sourceforge.pebble.search.SearchException;
 import net.sourceforge.pebble.search.SearchHit;
 import net.sourceforge.pebble.search.SearchResults;
+import net.sourceforge.pebble.search.Suggestion;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.document.StringField;
-import org.apache.lucene.document.TextField;
-import org.apache.lucene.document.StoredField;
+import org.apache.lucene.facet.DrillDownQuery;
+import org.apache.lucene.facet.FacetResult;
+import org.apache.lucene.facet.Facets;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.LabelAndValue;
+import org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.StoredFields;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.MultiCollector;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.spell.DirectSpellChecker;
+import org.apache.lucene.search.spell.SuggestMode;
+import org.apache.lucene.search.spell.SuggestWord;
+import org.apache.lucene.search.suggest.InputIterator;
+import org.apache.lucene.search.suggest.Lookup;
+import org.apache.lucene.search.suggest.analyzing.AnalyzingInfixSuggester;
+import org.apache.lucene.search.uhighlight.DefaultPassageFormatter;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.QueryBuilder;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Date;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Collection;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Wraps up the functionality to index blog entries. This is really just
- * a convenient wrapper around Lucene.
+ * a convenient wrapper around Lucene. The fields in the index are declared
+ * by SearchIndexSchema.
  *
  * @author    Simon Brown
  */
@@ -76,8 +110,81 @@ public class SearchIndex {
   /** the log used by this class */
   private static final Log log = LogFactory.getLog(SearchIndex.class);
 
+  /** sorts hits by score, most relevant first */
+  public static final String SORT_BY_SCORE = "score";
+
+  /** sorts hits by date, newest first */
+  public static final String SORT_BY_DATE = "date";
+
+  /** the maximum number of hits that can be paged through by page number */
+  public static final int MAXIMUM_NUMBER_OF_HITS = 1000;
+
+  /** the facets that are counted for, and can be used to drill down into, the hits */
+  public static final String FACET_TAG = "tag";
+  public static final String FACET_CATEGORY = "category";
+  public static final String FACET_AUTHOR = "author";
+  public static final String FACET_YEAR = "year";
+
+  /** the maximum number of values returned for each facet */
+  public static final int MAXIMUM_NUMBER_OF_FACET_VALUES = 20;
+
+  private static final Sort BY_SCORE = new Sort(SortField.FIELD_SCORE, new SortField(SearchIndexSchema.DATE, SortField.Type.LONG, true));
+  private static final Sort BY_DATE = new Sort(new SortField(SearchIndexSchema.DATE, SortField.Type.LONG, true), SortField.FIELD_SCORE);
+
+  /** the number of highlighted fragments shown for the content of a hit */
+  private static final int NUMBER_OF_FRAGMENTS = 2;
+
+  /** the contexts of suggestions, which say whether they are titles or tags */
+  private static final BytesRef TITLE_CONTEXT = new BytesRef(Suggestion.TITLE);
+  private static final BytesRef TAG_CONTEXT = new BytesRef(Suggestion.TAG);
+  private static final BytesRef REMOVED_CONTEXT = new BytesRef("removed");
+  private static final Set<BytesRef> SUGGESTION_CONTEXTS = new HashSet<BytesRef>(Arrays.asList(TITLE_CONTEXT, TAG_CONTEXT));
+
+  /** the stored fields needed to work out which suggestions are still used */
+  private static final Set<String> SUGGESTION_FIELDS = new HashSet<String>(Arrays.asList(
+      SearchIndexSchema.TITLE, SearchIndexSchema.TAG, SearchIndexSchema.DATE, SearchIndexSchema.PERMALINK));
+  private static final int NUMBER_OF_SUGGESTION_CANDIDATES = 50;
+
+  /** a word in a query that can have its spelling corrected */
+  private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}]+");
+  private static final Pattern ENTITY = Pattern.compile("&(#[0-9]+|#[xX][0-9a-fA-F]+|[a-zA-Z][a-zA-Z0-9]*);");
+
   private final Blog blog;
 
+  /** shares a searcher between searches, until the index changes */
+  private SearcherManager searcherManager;
+  private Directory searcherDirectory;
+
+  /** whether the index has been changed since the searcher was refreshed */
+  private volatile boolean changed;
+
+  /**
+   * Looks up the titles and tags that are suggested as the reader types.
+   * It stays open for the life of the index, with changes being committed
+   * and made visible to lookups along with the index, and a failure to
+   * change it is logged rather than stopping the index from being changed.
+   */
+  private AnalyzingInfixSuggester suggester;
+
+  /**
+   * Held for reading while the suggester is looked up or changed, and for
+   * writing while it is opened, rebuilt or closed, so that it isn't closed
+   * underneath a lookup.
+   */
+  private final ReadWriteLock suggesterLock = new ReentrantReadWriteLock();
+
+  /** whether the suggestions have been changed since they were committed */
+  private volatile boolean suggestionsChanged;
+
+  /** the analyzers for the analyzer and language that they were created from */
+  private Analyzer analyzer;
+  private Analyzer textAnalyzer;
+  private String analyzerKey;
+
+  /** the facet ordinals for the reader that they were created from */
+  private IndexReader facetsReader;
+  private SortedSetDocValuesReaderState facetsState;
+
   public SearchIndex(Blog blog) {
     this.blog = blog;
   }
@@ -93,12 +200,10 @@ public class SearchIndex {
 
     synchronized (blog) {
       try {
-        Analyzer analyzer = getAnalyzer();
         Directory dir = FSDirectory.open(searchDirectory.toPath());
-        IndexWriterConfig config = new IndexWriterConfig(analyzer);
-        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
-        IndexWriter writer = new IndexWriter(dir, config);
-        writer.commit();
+        IndexWriter writer = openWriter(dir, IndexWriterConfig.OpenMode.CREATE);
+        clearSuggestions();
+        commit(writer);
         writer.close();
         dir.close();
       } catch (Exception e) {
@@ -113,18 +218,15 @@ public class SearchIndex {
   public void indexBlogEntries(Collection<BlogEntry> blogEntries) {
     synchronized (blog) {
       try {
-        Analyzer analyzer = getAnalyzer();
         File indexDir = new File(blog.getSearchIndexDirectory());
         Directory dir = FSDirectory.open(indexDir.toPath());
-        IndexWriterConfig config = new IndexWriterConfig(analyzer);
-        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
-        IndexWriter writer = new IndexWriter(dir, config);
+        IndexWriter writer = openWriter(dir, IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
 
         for (BlogEntry blogEntry : blogEntries) {
           index(blogEntry, writer);
         }
 
-        writer.commit();
+        commit(writer);
         writer.close();
         dir.close();
       } catch (Exception e) {
@@ -139,18 +241,15 @@ public class SearchIndex {
   public void indexStaticPages(Collection<StaticPage> staticPages) {
     synchronized (blog) {
       try {
-        Analyzer analyzer = getAnalyzer();
         File indexDir = new File(blog.getSearchIndexDirectory());
         Directory dir = FSDirectory.open(indexDir.toPath());
-        IndexWriterConfig config = new IndexWriterConfig(analyzer);
-        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
-        IndexWriter writer = new IndexWriter(dir, config);
+        IndexWriter writer = openWriter(dir, IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
 
         for (StaticPage staticPage : staticPages) {
           index(staticPage, writer);
         }
 
-        writer.commit();
+        commit(writer);
         writer.close();
         dir.close();
       } catch (Exception e) {
@@ -172,14 +271,11 @@ public class SearchIndex {
         // first delete the blog entry from the index (if it was there)
         unindex(blogEntry);
 
-        Analyzer analyzer = getAnalyzer();
         File indexDir = new File(blog.getSearchIndexDirectory());
         Directory dir = FSDirectory.open(indexDir.toPath());
-        IndexWriterConfig config = new IndexWriterConfig(analyzer);
-        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
-        IndexWriter writer = new IndexWriter(dir, config);
+        IndexWriter writer = openWriter(dir, IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
         index(blogEntry, writer);
-        writer.commit();
+        commit(writer);
         writer.close();
         dir.close();
       }
@@ -202,14 +298,11 @@ public class SearchIndex {
         // first delete the static page from the index (if it was there)
         unindex(staticPage);
 
-        Analyzer analyzer = getAnalyzer();
         File indexDir = new File(blog.getSearchIndexDirectory());
         Directory dir = FSDirectory.open(indexDir.toPath());
-        IndexWriterConfig config = new IndexWriterConfig(analyzer);
-        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
-        IndexWriter writer = new IndexWriter(dir, config);
+        IndexWriter writer = openWriter(dir, IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
         index(staticPage, writer);
-        writer.commit();
+        commit(writer);
         writer.close();
         dir.close();
       }
@@ -239,13 +332,60 @@ public class SearchIndex {
   }
 
   /**
-   * Gets the Analyzer implementation to use.
+   * Gets the Analyzer implementation to use, which analyzes the full text
+   * fields with the analyzer configured for the blog.
    *
    * @return  an Analyzer instance
    * @throws Exception
    */
-  private Analyzer getAnalyzer() throws Exception {
+  synchronized Analyzer getAnalyzer() throws Exception {
+    refreshAnalyzers();
+    return analyzer;
+  }
+
+  /**
+   * Gets the analyzer configured for the blog.
+   */
+  private synchronized Analyzer getTextAnalyzer() throws Exception {
+    refreshAnalyzers();
+    return textAnalyzer;
+  }
+
+  /**
+   * Creates the analyzers the first time that they are needed, and again
+   * whenever the analyzer or language configured for the blog changes,
+   * closing the ones that they replace.
+   */
+  private synchronized void refreshAnalyzers() throws Exception {
+    String key = blog.getLuceneAnalyzer() + "/" + blog.getLanguage();
+    if (key.equals(analyzerKey)) {
+      return;
+    }
+
+    Analyzer newTextAnalyzer = createTextAnalyzer();
+    Analyzer newAnalyzer = SearchIndexSchema.createAnalyzer(newTextAnalyzer);
+    closeAnalyzers();
+    textAnalyzer = newTextAnalyzer;
+    analyzer = newAnalyzer;
+    analyzerKey = key;
+  }
+
+  private synchronized void closeAnalyzers() {
+    if (analyzer != null) {
+      analyzer.close();
+      textAnalyzer.close();
+    }
+    analyzer = null;
+    textAnalyzer = null;
+    analyzerKey = null;
+  }
+
+  private Analyzer createTextAnalyzer() throws Exception {
     String analyzerClassName = blog.getLuceneAnalyzer();
+    if (LanguageAnalyzer.class.getName().equals(analyzerClassName)) {
+      return new LanguageAnalyzer(blog.getLanguage());
+    }
+
     try {
       // Try Lucene 9.x package first (e.g., org.apache.lucene.analysis.core.SimpleAnalyzer)
       if (analyzerClassName.contains(".analysis.") && !analyzerClassName.contains(".core.")) {
@@ -267,6 +407,38 @@ public class SearchIndex {
     }
   }
 
+  /**
+   * Describes the analyzer configured for the blog, so that a change to
+   * it can be detected.
+   */
+  private String getAnalyzerDescription() throws Exception {
+    Analyzer analyzer = getTextAnalyzer();
+    if (analyzer instanceof LanguageAnalyzer) {
+      return analyzer.toString();
+    } else {
+      return analyzer.getClass().getName();
+    }
+  }
+
+  private IndexWriter openWriter(Directory dir, IndexWriterConfig.OpenMode openMode) throws Exception {
+    IndexWriterConfig config = new IndexWriterConfig(getAnalyzer());
+    config.setOpenMode(openMode);
+
+    return new IndexWriter(dir, config);
+  }
+
+  /**
+   * Commits the changes made with a writer, recording the schema version
+   * and analyzer with them.
+   */
+  private void commit(IndexWriter writer) throws Exception {
+    writer.setLiveCommitData(SearchIndexSchema.createCommitData(getAnalyzerDescription()).entrySet());
+    writer.commit();
+    changed = true;
+
+    commitSuggestions();
+  }
+
   /**
    * Removes the index for a single blog entry to be removed.
    *
@@ -281,14 +453,12 @@ public class SearchIndex {
           return; // Nothing to delete if index doesn't exist
         }
         Directory dir = FSDirectory.open(indexDir.toPath());
-        Analyzer analyzer = getAnalyzer();
-        IndexWriterConfig config = new IndexWriterConfig(analyzer);
-        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
-        IndexWriter writer = new IndexWriter(dir, config);
-        Term term = new Term("id", blogEntry.getId());
+        removeSuggestions(blogEntry.getId());
+        IndexWriter writer = openWriter(dir, IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        Term term = new Term(SearchIndexSchema.ID, blogEntry.getId());
         long deleted = writer.deleteDocuments(term);
         log.debug("Deleted " + deleted + " document(s) from the index");
-        writer.commit();
+        commit(writer);
         writer.close();
         dir.close();
       }
@@ -311,14 +481,12 @@ public class SearchIndex {
           return; // Nothing to delete if index doesn't exist
         }
         Directory dir = FSDirectory.open(indexDir.toPath());
-        Analyzer analyzer = getAnalyzer();
-        IndexWriterConfig config = new IndexWriterConfig(analyzer);
-        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
-        IndexWriter writer = new IndexWriter(dir, config);
-        Term term = new Term("id", staticPage.getId());
+        removeSuggestions(staticPage.getId());
+        IndexWriter writer = openWriter(dir, IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        Term term = new Term(SearchIndexSchema.ID, staticPage.getId());
         long deleted = writer.deleteDocuments(term);
         log.debug("Deleted " + deleted + " document(s) from the index");
-        writer.commit();
+        commit(writer);
         writer.close();
         dir.close();
       }
@@ -340,85 +508,22 @@ public class SearchIndex {
 
     try {
       log.debug("Indexing " + blogEntry.getTitle());
-      Document document = new Document();
       if (blogEntry.getId() == null) {
         log.error("BlogEntry ID is null, cannot index");
         return;
       }
-      document.add(new StringField("id", blogEntry.getId(), Field.Store.YES));
-      if (blogEntry.getTitle() != null) {
-        document.add(new TextField("title", blogEntry.getTitle(), Field.Store.YES));
-      } else {
-        document.add(new TextField("title", "", Field.Store.YES));
-      }
-      if (blogEntry.getSubtitle() != null) {
-        document.add(new TextField("subtitle", blogEntry.getSubtitle(), Field.Store.YES));
-      } else {
-        document.add(new TextField("subtitle", "", Field.Store.YES));
-      }
-      if (blogEntry.getPermalink() != null) {
-        document.add(new StringField("permalink", blogEntry.getPermalink(), Field.Store.YES));
-      }
-      if (blogEntry.getDate() != null) {
-        document.add(new StoredField("date", blogEntry.getDate().getTime()));
-      }
-      if (blogEntry.getBody() != null) {
-        document.add(new TextField("body", blogEntry.getBody(), Field.Store.NO));
-      } else {
-        document.add(new TextField("body", "", Field.Store.NO));
-      }
-      if (blogEntry.getTruncatedContent() != null) {
-        document.add(new TextField("truncatedBody", blogEntry.getTruncatedContent(), Field.Store.YES));
-      } else {
-        document.add(new TextField("truncatedBody", "", Field.Store.YES));
-      }
-
-      if (blogEntry.getAuthor() != null) {
-        document.add(new TextField("author", blogEntry.getAuthor(), Field.Store.YES));
-      }
-
-      // build up one large string with all searchable content
-      // i.e. entry title, entry body and all response bodies
-      StringBuffer searchableContent = new StringBuffer();
-      searchableContent.append(blogEntry.getTitle());
-      searchableContent.append(" ");
-      searchableContent.append(blogEntry.getBody());
-
-      for (Category category : blogEntry.getCategories()) {
-        document.add(new TextField("category", category.getId(), Field.Store.YES));
-      }
 
+      writer.addDocument(SearchIndexSchema.createDocument(blogEntry));
+      addSuggestions(blogEntry);
       for (Tag tag : blogEntry.getAllTags()) {
-        document.add(new TextField("tag", tag.getName(), Field.Store.YES));
+        addSuggestion(tag.getName(), TAG_CONTEXT, blogEntry.getDate(), tag.getPermalink());
       }
-
-      searchableContent.append(" ");
-      Iterator it = blogEntry.getComments().iterator();
-      while (it.hasNext()) {
-        Comment comment = (Comment)it.next();
-        if (comment.isApproved()) {
-          searchableContent.append(comment.getBody());
-          searchableContent.append(" ");
-        }
-      }
-      it = blogEntry.getTrackBacks().iterator();
-      while (it.hasNext()) {
-        TrackBack trackBack = (TrackBack)it.next();
-        if (trackBack.isApproved()) {
-          searchableContent.append(trackBack.getExcerpt());
-          searchableContent.append(" ");
-        }
-      }
-
-      // join the title and body together to make searching on them both easier
-      document.add(new TextField("blogEntry", searchableContent.toString(), Field.Store.NO));
-
-      writer.addDocument(document);
     } catch (Exception e) {
       e.printStackTrace();
       log.error(e.getMessage(), e);
     }
   }
+
   /**
    * Helper method to index an individual blog entry.
    *
@@ -428,51 +533,382 @@ public class SearchIndex {
   private void index(StaticPage staticPage, IndexWriter writer) {
     try {
       log.debug("Indexing " + staticPage.getTitle());
-      Document document = new Document();
-      document.add(new StringField("id", staticPage.getId(), Field.Store.YES));
-      if (staticPage.getTitle() != null) {
-        document.add(new TextField("title", staticPage.getTitle(), Field.Store.YES));
-      } else {
-        document.add(new TextField("title", "", Field.Store.YES));
+      writer.addDocument(SearchIndexSchema.createDocument(staticPage));
+      addSuggestions(staticPage);
+    } catch (Exception e) {
+      log.error(e.getMessage(), e);
+    }
+  }
+
+  private void addSuggestions(PageBasedContent content) {
+    addSuggestion(content.getTitle(), TITLE_CONTEXT, content.getDate(), content.getPermalink());
+  }
+
+  /**
+   * Adds (or replaces) a suggestion, with more recent ones ranked higher.
+   */
+  private void addSuggestion(String text, BytesRef context, Date date, String permalink) {
+    if (text == null || text.trim().length() == 0) {
+      return;
+    }
+
+    try {
+      long weight = (date != null) ? date.getTime() : 0;
+      BytesRef payload = (permalink != null) ? new BytesRef(permalink) : null;
+      updateSuggestion(text, context, weight, payload);
+    } catch (IOException e) {
+      log.error(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Stops the title and tags that were indexed for a blog entry or static
+   * page being suggested, unless other blog entries or static pages still
+   * have them, in which case they are suggested for the most recent of
+   * those instead. The suggester can't delete suggestions, so one that is
+   * no longer needed is replaced by one that is never looked up.
+   */
+  private void removeSuggestions(String id) {
+    try {
+      SearcherManager searcherManager = getSearcherManager();
+      if (searcherManager == null) {
+        return;
       }
-      if (staticPage.getPermalink() != null) {
-        document.add(new StringField("permalink", staticPage.getPermalink(), Field.Store.YES));
+
+      IndexSearcher searcher = searcherManager.acquire();
+      try {
+        TopDocs topDocs = searcher.search(new TermQuery(new Term(SearchIndexSchema.ID, id)), 1);
+        if (topDocs.scoreDocs.length == 0) {
+          return;
+        }
+
+        Document doc = searcher.storedFields().document(topDocs.scoreDocs[0].doc, SUGGESTION_FIELDS);
+        String title = doc.get(SearchIndexSchema.TITLE);
+        if (title != null && title.trim().length() > 0) {
+          Query query = new QueryBuilder(getAnalyzer()).createPhraseQuery(SearchIndexSchema.TITLE, title);
+          Document other = findMostRecent(searcher, query != null ? query : new MatchAllDocsQuery(), id, SearchIndexSchema.TITLE, title);
+          if (other != null) {
+            addSuggestion(title, TITLE_CONTEXT, getDate(other), other.get(SearchIndexSchema.PERMALINK));
+          } else {
+            retireSuggestion(title);
+          }
+        }
+
+        for (String tag : doc.getValues(SearchIndexSchema.TAG)) {
+          Query query = new TermQuery(new Term(SearchIndexSchema.TAG, tag.toLowerCase()));
+          Document other = findMostRecent(searcher, query, id, SearchIndexSchema.TAG, tag);
+          if (other != null) {
+            addSuggestion(tag, TAG_CONTEXT, getDate(other), new Tag(tag, blog).getPermalink());
+          } else {
+            retireSuggestion(tag);
+          }
+        }
+      } finally {
+        searcherManager.release(searcher);
       }
-      if (staticPage.getDate() != null) {
-        document.add(new StoredField("date", staticPage.getDate().getTime()));
+    } catch (Exception e) {
+      log.error(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Finds the most recent document, other than the one with the given id,
+   * that matches a query and has exactly the given value for a field.
+   *
+   * @return  a Document instance, or null if there isn't one
+   */
+  private Document findMostRecent(IndexSearcher searcher, Query query, String id, String field, String value) throws IOException {
+    Query others = new BooleanQuery.Builder()
+        .add(query, BooleanClause.Occur.FILTER)
+        .add(new TermQuery(new Term(SearchIndexSchema.ID, id)), BooleanClause.Occur.MUST_NOT)
+        .build();
+
+    ScoreDoc after = null;
+    while (true) {
+      TopDocs topDocs = searcher.searchAfter(after, others, NUMBER_OF_SUGGESTION_CANDIDATES, BY_DATE);
+      if (topDocs.scoreDocs.length == 0) {
+        return null;
       }
-      if (staticPage.getBody() != null) {
-        document.add(new TextField("body", staticPage.getBody(), Field.Store.NO));
-      } else {
-        document.add(new TextField("body", "", Field.Store.NO));
+
+      for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+        Document doc = searcher.storedFields().document(scoreDoc.doc, SUGGESTION_FIELDS);
+        if (Arrays.asList(doc.getValues(field)).contains(value)) {
+          return doc;
+        }
+      }
+      after = topDocs.scoreDocs[topDocs.scoreDocs.length - 1];
+    }
+  }
+
+  private Date getDate(Document doc) {
+    IndexableField date = doc.getField(SearchIndexSchema.DATE);
+    return (date != null) ? new Date(date.numericValue().longValue()) : null;
+  }
+
+  private void retireSuggestion(String text) throws IOException {
+    updateSuggestion(text, REMOVED_CONTEXT, 0, null);
+  }
+
+  private void updateSuggestion(String text, BytesRef context, long weight, BytesRef payload) throws IOException {
+    lockSuggester();
+    try {
+      suggester.update(new BytesRef(text), Collections.singleton(context), weight, payload);
+      suggestionsChanged = true;
+    } finally {
+      suggesterLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Removes all suggestions, building the suggester from nothing.
+   */
+  private void clearSuggestions() {
+    suggesterLock.writeLock().lock();
+    try {
+      if (suggester == null) {
+        suggester = openSuggester();
       }
-      if (staticPage.getTruncatedContent() != null) {
-        document.add(new TextField("truncatedBody", staticPage.getTruncatedContent(), Field.Store.YES));
-      } else {
-        document.add(new TextField("truncatedBody", "", Field.Store.YES));
+
+      // building commits the (empty) suggestions and refreshes the lookups
+      suggester.build(InputIterator.EMPTY);
+      suggestionsChanged = false;
+    } catch (IOException e) {
+      log.error(e.getMessage(), e);
+    } finally {
+      suggesterLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Commits the changes made to the suggestions, and makes them visible
+   * to the next lookup, keeping the suggester open.
+   */
+  private void commitSuggestions() {
+    if (!suggestionsChanged) {
+      return;
+    }
+
+    suggesterLock.readLock().lock();
+    try {
+      if (suggester != null) {
+        suggestionsChanged = false;
+        suggester.commit();
+        suggester.refresh();
       }
+    } catch (Exception e) {
+      log.error(e.getMessage(), e);
+    } finally {
+      suggesterLock.readLock().unlock();
+    }
+  }
 
-      if (staticPage.getAuthor() != null) {
-        document.add(new TextField("author", staticPage.getAuthor(), Field.Store.YES));
+  private void closeSuggester() {
+    suggesterLock.writeLock().lock();
+    try {
+      if (suggester != null) {
+        suggester.close();
       }
+    } catch (IOException e) {
+      log.error(e.getMessage(), e);
+    } finally {
+      suggester = null;
+      suggestionsChanged = false;
+      suggesterLock.writeLock().unlock();
+    }
+  }
 
-      // build up one large string with all searchable content
-      // i.e. entry title, entry body and all response bodies
-      StringBuffer searchableContent = new StringBuffer();
-      searchableContent.append(staticPage.getTitle());
-      searchableContent.append(" ");
-      searchableContent.append(staticPage.getBody());
+  private AnalyzingInfixSuggester openSuggester() throws IOException {
+    File suggestionsDir = new File(blog.getSuggestionIndexDirectory());
+    if (!suggestionsDir.exists()) {
+      suggestionsDir.mkdirs();
+    }
 
-      // join the title and body together to make searching on them both easier
-      document.add(new TextField("blogEntry", searchableContent.toString(), Field.Store.NO));
+    return new AnalyzingInfixSuggester(FSDirectory.open(suggestionsDir.toPath()), SearchIndexSchema.createSpellingAnalyzer());
+  }
 
-      writer.addDocument(document);
+  /**
+   * Suggests titles and tags that match what has been typed so far, with
+   * the most recent first. The last word can be incomplete. If nothing
+   * matches, misspelt words are corrected and the suggestions for the
+   * corrected text are returned instead.
+   *
+   * @param text    the text typed so far
+   * @param maximumNumberOfSuggestions    the maximum number to return
+   * @return  a List of Suggestion instances
+   */
+  public List<Suggestion> suggest(String text, int maximumNumberOfSuggestions) {
+    List<Suggestion> suggestions = new ArrayList<Suggestion>();
+    if (text == null || text.trim().length() == 0) {
+      return suggestions;
+    }
+
+    try {
+      List<Lookup.LookupResult> results = lookup(text, maximumNumberOfSuggestions);
+      if (results.isEmpty()) {
+        String correctedText = correctSpelling(text);
+        if (correctedText != null) {
+          results = lookup(correctedText, maximumNumberOfSuggestions);
+        }
+      }
+
+      for (Lookup.LookupResult result : results) {
+        String type = (result.contexts != null && result.contexts.contains(TAG_CONTEXT)) ? Suggestion.TAG : Suggestion.TITLE;
+        String permalink = (result.payload != null) ? result.payload.utf8ToString() : null;
+        suggestions.add(new Suggestion(result.key.toString(), type, permalink));
+      }
     } catch (Exception e) {
       log.error(e.getMessage(), e);
     }
+
+    return suggestions;
   }
 
+  private List<Lookup.LookupResult> lookup(String text, int maximumNumberOfSuggestions) throws IOException {
+    lockSuggester();
+    try {
+      return suggester.lookup(text, SUGGESTION_CONTEXTS, maximumNumberOfSuggestions, true, false);
+    } catch (IllegalStateException ise) {
+      // there's nothing to suggest until something has been indexed
+      return Collections.emptyList();
+    } finally {
+      suggesterLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Opens the suggester if it isn't already open, returning with the
+   * read lock held.
+   */
+  private void lockSuggester() throws IOException {
+    suggesterLock.readLock().lock();
+    if (suggester != null) {
+      return;
+    }
+
+    suggesterLock.readLock().unlock();
+    suggesterLock.writeLock().lock();
+    try {
+      if (suggester == null) {
+        suggester = openSuggester();
+      }
+      // downgrade to the read lock, so that it isn't closed before it's used
+      suggesterLock.readLock().lock();
+    } finally {
+      suggesterLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Corrects the spelling of the words in a query.
+   *
+   * @param queryString   the query
+   * @return  the corrected query, or null if no words needed correcting
+   */
+  public String correctSpelling(String queryString) throws IOException {
+    SearcherManager searcherManager = getSearcherManager();
+    if (searcherManager == null || queryString == null) {
+      return null;
+    }
+
+    IndexSearcher searcher = searcherManager.acquire();
+    try {
+      return correctSpelling(searcher.getIndexReader(), queryString);
+    } finally {
+      searcherManager.release(searcher);
+    }
+  }
+
+  /**
+   * Replaces the words in a query that don't appear in the index with the
+   * closest words that do. Field names, operators and anything else that
+   * isn't a plain word are left alone.
+   */
+  private String correctSpelling(IndexReader reader, String queryString) throws IOException {
+    DirectSpellChecker spellChecker = new DirectSpellChecker();
+    StringBuilder buf = new StringBuilder();
+    boolean corrected = false;
+    for (String word : queryString.trim().split("\\s+")) {
+      if (WORD.matcher(word).matches() && !word.equals("AND") && !word.equals("OR") && !word.equals("NOT")) {
+        Term term = new Term(SearchIndexSchema.SPELLING, word.toLowerCase());
+        SuggestWord[] suggestWords = spellChecker.suggestSimilar(term, 1, reader, SuggestMode.SUGGEST_WHEN_NOT_IN_INDEX);
+        if (suggestWords.length > 0) {
+          word = suggestWords[0].string;
+          corrected = true;
+        }
+      }
+      if (buf.length() > 0) {
+        buf.append(' ');
+      }
+      buf.append(word);
+    }
+
+    return corrected ? buf.toString() : null;
+  }
+
+  /**
+   * Searches the index, returning up to the maximum number of hits,
+   * most relevant first.
+   *
+   * @param queryString   the query
+   * @return  a SearchResults instance
+   */
   public SearchResults search(String queryString) throws SearchException {
+    return search(queryString, SORT_BY_SCORE, 1, MAXIMUM_NUMBER_OF_HITS);
+  }
+
+  /**
+   * Searches the index, returning a single page of hits. Sorting and paging
+   * are done by Lucene, and only the hits on the page are loaded. If the
+   * page is beyond the last page, the last page is returned.
+   *
+   * @param queryString   the query
+   * @param sort          SORT_BY_DATE or SORT_BY_SCORE (the default)
+   * @param page          the page number, starting at 1
+   * @param pageSize      the number of hits per page
+   * @return  a SearchResults instance
+   */
+  public SearchResults search(String queryString, String sort, int page, int pageSize) throws SearchException {
+    return search(queryString, sort, page, pageSize, null);
+  }
+
+  /**
+   * Searches the index, returning a single page of the hits that have the
+   * given facet values. Facet counts for the hits are worked out in the
+   * same pass, so drilling down is a single query rather than a new search
+   * that is filtered afterwards.
+   *
+   * @param queryString   the query
+   * @param sort          SORT_BY_DATE or SORT_BY_SCORE (the default)
+   * @param page          the page number, starting at 1
+   * @param pageSize      the number of hits per page
+   * @param drillDowns    a Map of facet name (e.g. FACET_TAG) to the value
+   *                      that hits must have, or null
+   * @return  a SearchResults instance
+   */
+  public SearchResults search(String queryString, String sort, int page, int pageSize, Map<String, String> drillDowns) throws SearchException {
+    pageSize = Math.max(1, Math.min(pageSize, MAXIMUM_NUMBER_OF_HITS));
+    page = Math.max(1, Math.min(page, (MAXIMUM_NUMBER_OF_HITS + pageSize - 1) / pageSize));
+    return doSearch(queryString, drillDowns, sort, page, pageSize, null);
+  }
+
+  /**
+   * Searches the index, returning the page of hits that follows the given
+   * cursor. Unlike paging by page number, this can page through any
+   * number of hits.
+   *
+   * @param queryString   the query
+   * @param sort          SORT_BY_DATE or SORT_BY_SCORE (the default)
+   * @param cursor        the next page cursor from the previous results,
+   *                      or null for the first page
+   * @param pageSize      the number of hits per page
+   * @return  a SearchResults instance
+   */
+  public SearchResults searchAfter(String queryString, String sort, String cursor, int pageSize) throws SearchException {
+    pageSize = Math.max(1, Math.min(pageSize, MAXIMUM_NUMBER_OF_HITS));
+    return doSearch(queryString, null, sort, 1, pageSize, cursor);
+  }
+
+  private SearchResults doSearch(String queryString, Map<String, String> drillDowns, String sortBy, int page, int pageSize, String cursor) throws SearchException {
 
     log.debug("Performing search : " + queryString);
 
@@ -480,20 +916,20 @@ public class SearchIndex {
     searchResults.setQuery(queryString);
 
     if (queryString != null && queryString.length() > 0) {
-      Directory dir = null;
-      IndexReader reader = null;
+      SearcherManager searcherManager = null;
+      IndexSearcher searcher = null;
 
       try {
-        File indexDir = new File(blog.getSearchIndexDirectory());
-        if (!indexDir.exists()) {
+        searcherManager = getSearcherManager();
+        if (searcherManager == null) {
           return searchResults; // Empty results if no index exists
         }
-        dir = FSDirectory.open(indexDir.toPath());
-        reader = DirectoryReader.open(dir);
-        IndexSearcher searcher = new IndexSearcher(reader);
-        QueryParser parser = new QueryParser("blogEntry", getAnalyzer());
+        searcher = searcherManager.acquire();
+        IndexReader reader = searcher.getIndexReader();
+        boolean current = SearchIndexSchema.isCurrent(((DirectoryReader)reader).getIndexCommit().getUserData());
 
         // Parse the query, escaping if needed
+        QueryParser parser = createQueryParser(current);
         Query query = null;
         try {
           query = parser.parse(queryString);
@@ -502,25 +938,93 @@ public class SearchIndex {
           String escapedQuery = escapeQueryString(queryString);
           query = parser.parse(escapedQuery);
         }
-        TopDocs topDocs = searcher.search(query, 1000); // Max 1000 results
-
-        for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
-          Document doc = searcher.doc(scoreDoc.doc);
-          Date date = null;
-          if (doc.getField("date") != null && doc.getField("date").numericValue() != null) {
-            long dateMillis = doc.getField("date").numericValue().longValue();
-            date = new Date(dateMillis);
+
+        boolean facetsIndexed = hasFacets(reader);
+        Query searchQuery = query;
+        if (drillDowns != null && !drillDowns.isEmpty() && facetsIndexed) {
+          DrillDownQuery drillDownQuery = new DrillDownQuery(SearchIndexSchema.FACETS_CONFIG, query);
+          for (String name : drillDowns.keySet()) {
+            String value = drillDowns.get(name);
+            if (isFacet(name) && value != null && value.length() > 0) {
+              drillDownQuery.add(name, value);
+            }
           }
-          SearchHit result = new SearchHit(
-              blog,
-              doc.get("id"),
-              doc.get("permalink"),
-              doc.get("title"),
-              doc.get("subtitle"),
-              doc.get("truncatedBody"),
-              date,
-              scoreDoc.score);
-          searchResults.add(result);
+          searchQuery = drillDownQuery;
+        }
+
+        Sort sort = SORT_BY_DATE.equalsIgnoreCase(sortBy) ? BY_DATE : BY_SCORE;
+        if (!isSortableByDate(reader)) {
+          log.warn("The search index for " + blog.getId() + " was created by an older version of Pebble, reindex the blog to sort search results by date");
+          sort = Sort.RELEVANCE;
+        }
+        int offset;
+        FieldDoc after = null;
+        TopFieldCollector collector;
+        if (cursor != null && cursor.length() > 0) {
+          offset = decodeCursorOffset(cursor);
+          after = decodeCursor(cursor, sort);
+          collector = TopFieldCollector.create(sort, pageSize, after, Integer.MAX_VALUE);
+        } else {
+          collector = TopFieldCollector.create(sort, page * pageSize, Integer.MAX_VALUE);
+          offset = (page - 1) * pageSize;
+        }
+        // the hits and the facet counts are collected in a single pass
+        FacetsCollector facetsCollector = new FacetsCollector();
+        searcher.search(searchQuery, MultiCollector.wrap(collector, facetsCollector));
+
+        int totalHits = collector.getTotalHits();
+        TopDocs topDocs;
+        if (after != null) {
+          topDocs = collector.topDocs();
+          totalHits = Math.max(totalHits, offset + topDocs.scoreDocs.length);
+        } else {
+          // go back to the last page if the requested page is beyond it
+          int available = Math.min(totalHits, page * pageSize);
+          if (offset >= available && available > 0) {
+            offset = ((available - 1) / pageSize) * pageSize;
+          }
+          topDocs = collector.topDocs(offset, pageSize);
+        }
+
+        // sorting doesn't record the score, so fill it in for the page of hits
+        TopFieldCollector.populateScores(topDocs.scoreDocs, searcher, searchQuery);
+
+        searchResults.setOffset(offset);
+        searchResults.setNumberOfHits(totalHits);
+
+        // highlight the terms that matched the query (rather than the drill downs)
+        String[] titles = null;
+        String[] excerpts = null;
+        if (topDocs.scoreDocs.length > 0) {
+          Map<String, String[]> highlights = getHighlighter(searcher, parser.getAnalyzer()).highlightFields(
+              new String[] { SearchIndexSchema.TITLE, SearchIndexSchema.BODY }, query, topDocs, new int[] { 1, NUMBER_OF_FRAGMENTS });
+          titles = highlights.get(SearchIndexSchema.TITLE);
+          excerpts = highlights.get(SearchIndexSchema.BODY);
+        }
+
+        StoredFields storedFields = searcher.storedFields();
+        int number = offset;
+        for (int i = 0; i < topDocs.scoreDocs.length; i++) {
+          ScoreDoc scoreDoc = topDocs.scoreDocs[i];
+          Document doc = storedFields.document(scoreDoc.doc, SearchIndexSchema.HIT_FIELDS);
+          SearchHit hit = createSearchHit(doc, scoreDoc.score);
+          hit.setHighlightedTitle(titles[i]);
+          hit.setHighlightedExcerpt(excerpts[i]);
+          number++;
+          hit.setNumber(number);
+          searchResults.add(hit);
+        }
+
+        if (topDocs.scoreDocs.length > 0 && number < totalHits) {
+          searchResults.setNextPageCursor(encodeCursor(number, (FieldDoc)topDocs.scoreDocs[topDocs.scoreDocs.length - 1]));
+        }
+
+        if (facetsIndexed && totalHits > 0) {
+          countFacets(reader, facetsCollector, searchResults);
+        }
+
+        if (totalHits == 0 && current) {
+          searchResults.setSuggestedQuery(correctSpelling(reader, queryString));
         }
       } catch (org.apache.lucene.index.IndexNotFoundException infe) {
         // Index doesn't exist yet - return empty results
@@ -531,16 +1035,9 @@ public class SearchIndex {
         e.printStackTrace();
         throw new SearchException(e.getMessage());
       } finally {
-        if (reader != null) {
+        if (searcher != null) {
           try {
-            reader.close();
-          } catch (IOException e) {
-            // can't do much now! ;-)
-          }
-        }
-        if (dir != null) {
-          try {
-            dir.close();
+            searcherManager.release(searcher);
           } catch (IOException e) {
             // can't do much now! ;-)
           }
@@ -551,5 +1048,279 @@ public class SearchIndex {
     return searchResults;
   }
 
-}
+  /**
+   * Creates a parser for queries. Terms that don't name a field are
+   * searched for in all of the full text fields, apart from in indexes
+   * that predate the schema, where they are searched for in the one field
+   * that had all of the content.
+   */
+  private QueryParser createQueryParser(boolean current) throws Exception {
+    if (current) {
+      return new MultiFieldQueryParser(SearchIndexSchema.DEFAULT_FIELDS, getAnalyzer(), SearchIndexSchema.BOOSTS);
+    } else {
+      return new QueryParser(SearchIndexSchema.LEGACY_DEFAULT_FIELD, getAnalyzer());
+    }
+  }
+
+  /**
+   * Gets the SearcherManager that shares a searcher between searches. It
+   * is refreshed after the index has been changed, which reopens only the
+   * segments that have changed.
+   *
+   * @return  a SearcherManager, or null if the index doesn't exist yet
+   */
+  private synchronized SearcherManager getSearcherManager() throws IOException {
+    if (searcherManager == null) {
+      File indexDir = new File(blog.getSearchIndexDirectory());
+      if (!indexDir.exists()) {
+        return null;
+      }
+
+      Directory dir = FSDirectory.open(indexDir.toPath());
+      if (!DirectoryReader.indexExists(dir)) {
+        dir.close();
+        return null;
+      }
+      searcherManager = new SearcherManager(dir, null);
+      searcherDirectory = dir;
+    } else if (changed) {
+      changed = false;
+      searcherManager.maybeRefreshBlocking();
+    }
+
+    return searcherManager;
+  }
+
+  /**
+   * Closes the searcher that is shared between searches, and the
+   * suggestions.
+   */
+  public synchronized void close() {
+    try {
+      if (searcherManager != null) {
+        searcherManager.close();
+        searcherDirectory.close();
+      }
+      closeSuggester();
+      closeAnalyzers();
+    } catch (IOException e) {
+      log.error(e.getMessage(), e);
+    } finally {
+      searcherManager = null;
+      searcherDirectory = null;
+      facetsReader = null;
+      facetsState = null;
+    }
+  }
+
+  /**
+   * Counts the values of each facet over all of the hits.
+   */
+  private void countFacets(IndexReader reader, FacetsCollector facetsCollector, SearchResults searchResults) throws IOException {
+    Facets facets = new SortedSetDocValuesFacetCounts(getFacetsState(reader), facetsCollector);
+    for (FacetResult facetResult : facets.getAllDims(MAXIMUM_NUMBER_OF_FACET_VALUES)) {
+      Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+      for (LabelAndValue labelAndValue : facetResult.labelValues) {
+        counts.put(labelAndValue.label, labelAndValue.value.intValue());
+      }
+      searchResults.setFacet(facetResult.dim, counts);
+    }
+  }
+
+  /**
+   * Gets the facet ordinals for a reader, which are expensive to create,
+   * so they are kept until the reader is refreshed.
+   */
+  private synchronized SortedSetDocValuesReaderState getFacetsState(IndexReader reader) throws IOException {
+    if (facetsReader != reader) {
+      facetsState = new DefaultSortedSetDocValuesReaderState(reader, SearchIndexSchema.FACETS_CONFIG);
+      facetsReader = reader;
+    }
+
+    return facetsState;
+  }
+
+  private boolean isFacet(String name) {
+    return FACET_TAG.equals(name) || FACET_CATEGORY.equals(name) || FACET_AUTHOR.equals(name) || FACET_YEAR.equals(name);
+  }
+
+  /**
+   * Creates a highlighter that uses the offsets stored in the index.
+   */
+  private UnifiedHighlighter getHighlighter(IndexSearcher searcher, Analyzer analyzer) {
+    return UnifiedHighlighter.builder(searcher, analyzer)
+        .withWeightMatches(false)
+        .withMaxNoHighlightPassages(0)
+        .withFormatter(new HighlightFormatter())
+        .build();
+  }
+
+  /**
+   * Determines whether the index was created with the current schema and
+   * the analyzer configured for the blog. If it wasn't, it needs to be
+   * rebuilt.
+   *
+   * @return  true if the index is up to date (or doesn't exist), false otherwise
+   */
+  public boolean isUpToDate() {
+    File indexDir = new File(blog.getSearchIndexDirectory());
+    if (!indexDir.exists()) {
+      return true;
+    }
+
+    synchronized (blog) {
+      try (Directory dir = FSDirectory.open(indexDir.toPath())) {
+        if (!DirectoryReader.indexExists(dir)) {
+          return true;
+        }
+        Map<String, String> commitData = SegmentInfos.readLatestCommit(dir).getUserData();
+        return SearchIndexSchema.isCurrent(commitData) &&
+            getAnalyzerDescription().equals(commitData.get(SearchIndexSchema.ANALYZER_KEY)) &&
+            hasSuggestions();
+      } catch (Exception e) {
+        log.error(e.getMessage(), e);
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Determines whether the suggestions have been built.
+   */
+  private boolean hasSuggestions() throws IOException {
+    File suggestionsDir = new File(blog.getSuggestionIndexDirectory());
+    if (!suggestionsDir.exists()) {
+      return false;
+    }
+
+    try (Directory dir = FSDirectory.open(suggestionsDir.toPath())) {
+      return DirectoryReader.indexExists(dir);
+    }
+  }
 
+  /**
+   * Determines whether the index has the dates as doc values, which
+   * indexes created by older versions of Pebble don't.
+   */
+  private boolean isSortableByDate(IndexReader reader) {
+    FieldInfo fieldInfo = FieldInfos.getMergedFieldInfos(reader).fieldInfo(SearchIndexSchema.DATE);
+    return fieldInfo == null || fieldInfo.getDocValuesType() == DocValuesType.NUMERIC;
+  }
+
+  /**
+   * Determines whether the index has facets, which indexes created by
+   * older versions of Pebble don't.
+   */
+  private boolean hasFacets(IndexReader reader) {
+    String field = SearchIndexSchema.FACETS_CONFIG.getDimConfig(FACET_TAG).indexFieldName;
+    return FieldInfos.getMergedFieldInfos(reader).fieldInfo(field) != null;
+  }
+
+  private SearchHit createSearchHit(Document doc, float score) {
+    Date date = null;
+    IndexableField dateField = doc.getField(SearchIndexSchema.DATE);
+    if (dateField != null && dateField.numericValue() != null) {
+      date = new Date(dateField.numericValue().longValue());
+    }
+    SearchHit hit = new SearchHit(
+        blog,
+        doc.get(SearchIndexSchema.ID),
+        doc.get(SearchIndexSchema.PERMALINK),
+        doc.get(SearchIndexSchema.TITLE),
+        doc.get(SearchIndexSchema.SUBTITLE),
+        doc.get(SearchIndexSchema.EXCERPT),
+        date,
+        score);
+    hit.setAuthor(doc.get(SearchIndexSchema.AUTHOR));
+    hit.setCategoryIds(Arrays.asList(doc.getValues(SearchIndexSchema.CATEGORY)));
+
+    return hit;
+  }
+
+  /**
+   * Encodes the position of a hit as a cursor, in the form
+   * number:doc:sortValue:sortValue.
+   */
+  private String encodeCursor(int number, FieldDoc fieldDoc) {
+    StringBuilder buf = new StringBuilder();
+    buf.append(number);
+    buf.append(':');
+    buf.append(fieldDoc.doc);
+    for (Object value : fieldDoc.fields) {
+      buf.append(':');
+      buf.append(value);
+    }
+
+    return buf.toString();
+  }
+
+  private int decodeCursorOffset(String cursor) throws SearchException {
+    try {
+      return Integer.parseInt(cursor.substring(0, cursor.indexOf(':')));
+    } catch (RuntimeException e) {
+      throw new SearchException("Invalid cursor " + cursor);
+    }
+  }
+
+  private FieldDoc decodeCursor(String cursor, Sort sort) throws SearchException {
+    String[] parts = cursor.split(":");
+    SortField[] sortFields = sort.getSort();
+    if (parts.length != sortFields.length + 2) {
+      throw new SearchException("Invalid cursor " + cursor);
+    }
+
+    try {
+      Object[] values = new Object[sortFields.length];
+      for (int i = 0; i < sortFields.length; i++) {
+        String value = parts[i + 2];
+        if (sortFields[i].getType() == SortField.Type.SCORE) {
+          values[i] = Float.valueOf(value);
+        } else {
+          values[i] = Long.valueOf(value);
+        }
+      }
+
+      return new FieldDoc(Integer.parseInt(parts[1]), Float.NaN, values);
+    } catch (NumberFormatException nfe) {
+      throw new SearchException("Invalid cursor " + cursor);
+    }
+  }
+
+  /**
+   * Formats highlighted passages, escaping the markup in the stored text
+   * but leaving any entities that it already contains alone, so that
+   * titles like "Tom &amp; Jerry" aren't escaped twice.
+   */
+  private static class HighlightFormatter extends DefaultPassageFormatter {
+
+    HighlightFormatter() {
+      super("<b>", "</b>", "... ", true);
+    }
+
+    protected void append(StringBuilder dest, String content, int start, int end) {
+      Matcher matcher = ENTITY.matcher(content);
+      for (int i = start; i < end; i++) {
+        char ch = content.charAt(i);
+        switch (ch) {
+          case '&':
+            matcher.region(i, content.length());
+            dest.append(matcher.lookingAt() ? "&" : "&amp;");
+            break;
+          case '<':
+            dest.append("&lt;");
+            break;
+          case '>':
+            dest.append("&gt;");
+            break;
+          case '"':
+            dest.append("&quot;");
+            break;
+          default:
+            dest.append(ch);
+        }
+      }
+    }
+
+  }
+
+}
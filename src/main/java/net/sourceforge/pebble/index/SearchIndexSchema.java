@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.domain.*;
+import net.sourceforge.pebble.util.StringUtils;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.KeywordTokenizer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetField;
+import org.apache.lucene.index.IndexOptions;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Declares the fields in the search index, how each of them is analyzed
+ * and how blog entries and static pages are turned into documents. The
+ * version must be incremented whenever any of this changes, so that
+ * existing indexes are rebuilt.
+ *
+ * @author    Simon Brown
+ */
+final class SearchIndexSchema {
+
+  /** the version of the schema, which is stored with each index */
+  static final int VERSION = 2;
+
+  /** the keys of the commit data stored with each index */
+  static final String VERSION_KEY = "pebble.schemaVersion";
+  static final String ANALYZER_KEY = "pebble.analyzer";
+
+  /** identifies a blog entry or static page (keyword, stored) */
+  static final String ID = "id";
+  static final String PERMALINK = "permalink";
+
+  /** full text fields, analyzed for the language of the blog */
+  static final String TITLE = "title";
+  static final String SUBTITLE = "subtitle";
+  static final String BODY = "body";
+  static final String RESPONSES = "responses";
+
+  /** keyword fields (lowercased, stored) */
+  static final String TAG = "tag";
+  static final String CATEGORY = "category";
+  static final String AUTHOR = "author";
+
+  /** the words of the title and body, as written, for spelling corrections */
+  static final String SPELLING = "spelling";
+
+  /** stored, but not indexed */
+  static final String EXCERPT = "excerpt";
+
+  /** stored, and as doc values for sorting */
+  static final String DATE = "date";
+
+  /** the single full text field used by indexes that predate the schema */
+  static final String LEGACY_DEFAULT_FIELD = "blogEntry";
+
+  /** the fields searched when a query doesn't name one, and their boosts */
+  static final String[] DEFAULT_FIELDS = { TITLE, SUBTITLE, TAG, BODY, RESPONSES };
+  static final Map<String, Float> BOOSTS = new HashMap<String, Float>();
+
+  static {
+    BOOSTS.put(TITLE, 2.0f);
+    BOOSTS.put(SUBTITLE, 1.5f);
+    BOOSTS.put(TAG, 1.5f);
+    BOOSTS.put(RESPONSES, 0.5f);
+  }
+
+  /** the stored fields needed to create a search hit */
+  static final Set<String> HIT_FIELDS = new HashSet<String>(Arrays.asList(
+      ID, PERMALINK, TITLE, SUBTITLE, EXCERPT, DATE, AUTHOR, CATEGORY));
+
+  /** the facets, which are indexed as doc values */
+  static final FacetsConfig FACETS_CONFIG = new FacetsConfig();
+
+  static {
+    FACETS_CONFIG.setMultiValued(SearchIndex.FACET_TAG, true);
+    FACETS_CONFIG.setMultiValued(SearchIndex.FACET_CATEGORY, true);
+  }
+
+  /** stored text, with offsets indexed so that matches can be highlighted */
+  private static final FieldType HIGHLIGHTABLE_TEXT = new FieldType(TextField.TYPE_STORED);
+
+  static {
+    HIGHLIGHTABLE_TEXT.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+    HIGHLIGHTABLE_TEXT.freeze();
+  }
+
+  /** a stored value that is matched as a whole, ignoring case */
+  private static final FieldType KEYWORD = new FieldType(TextField.TYPE_STORED);
+
+  static {
+    KEYWORD.setIndexOptions(IndexOptions.DOCS);
+    KEYWORD.setOmitNorms(true);
+    KEYWORD.freeze();
+  }
+
+  private SearchIndexSchema() {
+  }
+
+  /**
+   * Creates the analyzer for an index, which uses the given analyzer for
+   * the full text fields and treats the keyword fields as single terms.
+   *
+   * @param textAnalyzer    the analyzer for the full text fields
+   * @return  an Analyzer instance
+   */
+  static Analyzer createAnalyzer(Analyzer textAnalyzer) {
+    Analyzer keywordAnalyzer = new Analyzer() {
+      protected TokenStreamComponents createComponents(String fieldName) {
+        Tokenizer tokenizer = new KeywordTokenizer();
+        return new TokenStreamComponents(tokenizer, new LowerCaseFilter(tokenizer));
+      }
+
+      protected TokenStream normalize(String fieldName, TokenStream in) {
+        return new LowerCaseFilter(in);
+      }
+    };
+
+    Map<String, Analyzer> analyzers = new HashMap<String, Analyzer>();
+    analyzers.put(TAG, keywordAnalyzer);
+    analyzers.put(CATEGORY, keywordAnalyzer);
+    analyzers.put(AUTHOR, keywordAnalyzer);
+    analyzers.put(SPELLING, createSpellingAnalyzer());
+
+    return new PerFieldAnalyzerWrapper(textAnalyzer, analyzers);
+  }
+
+  /**
+   * Creates the analyzer for the words used to correct spellings, and to
+   * suggest searches, which keeps every word as written (apart from case).
+   *
+   * @return  an Analyzer instance
+   */
+  static Analyzer createSpellingAnalyzer() {
+    return new StandardAnalyzer(CharArraySet.EMPTY_SET);
+  }
+
+  /**
+   * Creates the commit data that identifies how an index was created.
+   *
+   * @param analyzer    a description of the analyzer used for full text
+   * @return  a Map of commit data
+   */
+  static Map<String, String> createCommitData(String analyzer) {
+    Map<String, String> commitData = new HashMap<String, String>();
+    commitData.put(VERSION_KEY, String.valueOf(VERSION));
+    commitData.put(ANALYZER_KEY, analyzer);
+
+    return commitData;
+  }
+
+  /**
+   * Determines whether the commit data of an index shows that it was
+   * created with this schema.
+   */
+  static boolean isCurrent(Map<String, String> commitData) {
+    return String.valueOf(VERSION).equals(commitData.get(VERSION_KEY));
+  }
+
+  /**
+   * Creates the document for a blog entry.
+   *
+   * @param blogEntry   a published BlogEntry instance
+   * @return  a Document instance
+   */
+  static Document createDocument(BlogEntry blogEntry) throws IOException {
+    Document document = new Document();
+    addCommonFields(document, blogEntry);
+    addText(document, SUBTITLE, blogEntry.getSubtitle());
+
+    for (Category category : blogEntry.getCategories()) {
+      addKeyword(document, CATEGORY, SearchIndex.FACET_CATEGORY, category.getId());
+    }
+
+    for (Tag tag : blogEntry.getAllTags()) {
+      addKeyword(document, TAG, SearchIndex.FACET_TAG, tag.getName());
+    }
+
+    // the approved comments and TrackBacks are searchable, but aren't shown
+    StringBuilder responses = new StringBuilder();
+    for (Comment comment : blogEntry.getComments()) {
+      if (comment.isApproved() && comment.getBody() != null) {
+        responses.append(comment.getBody());
+        responses.append(" ");
+      }
+    }
+    for (TrackBack trackBack : blogEntry.getTrackBacks()) {
+      if (trackBack.isApproved() && trackBack.getExcerpt() != null) {
+        responses.append(trackBack.getExcerpt());
+        responses.append(" ");
+      }
+    }
+    document.add(new TextField(RESPONSES, responses.toString(), Field.Store.NO));
+
+    return FACETS_CONFIG.build(document);
+  }
+
+  /**
+   * Creates the document for a static page.
+   *
+   * @param staticPage    a StaticPage instance
+   * @return  a Document instance
+   */
+  static Document createDocument(StaticPage staticPage) throws IOException {
+    Document document = new Document();
+    addCommonFields(document, staticPage);
+
+    return FACETS_CONFIG.build(document);
+  }
+
+  private static void addCommonFields(Document document, PageBasedContent content) {
+    document.add(new StringField(ID, content.getId(), Field.Store.YES));
+    if (content.getPermalink() != null) {
+      document.add(new StringField(PERMALINK, content.getPermalink(), Field.Store.YES));
+    }
+
+    document.add(new Field(TITLE, content.getTitle() != null ? content.getTitle() : "", HIGHLIGHTABLE_TEXT));
+
+    // the body is stored as text so that fragments of it can be highlighted
+    String body = content.getBody() != null ? StringUtils.filterHTML(content.getBody()) : "";
+    document.add(new Field(BODY, body, HIGHLIGHTABLE_TEXT));
+
+    document.add(new TextField(SPELLING, content.getTitle() != null ? content.getTitle() + " " + body : body, Field.Store.NO));
+
+    String excerpt = content.getTruncatedContent();
+    document.add(new StoredField(EXCERPT, excerpt != null ? excerpt : ""));
+
+    if (content.getDate() != null) {
+      document.add(new StoredField(DATE, content.getDate().getTime()));
+      document.add(new NumericDocValuesField(DATE, content.getDate().getTime()));
+
+      Calendar cal = content.getBlog().getCalendar();
+      cal.setTime(content.getDate());
+      addFacet(document, SearchIndex.FACET_YEAR, String.valueOf(cal.get(Calendar.YEAR)));
+    }
+
+    if (content.getAuthor() != null) {
+      addKeyword(document, AUTHOR, SearchIndex.FACET_AUTHOR, content.getAuthor());
+    }
+  }
+
+  private static void addText(Document document, String name, String value) {
+    document.add(new TextField(name, value != null ? value : "", Field.Store.YES));
+  }
+
+  private static void addKeyword(Document document, String name, String facet, String value) {
+    if (value != null && value.length() > 0) {
+      document.add(new Field(name, value, KEYWORD));
+      addFacet(document, facet, value);
+    }
+  }
+
+  private static void addFacet(Document document, String facet, String value) {
+    if (value != null && value.length() > 0) {
+      document.add(new SortedSetDocValuesFacetField(facet, value));
+    }
+  }
+
+}
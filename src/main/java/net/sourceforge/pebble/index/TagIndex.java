@@ -38,10 +38,20 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 
 /**
  * Represents the tag index for a blog.
+ * <br /><br />
+ * The number of blog entries for each tag is maintained as blog entries are
+ * indexed and unindexed, along with the tags of each blog entry, so that
+ * a change only touches the tags of the blog entry concerned. The ranks of
+ * all tags are only recalculated when the thresholds between the ranks
+ * change. Rather than rewriting the index on every change, each change is
+ * appended to a log that is replayed on startup and compacted into the
+ * index once it has grown as large as the index.
  *
  * @author    Simon Brown
  */
@@ -49,27 +59,64 @@ public class TagIndex {
 
   private static final Log log = LogFactory.getLog(TagIndex.class);
 
+  /** the name of the index file */
+  private static final String INDEX_FILE = "tags.index";
+
+  /** the name of the log file that changes are appended to */
+  private static final String LOG_FILE = "tags.log";
+
+  /** the minimum number of log entries before the log is compacted */
+  private static final int COMPACTION_THRESHOLD = 1000;
+
+  /** the number of ranks that tags are split into */
+  private static final int NUMBER_OF_RANKS = 10;
+
+  /** orders tags by name, as Tag does */
+  private static final Comparator<Tag> TAG_NAME_COMPARATOR = new Comparator<Tag>() {
+    public int compare(Tag tag1, Tag tag2) {
+      return tag1.compareTo(tag2);
+    }
+  };
+
   private Blog blog;
 
   /** the map containing the tags */
   private Map<String,IndexedTag> tags = new HashMap<String,IndexedTag>();
 
-  /** a view onto the map, ordered by tag name */
+  /** the tags of each indexed blog entry, keyed on blog entry id */
+  private Map<String,Set<IndexedTag>> blogEntryTags = new HashMap<String,Set<IndexedTag>>();
+
+  /** the number of tags with each (non-zero) number of blog entries */
+  private TreeMap<Integer,Integer> tagCounts = new TreeMap<Integer,Integer>();
+
+  /** the maximum number of blog entries for each rank */
+  private int[] thresholds = new int[NUMBER_OF_RANKS];
+
+  /** the tags that have blog entries, ordered by tag name */
   private List<Tag> orderedTags = new ArrayList<Tag>();
 
+  /** the number of entries in the log since it was last compacted */
+  private int logEntries = 0;
+
   public TagIndex(Blog blog) {
     this.blog = blog;
 
     readIndex();
+    logEntries = readLog();
+    if (logEntries > 0) {
+      compact();
+    }
     recalculateTagRankings();
   }
 
   /**
    * Clears the index.
    */
-  public void clear() {
+  public synchronized void clear() {
     tags = new HashMap<String,IndexedTag>();
-    writeIndex();
+    blogEntryTags = new HashMap<String,Set<IndexedTag>>();
+    recalculateTagRankings();
+    compact();
   }
 
   /**
@@ -81,14 +128,13 @@ public class TagIndex {
     for (BlogEntry blogEntry : blogEntries) {
       if (blogEntry.isPublished()) {
         for (Tag tag : blogEntry.getAllTags()) {
-          IndexedTag t = getTag(tag.getName());
-          t.addBlogEntry(blogEntry.getId());
+          addBlogEntry(getTag(tag.getName()), blogEntry.getId());
         }
       }
     }
 
-    writeIndex();
     recalculateTagRankings();
+    compact();
   }
 
   /**
@@ -98,13 +144,23 @@ public class TagIndex {
    */
   public synchronized void index(BlogEntry blogEntry) {
     if (blogEntry.isPublished()) {
+      List<IndexedTag> changedTags = new ArrayList<IndexedTag>();
+      StringBuilder entry = new StringBuilder("+");
+      entry.append(blogEntry.getId());
+      entry.append("=");
       for (Tag tag : blogEntry.getAllTags()) {
         IndexedTag t = getTag(tag.getName());
-        t.addBlogEntry(blogEntry.getId());
+        int numberOfBlogEntries = t.getNumberOfBlogEntries();
+        if (addBlogEntry(t, blogEntry.getId())) {
+          countChanged(t, numberOfBlogEntries);
+          changedTags.add(t);
+        }
+        entry.append(t.getName());
+        entry.append(",");
       }
 
-      writeIndex();
-      recalculateTagRankings();
+      updateTagRankings(changedTags);
+      appendToLog(entry.toString());
     }
   }
 
@@ -114,20 +170,91 @@ public class TagIndex {
    * @param blogEntry   a BlogEntry instance
    */
   public synchronized void unindex(BlogEntry blogEntry) {
-    for (Tag tag : tags.values()) {
-      IndexedTag t = getTag(tag.getName());
+    Set<IndexedTag> indexedTags = blogEntryTags.remove(blogEntry.getId());
+    if (indexedTags == null) {
+      return;
+    }
+
+    List<IndexedTag> changedTags = new ArrayList<IndexedTag>();
+    for (IndexedTag t : indexedTags) {
+      int numberOfBlogEntries = t.getNumberOfBlogEntries();
       t.removeBlogEntry(blogEntry.getId());
+      if (t.getNumberOfBlogEntries() != numberOfBlogEntries) {
+        countChanged(t, numberOfBlogEntries);
+        changedTags.add(t);
+      }
     }
 
-    writeIndex();
-    recalculateTagRankings();
+    updateTagRankings(changedTags);
+    appendToLog("-" + blogEntry.getId());
+  }
+
+  /**
+   * Adds a blog entry to a tag, remembering which tags the blog entry has.
+   *
+   * @return  true if the blog entry wasn't already associated with the tag
+   */
+  private boolean addBlogEntry(IndexedTag tag, String blogEntryId) {
+    if (blogEntryId == null) {
+      return false;
+    }
+
+    Set<IndexedTag> indexedTags = blogEntryTags.get(blogEntryId);
+    if (indexedTags == null) {
+      indexedTags = new HashSet<IndexedTag>();
+      blogEntryTags.put(blogEntryId, indexedTags);
+    }
+    indexedTags.add(tag);
+
+    int numberOfBlogEntries = tag.getNumberOfBlogEntries();
+    tag.addBlogEntry(blogEntryId);
+    return tag.getNumberOfBlogEntries() != numberOfBlogEntries;
+  }
+
+  /**
+   * Removes a blog entry from all of its tags.
+   */
+  private void removeBlogEntry(String blogEntryId) {
+    Set<IndexedTag> indexedTags = blogEntryTags.remove(blogEntryId);
+    if (indexedTags != null) {
+      for (IndexedTag tag : indexedTags) {
+        tag.removeBlogEntry(blogEntryId);
+      }
+    }
+  }
+
+  /**
+   * Called when the number of blog entries for a tag has changed, to keep
+   * the counts and the ordered list of tags up to date.
+   */
+  private void countChanged(IndexedTag tag, int previousNumberOfBlogEntries) {
+    int numberOfBlogEntries = tag.getNumberOfBlogEntries();
+    if (previousNumberOfBlogEntries > 0) {
+      int count = tagCounts.get(previousNumberOfBlogEntries);
+      if (count == 1) {
+        tagCounts.remove(previousNumberOfBlogEntries);
+      } else {
+        tagCounts.put(previousNumberOfBlogEntries, count - 1);
+      }
+    }
+    if (numberOfBlogEntries > 0) {
+      Integer count = tagCounts.get(numberOfBlogEntries);
+      tagCounts.put(numberOfBlogEntries, count == null ? 1 : count + 1);
+    }
+
+    int index = Collections.binarySearch(orderedTags, tag, TAG_NAME_COMPARATOR);
+    if (numberOfBlogEntries > 0 && index < 0) {
+      orderedTags.add(-index - 1, tag);
+    } else if (numberOfBlogEntries == 0 && index >= 0) {
+      orderedTags.remove(index);
+    }
   }
 
   /**
    * Helper method to load the index.
    */
   private void readIndex() {
-    File indexFile = new File(blog.getIndexesDirectory(), "tags.index");
+    File indexFile = new File(blog.getIndexesDirectory(), INDEX_FILE);
     if (indexFile.exists()) {
       try {
         BufferedReader reader = new BufferedReader(new FileReader(indexFile));
@@ -139,7 +266,7 @@ public class TagIndex {
           if (tuple.length > 1 && tuple[1] != null) {
             String[] blogEntries = tuple[1].split(",");
             for (String blogEntry : blogEntries) {
-              tag.addBlogEntry(blogEntry);
+              addBlogEntry(tag, blogEntry);
             }
           }
 
@@ -154,28 +281,114 @@ public class TagIndex {
   }
 
   /**
-   * Helper method to write out the index to disk.
+   * Helper method to replay the log over the index.
+   *
+   * @return  the number of entries in the log
    */
-  private void writeIndex() {
-    try {
-      File indexFile = new File(blog.getIndexesDirectory(), "tags.index");
-      BufferedWriter writer = new BufferedWriter(new FileWriter(indexFile));
-
-      for (IndexedTag tag : tags.values()) {
-        writer.write(tag.getName());
-        writer.write("=");
-        for (String blogEntry : tag.getBlogEntries()) {
-          writer.write(blogEntry);
-          writer.write(",");
+  private int readLog() {
+    int entries = 0;
+    File logFile = new File(blog.getIndexesDirectory(), LOG_FILE);
+    if (logFile.exists()) {
+      try {
+        BufferedReader reader = new BufferedReader(new FileReader(logFile));
+        String entry = reader.readLine();
+        while (entry != null) {
+          if (entry.length() > 1) {
+            char type = entry.charAt(0);
+            if (type == '+') {
+              String[] tuple = entry.substring(1).split("=");
+              if (tuple.length > 1) {
+                for (String tag : tuple[1].split(",")) {
+                  if (tag.length() > 0) {
+                    addBlogEntry(getTag(tag), tuple[0]);
+                  }
+                }
+              }
+            } else if (type == '-') {
+              removeBlogEntry(entry.substring(1));
+            }
+            entries++;
+          }
+          entry = reader.readLine();
         }
-        writer.newLine();
+
+        reader.close();
+      } catch (Exception e) {
+        log.error("Error while reading index", e);
       }
+    }
 
+    return entries;
+  }
+
+  /**
+   * Appends a change to the log, compacting the log into the index once
+   * it is as big as the index. This means that the cost of rewriting the
+   * index is spread over at least as many changes as there are tags.
+   */
+  private void appendToLog(String entry) {
+    try {
+      File logFile = new File(blog.getIndexesDirectory(), LOG_FILE);
+      BufferedWriter writer = new BufferedWriter(new FileWriter(logFile, true));
+      writer.write(entry);
+      writer.newLine();
       writer.flush();
       writer.close();
     } catch (Exception e) {
       log.error("Error while writing index", e);
     }
+
+    logEntries++;
+    if (logEntries >= Math.max(COMPACTION_THRESHOLD, tags.size())) {
+      compact();
+    }
+  }
+
+  /**
+   * Compacts the log, writing out the index in full.
+   */
+  synchronized void compact() {
+    if (writeIndex()) {
+      new File(blog.getIndexesDirectory(), LOG_FILE).delete();
+      logEntries = 0;
+    }
+  }
+
+  /**
+   * Helper method to write out the index to disk. The index is written to
+   * a temporary file that then replaces it, so that the index (and the
+   * log) are left alone if it can't be written.
+   *
+   * @return  true if the index was written, false otherwise
+   */
+  private boolean writeIndex() {
+    File indexFile = new File(blog.getIndexesDirectory(), INDEX_FILE);
+    File tempFile = new File(blog.getIndexesDirectory(), INDEX_FILE + ".tmp");
+    try {
+      BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile));
+      try {
+        for (IndexedTag tag : tags.values()) {
+          writer.write(tag.getName());
+          writer.write("=");
+          for (String blogEntry : tag.getBlogEntries()) {
+            writer.write(blogEntry);
+            writer.write(",");
+          }
+          writer.newLine();
+        }
+      } finally {
+        writer.close();
+      }
+
+      Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+      return true;
+    } catch (Exception e) {
+      log.error("Error while writing index", e);
+      tempFile.delete();
+
+      return false;
+    }
   }
 
   /**
@@ -189,46 +402,74 @@ public class TagIndex {
     IndexedTag tag = tags.get(encodedName);
     if (tag == null) {
       tag = new IndexedTag(name, blog);
+      tag.calculateRank(thresholds);
       tags.put(encodedName, tag);
     }
     return tag;
   }
 
+  /**
+   * Recalculates the counts, thresholds and ranks of all tags from scratch.
+   */
   private synchronized void recalculateTagRankings() {
-    if (tags.size() > 0) {
-      // find the maximum
-      int maxBlogEntries = 0;
-      for (IndexedTag tag : tags.values()) {
-        if (tag.getNumberOfBlogEntries() > maxBlogEntries) {
-          maxBlogEntries = tag.getNumberOfBlogEntries();
-        }
+    tagCounts = new TreeMap<Integer,Integer>();
+    orderedTags = new ArrayList<Tag>();
+    for (IndexedTag tag : tags.values()) {
+      int numberOfBlogEntries = tag.getNumberOfBlogEntries();
+      if (numberOfBlogEntries > 0) {
+        Integer count = tagCounts.get(numberOfBlogEntries);
+        tagCounts.put(numberOfBlogEntries, count == null ? 1 : count + 1);
+        orderedTags.add(tag);
       }
+    }
+    Collections.sort(orderedTags);
 
-      int[] thresholds = new int[10];
-      for (int i = 0; i < 10; i++) {
-        thresholds[i] = (int)Math.round((maxBlogEntries/10.0) * (i+1));
-      }
+    thresholds = calculateThresholds();
+    for (IndexedTag tag : tags.values()) {
+      tag.calculateRank(thresholds);
+    }
+  }
 
-      orderedTags = new ArrayList<Tag>();
+  /**
+   * Recalculates the ranks of the given tags, or of all tags if the
+   * thresholds between the ranks have changed.
+   */
+  private void updateTagRankings(Collection<IndexedTag> changedTags) {
+    if (changedTags.isEmpty()) {
+      return;
+    }
 
-      // now rank the tags
+    int[] newThresholds = calculateThresholds();
+    if (Arrays.equals(thresholds, newThresholds)) {
+      for (IndexedTag tag : changedTags) {
+        tag.calculateRank(thresholds);
+      }
+    } else {
+      thresholds = newThresholds;
       for (IndexedTag tag : tags.values()) {
         tag.calculateRank(thresholds);
-
-        if (tag.getNumberOfBlogEntries() > 0) {
-          orderedTags.add(tag);
-        }
       }
+    }
+  }
 
-      Collections.sort(orderedTags);
+  /**
+   * Calculates the thresholds between ranks, which split the range from
+   * zero to the maximum number of blog entries for any tag into equal parts.
+   */
+  private int[] calculateThresholds() {
+    int maxBlogEntries = tagCounts.isEmpty() ? 0 : tagCounts.lastKey();
+    int[] t = new int[NUMBER_OF_RANKS];
+    for (int i = 0; i < NUMBER_OF_RANKS; i++) {
+      t[i] = (int)Math.round((maxBlogEntries/(double)NUMBER_OF_RANKS) * (i+1));
     }
 
+    return t;
   }
 
   /**
    * Gets the list of tags associated with this blog.
    */
-  public List<Tag> getTags() {
+  public synchronized List<Tag> getTags() {
     return new ArrayList<Tag>(orderedTags);
   }
 
@@ -242,4 +483,21 @@ public class TagIndex {
     return new ArrayList<String>(getTag(tag.getName()).getBlogEntries());
   }
 
+  /**
+   * Gets all of the blog entries for a given tag, most recent first. Unlike
+   * getRecentBlogEntries(), this doesn't add the tag to the index if it
+   * isn't already there.
+   *
+   * @param tag   a tag
+   * @return  a List of blog entry IDs (empty if the tag isn't in the index)
+   */
+  public synchronized List<String> getBlogEntries(Tag tag) {
+    IndexedTag t = tags.get(Tag.encode(tag.getName()));
+    if (t != null) {
+      return t.getBlogEntries();
+    } else {
+      return new ArrayList<String>();
+    }
+  }
+
 }
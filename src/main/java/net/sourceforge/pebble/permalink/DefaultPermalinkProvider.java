@@ -39,6 +39,7 @@ import net.sourceforge.pebble.domain.BlogServiceException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.regex.Pattern;
 
 /**
  * Generates permalinks using the pattern /YYYY/MM/DD/<time-in-millis>.
@@ -48,7 +49,7 @@ import java.util.Date;
 public class DefaultPermalinkProvider extends PermalinkProviderSupport {
 
   /** the regex used to check for a blog entry permalink : /yyyy/mm/dd/blogentryid.html */
-  private static final String BLOG_ENTRY_PERMALINK_REGEX = "/\\d\\d\\d\\d/\\d\\d/\\d\\d/\\d*.html";
+  private static final Pattern BLOG_ENTRY_PERMALINK_PATTERN = Pattern.compile("/\\d\\d\\d\\d/\\d\\d/\\d\\d/\\d*.html");
 
   /**
    * Gets the permalink for a blog entry.
@@ -88,7 +89,7 @@ public class DefaultPermalinkProvider extends PermalinkProviderSupport {
    */
   public boolean isBlogEntryPermalink(String uri) {
     if (uri != null) {
-      return uri.matches(BLOG_ENTRY_PERMALINK_REGEX);
+      return BLOG_ENTRY_PERMALINK_PATTERN.matcher(uri).matches();
     } else {
       return false;
     }
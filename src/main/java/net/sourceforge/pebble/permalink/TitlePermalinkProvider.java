@@ -36,6 +36,7 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.regex.Pattern;
 
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.BlogEntry;
@@ -60,7 +61,7 @@ import net.sourceforge.pebble.domain.Day;
 public class TitlePermalinkProvider extends PermalinkProviderSupport {
 
   /** the regex used to check for a blog entry permalink */
-  private static final String BLOG_ENTRY_PERMALINK_REGEX = "/\\d\\d\\d\\d/\\d\\d/\\d\\d/[\\w]*.html";
+  private static final Pattern BLOG_ENTRY_PERMALINK_PATTERN = Pattern.compile("/\\d\\d\\d\\d/\\d\\d/\\d\\d/[\\w]*.html");
 
   /**
    * Gets the permalink for a blog entry.
@@ -128,7 +129,7 @@ public class TitlePermalinkProvider extends PermalinkProviderSupport {
    */
   public boolean isBlogEntryPermalink(String uri) {
     if (uri != null) {
-      return uri.matches(BLOG_ENTRY_PERMALINK_REGEX);
+      return BLOG_ENTRY_PERMALINK_PATTERN.matcher(uri).matches();
     } else {
       return false;
     }
@@ -33,7 +33,9 @@ package net.sourceforge.pebble.search;
 
 import net.sourceforge.pebble.domain.Blog;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
 /**
  * A container for the results of a search (a search hit).
@@ -69,6 +71,18 @@ public class SearchHit {
   /** the number of this result */
   private int number;
 
+  /** the author of the blog entry */
+  private String author;
+
+  /** the IDs of the categories that the blog entry is in */
+  private List<String> categoryIds = Collections.emptyList();
+
+  /** the title, with the matching terms highlighted */
+  private String highlightedTitle;
+
+  /** fragments of the content, with the matching terms highlighted */
+  private String highlightedExcerpt;
+
   /**
    * Creates a new instance with the specified message.
    */
@@ -173,4 +187,57 @@ public class SearchHit {
     return subtitle;
   }
 
+  /**
+   * Gets the author of the matching blog entry.
+   *
+   * @return  the author's username (can be null)
+   */
+  public String getAuthor() {
+    return author;
+  }
+
+  public void setAuthor(String author) {
+    this.author = author;
+  }
+
+  /**
+   * Gets the IDs of the categories that the matching blog entry is in.
+   *
+   * @return  a List of category IDs
+   */
+  public List<String> getCategoryIds() {
+    return categoryIds;
+  }
+
+  public void setCategoryIds(List<String> categoryIds) {
+    this.categoryIds = categoryIds;
+  }
+
+  /**
+   * Gets the title with the terms that matched the query highlighted.
+   *
+   * @return  an HTML String, or null if the title didn't match
+   */
+  public String getHighlightedTitle() {
+    return highlightedTitle;
+  }
+
+  public void setHighlightedTitle(String highlightedTitle) {
+    this.highlightedTitle = highlightedTitle;
+  }
+
+  /**
+   * Gets fragments of the content with the terms that matched the query
+   * highlighted.
+   *
+   * @return  an HTML String, or null if the content didn't match
+   */
+  public String getHighlightedExcerpt() {
+    return highlightedExcerpt;
+  }
+
+  public void setHighlightedExcerpt(String highlightedExcerpt) {
+    this.highlightedExcerpt = highlightedExcerpt;
+  }
+
 }
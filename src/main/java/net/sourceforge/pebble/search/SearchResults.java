@@ -38,7 +38,9 @@ import net.sourceforge.pebble.util.StringUtils;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A container for the results (hits) of a search.
@@ -53,9 +55,24 @@ public class SearchResults {
   /** an optional message */
   private String message;
 
-  /** the collection of search results */
+  /** the collection of search results (which may only be a page of them) */
   private List hits = new ArrayList();
 
+  /** the total number of hits */
+  private int numberOfHits;
+
+  /** the number of hits before the first in this collection */
+  private int offset;
+
+  /** identifies where the next page of hits starts */
+  private String nextPageCursor;
+
+  /** a corrected query, when the query has misspelt words */
+  private String suggestedQuery;
+
+  /** the facet counts, keyed on facet (e.g. tag) and then value */
+  private Map<String, Map<String, Integer>> facets = new LinkedHashMap<String, Map<String, Integer>>();
+
   /**
    * Gets the query that was used to generate these results.
    *
@@ -101,19 +118,101 @@ public class SearchResults {
    */
   public void add(SearchHit hit) {
     hits.add(hit);
+    numberOfHits = Math.max(numberOfHits, offset + hits.size());
   }
 
   /**
-   * Gets the number of hits that the query returned.
+   * Gets the number of hits that the query returned. When the results
+   * only contain a page of hits, this is the total number.
    *
    * @return  the number of hits as an int
    */
   public int getNumberOfHits() {
-    return hits.size();
+    return numberOfHits;
+  }
+
+  /**
+   * Sets the total number of hits that the query returned.
+   *
+   * @param numberOfHits    the number of hits as an int
+   */
+  public void setNumberOfHits(int numberOfHits) {
+    this.numberOfHits = numberOfHits;
+  }
+
+  /**
+   * Gets the number of hits that come before the first in these results.
+   *
+   * @return  the offset as an int
+   */
+  public int getOffset() {
+    return offset;
+  }
+
+  public void setOffset(int offset) {
+    this.offset = offset;
+  }
+
+  /**
+   * Gets the cursor that can be used to get the next page of hits.
+   *
+   * @return  an opaque String, or null if there are no more hits
+   */
+  public String getNextPageCursor() {
+    return nextPageCursor;
+  }
+
+  public void setNextPageCursor(String nextPageCursor) {
+    this.nextPageCursor = nextPageCursor;
+  }
+
+  /**
+   * Gets a corrected version of the query, which is only worked out when
+   * the query returned no hits.
+   *
+   * @return  the corrected query, or null if there isn't one
+   */
+  public String getSuggestedQuery() {
+    return suggestedQuery;
+  }
+
+  public void setSuggestedQuery(String suggestedQuery) {
+    this.suggestedQuery = suggestedQuery;
+  }
+
+  /**
+   * Gets the facet counts for all of the hits, keyed on facet name
+   * (tag, category, author or year).
+   *
+   * @return  a Map of facet name to a Map of value to count, with the
+   *          values in descending order of count
+   */
+  public Map<String, Map<String, Integer>> getFacets() {
+    return facets;
+  }
+
+  /**
+   * Gets the counts for a single facet.
+   *
+   * @param name    the facet name (e.g. tag)
+   * @return  a Map of value to count, which is empty if none of the hits
+   *          have a value for the facet
+   */
+  public Map<String, Integer> getFacet(String name) {
+    Map<String, Integer> counts = facets.get(name);
+    if (counts == null) {
+      counts = Collections.emptyMap();
+    }
+
+    return counts;
+  }
+
+  public void setFacet(String name, Map<String, Integer> counts) {
+    facets.put(name, counts);
   }
 
   /**
-   * Gets a collection containing all of the hits.
+   * Gets a collection containing all of the hits (or the page of hits).
    *
    * @return  a Collection of SearchHit instances
    */
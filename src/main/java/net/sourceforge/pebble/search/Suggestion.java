@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.search;
+
+/**
+ * A suggestion for something to search for, made as the reader types.
+ *
+ * @author    Simon Brown
+ */
+public class Suggestion {
+
+  /** the suggestion is the title of a blog entry or static page */
+  public static final String TITLE = "title";
+
+  /** the suggestion is a tag */
+  public static final String TAG = "tag";
+
+  /** the suggested text */
+  private final String text;
+
+  /** whether the text is a title or a tag */
+  private final String type;
+
+  /** where the suggestion links to */
+  private final String permalink;
+
+  public Suggestion(String text, String type, String permalink) {
+    this.text = text;
+    this.type = type;
+    this.permalink = permalink;
+  }
+
+  /**
+   * Gets the suggested text.
+   *
+   * @return  a String
+   */
+  public String getText() {
+    return text;
+  }
+
+  /**
+   * Gets the type of suggestion.
+   *
+   * @return  TITLE or TAG
+   */
+  public String getType() {
+    return type;
+  }
+
+  /**
+   * Gets the permalink of the blog entry, static page or tag.
+   *
+   * @return  an absolute URL as a String
+   */
+  public String getPermalink() {
+    return permalink;
+  }
+
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sourceforge.pebble.security;
+
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A short-lived cache of credentials that have recently been verified, so
+ * that clients making lots of calls in quick succession (e.g. XML-RPC
+ * blogging clients) don't pay for a full password check on every one.
+ * <p>
+ * Passwords are never stored; entries hold a keyed hash (HMAC) of the
+ * password, using a random key that only lives as long as this class.
+ * Only successful authentications are cached, and entries are discarded
+ * when the security realm changes the user. Concurrent authentications for
+ * the same user are serialized so that only one of them does the work.
+ *
+ * @author    Simon Brown
+ */
+public class CredentialCache {
+
+  /** how long verified credentials are trusted for, in milliseconds */
+  public static final long DEFAULT_TIME_TO_LIVE = 5 * 60 * 1000;
+
+  /** the maximum number of users whose credentials are cached */
+  public static final int DEFAULT_MAXIMUM_SIZE = 1000;
+
+  private static final int NUMBER_OF_LOCKS = 64;
+
+  private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+  private static final CredentialCache instance = new CredentialCache(DEFAULT_TIME_TO_LIVE, DEFAULT_MAXIMUM_SIZE);
+
+  private final long timeToLive;
+  private final Map<String,Credential> credentials;
+  private final Object[] locks = new Object[NUMBER_OF_LOCKS];
+  private final SecretKeySpec key;
+
+  /** incremented whenever credentials are invalidated, guarded by credentials */
+  private long generation = 0;
+
+  /**
+   * Gets the singleton CredentialCache instance.
+   *
+   * @return  a CredentialCache instance
+   */
+  public static CredentialCache getInstance() {
+    return instance;
+  }
+
+  CredentialCache(long timeToLive, final int maximumSize) {
+    this.timeToLive = timeToLive;
+    this.credentials = new LinkedHashMap<String,Credential>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<String,Credential> eldest) {
+        return size() > maximumSize;
+      }
+    };
+
+    for (int i = 0; i < locks.length; i++) {
+      locks[i] = new Object();
+    }
+
+    byte[] secret = new byte[32];
+    new SecureRandom().nextBytes(secret);
+    this.key = new SecretKeySpec(secret, HMAC_ALGORITHM);
+  }
+
+  /**
+   * Authenticates the given username and password, using the cached result
+   * if the same credentials were verified by the same authentication manager
+   * recently.
+   *
+   * @param authenticationManager   the AuthenticationManager to verify credentials with
+   * @param username    the username
+   * @param password    the password
+   * @return  an Authentication instance
+   * @throws AuthenticationException    if the credentials are not valid
+   */
+  public Authentication authenticate(AuthenticationManager authenticationManager, String username, String password) throws AuthenticationException {
+    if (username == null || password == null) {
+      return authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(username, password));
+    }
+
+    byte[] hash = hash(username, password);
+    Authentication auth = get(authenticationManager, username, hash);
+    if (auth != null) {
+      return auth;
+    }
+
+    synchronized (locks[(username.hashCode() & 0x7fffffff) % locks.length]) {
+      // another thread may have verified the same credentials while we were waiting
+      auth = get(authenticationManager, username, hash);
+      if (auth != null) {
+        return auth;
+      }
+
+      long generationBefore;
+      synchronized (credentials) {
+        generationBefore = generation;
+      }
+
+      auth = authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(username, password));
+
+      synchronized (credentials) {
+        // don't cache the result if the user has been changed in the meantime
+        if (generation == generationBefore) {
+          credentials.put(username, new Credential(authenticationManager, hash, auth, System.currentTimeMillis() + timeToLive));
+        }
+      }
+
+      return auth;
+    }
+  }
+
+  private Authentication get(AuthenticationManager authenticationManager, String username, byte[] hash) {
+    synchronized (credentials) {
+      Credential credential = credentials.get(username);
+      if (credential == null) {
+        return null;
+      }
+
+      if (credential.expires <= System.currentTimeMillis()) {
+        credentials.remove(username);
+        return null;
+      }
+
+      if (credential.authenticationManager == authenticationManager && MessageDigest.isEqual(credential.hash, hash)) {
+        return credential.authentication;
+      }
+
+      return null;
+    }
+  }
+
+  /**
+   * Discards any cached credentials for the given user, e.g. when their
+   * password or roles have been changed.
+   *
+   * @param username    the username
+   */
+  public void invalidate(String username) {
+    synchronized (credentials) {
+      credentials.remove(username);
+      generation++;
+    }
+  }
+
+  /**
+   * Discards all cached credentials.
+   */
+  public void invalidateAll() {
+    synchronized (credentials) {
+      credentials.clear();
+      generation++;
+    }
+  }
+
+  private byte[] hash(String username, String password) {
+    try {
+      Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+      mac.init(key);
+      mac.update(username.getBytes(StandardCharsets.UTF_8));
+      mac.update((byte)0);
+      return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+    } catch (GeneralSecurityException gse) {
+      // HmacSHA256 is required to be supported by all Java platforms
+      throw new IllegalStateException(gse);
+    }
+  }
+
+  /**
+   * Verified credentials for a single user.
+   */
+  private static class Credential {
+
+    private final AuthenticationManager authenticationManager;
+    private final byte[] hash;
+    private final Authentication authentication;
+    private final long expires;
+
+    private Credential(AuthenticationManager authenticationManager, byte[] hash, Authentication authentication, long expires) {
+      this.authenticationManager = authenticationManager;
+      this.hash = hash;
+      this.authentication = authentication;
+      this.expires = expires;
+    }
+
+  }
+
+}
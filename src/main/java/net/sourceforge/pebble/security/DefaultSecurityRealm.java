@@ -71,9 +71,15 @@ public class DefaultSecurityRealm implements SecurityRealm, ApplicationListener
 
   private PasswordEncoder passwordEncoder;
 
+  /** how often (in milliseconds) the realm directory is checked for external changes */
+  private long refreshInterval = 1000;
+
   /** Map of open ids to users, cached in a copy on write map */
   private volatile Map<String, String> openIdMap;
 
+  /** the users in the realm, replaced (never modified) when a user changes */
+  private volatile UserSnapshot snapshot;
+
   /**
    * Creates the underlying security realm upon creation, if necessary, and initialises the openIdMap.
    *
@@ -116,8 +122,111 @@ public class DefaultSecurityRealm implements SecurityRealm, ApplicationListener
    *
    * @return  a Collection of PebbleUserDetails objects
    */
-  public synchronized Collection<PebbleUserDetails> getUsers() throws SecurityRealmException {
+  public Collection<PebbleUserDetails> getUsers() throws SecurityRealmException {
     LinkedList<PebbleUserDetails> users = new LinkedList<PebbleUserDetails>();
+    for (PebbleUserDetails pud : getSnapshot().sortedUsers) {
+      users.add(copy(pud));
+    }
+
+    return users;
+  }
+
+  /**
+   * Looks up and returns user details for the given username.
+   *
+   * @param username the username to find details for
+   * @return a PebbleUserDetails instance
+   *
+   */
+  public PebbleUserDetails getUser(String username) throws SecurityRealmException {
+    PebbleUserDetails pud = getSnapshot().users.get(username);
+    if (pud == null) {
+      return null;
+    }
+
+    // callers are free to modify what they get back, so hand out a copy
+    return copy(pud);
+  }
+
+  /**
+   * Gets the current snapshot of users, reloading it if the realm directory
+   * has been changed outside of this class. The file system is checked at
+   * most once every refreshInterval milliseconds.
+   */
+  private UserSnapshot getSnapshot() throws SecurityRealmException {
+    UserSnapshot snapshot = this.snapshot;
+    long now = System.currentTimeMillis();
+    if (snapshot != null && now - snapshot.checked < refreshInterval) {
+      return snapshot;
+    }
+
+    synchronized (this) {
+      snapshot = this.snapshot;
+      if (snapshot != null && now - snapshot.checked < refreshInterval) {
+        return snapshot;
+      }
+
+      Map<String,String> stamps = getStamps();
+      if (snapshot == null || !snapshot.stamps.equals(stamps)) {
+        boolean reloading = (snapshot != null);
+        if (reloading) {
+          log.info("Security realm has been changed on disk, reloading users");
+        }
+        Map<String,PebbleUserDetails> users = new HashMap<String,PebbleUserDetails>();
+        for (String username : stamps.keySet()) {
+          PebbleUserDetails pud = readUser(username);
+          if (pud != null) {
+            users.put(username, pud);
+          }
+        }
+        snapshot = new UserSnapshot(users, stamps, now);
+        this.snapshot = snapshot;
+
+        // only once the new users are visible, otherwise a login in between
+        // could cache credentials checked against the old ones
+        if (reloading) {
+          CredentialCache.getInstance().invalidateAll();
+        }
+      } else {
+        snapshot = new UserSnapshot(snapshot.users, stamps, now);
+        this.snapshot = snapshot;
+      }
+      return snapshot;
+    }
+  }
+
+  /**
+   * Replaces the snapshot after the given user has been written or removed
+   * by this class. Only that user's file is stamped, and it's stamped before
+   * it's read back, so a change made to it (or to any other user's file)
+   * outside of this class is still picked up by the next check.
+   */
+  private synchronized void publish(String username) throws SecurityRealmException {
+    UserSnapshot current = getSnapshot();
+    Map<String,PebbleUserDetails> users = new HashMap<String,PebbleUserDetails>(current.users);
+    Map<String,String> stamps = new HashMap<String,String>(current.stamps);
+    File file = getFileForUser(username);
+    String stamp = getStamp(file);
+    PebbleUserDetails pud = readUser(username);
+    if (pud != null && stamp != null) {
+      users.put(username, pud);
+      stamps.put(username, stamp);
+    } else {
+      users.remove(username);
+      stamps.remove(username);
+    }
+    this.snapshot = new UserSnapshot(users, stamps, System.currentTimeMillis());
+
+    // invalidated after the new snapshot is visible, so that a login that
+    // started against the old one can't cache its result
+    CredentialCache.getInstance().invalidate(username);
+  }
+
+  /**
+   * Gets the size and last modified time of each user file, keyed on username.
+   */
+  private Map<String,String> getStamps() throws SecurityRealmException {
+    Map<String,String> stamps = new HashMap<String,String>();
     File realm = getFileForRealm();
     File files[] = realm.listFiles(new FilenameFilter() {
       /**
@@ -133,26 +242,36 @@ public class DefaultSecurityRealm implements SecurityRealm, ApplicationListener
       }
     });
 
-    for (File file : files) {
-      PebbleUserDetails pud = getUser(file.getName().substring(0, file.getName().lastIndexOf(".")));
-      if (pud != null) {
-        users.add(pud);
+    if (files != null) {
+      for (File file : files) {
+        stamps.put(file.getName().substring(0, file.getName().lastIndexOf(".")), getStamp(file));
       }
     }
 
-    Collections.sort(users, new PebbleUserDetailsComparator());
+    return stamps;
+  }
+
+  /**
+   * Gets the size and last modified time of a user file.
+   *
+   * @return  the stamp, or null if the file doesn't exist
+   */
+  private String getStamp(File file) {
+    if (!file.exists()) {
+      return null;
+    }
 
-    return users;
+    // include the size, so that most edits within the same second show up
+    return file.lastModified() + ":" + file.length();
   }
 
   /**
-   * Looks up and returns user details for the given username.
+   * Reads user details for the given username from disk.
    *
    * @param username the username to find details for
-   * @return a PebbleUserDetails instance
-   *
+   * @return a PebbleUserDetails instance, or null if the user doesn't exist
    */
-  public synchronized PebbleUserDetails getUser(String username) throws SecurityRealmException {
+  private PebbleUserDetails readUser(String username) throws SecurityRealmException {
     File user = getFileForUser(username);
     if (!user.exists()) {
       return null;
@@ -188,6 +307,10 @@ public class DefaultSecurityRealm implements SecurityRealm, ApplicationListener
     }
   }
 
+  private static PebbleUserDetails copy(PebbleUserDetails pud) {
+    return new PebbleUserDetails(pud.getUsername(), pud.getPassword(), pud.getName(), pud.getEmailAddress(), pud.getWebsite(), pud.getProfile(), pud.getRoles(), pud.getPreferences(), pud.isDetailsUpdateable());
+  }
+
   public PebbleUserDetails getUserForOpenId(String openId) throws SecurityRealmException {
     String username = openIdMap.get(openId);
     if (username == null) {
@@ -275,6 +398,8 @@ public class DefaultSecurityRealm implements SecurityRealm, ApplicationListener
     } catch (IOException ioe) {
       throw new SecurityRealmException(ioe);
     }
+
+    publish(pud.getUsername());
   }
 
   /**
@@ -306,6 +431,8 @@ public class DefaultSecurityRealm implements SecurityRealm, ApplicationListener
     if (user.exists()) {
       throw new SecurityRealmException("User " + username + " could not be deleted");
     }
+
+    publish(username);
   }
 
   protected File getFileForRealm() throws SecurityRealmException {
@@ -328,6 +455,14 @@ public class DefaultSecurityRealm implements SecurityRealm, ApplicationListener
     this.configuration = configuration;
   }
 
+  public long getRefreshInterval() {
+    return refreshInterval;
+  }
+
+  public void setRefreshInterval(long refreshInterval) {
+    this.refreshInterval = refreshInterval;
+  }
+
   public PasswordEncoder getPasswordEncoder() {
     return passwordEncoder;
   }
@@ -336,4 +471,25 @@ public class DefaultSecurityRealm implements SecurityRealm, ApplicationListener
     this.passwordEncoder = passwordEncoder;
   }
 
-}
\ No newline at end of file
+  /**
+   * An immutable view of the users in the realm.
+   */
+  private static class UserSnapshot {
+
+    private final Map<String,PebbleUserDetails> users;
+    private final List<PebbleUserDetails> sortedUsers;
+    private final Map<String,String> stamps;
+    private final long checked;
+
+    UserSnapshot(Map<String,PebbleUserDetails> users, Map<String,String> stamps, long checked) {
+      List<PebbleUserDetails> sortedUsers = new ArrayList<PebbleUserDetails>(users.values());
+      Collections.sort(sortedUsers, new PebbleUserDetailsComparator());
+
+      this.users = Collections.unmodifiableMap(users);
+      this.sortedUsers = Collections.unmodifiableList(sortedUsers);
+      this.stamps = stamps;
+      this.checked = checked;
+    }
+  }
+
+}
@@ -32,10 +32,12 @@
 
 package net.sourceforge.pebble.trackback;
 
+import net.sourceforge.pebble.PebbleContext;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Manages tokens for generating TrackBack links.
@@ -60,8 +62,8 @@ public class TrackBackTokenManager {
    * Private constructor for the singleton pattern.
    */
   private TrackBackTokenManager() {
-    // create a new TimerTask that will purge invalid tokens
-    TimerTask task = new TimerTask() {
+    // periodically purge expired tokens
+    Runnable task = new Runnable() {
       public void run() {
         synchronized (TrackBackTokenManager.this) {
           log.debug("Purging expired tokens");
@@ -76,8 +78,8 @@ public class TrackBackTokenManager {
       }
     };
 
-    Timer timer = new Timer();
-    timer.schedule(task, 2 * TIME_TO_LIVE);
+    PebbleContext.getInstance().getScheduler().scheduleAtFixedRate(
+        "trackback-token-purge", task, TIME_TO_LIVE, TIME_TO_LIVE, TimeUnit.MILLISECONDS);
   }
 
   /**
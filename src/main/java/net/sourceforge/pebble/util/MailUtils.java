@@ -48,8 +48,7 @@ import javax.mail.internet.MimeUtility;
 import javax.naming.Context;
 import javax.naming.InitialContext;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Utilities for e-mail related functions.
@@ -62,8 +61,6 @@ public class MailUtils {
   private static Log log = LogFactory.getLog(MailUtils.class);
   private static String ENCODING = "UTF-8";
 
-  /** thread pool used to send e-mail */
-  private static ExecutorService pool = Executors.newFixedThreadPool(1);
 
   /**
    * Get the prefix to be used for blog entry emails
@@ -185,7 +182,12 @@ public class MailUtils {
    */
   public static void sendMail(Session session, Blog blog, Collection to, Collection cc, Collection bcc, String subject, String message) {
     Runnable r = new SendMailRunnable(session, blog, to, cc, bcc, subject, message);
-    pool.execute(r);
+    try {
+      PebbleContext.getInstance().getScheduler().execute("mail", r);
+    } catch (RejectedExecutionException ree) {
+      // the scheduler has been shut down, so send it from this thread
+      r.run();
+    }
   }
 
   /**
@@ -48,6 +48,12 @@ public class Pageable<T> {
   /** the list over which this class is paging */
   private List<T> list;
 
+  /** the position of the first item in the list, when it's part of a larger list */
+  private int offset;
+
+  /** the size of the list being paged over */
+  private int size;
+
   /** the page size */
   private int pageSize = DEFAULT_PAGE_SIZE;
 
@@ -69,7 +75,21 @@ public class Pageable<T> {
    * @param list    a List
    */
   public Pageable(List<T> list) {
+    this(list, 0, list.size());
+  }
+
+  /**
+   * Creates a new instance where only part of the list being paged over
+   * is available, e.g. a page of search results.
+   *
+   * @param list      the available part of the list
+   * @param offset    the position of the first item of the available part
+   * @param size      the size of the whole list
+   */
+  public Pageable(List<T> list, int offset, int size) {
     this.list = list;
+    this.offset = offset;
+    this.size = size;
     this.page = 1;
     this.maxPages = 1;
 
@@ -79,10 +99,10 @@ public class Pageable<T> {
   private void calculatePages() {
     if (pageSize > 0) {
       // calculate how many pages there are
-      if (list.size() % pageSize == 0) {
-        maxPages = list.size() / pageSize;
+      if (size % pageSize == 0) {
+        maxPages = size / pageSize;
       } else {
-        maxPages = (list.size() / pageSize) + 1;
+        maxPages = (size / pageSize) + 1;
       }
     }
   }
@@ -102,7 +122,9 @@ public class Pageable<T> {
    * @return  a List
    */
   public List<T> getListForPage() {
-    return list.subList(startingIndex, endingIndex);
+    int from = Math.max(0, Math.min(startingIndex - offset, list.size()));
+    int to = Math.max(from, Math.min(endingIndex - offset, list.size()));
+    return list.subList(from, to);
   }
 
   /**
@@ -153,8 +175,8 @@ public class Pageable<T> {
       startingIndex = 0;
     }
     endingIndex = startingIndex + pageSize;
-    if (endingIndex > list.size()) {
-      endingIndex = list.size();
+    if (endingIndex > size) {
+      endingIndex = size;
     }
   }
 
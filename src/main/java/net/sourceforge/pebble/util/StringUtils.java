@@ -502,18 +502,124 @@ public final class StringUtils {
    * @return    the filtered String
    */
   public static String filterHTML(String s) {
+    return filterHTML(s, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Filters out all HTML tags, along with the content of script and style
+   * elements, and comments. The text is scanned rather than matched with
+   * regular expressions, and only as far as needed to produce more than
+   * the given number of characters (where the last isn't whitespace).
+   *
+   * @param s       the String to filter
+   * @param limit   the number of characters needed
+   * @return    the filtered String
+   */
+  private static String filterHTML(String s, int limit) {
     if (s == null) {
       return null;
     }
 
-    s = s.replaceAll("&lt;", "");
-    s = s.replaceAll("&gt;", "");
-    s = s.replaceAll("&nbsp;", "");
-    s = s.replaceAll("(?s)<[Ss][Cc][Rr][Ii][Pp][Tt].*?>.*?</[Ss][Cc][Rr][Ii][Pp][Tt]>", "");
-    s = s.replaceAll("(?s)<[Ss][Tt][Yy][Ll][Ee].*?>.*?</[Ss][Tt][Yy][Ll][Ee]>", "");
-    s = s.replaceAll("(?s)<!--.*?-->", "");
-    s = s.replaceAll("(?s)<.*?>", "");
-    return s;
+    s = s.replace("&lt;", "");
+    s = s.replace("&gt;", "");
+    s = s.replace("&nbsp;", "");
+    if (s.indexOf('<') == -1) {
+      // there are no tags to remove
+      return s;
+    }
+
+    s = removeElements(s, "<script", "</script>");
+    s = removeElements(s, "<style", "</style>");
+    s = removeComments(s);
+
+    // and finally remove the tags, equivalent to replacing <.*?> with ""
+    int length = s.length();
+    StringBuilder buf = new StringBuilder(Math.min(length, limit < length ? limit + 16 : length));
+    int i = 0;
+    while (i < length && (buf.length() <= limit || isWhitespace(buf.charAt(buf.length()-1)))) {
+      char c = s.charAt(i);
+      int endOfTag = (c == '<') ? s.indexOf('>', i + 1) : -1;
+      if (endOfTag == -1) {
+        buf.append(c);
+        i++;
+      } else {
+        i = endOfTag + 1;
+      }
+    }
+
+    return buf.toString();
+  }
+
+  /**
+   * Removes elements along with their content; equivalent to replacing
+   * &lt;name.*?&gt;.*?&lt;/name&gt; (case insensitive) with "".
+   */
+  private static String removeElements(String s, String openingTag, String closingTag) {
+    StringBuilder buf = null;
+    int from = 0;
+    int i = s.indexOf('<');
+    while (i != -1) {
+      int end = -1;
+      if (s.regionMatches(true, i, openingTag, 0, openingTag.length())) {
+        int endOfTag = s.indexOf('>', i + 1);
+        if (endOfTag != -1) {
+          end = indexOfClosingTag(s, closingTag, endOfTag + 1);
+        }
+      }
+
+      if (end == -1) {
+        i = s.indexOf('<', i + 1);
+      } else {
+        if (buf == null) {
+          buf = new StringBuilder(s.length());
+        }
+        buf.append(s, from, i);
+        from = end + closingTag.length();
+        i = s.indexOf('<', from);
+      }
+    }
+
+    if (buf == null) {
+      return s;
+    } else {
+      buf.append(s, from, s.length());
+      return buf.toString();
+    }
+  }
+
+  /**
+   * Removes comments; equivalent to replacing &lt;!--.*?--&gt; with "".
+   */
+  private static String removeComments(String s) {
+    int i = s.indexOf("<!--");
+    if (i == -1) {
+      return s;
+    }
+
+    StringBuilder buf = new StringBuilder(s.length());
+    int from = 0;
+    while (i != -1) {
+      int end = s.indexOf("-->", i + 4);
+      if (end == -1) {
+        break;
+      }
+      buf.append(s, from, i);
+      from = end + 3;
+      i = s.indexOf("<!--", from);
+    }
+    buf.append(s, from, s.length());
+
+    return buf.toString();
+  }
+
+  private static int indexOfClosingTag(String s, String str, int from) {
+    for (int i = s.indexOf('<', from); i != -1 && i <= s.length() - str.length(); i = s.indexOf('<', i + 1)) {
+      if (s.regionMatches(true, i, str, 0, str.length())) {
+        return i;
+      }
+    }
+
+    return -1;
   }
 
   private static String extractFromRegexp(Pattern pattern, String content) {
@@ -546,37 +652,68 @@ public final class StringUtils {
    * @return the processed string
    */
   public static String truncate(String s, int maxLength) {
-    String content = filterHTML(s);
+    // only as much of the content as can possibly end up in the
+    // truncated string needs to be filtered
+    String content = filterHTML(s, maxLength);
 
     // then truncate, if necessary
     if (content == null) {
       return "";
     } else {
-      StringBuilder buf = new StringBuilder();
+      // trailing whitespace is ignored
+      int end = content.length();
+      while (end > 0 && isWhitespace(content.charAt(end-1))) {
+        end--;
+      }
 
-      String words[] = content.split("\\s");
-      for (int i = 0; i < words.length; i++) {
-        if (buf.length() + words[i].length() > maxLength) {
+      StringBuilder buf = new StringBuilder(Math.min(end, maxLength) + 3);
+      int start = 0;
+      while (true) {
+        int next = start;
+        while (next < end && !isWhitespace(content.charAt(next))) {
+          next++;
+        }
+
+        int wordLength = next - start;
+        if (buf.length() + wordLength > maxLength) {
           // truncate here
           buf.append("...");
           return buf.toString();
-        } else if (words[i].length() > MAX_WORD_LENGTH) {
-          // truncate here
-          buf.append(words[i].substring(0, MAX_WORD_LENGTH));
+        } else if (wordLength > MAX_WORD_LENGTH) {
+          // truncate here, but not part way through an entity
+          int cut = start + MAX_WORD_LENGTH;
+          int ampersand = content.lastIndexOf('&', cut - 1);
+          if (ampersand >= start) {
+            int semicolon = content.indexOf(';', ampersand);
+            if (semicolon >= cut && semicolon < next) {
+              cut = ampersand;
+            }
+          }
+          buf.append(content, start, cut);
           buf.append("...");
           return buf.toString();
         } else {
-          buf.append(words[i]);
-          if ((i+1) < words.length) {
+          buf.append(content, start, next);
+          if (next < end) {
             buf.append(" ");
+          } else {
+            return buf.toString();
           }
         }
-      }
 
-      return buf.toString();
+        start = next + 1;
+      }
     }
   }
 
+  /**
+   * Determines whether a character is whitespace, as defined by \\s in
+   * regular expressions.
+   */
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+
   public static String stripScriptTags(String html) {
     if (html == null) {
       return html;
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The application-wide scheduler, used instead of creating a Timer or
+ * executor (and therefore a thread) per component or per blog.
+ * <br /><br />
+ * A small, fixed number of daemon threads run all tasks, so no matter how
+ * many blogs are hosted, only that many tasks run at once. Every task has
+ * a name, under which the number of runs and the time taken are recorded,
+ * and a failing run is logged rather than silently cancelling a periodic
+ * task.
+ *
+ * @author Simon Brown
+ */
+public class TaskScheduler {
+
+  private static final Log log = LogFactory.getLog(TaskScheduler.class);
+
+  /** the default number of threads */
+  public static final int DEFAULT_THREADS = Math.min(4, Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+  /** how long running tasks are given to complete on shutdown */
+  private static final long SHUTDOWN_TIMEOUT = 5000;
+
+  private final ScheduledThreadPoolExecutor executor;
+  private final ConcurrentMap<String,TaskStatistics> statistics = new ConcurrentHashMap<String,TaskStatistics>();
+  private final Random random = new Random();
+
+  public TaskScheduler() {
+    this(DEFAULT_THREADS);
+  }
+
+  public TaskScheduler(int numberOfThreads) {
+    final AtomicInteger threadNumber = new AtomicInteger();
+    executor = new ScheduledThreadPoolExecutor(numberOfThreads, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "pebble-scheduler-" + threadNumber.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    executor.setRemoveOnCancelPolicy(true);
+    executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    executor.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+  }
+
+  /**
+   * Runs a task once, as soon as a thread is free.
+   *
+   * @param name    the name of the task
+   * @param task    the task to run
+   * @return  a Future representing the task
+   */
+  public Future<?> execute(String name, Runnable task) {
+    return executor.submit(wrap(name, task));
+  }
+
+  /**
+   * Runs a task once, after the given delay.
+   *
+   * @param name    the name of the task
+   * @param task    the task to run
+   * @param delay   the delay before the task is run
+   * @param unit    the unit of the delay
+   * @return  a ScheduledFuture that can be used to cancel the task
+   */
+  public ScheduledFuture<?> schedule(String name, Runnable task, long delay, TimeUnit unit) {
+    return executor.schedule(wrap(name, task), delay, unit);
+  }
+
+  /**
+   * Runs a task periodically.
+   *
+   * @param name            the name of the task
+   * @param task            the task to run
+   * @param initialDelay    the delay before the first run
+   * @param period          the period between the start of each run
+   * @param unit            the unit of the delay and period
+   * @return  a ScheduledFuture that can be used to cancel the task
+   */
+  public ScheduledFuture<?> scheduleAtFixedRate(String name, Runnable task, long initialDelay, long period, TimeUnit unit) {
+    return executor.scheduleAtFixedRate(wrap(name, task), initialDelay, period, unit);
+  }
+
+  /**
+   * Runs a task periodically, with the first run at a random point within
+   * the first period. This stops tasks that are scheduled together (e.g.
+   * the same task for every blog when Pebble starts) from all running
+   * at the same time.
+   *
+   * @param name      the name of the task
+   * @param task      the task to run
+   * @param period    the delay between the end of one run and the start of the next
+   * @param unit      the unit of the period
+   * @return  a ScheduledFuture that can be used to cancel the task
+   */
+  public ScheduledFuture<?> scheduleWithJitter(String name, Runnable task, long period, TimeUnit unit) {
+    long periodInMillis = Math.max(1, unit.toMillis(period));
+    long initialDelay;
+    synchronized (random) {
+      initialDelay = (long)(random.nextDouble() * periodInMillis);
+    }
+
+    return executor.scheduleWithFixedDelay(wrap(name, task), initialDelay, periodInMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Gets the statistics for the given task.
+   *
+   * @param name    the name of the task
+   * @return  a TaskStatistics instance, or null if no task with that name has been scheduled
+   */
+  public TaskStatistics getStatistics(String name) {
+    return statistics.get(name);
+  }
+
+  /**
+   * Gets the statistics for all tasks that have been scheduled.
+   *
+   * @return  a Collection of TaskStatistics instances
+   */
+  public Collection<TaskStatistics> getAllStatistics() {
+    return new ArrayList<TaskStatistics>(statistics.values());
+  }
+
+  /**
+   * Gets the number of tasks waiting to run, including periodic tasks
+   * waiting for their next run.
+   *
+   * @return  the number of tasks
+   */
+  public int getNumberOfScheduledTasks() {
+    return executor.getQueue().size();
+  }
+
+  /**
+   * Cancels all tasks, giving those that are running a short time to
+   * complete.
+   */
+  public void shutdown() {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+        executor.shutdownNow();
+      }
+    } catch (InterruptedException ie) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+
+    for (TaskStatistics stats : statistics.values()) {
+      log.info(stats);
+    }
+  }
+
+  public boolean isShutdown() {
+    return executor.isShutdown();
+  }
+
+  private Runnable wrap(String name, final Runnable task) {
+    TaskStatistics stats = statistics.get(name);
+    if (stats == null) {
+      statistics.putIfAbsent(name, new TaskStatistics(name));
+      stats = statistics.get(name);
+    }
+
+    final TaskStatistics taskStatistics = stats;
+    return new Runnable() {
+      public void run() {
+        long start = System.nanoTime();
+        boolean failed = false;
+        try {
+          task.run();
+        } catch (Throwable t) {
+          // swallow the exception, otherwise a periodic task would never run again
+          failed = true;
+          log.error("Error running task " + taskStatistics.getTaskName(), t);
+        } finally {
+          taskStatistics.record(System.nanoTime() - start, failed);
+        }
+      }
+    };
+  }
+
+}
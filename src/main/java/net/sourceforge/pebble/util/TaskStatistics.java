@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of how many times a named scheduled task has run, and how
+ * long it took.
+ *
+ * @author Simon Brown
+ */
+public class TaskStatistics {
+
+  private final String taskName;
+  private final AtomicLong runs = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  private final AtomicLong totalTime = new AtomicLong();
+  private final AtomicLong maxTime = new AtomicLong();
+  private volatile long lastRun;
+
+  TaskStatistics(String taskName) {
+    this.taskName = taskName;
+  }
+
+  /**
+   * Records a run of the task.
+   *
+   * @param nanos     how long the run took, in nanoseconds
+   * @param failed    whether the task threw an exception
+   */
+  void record(long nanos, boolean failed) {
+    runs.incrementAndGet();
+    totalTime.addAndGet(nanos);
+    if (failed) {
+      failures.incrementAndGet();
+    }
+    lastRun = System.currentTimeMillis();
+
+    long max = maxTime.get();
+    while (nanos > max && !maxTime.compareAndSet(max, nanos)) {
+      max = maxTime.get();
+    }
+  }
+
+  public String getTaskName() {
+    return taskName;
+  }
+
+  public long getRuns() {
+    return runs.get();
+  }
+
+  public long getFailures() {
+    return failures.get();
+  }
+
+  /**
+   * Gets the time that the task last finished running.
+   *
+   * @return  the time in milliseconds, or 0 if the task hasn't run yet
+   */
+  public long getLastRun() {
+    return lastRun;
+  }
+
+  /**
+   * Gets the average time taken per run.
+   *
+   * @return  the time in milliseconds
+   */
+  public double getAverageTime() {
+    long count = runs.get();
+    return count == 0 ? 0 : (totalTime.get() / (double)count) / 1000000;
+  }
+
+  /**
+   * Gets the longest time taken by a single run.
+   *
+   * @return  the time in milliseconds
+   */
+  public double getMaxTime() {
+    return maxTime.get() / 1000000.0;
+  }
+
+  public String toString() {
+    return taskName + " : " + getRuns() + " runs, avg " + getAverageTime() + "ms, max " + getMaxTime() + "ms, " + getFailures() + " failures";
+  }
+
+}
@@ -57,10 +57,11 @@ public class UpgradeUtilities {
       Utilities.restructureStaticPages(blog);
       log.info("building indizes");
       Utilities.buildIndexes(blog);
-      log.info("upgrade done");
-    } else {
-      log.info("No upgrade required");
     }
+
+    // only blog entries that still have their responses inline are rewritten
+    Utilities.storeResponsesSeparately(blog);
+    log.info("upgrade done");
   }
 
 }
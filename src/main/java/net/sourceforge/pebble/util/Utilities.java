@@ -35,6 +35,7 @@ import net.sourceforge.pebble.Configuration;
 import net.sourceforge.pebble.PebbleContext;
 import net.sourceforge.pebble.dao.CategoryDAO;
 import net.sourceforge.pebble.dao.DAOFactory;
+import net.sourceforge.pebble.dao.PersistenceException;
 import net.sourceforge.pebble.dao.file.*;
 import net.sourceforge.pebble.domain.*;
 import net.sourceforge.pebble.api.event.comment.CommentEvent;
@@ -269,6 +270,46 @@ public class Utilities {
               log.info("Moving " + id + " to " + newFile.getAbsolutePath() + " from " + oldFile.getAbsolutePath());
               newDirectory.mkdirs();
               oldFile.renameTo(newFile);
+
+              File oldResponsesFile = new File(day, id + "-responses.xml");
+              if (oldResponsesFile.exists()) {
+                oldResponsesFile.renameTo(new File(newDirectory, oldResponsesFile.getName()));
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Moves the comments and TrackBacks of blog entries that still have them
+   * inline into separate files. Blog entries are otherwise only converted
+   * when they are next saved.
+   *
+   * @param blog    a Blog instance
+   */
+  public static void storeResponsesSeparately(Blog blog) {
+    log.info("Storing responses separately from blog entries");
+    FileBlogEntryDAO dao = new FileBlogEntryDAO();
+    File root = new File(blog.getRoot());
+    File years[] = root.listFiles(new FourDigitFilenameFilter());
+    for (File year : years) {
+      File months[] = year.listFiles(new TwoDigitFilenameFilter());
+      for (File month : months) {
+        File days[] = month.listFiles(new TwoDigitFilenameFilter());
+        for (File day : days) {
+          File blogEntryFiles[] = day.listFiles(new BlogEntryFilenameFilter());
+          for (File blogEntryFile : blogEntryFiles) {
+            String filename = blogEntryFile.getName();
+            String id = filename.substring(0, filename.indexOf('.'));
+            try {
+              BlogEntry blogEntry = dao.loadBlogEntry(blog, id);
+              if (blogEntry != null && blogEntry.isResponsesLoaded()) {
+                dao.storeBlogEntry(blogEntry);
+              }
+            } catch (PersistenceException pe) {
+              log.error("Error storing responses for " + blogEntryFile.getAbsolutePath(), pe);
             }
           }
         }
@@ -333,16 +374,21 @@ public class Utilities {
     Blog blog = new Blog(args[0]);
 
     String action = args[1];
-    if (action == null) {
-      // do nothing
-    } else if (action.equalsIgnoreCase("ipAddressListener")) {
-      buildIpAddressLists(blog);
-    } else if (action.equalsIgnoreCase("fixHtmlInResponses")) {
-      fixHtmlInResponses(blog);
-    } else if (action.equalsIgnoreCase("buildIndexes")) {
-      buildIndexes(blog);
-    } else if (action.equalsIgnoreCase("convertCategories")) {
-      convertCategories(blog);
+    try {
+      if (action == null) {
+        // do nothing
+      } else if (action.equalsIgnoreCase("ipAddressListener")) {
+        buildIpAddressLists(blog);
+      } else if (action.equalsIgnoreCase("fixHtmlInResponses")) {
+        fixHtmlInResponses(blog);
+      } else if (action.equalsIgnoreCase("buildIndexes")) {
+        buildIndexes(blog);
+      } else if (action.equalsIgnoreCase("convertCategories")) {
+        convertCategories(blog);
+      }
+    } finally {
+      // releases the search index, which is kept open while it's in use
+      blog.getSearchIndex().close();
     }
 
   }
@@ -87,7 +87,12 @@ public class MovableTypeImporter {
     Blog blog = new Blog(args[1]);
     blog.setProperty(Blog.TIMEZONE_KEY, args[2]);
 
-    importBlog(blog, file);
+    try {
+      importBlog(blog, file);
+    } finally {
+      // releases the search index, which is kept open while it's in use
+      blog.getSearchIndex().close();
+    }
   }
 
   /**
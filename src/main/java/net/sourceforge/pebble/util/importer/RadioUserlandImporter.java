@@ -66,8 +66,13 @@ public class RadioUserlandImporter {
     Blog blog = new Blog(args[1]);
     blog.setProperty(Blog.TIMEZONE_KEY, args[2]);
 
-    for (int i = 0; i < sources.length; i++) {
-      importFile(blog, sources[i]);
+    try {
+      for (int i = 0; i < sources.length; i++) {
+        importFile(blog, sources[i]);
+      }
+    } finally {
+      // releases the search index, which is kept open while it's in use
+      blog.getSearchIndex().close();
     }
   }
 
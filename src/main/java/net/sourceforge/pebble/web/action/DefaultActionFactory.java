@@ -34,6 +34,7 @@ package net.sourceforge.pebble.web.action;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
 import org.springframework.context.ApplicationContext;
@@ -42,11 +43,13 @@ import org.springframework.context.ApplicationContextAware;
 import javax.annotation.PostConstruct;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Constructor;
 import java.net.URL;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A factory class from which to look up and retrieve an instance
@@ -62,6 +65,9 @@ public class DefaultActionFactory implements ActionFactory, ApplicationContextAw
   /** the collection of actions that we know about */
   private final Map<String, String> actions = new HashMap<String, String>();
 
+  /** the constructors of the action classes that have been loaded so far, keyed on action name */
+  private final Map<String, Constructor<? extends Action>> constructors = new ConcurrentHashMap<String, Constructor<? extends Action>>();
+
   /** the name of the action mapping file */
   private String actionMappingFileName;
 
@@ -103,23 +109,45 @@ public class DefaultActionFactory implements ActionFactory, ApplicationContextAw
    */
   public Action getAction(String name) throws ActionNotFoundException {
     try {
-      // instantiate the appropriate class to handle the request
-      if (actions.containsKey(name)) {
-        Class<?> c = getClass().getClassLoader().loadClass((String)actions.get(name));
-        Class<? extends Action> actionClass = c.asSubclass(Action.class);
-        return (Action) beanFactory.createBean(actionClass, AutowireCapableBeanFactory.AUTOWIRE_NO, false);
-      } else {
-        throw new ActionNotFoundException("An action called " + name + " could not be found");
-      }
+      // instantiate the appropriate class to handle the request, and then
+      // let Spring inject its dependencies (the injection metadata for each
+      // class is cached by the bean factory after the first lookup)
+      Constructor<? extends Action> constructor = getConstructor(name);
+      Action action = BeanUtils.instantiateClass(constructor);
+      beanFactory.autowireBean(action);
+      return (Action) beanFactory.initializeBean(action, constructor.getDeclaringClass().getName());
     } catch (ClassNotFoundException cnfe) {
       log.error(cnfe.getMessage(), cnfe);
       throw new ActionNotFoundException("An action called " + name + " could not be loaded", cnfe);
+    } catch (NoSuchMethodException nsme) {
+      log.error(nsme.getMessage(), nsme);
+      throw new ActionNotFoundException("An action called " + name + " could not be instantiated", nsme);
     } catch (BeansException be) {
       log.error(be.getMessage(), be);
       throw new ActionNotFoundException("An action called " + name + " could not be instantiated", be);
     }
   }
 
+  /**
+   * Gets the no-argument constructor of the action class with the given name,
+   * loading the class the first time that the action is requested.
+   */
+  private Constructor<? extends Action> getConstructor(String name) throws ActionNotFoundException, ClassNotFoundException, NoSuchMethodException {
+    Constructor<? extends Action> constructor = constructors.get(name);
+    if (constructor == null) {
+      String className = actions.get(name);
+      if (className == null) {
+        throw new ActionNotFoundException("An action called " + name + " could not be found");
+      }
+
+      Class<?> c = getClass().getClassLoader().loadClass(className);
+      constructor = c.asSubclass(Action.class).getDeclaredConstructor();
+      constructors.put(name, constructor);
+    }
+
+    return constructor;
+  }
+
   public void setActionMappingFileName(String actionMappingFileName) {
     this.actionMappingFileName = actionMappingFileName;
   }
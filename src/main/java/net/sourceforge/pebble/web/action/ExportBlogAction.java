@@ -32,21 +32,14 @@
 package net.sourceforge.pebble.web.action;
 
 import net.sourceforge.pebble.Constants;
-import net.sourceforge.pebble.comparator.BlogEntryComparator;
 import net.sourceforge.pebble.domain.Blog;
-import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.web.view.ForwardView;
 import net.sourceforge.pebble.web.view.View;
-import net.sourceforge.pebble.web.view.impl.AbstractRomeFeedView;
-import net.sourceforge.pebble.web.view.impl.FeedView;
-import net.sourceforge.pebble.web.view.impl.RdfView;
+import net.sourceforge.pebble.web.view.impl.ExportView;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.Collections;
-import java.util.List;
-import java.util.Locale;
 
 /**
  * Exports an entire blog as RSS/RDF/Atom.
@@ -71,24 +64,16 @@ public class ExportBlogAction extends SecureAction {
 
     Blog blog = (Blog)getModel().get(Constants.BLOG_KEY);
 
-    response.setContentType("application/xml; charset=" + blog.getCharacterEncoding());
-
-    List<BlogEntry> blogEntries = blog.getBlogEntries();
-    Collections.sort(blogEntries, new BlogEntryComparator());
-    getModel().put(Constants.BLOG_ENTRIES, blogEntries);
-
-    // set the locale of this feed request to be English
-    javax.servlet.jsp.jstl.core.Config.set(
-        request,
-        javax.servlet.jsp.jstl.core.Config.FMT_LOCALE,
-        Locale.ENGLISH);
+    // only the IDs (newest first) are handed over, the view loads the
+    // blog entries one at a time as it writes them out
+    getModel().put(Constants.BLOG_ENTRY_IDS, blog.getBlogEntryIndex().getBlogEntries());
 
     if (flavor != null && flavor.equalsIgnoreCase("atom")) {
-      return new FeedView(AbstractRomeFeedView.FeedType.ATOM);
+      return new ExportView(ExportView.ATOM);
     } else if (flavor != null && flavor.equalsIgnoreCase("rdf")) {
-      return new RdfView();
+      return new ExportView(ExportView.RDF);
     } else {
-      return new FeedView(AbstractRomeFeedView.FeedType.RSS);
+      return new ExportView(ExportView.RSS);
     }
   }
 
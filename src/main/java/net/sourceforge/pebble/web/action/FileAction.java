@@ -35,19 +35,16 @@ import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.domain.MultiBlog;
 import net.sourceforge.pebble.domain.FileManager;
 import net.sourceforge.pebble.domain.Blog;
-import net.sourceforge.pebble.service.LastModifiedService;
+import net.sourceforge.pebble.domain.FileMetaData;
 import net.sourceforge.pebble.util.FileUtils;
 import net.sourceforge.pebble.web.view.*;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import javax.inject.Inject;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
-import java.util.Calendar;
-import java.util.Date;
 
 /**
  * Gets a file/image from a blog.
@@ -59,8 +56,11 @@ public class FileAction extends Action {
   /** the log used by this class */
   private static final Log log = LogFactory.getLog(FileAction.class);
 
-  @Inject
-  private LastModifiedService lastModifiedService;
+  /** how long (in seconds) clients may cache blog images and files */
+  private static final long FILE_MAX_AGE = 60 * 60 * 24 * 30;
+
+  /** how long (in seconds) clients may cache theme assets */
+  private static final long THEME_FILE_MAX_AGE = 60 * 60 * 24 * 365;
 
   /**
    * Peforms the processing associated with this action.
@@ -98,14 +98,17 @@ public class FileAction extends Action {
       return new ForwardView("/viewFiles.secureaction?type=" + type + "&path=" + name);
     }
 
-    Date lastModified = new Date(file.lastModified());
-    Calendar expires = blog.getCalendar();
-    expires.add(Calendar.MONTH, 1);
+    FileView view = new FileView(file);
+    if (FileMetaData.THEME_FILE.equals(type)) {
+      view.setMaxAge(THEME_FILE_MAX_AGE);
+    } else {
+      view.setMaxAge(FILE_MAX_AGE);
+    }
 
-    if (lastModifiedService.checkAndProcessLastModified(request, response, lastModified, expires.getTime())) {
+    if (view.checkNotModified(request, response)) {
       return new NotModifiedView();
     } else {
-      return new FileView(file);
+      return view;
     }
   }
 
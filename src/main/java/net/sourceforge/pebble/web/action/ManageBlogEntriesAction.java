@@ -46,6 +46,7 @@ import org.apache.commons.logging.LogFactory;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.Arrays;
 
 /**
  * Allows the user to manage (currently only remove) one or more blog entries.
@@ -71,35 +72,21 @@ public class ManageBlogEntriesAction extends SecureAction {
     String submit = request.getParameter("submit");
 
     if (ids != null) {
-      for (String id : ids) {
-        BlogService service = new BlogService();
-        BlogEntry blogEntry = null;
-        try {
-          blogEntry = service.getBlogEntry(blog, id);
-        } catch (BlogServiceException e) {
-          throw new ServletException(e);
-        }
-
-        if (blogEntry != null) {
-          if (submit.equalsIgnoreCase("Remove")) {
-            try {
-              service.removeBlogEntry(blogEntry);
-              blog.info("Blog entry \"" + StringUtils.transformHTML(blogEntry.getTitle()) + "\" removed.");
-            } catch (BlogServiceException be) {
-              throw new ServletException(be);
-            }
-          } else if (submit.equals("Publish")) {
-            // this publishes the entry as-is (i.e. with the same
-            // date/time it already has)
-            try {
-              blogEntry.setPublished(true);
-              service.putBlogEntry(blogEntry);
-              blog.info("Blog entry <a href=\"" + blogEntry.getLocalPermalink() + "\">" + blogEntry.getTitle() + "</a> published.");
-            } catch (BlogServiceException be) {
-              throw new ServletException(be);
-            }
+      BlogService service = new BlogService();
+      try {
+        if (submit.equalsIgnoreCase("Remove")) {
+          for (BlogEntry blogEntry : service.removeBlogEntries(blog, Arrays.asList(ids))) {
+            blog.info("Blog entry \"" + StringUtils.transformHTML(blogEntry.getTitle()) + "\" removed.");
+          }
+        } else if (submit.equals("Publish")) {
+          // this publishes the entries as-is (i.e. with the same
+          // date/time they already have)
+          for (BlogEntry blogEntry : service.publishBlogEntries(blog, Arrays.asList(ids))) {
+            blog.info("Blog entry <a href=\"" + blogEntry.getLocalPermalink() + "\">" + blogEntry.getTitle() + "</a> published.");
           }
         }
+      } catch (BlogServiceException be) {
+        throw new ServletException(be);
       }
     }
 
@@ -43,6 +43,7 @@ import org.apache.commons.logging.LogFactory;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.Arrays;
 
 /**
  * Allows the user to manage recently added responses.
@@ -55,12 +56,6 @@ public class ManageResponsesAction extends SecureAction {
   /** the log used by this class */
   private static final Log log = LogFactory.getLog(ManageResponsesAction.class);
 
-  /** constant used to represent a comment */
-  private static final String COMMENT = "c";
-
-  /** constant used to represent a TrackBack */
-  private static final String TRACKBACK = "t";
-
   /**
    * Peforms the processing associated with this action.
    *
@@ -75,39 +70,22 @@ public class ManageResponsesAction extends SecureAction {
     BlogService service = new BlogService();
 
     if (ids != null && submit != null) {
-      for (String id : ids) {
-        Response ber = getBlogEntryResponse(blog, id);
-
-        if (ber == null) {
-          continue;
-        }
-
+      try {
         if (submit.equalsIgnoreCase("Approve")) {
-          try {
-            ber.setApproved();
-            service.putBlogEntry(ber.getBlogEntry());
+          for (Response ber : service.approveResponses(blog, Arrays.asList(ids))) {
             blog.info("Response <a href=\"" + ber.getPermalink() + "\">" + ber.getTitle() + " (" + ber.getSourceName() + ")</a> approved.");
-          } catch (BlogServiceException be) {
-            log.error("Error updating state for response", be);
           }
         } else if (submit.equalsIgnoreCase("Reject")) {
-          try {
-            ber.setRejected();
-            service.putBlogEntry(ber.getBlogEntry());
+          for (Response ber : service.rejectResponses(blog, Arrays.asList(ids))) {
             blog.info("Response \"" + ber.getTitle() + "\" (" + ber.getSourceName() + ") rejected.");
-          } catch (BlogServiceException be) {
-            log.error("Error updating state for response", be);
           }
         } else if (submit.equalsIgnoreCase("Remove")) {
-          try {
-            ber.getBlogEntry().removeResponse(ber);
-            service.putBlogEntry(ber.getBlogEntry());
+          for (Response ber : service.removeResponses(blog, Arrays.asList(ids))) {
             blog.info("Response \"" + ber.getTitle() + "\" (" + ber.getSourceName() + ") removed.");
-          } catch (BlogServiceException be) {
-            log.error("Error updating state for response", be);
           }
         }
-
+      } catch (BlogServiceException be) {
+        throw new ServletException(be);
       }
     }
 
@@ -129,34 +107,4 @@ public class ManageResponsesAction extends SecureAction {
     return new String[]{Constants.BLOG_CONTRIBUTOR_ROLE};
   }
 
-  private Response getBlogEntryResponse(Blog blog, String guid) throws ServletException {
-    // response key is of the form type/blogEntryId/responseId
-    String type = guid.substring(0, 1);
-    String blogEntryId = guid.substring(2, guid.indexOf("/", 2));
-    String responseId = guid.substring(guid.lastIndexOf("/")+1);
-
-    BlogService service = new BlogService();
-    BlogEntry blogEntry = null;
-    try {
-      blogEntry = service.getBlogEntry(blog, blogEntryId);
-    } catch (BlogServiceException e) {
-      throw new ServletException(e);
-    }
-    if (blogEntry == null) {
-      return null;
-    }
-
-    try {
-      if (type != null && type.equalsIgnoreCase(COMMENT)) {
-        return blogEntry.getComment(Long.parseLong(responseId));
-      } else if (type != null && type.equalsIgnoreCase(TRACKBACK)) {
-        return blogEntry.getTrackBack(Long.parseLong(responseId));
-      }
-    } catch (NumberFormatException e) {
-      log.warn(e);
-    }
-
-    return null;
-  }
-
 }
\ No newline at end of file
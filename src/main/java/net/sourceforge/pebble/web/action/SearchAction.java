@@ -33,6 +33,7 @@ package net.sourceforge.pebble.web.action;
 
 import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.index.SearchIndex;
 import net.sourceforge.pebble.search.SearchException;
 import net.sourceforge.pebble.search.SearchHit;
 import net.sourceforge.pebble.search.SearchResults;
@@ -48,6 +49,9 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Performs a search on the current blog.
@@ -62,6 +66,10 @@ public class SearchAction extends Action {
   /** the number of results to show per page */
   static final int PAGE_SIZE = 20;
 
+  /** the facets that the results can be drilled down into */
+  private static final String[] FACETS = {
+      SearchIndex.FACET_TAG, SearchIndex.FACET_CATEGORY, SearchIndex.FACET_AUTHOR, SearchIndex.FACET_YEAR
+  };
 
   /**
    * Peforms the processing associated with this action.
@@ -93,7 +101,16 @@ public class SearchAction extends Action {
     }
 
     try {
-      SearchResults results = blog.getSearchIndex().search(query);
+      // only the requested page of results is returned, already sorted
+      String sort = request.getParameter("sort");
+      Map<String, String> drillDowns = new LinkedHashMap<String, String>();
+      for (String facet : FACETS) {
+        String value = request.getParameter(facet);
+        if (value != null && value.length() > 0) {
+          drillDowns.put(facet, value);
+        }
+      }
+      SearchResults results = blog.getSearchIndex().search(query, sort, page, PAGE_SIZE, drillDowns);
 
       if (results.getNumberOfHits() == 1) {
         // if there is only one hit, redirect the user to it without the
@@ -101,22 +118,26 @@ public class SearchAction extends Action {
         SearchHit hit = (SearchHit)results.getHits().get(0);
         return new RedirectView(hit.getPermalink());
       } else {
-        // show all results on the search results page
-        String sort = request.getParameter("sort");
-        if (sort != null && sort.equalsIgnoreCase("date")) {
-          results.sortByDateDescending();
-        } else {
-          results.sortByScoreDescending();
-        }
-
-        Pageable pageable = new Pageable(results.getHits());
+        // show the page of results on the search results page
+        int numberOfHits = Math.min(results.getNumberOfHits(), SearchIndex.MAXIMUM_NUMBER_OF_HITS);
+        Pageable pageable = new Pageable(results.getHits(), results.getOffset(), numberOfHits);
         pageable.setPageSize(PAGE_SIZE);
-        pageable.setPage(page);
+        pageable.setPage((results.getOffset() / PAGE_SIZE) + 1);
 
         try {
           getModel().put("searchResults", results);
           getModel().put("pageable", pageable);
-          getModel().put("query", java.net.URLEncoder.encode(query, blog.getCharacterEncoding()));
+          getModel().put("query", URLEncoder.encode(query, blog.getCharacterEncoding()));
+          getModel().put("drillDowns", drillDowns);
+
+          StringBuilder drillDownParameters = new StringBuilder();
+          for (String facet : drillDowns.keySet()) {
+            drillDownParameters.append("&amp;");
+            drillDownParameters.append(facet);
+            drillDownParameters.append("=");
+            drillDownParameters.append(URLEncoder.encode(drillDowns.get(facet), blog.getCharacterEncoding()));
+          }
+          getModel().put("drillDownParameters", drillDownParameters.toString());
         } catch (UnsupportedEncodingException uee) {
           log.error(uee);
         }
@@ -33,17 +33,27 @@ package net.sourceforge.pebble.web.action;
 
 import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.domain.Blog;
-import net.sourceforge.pebble.web.view.ForwardView;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.BlogService;
+import net.sourceforge.pebble.domain.BlogServiceException;
+import net.sourceforge.pebble.domain.Category;
+import net.sourceforge.pebble.util.Pageable;
+import net.sourceforge.pebble.web.view.NotFoundView;
+import net.sourceforge.pebble.web.view.RedirectView;
 import net.sourceforge.pebble.web.view.View;
+import net.sourceforge.pebble.web.view.impl.BlogEntriesByCategoryView;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.List;
 
 /**
- * Allows the user to see blog entries for the specified category.
+ * Allows the user to see blog entries for the specified category (including
+ * its subcategories). The blog entries are paged straight from the category
+ * index, so only those on the requested page are loaded.
  *
  * @author    Simon Brown
  */
@@ -57,13 +67,40 @@ public class ViewCategoryAction extends Action {
    * @return the name of the next view
    */
   public View process(HttpServletRequest request, HttpServletResponse response) throws ServletException {
-    Blog blog = (Blog)request.getAttribute(Constants.BLOG_KEY);
-    String category = request.getParameter("category");
+    Blog blog = (Blog)getModel().get(Constants.BLOG_KEY);
+    Category category = blog.getCategory(request.getParameter("category"));
+    if (category == null) {
+      return new NotFoundView();
+    }
+
+    List<String> blogEntryIds = blog.getCategoryIndex().getRecentBlogEntries(category);
+
+    if (blogEntryIds.size() == 1) {
+      // if there is only one blog entry, redirect the user to it
+      try {
+        BlogEntry blogEntry = new BlogService().getBlogEntry(blog, blogEntryIds.get(0));
+        if (blogEntry != null) {
+          return new RedirectView(blogEntry.getPermalink());
+        }
+      } catch (BlogServiceException bse) {
+        throw new ServletException(bse);
+      }
+    }
+
+    Pageable<String> pageable = new Pageable<String>(blogEntryIds);
+    pageable.setPageSize(SearchAction.PAGE_SIZE);
+    pageable.setPage(ViewTagAction.getPage(request));
+
     try {
-      return new ForwardView("/search.action?query=category:" + URLEncoder.encode(category, blog.getCharacterEncoding()) + "&sort=date");
+      getModel().put("category", category);
+      getModel().put(Constants.BLOG_ENTRIES, blog.getBlogEntries(pageable.getListForPage()));
+      getModel().put("pageable", pageable);
+      getModel().put("pageableUrl", "viewCategory.action?category=" + URLEncoder.encode(category.getId(), blog.getCharacterEncoding()));
     } catch (UnsupportedEncodingException uee) {
       throw new ServletException(uee);
     }
+
+    return new BlogEntriesByCategoryView();
   }
 
-}
\ No newline at end of file
+}
@@ -34,7 +34,6 @@ package net.sourceforge.pebble.web.action;
 import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.BlogService;
-import net.sourceforge.pebble.domain.BlogServiceException;
 import net.sourceforge.pebble.util.Pageable;
 import net.sourceforge.pebble.web.view.View;
 import net.sourceforge.pebble.web.view.impl.ResponsesView;
@@ -44,7 +43,6 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Iterator;
 
 /**
  * Allows the user to view all recently added responses.
@@ -93,18 +91,9 @@ public class ViewResponsesAction extends SecureAction {
 
     Pageable pageable = new Pageable(responses) {
       public List getListForPage() {
-        List responses = new ArrayList();
+        // summaries are enough to list responses, so blog entries aren't loaded
         BlogService service = new BlogService();
-        Iterator it = super.getListForPage().iterator();
-        while (it.hasNext()) {
-          try {
-            responses.add(service.getResponse(blog, (String)it.next()));
-          } catch (BlogServiceException e) {
-            // do nothing - some responses just won't get shown,
-            // but a message will be sent to the blog
-          }
-        }
-        return responses;
+        return service.getResponseSummaries(blog, super.getListForPage());
       }
     };
     pageable.setPageSize(PAGE_SIZE);
@@ -33,18 +33,26 @@ package net.sourceforge.pebble.web.action;
 
 import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.BlogService;
+import net.sourceforge.pebble.domain.BlogServiceException;
 import net.sourceforge.pebble.domain.Tag;
-import net.sourceforge.pebble.web.view.ForwardView;
+import net.sourceforge.pebble.util.Pageable;
+import net.sourceforge.pebble.web.view.RedirectView;
 import net.sourceforge.pebble.web.view.View;
+import net.sourceforge.pebble.web.view.impl.BlogEntriesByTagView;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.List;
 
 /**
- * Allows the user to see blog entries for the specified tag.
+ * Allows the user to see blog entries for the specified tag. The blog entries
+ * are paged straight from the tag index, so only those on the requested page
+ * are loaded.
  *
  * @author    Simon Brown
  */
@@ -59,12 +67,43 @@ public class ViewTagAction extends Action {
    */
   public View process(HttpServletRequest request, HttpServletResponse response) throws ServletException {
     Blog blog = (Blog)getModel().get(Constants.BLOG_KEY);
-    String tag = request.getParameter("tag");
+    Tag tag = blog.getTag(request.getParameter("tag"));
+    List<String> blogEntryIds = blog.getTagIndex().getBlogEntries(tag);
+
+    if (blogEntryIds.size() == 1) {
+      // if there is only one blog entry, redirect the user to it
+      try {
+        BlogEntry blogEntry = new BlogService().getBlogEntry(blog, blogEntryIds.get(0));
+        if (blogEntry != null) {
+          return new RedirectView(blogEntry.getPermalink());
+        }
+      } catch (BlogServiceException bse) {
+        throw new ServletException(bse);
+      }
+    }
+
+    Pageable<String> pageable = new Pageable<String>(blogEntryIds);
+    pageable.setPageSize(SearchAction.PAGE_SIZE);
+    pageable.setPage(getPage(request));
+
     try {
-      return new ForwardView("/search.action?query=tag:\"" + URLEncoder.encode(Tag.encode(tag), blog.getCharacterEncoding()) + "\"&sort=date");
+      getModel().put("tag", tag);
+      getModel().put(Constants.BLOG_ENTRIES, blog.getBlogEntries(pageable.getListForPage()));
+      getModel().put("pageable", pageable);
+      getModel().put("pageableUrl", "viewTag.action?tag=" + URLEncoder.encode(tag.getName(), blog.getCharacterEncoding()));
     } catch (UnsupportedEncodingException uee) {
       throw new ServletException(uee);
     }
+
+    return new BlogEntriesByTagView();
+  }
+
+  static int getPage(HttpServletRequest request) {
+    try {
+      return Integer.parseInt(request.getParameter("page"));
+    } catch (NumberFormatException nfe) {
+      return 1;
+    }
   }
 
-}
\ No newline at end of file
+}
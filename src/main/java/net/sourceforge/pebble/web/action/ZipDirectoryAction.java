@@ -43,8 +43,8 @@ import net.sourceforge.pebble.web.view.ZipView;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.File;
 import java.text.SimpleDateFormat;
-import java.util.List;
 
 /**
  * Allows the user to export a directory as a ZIP file.
@@ -84,9 +84,12 @@ public class ZipDirectoryAction extends AbstractFileAction {
       }
 
       FileManager fileManager = new FileManager(blog, type);
-      List files = fileManager.getFiles(path, true);
+      File directory = fileManager.getFile(path);
+      if (!fileManager.isUnderneathRootDirectory(directory)) {
+        throw new IllegalFileAccessException();
+      }
 
-      return new ZipView(files, filename);
+      return new ZipView(fileManager.getRootDirectory(), directory, filename);
     } catch (IllegalFileAccessException e) {
       return new ForbiddenView();
     }
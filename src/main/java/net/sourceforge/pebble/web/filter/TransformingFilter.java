@@ -55,6 +55,9 @@ public class TransformingFilter implements Filter {
   /** the config of this filter */
   private FilterConfig filterConfig;
 
+  /** the transformer used to convert incoming URIs, which holds no per-request state */
+  private final UriTransformer transformer = new UriTransformer();
+
   /** the log used by this class */
   private static Log log = LogFactory.getLog(TransformingFilter.class);
 
@@ -120,7 +123,6 @@ public class TransformingFilter implements Filter {
     httpRequest.setAttribute(Constants.ORIGINAL_URI, originalUri);
     httpRequest.setAttribute(Constants.EXTERNAL_URI, externalUri);
 
-    UriTransformer transformer = new UriTransformer();
     String internalUri;
 
     if (blog instanceof Blog) {
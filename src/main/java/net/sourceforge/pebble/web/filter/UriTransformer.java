@@ -37,8 +37,14 @@ import net.sourceforge.pebble.api.permalink.PermalinkProvider;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
 /**
  * Responsible for converting an incoming URI to a real URI used by Pebble.
+ * The URI patterns are compiled once into a routing table (exact URIs plus a
+ * prefix trie), so that each URI can be resolved in a single pass.
  *
  * @author    Simon Brown
  */
@@ -47,24 +53,147 @@ public class UriTransformer {
   /** literal used at the start of category URIs */
   private static final String CATEGORIES = "/categories";
 
-  /** literal used at the start of category URIs, in regex form */
-  private static final String CATEGORIES_REGEX = "\\/categories\\/";
-
   /** literal used at the start of tag URIs */
   private static final String TAGS = "/tags/";
 
-  /** literal used at the start of tag URIs, in regex form */
-  private static final String TAGS_REGEX = "\\/tags\\/";
-
   /** literal used at the start of author URIs */
   private static final String AUTHORS = "/authors/";
 
-  /** literal used at the start of tag URIs, in regex form */
-  private static final String AUTHORS_REGEX = "\\/authors\\/";
+  /** pattern for URIs of the form /categories/category[/subcategories]/[rss|rdf|atom].xml */
+  private static final Pattern CATEGORY_FEED_PATTERN = Pattern.compile("\\/categories\\/.*\\/.*xml");
+
+  /** pattern for URIs of the form /tags/tag/[rss|rdf|atom].xml */
+  private static final Pattern TAG_FEED_PATTERN = Pattern.compile("\\/tags\\/.*\\/.*xml");
+
+  /** pattern for URIs of the form /authors/username/[rss|rdf|atom].xml */
+  private static final Pattern AUTHOR_FEED_PATTERN = Pattern.compile("\\/authors\\/.*\\/.*xml");
+
+  /** pattern for URIs of the form /help/xyz.html */
+  private static final Pattern HELP_PAGE_PATTERN = Pattern.compile("\\/help\\/\\w*\\.html");
+
+  /** the routing table used for single blogs */
+  private static final RoutingTable BLOG_ROUTES = new RoutingTable();
+
+  /** the routing table used for multi-blog installations */
+  private static final RoutingTable MULTI_BLOG_ROUTES = new RoutingTable();
 
   /** the log used by this class */
   private static Log log = LogFactory.getLog(UriTransformer.class);
 
+  static {
+    Route help = new Route() {
+      String getUri(String uri) {
+        if (HELP_PAGE_PATTERN.matcher(uri).matches()) {
+          // url matches /help/xyz.html
+          return "/viewHelp.secureaction?name=" + uri.substring(6, uri.length()-5);
+        } else {
+          return uri;
+        }
+      }
+    };
+
+    // the order of these doesn't matter; exact URIs are checked before prefixes
+    BLOG_ROUTES.addUri("/categories", "/viewCategories.action");
+    BLOG_ROUTES.addUri("/categories/", "/viewCategories.action");
+    BLOG_ROUTES.addUri("/tags", "/viewTags.action");
+    BLOG_ROUTES.addUri("/tags/", "/viewTags.action");
+    BLOG_ROUTES.addUri("/pages", "/viewStaticPage.action?name=index");
+    BLOG_ROUTES.addUri("/pages/", "/viewStaticPage.action?name=index");
+    BLOG_ROUTES.addUri("/help", "/viewHelp.secureaction?name=index");
+    BLOG_ROUTES.addUri("/help/", "/viewHelp.secureaction?name=index");
+    BLOG_ROUTES.addUri("/responses/rss.xml", "/responseFeed.action?flavor=rss20");
+    BLOG_ROUTES.addUri("/today.html", "/viewDay.action");
+    BLOG_ROUTES.addUri("/about.html", "/about.action");
+    BLOG_ROUTES.addUri("/", "/viewHomePage.action");
+    BLOG_ROUTES.addUri("/index.jsp", "/viewHomePage.action");
+    BLOG_ROUTES.addUri("/index.html", "/viewHomePage.action");
+
+    BLOG_ROUTES.addPrefix(CATEGORIES, new Route() {
+      String getUri(String uri) {
+        if (CATEGORY_FEED_PATTERN.matcher(uri).matches()) {
+          // URI of the form /category[/subcategories]/[rss|rdf|atom].xml
+          return getFeedUri("category", uri.substring(CATEGORIES.length(), uri.lastIndexOf("/")), uri);
+        } else {
+          // URI of the form /categories/category/
+          return "/viewCategory.action?category=" + stripTrailingSlash(uri.substring(CATEGORIES.length()));
+        }
+      }
+    });
+    BLOG_ROUTES.addPrefix(TAGS, new Route() {
+      String getUri(String uri) {
+        if (TAG_FEED_PATTERN.matcher(uri).matches()) {
+          // URI of the form /tags/tag/[rss|rdf|atom].xml
+          return getFeedUri("tag", uri.substring(TAGS.length(), uri.lastIndexOf("/")), uri);
+        } else {
+          // URI of the form /tags/tag/
+          return "/viewTag.action?tag=" + Tag.encode(stripTrailingSlash(uri.substring(TAGS.length())));
+        }
+      }
+    });
+    BLOG_ROUTES.addPrefix(AUTHORS, new Route() {
+      String getUri(String uri) {
+        if (AUTHOR_FEED_PATTERN.matcher(uri).matches()) {
+          // URI of the form /authors/username/[rss|rdf|atom].xml
+          return getFeedUri("author", uri.substring(AUTHORS.length(), uri.lastIndexOf("/")), uri);
+        } else {
+          // URI of the form /authors/usename/
+          return "/aboutAuthor.action?user=" + stripTrailingSlash(uri.substring(AUTHORS.length()));
+        }
+      }
+    });
+    BLOG_ROUTES.addPrefix("/pages/", new Route() {
+      String getUri(String uri) {
+        // url matches /pages/xyz.html
+        return "/viewStaticPage.action?name=" + uri.substring(7, uri.length()-5);
+      }
+    });
+    BLOG_ROUTES.addPrefix("/images/", new Route() {
+      String getUri(String uri) {
+        // url matches /images/xyz.xyz
+        return "/file.action?type=" + FileMetaData.BLOG_IMAGE + "&name=" + uri.substring(7);
+      }
+    });
+    BLOG_ROUTES.addPrefix("/files/", new Route() {
+      String getUri(String uri) {
+        // url matches /files/xyz.xyz
+        return "/file.action?type=" + FileMetaData.BLOG_FILE + "&name=" + uri.substring(6);
+      }
+    });
+    BLOG_ROUTES.addPrefix("/theme/", new Route() {
+      String getUri(String uri) {
+        // url matches /theme/xyz.xyz
+        return "/file.action?type=" + FileMetaData.THEME_FILE + "&name=" + uri.substring(6);
+      }
+    });
+    BLOG_ROUTES.addPrefix("/help/", help);
+    BLOG_ROUTES.addPrefix("/responses/rss.xml?entry=", new Route() {
+      String getUri(String uri) {
+        // url is for a response feed
+        return "/responseFeed.action?flavor=rss20&" + uri.substring("/responses/rss.xml?".length());
+      }
+    });
+    BLOG_ROUTES.addPrefix("/responses/atom.xml", new FixedRoute("/responseFeed.action?flavor=atom"));
+    BLOG_ROUTES.addPrefix("/rss.xml", new FixedRoute("/feed.action?flavor=rss20"));
+    BLOG_ROUTES.addPrefix("/feed.xml", new FixedRoute("/feed.action?flavor=rss20"));
+    BLOG_ROUTES.addPrefix("/rdf.xml", new FixedRoute("/feed.action?flavor=rdf"));
+    BLOG_ROUTES.addPrefix("/atom.xml", new FixedRoute("/feed.action?flavor=atom"));
+    BLOG_ROUTES.addPrefix("/blogentries/", new Route() {
+      String getUri(String uri) {
+        // view blog entries by page /blogentries/1.html
+        return "/viewBlogEntriesByPage.action?page=" + uri.substring(13, uri.length()-5);
+      }
+    });
+
+    MULTI_BLOG_ROUTES.addUri("/", "/viewHomePage.action");
+    MULTI_BLOG_ROUTES.addUri("/index.jsp", "/viewHomePage.action");
+    MULTI_BLOG_ROUTES.addUri("/index.html", "/viewHomePage.action");
+    MULTI_BLOG_ROUTES.addPrefix("/rss.xml", new FixedRoute("/feed.action?flavor=rss20"));
+    MULTI_BLOG_ROUTES.addPrefix("/feed.xml", new FixedRoute("/feed.action?flavor=rss20"));
+    MULTI_BLOG_ROUTES.addPrefix("/rdf.xml", new FixedRoute("/feed.action?flavor=rdf"));
+    MULTI_BLOG_ROUTES.addPrefix("/atom.xml", new FixedRoute("/feed.action?flavor=atom"));
+    MULTI_BLOG_ROUTES.addPrefix("/help/", help);
+  }
+
   /**
    * Checks for URI patterns and converts them to the appropriate action.
    *
@@ -76,8 +205,6 @@ public class UriTransformer {
    */
   public String getUri(String uri, Blog blog) {
     PermalinkProvider permalinkProvider = blog.getPermalinkProvider();
-    DefaultPermalinkProvider defaultPermalinkProvider = new DefaultPermalinkProvider();
-    defaultPermalinkProvider.setBlog(permalinkProvider.getBlog());
 
     log.trace("URI before transformation : " + uri);
 
@@ -87,147 +214,16 @@ public class UriTransformer {
 
     // try to transform the URI with the permalink provider in use
     String result = getUri(uri, permalinkProvider);
-    if (result == null) {
+    if (result == null && permalinkProvider.getClass() != DefaultPermalinkProvider.class) {
       // for backwards compatibility, try the default permalink provider
+      DefaultPermalinkProvider defaultPermalinkProvider = new DefaultPermalinkProvider();
+      defaultPermalinkProvider.setBlog(permalinkProvider.getBlog());
       result = getUri(uri, defaultPermalinkProvider);
     }
 
     // if the result is still null, try the other URL patterns to transform the URI
     if (result == null) {
-      if (uri.equals("/categories") || uri.equals("/categories/")) {
-        // URI of the form /categories/
-        result = "/viewCategories.action";
-      } else if (uri.matches(CATEGORIES_REGEX + ".*\\/.*xml")) {
-          // URI of the form /category[/subcategories]/[rss|rdf|atom].xml
-          int indexOfLastSlash = uri.lastIndexOf("/");
-          String categoryId = uri.substring(CATEGORIES.length(), indexOfLastSlash);
-
-          if (uri.endsWith("rdf.xml")) {
-            result = "/feed.action?category=" + categoryId + "&flavor=rdf";
-          } else if (uri.endsWith("atom.xml")) {
-            result = "/feed.action?category=" + categoryId + "&flavor=atom";
-          } else {
-            result = "/feed.action?category=" + categoryId + "&flavor=rss20";
-          }
-      } else if (uri.startsWith(CATEGORIES)) {
-        // URI of the form /categories/category/
-        String category = uri.substring(CATEGORIES.length(), uri.length());
-        if (category.endsWith("/")) {
-          category = category.substring(0, category.length()-1);
-        }
-        result = "/viewCategory.action?category=" + category;
-      } else if (uri.equals("/tags") || uri.equals("/tags/")) {
-          // URI of the form /tags/
-          result = "/viewTags.action";
-      } else if (uri.matches(TAGS_REGEX + ".*\\/.*xml")) {
-        // URI of the form /tags/tag/[rss|rdf|atom].xml
-        int indexOfLastSlash = uri.lastIndexOf("/");
-        String tag = uri.substring(TAGS.length(), indexOfLastSlash);
-
-        if (uri.endsWith("rdf.xml")) {
-          result = "/feed.action?tag=" + tag + "&flavor=rdf";
-        } else if (uri.endsWith("atom.xml")) {
-          result = "/feed.action?tag=" + tag + "&flavor=atom";
-        } else {
-          result = "/feed.action?tag=" + tag + "&flavor=rss20";
-        }
-      } else if (uri.matches(AUTHORS_REGEX + ".*\\/.*xml")) {
-        // URI of the form /authors/username/[rss|rdf|atom].xml
-        int indexOfLastSlash = uri.lastIndexOf("/");
-        String author = uri.substring(AUTHORS.length(), indexOfLastSlash);
-
-        if (uri.endsWith("rdf.xml")) {
-          result = "/feed.action?author=" + author + "&flavor=rdf";
-        } else if (uri.endsWith("atom.xml")) {
-          result = "/feed.action?author=" + author + "&flavor=atom";
-        } else {
-          result = "/feed.action?author=" + author + "&flavor=rss20";
-        }
-      } else if (uri.startsWith(TAGS)) {
-        // URI of the form /tags/tag/
-        String tag = uri.substring(TAGS.length(), uri.length());
-        if (tag.endsWith("/")) {
-          tag = tag.substring(0, tag.length()-1);
-        }
-        result = "/viewTag.action?tag=" + Tag.encode(tag);
-      } else if (uri.startsWith(AUTHORS)) {
-        // URI of the form /authors/usename/
-        String author = uri.substring(AUTHORS.length(), uri.length());
-        if (author.endsWith("/")) {
-          author = author.substring(0, author.length()-1);
-        }
-        result = "/aboutAuthor.action?user=" + author;
-      } else if (uri.equals("/pages/") || uri.equals("/pages")) {
-        result = "/viewStaticPage.action?name=index";
-      } else if (uri.startsWith("/pages/")) {
-        // url matches /pages/xyz.html
-        String name = uri.substring(7, uri.length()-5);
-
-        result = "/viewStaticPage.action?name=";
-        result += name;
-      } else if (uri.startsWith("/images/")) {
-        // url matches /images/xyz.xyz
-        String name = uri.substring(7, uri.length());
-
-        result = "/file.action?type=" + FileMetaData.BLOG_IMAGE + "&name=";
-        result += name;
-      } else if (uri.startsWith("/files/")) {
-        // url matches /files/xyz.xyz
-        String name = uri.substring(6, uri.length());
-
-        result = "/file.action?type=" + FileMetaData.BLOG_FILE + "&name=";
-        result += name;
-      } else if (uri.startsWith("/theme/")) {
-        // url matches /files/xyz.xyz
-        String name = uri.substring(6, uri.length());
-
-        result = "/file.action?type=" + FileMetaData.THEME_FILE + "&name=";
-        result += name;
-      } else if (uri.matches("\\/help\\/\\w*\\.html")) {
-        // url matches /help/xyz.html
-        String name = uri.substring(6, uri.length());
-
-        result = "/viewHelp.secureaction?name=";
-        result += name.substring(0, name.length()-5);
-      } else if (uri.equals("/help") || uri.equals("/help/")) {
-        // url matches /help/
-        result = "/viewHelp.secureaction?name=index";
-      } else if (uri.equals("/responses/rss.xml")) {
-        // url is for a response feed
-        result = "/responseFeed.action?flavor=rss20";
-      } else if (uri.startsWith("/responses/rss.xml?entry=")) {
-        // url is for a response feed
-        result = "/responseFeed.action?flavor=rss20&" + uri.substring("/responses/rss.xml?".length());
-      } else if (uri.startsWith("/rss.xml")) {
-        // url matches rss.xml
-        result = "/feed.action?flavor=rss20";
-      } else if (uri.startsWith("/feed.xml")) {
-        // url matches feed.xml
-        result = "/feed.action?flavor=rss20";
-      } else if (uri.startsWith("/rdf.xml")) {
-        // url matches rdf.xml
-        result = "/feed.action?flavor=rdf";
-      } else if (uri.startsWith("/responses/atom.xml")) {
-        // url is for a response feed
-        result = "/responseFeed.action?flavor=atom";
-      } else if (uri.startsWith("/atom.xml")) {
-        // url matches atom.xml
-        result = "/feed.action?flavor=atom";
-      } else if (uri.equals("/today.html")) {
-        // URI of the form /today.html
-        result = "/viewDay.action";
-      } else if (uri.equals("/about.html")) {
-        // URI of the form /about.html
-        result = "/about.action";
-      } else if (uri.startsWith("/blogentries/")) {
-        // view blog entries by page /blogentries/1.html
-        String page = uri.substring(13, uri.length()-5);
-        result = "/viewBlogEntriesByPage.action?page=" + page;
-      } else if (uri.equals("/") || uri.equals("/index.jsp") || uri.equals("/index.html")) {
-          result = "/viewHomePage.action";
-      } else {
-        result = uri;
-      }
+      result = BLOG_ROUTES.getUri(uri);
     }
 
     log.trace("URI after transformation : " + result);
@@ -245,37 +241,13 @@ public class UriTransformer {
    *            the same)
    */
   public String getUri(String uri, MultiBlog blog) {
-    String result;
-
     log.trace("URI before transformation : " + uri);
 
     if (uri == null || uri.trim().equals("")) {
       uri = "/";
     }
 
-    if (uri.startsWith("/rss.xml")) {
-      // url matches rss.xml
-      result = "/feed.action?flavor=rss20";
-    } else if (uri.startsWith("/feed.xml")) {
-      // url matches feed.xml
-      result = "/feed.action?flavor=rss20";
-    } else if (uri.startsWith("/rdf.xml")) {
-      // url matches rdf.xml
-      result = "/feed.action?flavor=rdf";
-    } else if (uri.startsWith("/atom.xml")) {
-      // url matches atom.xml
-      result = "/feed.action?flavor=atom";
-    } else if (uri.equals("/") || uri.equals("/index.jsp") || uri.equals("/index.html")) {
-        result = "/viewHomePage.action";
-    } else if (uri.matches("\\/help\\/\\w*\\.html")) {
-      // url matches /help/xyz.html
-      String name = uri.substring(6, uri.length());
-
-      result = "/viewHelp.secureaction?name=";
-      result += name.substring(0, name.length()-5);
-    } else {
-      result = uri;
-    }
+    String result = MULTI_BLOG_ROUTES.getUri(uri);
 
     log.trace("URI after transformation : " + result);
 
@@ -321,4 +293,121 @@ public class UriTransformer {
     return result;
   }
 
-}
\ No newline at end of file
+  /**
+   * Gets the URI of the news feed for the given category, tag or author,
+   * with the flavor taken from the name of the requested file.
+   */
+  private static String getFeedUri(String parameter, String value, String uri) {
+    String result = "/feed.action?" + parameter + "=" + value;
+    if (uri.endsWith("rdf.xml")) {
+      return result + "&flavor=rdf";
+    } else if (uri.endsWith("atom.xml")) {
+      return result + "&flavor=atom";
+    } else {
+      return result + "&flavor=rss20";
+    }
+  }
+
+  private static String stripTrailingSlash(String s) {
+    if (s.endsWith("/")) {
+      return s.substring(0, s.length()-1);
+    } else {
+      return s;
+    }
+  }
+
+  /**
+   * Converts a URI that has matched a prefix in the routing table.
+   */
+  private static abstract class Route {
+
+    abstract String getUri(String uri);
+
+  }
+
+  /**
+   * A route that always maps on to the same action.
+   */
+  private static class FixedRoute extends Route {
+
+    private final String result;
+
+    FixedRoute(String result) {
+      this.result = result;
+    }
+
+    String getUri(String uri) {
+      return result;
+    }
+
+  }
+
+  /**
+   * A set of exact URIs, plus a trie of URI prefixes that is walked
+   * character by character to find the longest matching prefix.
+   */
+  private static class RoutingTable {
+
+    /** the URIs that map directly on to an action */
+    private final Map<String,String> uris = new HashMap<String,String>();
+
+    /** the root of the prefix trie */
+    private final Node root = new Node();
+
+    void addUri(String uri, String result) {
+      uris.put(uri, result);
+    }
+
+    void addPrefix(String prefix, Route route) {
+      Node node = root;
+      for (int i = 0; i < prefix.length(); i++) {
+        char c = prefix.charAt(i);
+        Node child = node.children.get(c);
+        if (child == null) {
+          child = new Node();
+          node.children.put(c, child);
+        }
+        node = child;
+      }
+      node.route = route;
+    }
+
+    /**
+     * Gets the URI that the given URI maps on to.
+     *
+     * @param uri   the initial URI
+     * @return  the transformed URI, or the same URI if nothing matches
+     */
+    String getUri(String uri) {
+      String result = uris.get(uri);
+      if (result != null) {
+        return result;
+      }
+
+      Route route = null;
+      Node node = root;
+      for (int i = 0; i < uri.length() && node != null; i++) {
+        node = node.children.get(uri.charAt(i));
+        if (node != null && node.route != null) {
+          route = node.route;
+        }
+      }
+
+      if (route != null) {
+        return route.getUri(uri);
+      } else {
+        return uri;
+      }
+    }
+
+  }
+
+  private static class Node {
+
+    private final Map<Character,Node> children = new HashMap<Character,Node>();
+
+    private Route route;
+
+  }
+
+}
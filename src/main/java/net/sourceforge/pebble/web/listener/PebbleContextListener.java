@@ -35,6 +35,7 @@ import net.sourceforge.pebble.Configuration;
 import net.sourceforge.pebble.PebbleContext;
 import net.sourceforge.pebble.dao.DAOFactory;
 import net.sourceforge.pebble.domain.*;
+import net.sourceforge.pebble.event.AsynchronousListenerExecutor;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.context.ApplicationContext;
@@ -146,6 +147,8 @@ public class PebbleContextListener implements ServletContextListener {
   public void contextDestroyed(ServletContextEvent event) {
     log.info("Stopping Pebble");
     BlogManager.getInstance().stopBlogs();
+    AsynchronousListenerExecutor.getInstance().shutdown();
+    PebbleContext.getInstance().shutdownScheduler();
 
     log.info("Pebble stopped");
   }
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.tagext;
+
+import java.io.IOException;
+import java.text.NumberFormat;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.jsp.JspException;
+import javax.servlet.jsp.JspTagException;
+import javax.servlet.jsp.tagext.TagSupport;
+
+import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.Month;
+import net.sourceforge.pebble.domain.Year;
+import net.sourceforge.pebble.util.UrlRewriter;
+
+/**
+ * A custom tag that outputs the month-by-month archive links. The rendered
+ * HTML is cached by the blog until the blog entries change.
+ *
+ * @author    Simon Brown
+ */
+public class ArchivesTag extends TagSupport {
+
+  /**
+   * Implementation from the Tag interface - this is called when the opening tag
+   * is encountered.
+   *
+   * @return  an integer specifying what to do afterwards
+   * @throws  JspException    if something goes wrong
+   */
+  public int doStartTag() throws JspException {
+    HttpServletRequest request = (HttpServletRequest)pageContext.getRequest();
+    Blog blog = (Blog)request.getAttribute(Constants.BLOG_KEY);
+
+    // the archives end at the current year, and are shown in the blog's locale and time zone
+    String key = "archives/" + blog.getBlogForThisYear().getYear() + "/" + blog.getLocale() + "/" +
+        blog.getTimeZoneId() + "/" + UrlRewriter.doRewrite(blog.getUrl());
+    String html = blog.getRenderedWidget(key);
+    if (html == null) {
+      // a render that overlaps the blog entries changing isn't kept
+      long generation = blog.getRenderedWidgetGeneration();
+      html = render(blog);
+      blog.putRenderedWidget(key, html, generation);
+    }
+
+    try {
+      pageContext.getOut().write(html);
+    } catch (IOException ioe) {
+      throw new JspTagException(ioe.getMessage());
+    }
+
+    return SKIP_BODY;
+  }
+
+  /**
+   * Renders the archives for the given blog, two years to a row.
+   *
+   * @param blog    a Blog instance
+   * @return  the HTML as a String
+   */
+  private String render(Blog blog) {
+    DateTimeFormatter yearFormatter = blog.getDateTimeFormatter("yyyy");
+    DateTimeFormatter monthFormatter = blog.getDateTimeFormatter("LLLL");
+    NumberFormat numberFormatter = NumberFormat.getNumberInstance(blog.getLocale());
+
+    StringBuilder out = new StringBuilder(4096);
+    out.append("<table width=\"99%\" cellpadding=\"0\" cellspacing=\"0\">");
+
+    List<Year> years = blog.getArchives();
+    for (int i = 0; i < years.size(); i++) {
+      Year year = years.get(i);
+      if (i % 2 == 0) {
+        out.append("<tr>");
+      }
+
+      out.append("<td valign=\"top\">");
+      out.append("<b>").append(yearFormatter.format(year.getDate().toInstant())).append("</b><br />");
+      for (Month month : year.getArchives()) {
+        int numberOfBlogEntries = month.getNumberOfBlogEntries();
+        if (numberOfBlogEntries > 0) {
+          out.append("<a href=\"").append(UrlRewriter.doRewrite(month.getPermalink()));
+          out.append("\" title=\"Blog archive for ").append(month.getDate()).append("\">");
+          out.append(monthFormatter.format(month.getDate().toInstant())).append("</a>");
+          out.append(" (").append(numberFormatter.format(numberOfBlogEntries)).append(")<br />");
+        }
+      }
+      out.append("<br />");
+      out.append("</td>");
+
+      if (i % 2 == 1 || i == years.size() - 1) {
+        out.append("</tr>");
+      }
+    }
+
+    out.append("</table>");
+
+    return out.toString();
+  }
+
+}
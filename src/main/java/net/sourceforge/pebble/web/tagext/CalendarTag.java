@@ -32,18 +32,18 @@
 package net.sourceforge.pebble.web.tagext;
 
 import java.io.IOException;
-import java.text.DateFormatSymbols;
 import java.text.NumberFormat;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Iterator;
-import java.util.List;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.TextStyle;
+import java.time.temporal.WeekFields;
+import java.util.Locale;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.jsp.JspException;
 import javax.servlet.jsp.JspTagException;
-import javax.servlet.jsp.JspWriter;
 import javax.servlet.jsp.tagext.TagSupport;
 
 import net.sourceforge.pebble.Constants;
@@ -54,7 +54,8 @@ import net.sourceforge.pebble.util.I18n;
 import net.sourceforge.pebble.util.UrlRewriter;
 
 /**
- * A custom tag that outputs a calendar control.
+ * A custom tag that outputs a calendar control. The rendered HTML is cached
+ * by the blog until the blog entries change or the day rolls over.
  *
  * @author    Simon Brown
  */
@@ -72,187 +73,165 @@ public class CalendarTag extends TagSupport {
     HttpServletRequest request = (HttpServletRequest)pageContext.getRequest();
     Blog blog = (Blog)request.getAttribute(Constants.BLOG_KEY);
     Month month = (Month)request.getAttribute(Constants.MONTHLY_BLOG);
-    Day today = blog.getBlogForToday();
-    Calendar now = blog.getCalendar();
+    LocalDate today = LocalDate.now(blog.getZoneId());
 
     if (month == null) {
-      month = today.getMonth();
+      month = blog.getBlogForMonth(today.getYear(), today.getMonthValue());
     }
 
-    Calendar firstDayOfMonth = blog.getCalendar();
-    firstDayOfMonth.setTime(month.getBlogForDay(1).getDate());
+    // the calendar depends upon the month, today's date (which is highlighted),
+    // the locale and whether links are being rewritten to be secure
+    String key = "calendar/" + month.getYear().getYear() + "/" + month.getMonth() + "/" + today + "/" +
+        blog.getLocale() + "/" + UrlRewriter.doRewrite(blog.getUrl());
+    String html = blog.getRenderedWidget(key);
+    if (html == null) {
+      // a render that overlaps the blog entries changing isn't kept
+      long generation = blog.getRenderedWidgetGeneration();
+      html = render(blog, month, today);
+      blog.putRenderedWidget(key, html, generation);
+    }
 
-    SimpleDateFormat monthAndYearFormatter = new SimpleDateFormat("MMMM yyyy", blog.getLocale());
-    monthAndYearFormatter.setTimeZone(blog.getTimeZone());
-    SimpleDateFormat monthFormatter = new SimpleDateFormat("MMM", blog.getLocale());
-    monthFormatter.setTimeZone(blog.getTimeZone());
-    NumberFormat numberFormatter = NumberFormat.getIntegerInstance(blog.getLocale());
+    try {
+      pageContext.getOut().write(html);
+    } catch (IOException ioe) {
+      throw new JspTagException(ioe.getMessage());
+    }
 
-    Month firstMonth = blog.getBlogForFirstMonth();
+    return SKIP_BODY;
+  }
 
-    try {
-      JspWriter out = pageContext.getOut();
+  /**
+   * Renders the calendar for the given month.
+   *
+   * @param blog    a Blog instance
+   * @param month   the month to render
+   * @param today   today's date, in the blog's time zone
+   * @return  the HTML as a String
+   */
+  private String render(Blog blog, Month month, LocalDate today) {
+    Locale locale = blog.getLocale();
+    YearMonth yearMonth = YearMonth.of(month.getYear().getYear(), month.getMonth());
+    YearMonth thisMonth = YearMonth.from(today);
+    Day daily = blog.getBlogForDay(today.getYear(), today.getMonthValue(), today.getDayOfMonth());
 
-      out.write("<div class=\"calendar\">");
-      out.write("<table width=\"100%\">");
-      out.write("<tr>");
-      out.write("<td colspan=\"7\" align=\"center\">");
-      if (month.before(firstMonth)) {
-        out.write("<b>");
-        out.write(monthAndYearFormatter.format(month.getDate()));
-        out.write("</b>");
-      } else {
-        out.write("<b><a href=\"");
-        out.write(UrlRewriter.doRewrite(month.getPermalink()));
-        out.write("\">");
-        out.write(monthAndYearFormatter.format(month.getDate()));
-        out.write("</a></b>");
-      }
-      out.write("</td>");
-      out.write("</tr>");
+    DateTimeFormatter monthAndYearFormatter = blog.getDateTimeFormatter("LLLL yyyy");
+    DateTimeFormatter monthFormatter = blog.getDateTimeFormatter("LLL");
+    NumberFormat numberFormatter = NumberFormat.getIntegerInstance(locale);
 
-      int firstDayOfWeek = now.getFirstDayOfWeek();
+    Month firstMonth = blog.getBlogForFirstMonth();
 
-      // write out the calendar header
-      DateFormatSymbols symbols = new DateFormatSymbols(blog.getLocale());
-      String[] days = symbols.getShortWeekdays();
-      out.write("<tr>");
-      for (int i = firstDayOfWeek; i <= 7; i++) {
-        out.write("<td class=\"calendarDayHeader\" width=\"14%\">" + days[i] + "</td>");
+    StringBuilder out = new StringBuilder(4096);
+    out.append("<div class=\"calendar\">");
+    out.append("<table width=\"100%\">");
+    out.append("<tr>");
+    out.append("<td colspan=\"7\" align=\"center\">");
+    if (month.before(firstMonth)) {
+      out.append("<b>");
+      out.append(monthAndYearFormatter.format(yearMonth));
+      out.append("</b>");
+    } else {
+      out.append("<b><a href=\"");
+      out.append(UrlRewriter.doRewrite(month.getPermalink()));
+      out.append("\">");
+      out.append(monthAndYearFormatter.format(yearMonth));
+      out.append("</a></b>");
+    }
+    out.append("</td>");
+    out.append("</tr>");
+
+    // write out the calendar header, from the first day of the week for the locale
+    DayOfWeek firstDayOfWeek = WeekFields.of(locale).getFirstDayOfWeek();
+    out.append("<tr>");
+    for (int i = 0; i < 7; i++) {
+      DayOfWeek dayOfWeek = firstDayOfWeek.plus(i);
+      // only the days up to the Saturday are given a width (Sunday sorts first)
+      if (dayOfWeek.getValue() % 7 >= firstDayOfWeek.getValue() % 7) {
+        out.append("<td class=\"calendarDayHeader\" width=\"14%\">");
+      } else {
+        out.append("<td class=\"calendarDayHeader\">");
       }
-      for (int i = 1; i < firstDayOfWeek; i++) {
-        out.write("<td class=\"calendarDayHeader\">" + days[i] + "</td>");
+      out.append(dayOfWeek.getDisplayName(TextStyle.SHORT, locale));
+      out.append("</td>");
+    }
+    out.append("</tr>");
+
+    // write out the body of the calendar, padded out to complete weeks
+    int padding = (yearMonth.atDay(1).getDayOfWeek().getValue() - firstDayOfWeek.getValue() + 7) % 7;
+    int lastDayInMonth = yearMonth.lengthOfMonth();
+    int cells = padding + lastDayInMonth;
+    cells += (7 - (cells % 7)) % 7;
+    for (int count = 0; count < cells; count++) {
+      if (count % 7 == 0) {
+        out.append("<tr>");
       }
-      out.write("</tr>");
-
-      // write out the body of the calendar
-      Iterator it = getDatesForCompleteWeeks(blog, month).iterator();
-      Calendar cal;
-      int count = 0;
-      while (it.hasNext()) {
-        cal = (Calendar)it.next();
-        Day daily = blog.getBlogForDay(cal.getTime());
 
-        String formattedNumber = numberFormatter.format(cal.get(Calendar.DAY_OF_MONTH));
+      int dayOfMonth = count - padding + 1;
+      if (dayOfMonth < 1 || dayOfMonth > lastDayInMonth) {
+        // padding, since the date to display isn't in the month
+        out.append("<td class=\"calendarDay\">&nbsp;");
+      } else {
+        Day day = month.getBlogForDay(dayOfMonth);
+        String formattedNumber = numberFormatter.format(dayOfMonth);
         if (formattedNumber.length() == 1) {
           formattedNumber = "&nbsp;" + formattedNumber;
         }
 
-        if (count % 7 == 0) {
-          out.write("<tr>");
-        }
-
-        // output padding if the date to display isn't in the month
-        if (cal.get(Calendar.MONTH) != firstDayOfMonth.get(Calendar.MONTH)) {
-          out.write("<td class=\"calendarDay\">&nbsp;");
-        } else if (now.get(Calendar.YEAR) == cal.get(Calendar.YEAR) &&
-          now.get(Calendar.MONTH) == cal.get(Calendar.MONTH) &&
-          now.get(Calendar.DAY_OF_MONTH) == cal.get(Calendar.DAY_OF_MONTH)) {
-          out.write("<td class=\"calendarToday\">");
-          if (daily.hasBlogEntries()) {
-            out.write("&nbsp;<a href=\"" + UrlRewriter.doRewrite(daily.getPermalink()) + "\">" + formattedNumber + "</a>&nbsp;");
+        if (yearMonth.equals(thisMonth) && dayOfMonth == today.getDayOfMonth()) {
+          out.append("<td class=\"calendarToday\">");
+          if (day.hasBlogEntries()) {
+            out.append("&nbsp;<a href=\"").append(UrlRewriter.doRewrite(day.getPermalink())).append("\">").append(formattedNumber).append("</a>&nbsp;");
           } else {
-            out.write("&nbsp;" + formattedNumber + "&nbsp;");
+            out.append("&nbsp;").append(formattedNumber).append("&nbsp;");
           }
+        } else if (day.hasBlogEntries()) {
+          out.append("<td class=\"calendarDayWithEntries\">");
+          out.append("&nbsp;<a href=\"").append(UrlRewriter.doRewrite(day.getPermalink())).append("\">").append(formattedNumber).append("</a>&nbsp;");
         } else {
-          if (daily.hasBlogEntries()) {
-            out.write("<td class=\"calendarDayWithEntries\">");
-            out.write("&nbsp;<a href=\"" + UrlRewriter.doRewrite(daily.getPermalink()) + "\">" + formattedNumber + "</a>&nbsp;");
-          } else {
-            out.write("<td class=\"calendarDay\">");
-            out.write("&nbsp;" + formattedNumber + "&nbsp;");
-          }
-        }
-        out.write("</td>");
-
-        if (count % 7 == 6) {
-          out.write("</tr>");
+          out.append("<td class=\"calendarDay\">");
+          out.append("&nbsp;").append(formattedNumber).append("&nbsp;");
         }
-
-        count++;
       }
+      out.append("</td>");
 
-      // write out the footer of the calendar
-      Month previous = month.getPreviousMonth();
-      Month next = month.getNextMonth();
-
-      out.write("<tr>");
-      out.write("<td colspan=\"7\" align=\"center\">");
-
-      // only display the previous month link if there are blog entries
-      if (previous.before(firstMonth)) {
-        out.write(monthFormatter.format(previous.getDate()));
-      } else {
-        out.write("<a href=\"" + UrlRewriter.doRewrite(previous.getPermalink()) + "\">" + monthFormatter.format(previous.getDate()) + "</a>");
-      }
-
-      String todayText = I18n.getMessage(blog, "common.today");
-      out.write("&nbsp; | &nbsp;");
-      out.write("<a href=\"" + UrlRewriter.doRewrite(today.getPermalink()) + "\">" + todayText + "</a>");
-      out.write("&nbsp; | &nbsp;");
-
-      // only display the next month date if it's not in the future
-      if (next.getDate().after(now.getTime()) || next.before(firstMonth)) {
-        out.write(monthFormatter.format(next.getDate()));
-      } else {
-        out.write("<a href=\"" + UrlRewriter.doRewrite(next.getPermalink()) + "\">" + monthFormatter.format(next.getDate()) + "</a>");
+      if (count % 7 == 6) {
+        out.append("</tr>");
       }
-      out.write("</td>");
-      out.write("</tr>");
-
-      out.write("</table>");
-      out.write("</div>");
-    } catch (IOException ioe) {
-      throw new JspTagException(ioe.getMessage());
     }
 
-    return SKIP_BODY;
-  }
+    // write out the footer of the calendar
+    Month previous = month.getPreviousMonth();
+    Month next = month.getNextMonth();
 
-  /**
-   * Gets a list of dates that should be displayed for the given month. This
-   * method adds dates either side of the month, padding the list so that it
-   * contains a number of complete weeks. For example, if the first day of the
-   * month for the blog's locale is Monday and the given month starts on a
-   * Tuesday, this method will add in that previous Monday to present
-   * back a complete week. The same happens for the end of the month. This
-   * makes rendering easier since we just have a 7xN grid.
-   *
-   * @param blog    a Blog instance
-   * @param month   the month
-   * @return  a List of Calendar instances
-   */
-  private List getDatesForCompleteWeeks(Blog blog, Month month) {
-    List dates = new ArrayList();
-    Calendar start = blog.getCalendar();
-    start.setTime(month.getBlogForDay(1).getDate());
-    Calendar end = blog.getCalendar();
-    end.setTime(month.getBlogForDay(month.getLastDayInMonth()).getDate());
-    Calendar cal;
+    out.append("<tr>");
+    out.append("<td colspan=\"7\" align=\"center\">");
 
-    // put all days in month into a list
-    for (int i = 1; i <= month.getLastDayInMonth(); i++) {
-      cal = (Calendar)start.clone();
-      cal.set(Calendar.DAY_OF_MONTH, i);
-      dates.add(cal);
+    // only display the previous month link if there are blog entries
+    String previousMonth = monthFormatter.format(yearMonth.minusMonths(1));
+    if (previous.before(firstMonth)) {
+      out.append(previousMonth);
+    } else {
+      out.append("<a href=\"").append(UrlRewriter.doRewrite(previous.getPermalink())).append("\">").append(previousMonth).append("</a>");
     }
 
-    // pad out before the start of the month, until the first day of the week
-    cal = (Calendar)start.clone();
-    while (cal.get(Calendar.DAY_OF_WEEK) != cal.getFirstDayOfWeek()) {
-      cal.add(Calendar.DATE, -1);
-      dates.add(0, cal.clone());
+    String todayText = I18n.getMessage(blog, "common.today");
+    out.append("&nbsp; | &nbsp;");
+    out.append("<a href=\"").append(UrlRewriter.doRewrite(daily.getPermalink())).append("\">").append(todayText).append("</a>");
+    out.append("&nbsp; | &nbsp;");
+
+    // only display the next month date if it's not in the future
+    String nextMonth = monthFormatter.format(yearMonth.plusMonths(1));
+    if (yearMonth.plusMonths(1).isAfter(thisMonth) || next.before(firstMonth)) {
+      out.append(nextMonth);
+    } else {
+      out.append("<a href=\"").append(UrlRewriter.doRewrite(next.getPermalink())).append("\">").append(nextMonth).append("</a>");
     }
+    out.append("</td>");
+    out.append("</tr>");
 
-    // pad out after month, until the last day of the week
-    cal = (Calendar)end.clone();
-    cal.add(Calendar.DATE, 1);
-    while (cal.get(Calendar.DAY_OF_WEEK) != cal.getFirstDayOfWeek()) {
-      dates.add(cal.clone());
-      cal.add(Calendar.DATE, 1);
-    }
+    out.append("</table>");
+    out.append("</div>");
 
-    return dates;
+    return out.toString();
   }
 
-}
\ No newline at end of file
+}
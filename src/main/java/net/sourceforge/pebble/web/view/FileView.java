@@ -33,21 +33,31 @@ package net.sourceforge.pebble.web.view;
 
 import net.sourceforge.pebble.util.FileUtils;
 import net.sourceforge.pebble.domain.AbstractBlog;
-import net.sourceforge.pebble.domain.Blog;
-import net.sourceforge.pebble.domain.FileMetaData;
 import net.sourceforge.pebble.Constants;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.logging.Log;
 
 /**
  * Represents a binary view component and prepares the model for display.
+ * Files are streamed straight from the file system using
+ * FileChannel.transferTo, with support for conditional GETs (weak ETags
+ * and If-Modified-Since) and single/multiple byte range requests.
  *
  * @author    Simon Brown
  */
@@ -56,8 +66,19 @@ public class FileView extends BinaryView {
   /** the log used by this class */
   private static Log log = LogFactory.getLog(FileView.class);
 
+  /** the boundary used to separate parts of a multipart/byteranges response */
+  private static final String MULTIPART_BOUNDARY = "PEBBLE_BYTERANGES";
+
+  private static final String CRLF = "\r\n";
+
+  /** the maximum number of ranges honoured in a single request */
+  static final int MAXIMUM_NUMBER_OF_RANGES = 16;
+
   private File file;
 
+  /** the number of seconds that clients may cache this file for, or -1 if not set */
+  private long maxAge = -1;
+
   public FileView(File file) {
     this.file = file;
   }
@@ -85,6 +106,69 @@ public class FileView extends BinaryView {
     return file.length();
   }
 
+  /**
+   * Gets the last modified date of the underlying file, truncated to whole
+   * seconds since that's the granularity of HTTP dates.
+   *
+   * @return  the last modified time, in milliseconds
+   */
+  public long getLastModified() {
+    return (file.lastModified() / 1000) * 1000;
+  }
+
+  /**
+   * Gets a weak entity tag for the file, derived from its size and last
+   * modified time.
+   *
+   * @return  an ETag value, including the W/ prefix and quotes
+   */
+  public String getETag() {
+    return "W/\"" + Long.toHexString(file.length()) + "-" + Long.toHexString(getLastModified()) + "\"";
+  }
+
+  /**
+   * Sets the number of seconds that clients may cache this file for.
+   *
+   * @param maxAge    the max-age, in seconds
+   */
+  public void setMaxAge(long maxAge) {
+    this.maxAge = maxAge;
+  }
+
+  public long getMaxAge() {
+    return maxAge;
+  }
+
+  /**
+   * Sets the validator and caching headers on the response, and works out
+   * whether the client already has a current copy of this file.
+   *
+   * @param request   the HttpServletRequest instance
+   * @param response  the HttpServletResponse instance
+   * @return  true if a 304 (not modified) should be sent, false otherwise
+   */
+  public boolean checkNotModified(HttpServletRequest request, HttpServletResponse response) {
+    String etag = getETag();
+    long lastModified = getLastModified();
+
+    response.setHeader("ETag", etag);
+    response.setDateHeader("Last-Modified", lastModified);
+    response.setHeader("Accept-Ranges", "bytes");
+    if (maxAge >= 0) {
+      response.setHeader("Cache-Control", "public, max-age=" + maxAge);
+      response.setDateHeader("Expires", System.currentTimeMillis() + (maxAge * 1000));
+    }
+
+    // If-None-Match takes precedence over If-Modified-Since
+    String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch != null) {
+      return matchesETag(ifNoneMatch, etag);
+    }
+
+    long ifModifiedSince = getDateHeader(request, "If-Modified-Since");
+    return ifModifiedSince != -1 && lastModified <= ifModifiedSince;
+  }
+
   /**
    * Dispatches this view.
    *
@@ -93,25 +177,222 @@ public class FileView extends BinaryView {
    * @param context
    */
   public void dispatch(HttpServletRequest request, HttpServletResponse response, ServletContext context) throws ServletException {
-    response.setContentLength((int)getContentLength());
+    int status = HttpServletResponse.SC_OK;
     try {
-      BufferedInputStream in = new BufferedInputStream(new FileInputStream(file));
-      BufferedOutputStream out = new BufferedOutputStream(response.getOutputStream());
-
-      byte[] buf = new byte[1024];
-      int len = in.read(buf);
-      while (len > 0) {
-          out.write(buf, 0, len);
-          len = in.read(buf);
-      }
+      long length = getContentLength();
+      List<long[]> ranges = getRanges(request, length);
 
-      in.close();
-      out.close();
+      if (ranges == null) {
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setContentLengthLong(length);
+        if (!isHead(request)) {
+          copy(0, length, response.getOutputStream());
+        }
+      } else if (ranges.isEmpty()) {
+        status = HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE;
+        response.setHeader("Content-Range", "bytes */" + length);
+        response.sendError(status);
+      } else if (ranges.size() == 1) {
+        status = HttpServletResponse.SC_PARTIAL_CONTENT;
+        long[] range = ranges.get(0);
+        response.setStatus(status);
+        response.setHeader("Content-Range", contentRange(range, length));
+        response.setContentLengthLong(range[1] - range[0] + 1);
+        if (!isHead(request)) {
+          copy(range[0], range[1] - range[0] + 1, response.getOutputStream());
+        }
+      } else {
+        status = HttpServletResponse.SC_PARTIAL_CONTENT;
+        String contentType = getContentType();
+        response.setStatus(status);
+        response.setContentType("multipart/byteranges; boundary=" + MULTIPART_BOUNDARY);
+        if (!isHead(request)) {
+          ServletOutputStream out = response.getOutputStream();
+          for (long[] range : ranges) {
+            StringBuilder part = new StringBuilder();
+            part.append(CRLF).append("--").append(MULTIPART_BOUNDARY).append(CRLF);
+            if (contentType != null) {
+              part.append("Content-Type: ").append(contentType).append(CRLF);
+            }
+            part.append("Content-Range: ").append(contentRange(range, length)).append(CRLF);
+            part.append(CRLF);
+            out.write(part.toString().getBytes(StandardCharsets.ISO_8859_1));
+            copy(range[0], range[1] - range[0] + 1, out);
+          }
+          out.write((CRLF + "--" + MULTIPART_BOUNDARY + "--" + CRLF).getBytes(StandardCharsets.ISO_8859_1));
+        }
+      }
     } catch (IOException ioe) {
       log.warn(ioe);
     } finally {
       AbstractBlog blog = (AbstractBlog)getModel().get(Constants.BLOG_KEY);
-      blog.log(request, HttpServletResponse.SC_OK);
+      blog.log(request, status);
+    }
+  }
+
+  /**
+   * Copies part of the file to the given output stream, letting the
+   * file channel move the bytes rather than copying through a heap buffer.
+   */
+  private void copy(long position, long count, OutputStream out) throws IOException {
+    try (FileInputStream in = new FileInputStream(file)) {
+      FileChannel channel = in.getChannel();
+      WritableByteChannel target = Channels.newChannel(out);
+      long end = position + count;
+      while (position < end) {
+        long transferred = channel.transferTo(position, end - position, target);
+        if (transferred <= 0) {
+          // the file has been truncated underneath us
+          break;
+        }
+        position += transferred;
+      }
+    }
+    out.flush();
+  }
+
+  /**
+   * Parses the Range header of the request.
+   *
+   * @return  null if the whole file should be sent, an empty list if the
+   *          range is unsatisfiable, or a list of {start, end} pairs
+   *          (inclusive) otherwise
+   */
+  List<long[]> getRanges(HttpServletRequest request, long length) {
+    String header = request.getHeader("Range");
+    if (header == null || !header.startsWith("bytes=")) {
+      return null;
+    }
+
+    // If-Range means "send me the range only if the file hasn't changed"
+    String ifRange = request.getHeader("If-Range");
+    if (ifRange != null) {
+      if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+        // If-Range requires the strong comparison function, so a weak
+        // validator (which ours always is) never matches
+        String etag = getETag();
+        if (ifRange.startsWith("W/") || etag.startsWith("W/") || !ifRange.trim().equals(etag)) {
+          return null;
+        }
+      } else if (getDateHeader(request, "If-Range") != getLastModified()) {
+        return null;
+      }
+    }
+
+    String[] specs = header.substring("bytes=".length()).split(",");
+    if (specs.length > MAXIMUM_NUMBER_OF_RANGES) {
+      // too many ranges is more likely abuse than a real client, so just
+      // send the whole file instead
+      return null;
+    }
+
+    List<long[]> ranges = new ArrayList<long[]>();
+    for (String spec : specs) {
+      spec = spec.trim();
+      int dash = spec.indexOf('-');
+      if (dash < 0) {
+        // malformed, so ignore the header altogether
+        return null;
+      }
+
+      long start, end;
+      try {
+        if (dash == 0) {
+          // suffix range, e.g. -500 for the last 500 bytes
+          long suffix = Long.parseLong(spec.substring(1));
+          if (suffix <= 0) {
+            continue;
+          }
+          start = Math.max(0, length - suffix);
+          end = length - 1;
+        } else {
+          start = Long.parseLong(spec.substring(0, dash));
+          end = (dash == spec.length() - 1) ? length - 1 : Long.parseLong(spec.substring(dash + 1));
+        }
+      } catch (NumberFormatException nfe) {
+        return null;
+      }
+
+      if (start > end) {
+        return null;
+      }
+      if (start >= length) {
+        // unsatisfiable, but others in the set might be fine
+        continue;
+      }
+      ranges.add(new long[] { start, Math.min(end, length - 1) });
+    }
+
+    return mergeRanges(ranges);
+  }
+
+  /**
+   * Coalesces overlapping and adjacent ranges, so that no byte is sent more
+   * than once.
+   *
+   * @param ranges    a list of {start, end} pairs
+   * @return  the merged ranges, in ascending order
+   */
+  private static List<long[]> mergeRanges(List<long[]> ranges) {
+    if (ranges.size() < 2) {
+      return ranges;
+    }
+
+    Collections.sort(ranges, new Comparator<long[]>() {
+      public int compare(long[] r1, long[] r2) {
+        return Long.compare(r1[0], r2[0]);
+      }
+    });
+
+    List<long[]> merged = new ArrayList<long[]>();
+    long[] current = ranges.get(0);
+    for (int i = 1; i < ranges.size(); i++) {
+      long[] next = ranges.get(i);
+      if (next[0] <= current[1] + 1) {
+        current = new long[] { current[0], Math.max(current[1], next[1]) };
+      } else {
+        merged.add(current);
+        current = next;
+      }
+    }
+    merged.add(current);
+
+    return merged;
+  }
+
+  private static String contentRange(long[] range, long length) {
+    return "bytes " + range[0] + "-" + range[1] + "/" + length;
+  }
+
+  private static boolean isHead(HttpServletRequest request) {
+    return "HEAD".equals(request.getMethod());
+  }
+
+  /**
+   * Compares a (possibly comma separated) list of entity tags from a request
+   * header against the given ETag, using the weak comparison function.
+   */
+  private static boolean matchesETag(String header, String etag) {
+    String opaqueTag = stripWeakPrefix(etag);
+    for (String candidate : header.split(",")) {
+      candidate = candidate.trim();
+      if (candidate.equals("*") || stripWeakPrefix(candidate).equals(opaqueTag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String stripWeakPrefix(String etag) {
+    return etag.startsWith("W/") ? etag.substring(2) : etag;
+  }
+
+  private static long getDateHeader(HttpServletRequest request, String name) {
+    try {
+      return request.getDateHeader(name);
+    } catch (IllegalArgumentException iae) {
+      // not a valid HTTP date, so treat it as absent
+      return -1;
     }
   }
 
@@ -0,0 +1,435 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.view;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import net.sourceforge.pebble.PebbleContext;
+import net.sourceforge.pebble.domain.AbstractBlog;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.Tag;
+import net.sourceforge.pebble.util.StringUtils;
+import net.sourceforge.pebble.web.listener.PebblePDFCreationListener;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+import org.xhtmlrenderer.pdf.ITextUserAgent;
+import org.xhtmlrenderer.pdf.TrueTypeUtil;
+
+import com.lowagie.text.pdf.BaseFont;
+
+/**
+ * Renders blog entries as PDF documents, caching the results on disk so
+ * that each version of a blog entry is only ever rendered once.
+ * <p>
+ * Laying out a PDF is expensive, so only a fixed number of renders can run
+ * at once; further requests wait for a renderer to become free and give up
+ * if too many are already waiting. Renderers are configured once (fonts,
+ * user agent) and reused.
+ *
+ * @author    Alexander Zagniotov
+ */
+class PdfRenderer {
+
+  private static final Log log = LogFactory.getLog(PdfRenderer.class);
+
+  private static final String SEP = "/";
+  private static final String FONTS_PATH = "fonts";
+  private static final String THEMES_PATH = "themes";
+  private static final String PDF_CSS = "pdf.css";
+  private static final String SYSTEM_THEME_PATH = HtmlView.SYSTEM_THEME;
+
+  /** the number of PDFs that can be rendered at once */
+  static final int MAXIMUM_CONCURRENT_RENDERS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+  /** the number of requests that can be waiting for a renderer */
+  static final int MAXIMUM_WAITING_RENDERS = MAXIMUM_CONCURRENT_RENDERS * 4;
+
+  /** how long to wait for a renderer before giving up */
+  private static final long RENDER_TIMEOUT_SECONDS = 30;
+
+  private static PdfRenderer instance;
+
+  private final BlockingQueue<ITextRenderer> renderers;
+  private final AtomicInteger waiting = new AtomicInteger();
+
+  /** the font file embedded in PDFs, and its family name */
+  private final File font;
+  private final String fontFamilyName;
+
+  static synchronized PdfRenderer getInstance() {
+    if (instance == null) {
+      instance = new PdfRenderer(MAXIMUM_CONCURRENT_RENDERS);
+    }
+
+    return instance;
+  }
+
+  PdfRenderer(int numberOfRenderers) {
+    this.font = findFont();
+    this.fontFamilyName = getFontFamilyName(font);
+    this.renderers = new ArrayBlockingQueue<ITextRenderer>(numberOfRenderers);
+    for (int i = 0; i < numberOfRenderers; i++) {
+      renderers.add(createRenderer());
+    }
+  }
+
+  /**
+   * Opens the PDF for the given blog entry, rendering it if this version of
+   * the blog entry hasn't been rendered before. Once open, the PDF can be
+   * read even if it's replaced by a newer version (or removed along with
+   * the blog entry) while it's being read.
+   *
+   * @param entry   a BlogEntry instance
+   * @return  a FileChannel to read the PDF from, or null if the server is
+   *          too busy to render it
+   * @throws Exception  if the PDF can't be rendered
+   */
+  FileChannel openPdf(BlogEntry entry) throws Exception {
+    for (int attempt = 1; ; attempt++) {
+      File pdf = getPdf(entry);
+      if (pdf == null) {
+        return null;
+      }
+
+      try {
+        return FileChannel.open(pdf.toPath(), StandardOpenOption.READ);
+      } catch (NoSuchFileException nsfe) {
+        // another version was rendered between finding this one and opening
+        // it, so this one has been removed; try again, which renders it afresh
+        if (attempt == 2) {
+          throw nsfe;
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the PDF for the given blog entry, rendering it if this version of
+   * the blog entry hasn't been rendered before.
+   *
+   * @param entry   a BlogEntry instance
+   * @return  the PDF file, or null if the server is too busy to render it
+   * @throws Exception  if the PDF can't be rendered
+   */
+  File getPdf(BlogEntry entry) throws Exception {
+    byte[] xhtml = buildXhtml(entry).getBytes(StandardCharsets.UTF_8);
+
+    // the file name identifies the exact content, so that a changed blog entry is re-rendered
+    File directory = getDirectory(entry.getBlog());
+    String prefix = entry.getId() + "-";
+    File file = new File(directory, prefix + DigestUtils.shaHex(xhtml) + ".pdf");
+    if (file.exists()) {
+      return file;
+    }
+
+    if (waiting.incrementAndGet() > MAXIMUM_WAITING_RENDERS) {
+      waiting.decrementAndGet();
+      log.warn("Too many PDFs are waiting to be rendered, skipping " + entry.getId());
+      return null;
+    }
+
+    ITextRenderer renderer;
+    try {
+      renderer = renderers.poll(RENDER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } finally {
+      waiting.decrementAndGet();
+    }
+
+    if (renderer == null) {
+      log.warn("Timed out waiting to render a PDF for " + entry.getId());
+      return null;
+    }
+
+    boolean rendered = false;
+    try {
+      // another request may have rendered it while we were waiting
+      if (!file.exists()) {
+        render(renderer, xhtml, directory, file);
+        removeOtherVersions(directory, prefix, file);
+      }
+      rendered = true;
+    } finally {
+      // a renderer that failed part way through is discarded
+      renderers.add(rendered ? renderer : createRenderer());
+    }
+
+    return file;
+  }
+
+  private void render(ITextRenderer renderer, byte[] xhtml, File directory, File file) throws Exception {
+    DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+    Document doc = builder.parse(new InputSource(new ByteArrayInputStream(xhtml)));
+
+    //Listener that will parse HTML header meta tags, and will set them to PDF document as meta data
+    PebblePDFCreationListener pdfListener = new PebblePDFCreationListener();
+    pdfListener.parseMetaTags(doc);
+    renderer.setListener(pdfListener);
+    renderer.setDocument(doc, null);
+    renderer.layout();
+
+    directory.mkdirs();
+    File tmp = File.createTempFile(file.getName(), ".tmp", directory);
+    try {
+      OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp.toPath()));
+      try {
+        renderer.createPDF(out);
+      } finally {
+        out.close();
+      }
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      log.info("Successfully generated PDF document: " + file.getName());
+    } finally {
+      tmp.delete();
+    }
+  }
+
+  /**
+   * Removes the versions of a PDF that were rendered before the given one,
+   * which has already been moved into place. A version rendered since (from
+   * a newer copy of the blog entry) is left alone.
+   */
+  private void removeOtherVersions(File directory, String prefix, File file) {
+    long lastModified = file.lastModified();
+    for (File f : listVersions(directory, prefix)) {
+      if (!f.equals(file) && f.lastModified() <= lastModified) {
+        f.delete();
+      }
+    }
+  }
+
+  /**
+   * Removes all cached versions of the PDF for a blog entry; called when
+   * the blog entry is removed. Readers that already have one open can
+   * carry on reading it.
+   *
+   * @param blog          the blog that the blog entry belonged to
+   * @param blogEntryId   the ID of the blog entry
+   */
+  static void removePdfs(AbstractBlog blog, String blogEntryId) {
+    for (File f : listVersions(getDirectory(blog), blogEntryId + "-")) {
+      f.delete();
+    }
+  }
+
+  private static File getDirectory(AbstractBlog blog) {
+    return new File(blog.getCacheDirectory(), "pdf");
+  }
+
+  private static File[] listVersions(File directory, final String prefix) {
+    File[] files = directory.listFiles(new FilenameFilter() {
+      public boolean accept(File dir, String name) {
+        return name.startsWith(prefix) && name.endsWith(".pdf");
+      }
+    });
+
+    return (files != null) ? files : new File[0];
+  }
+
+  /**
+   * Creates a renderer with the shared fonts and user agent configured.
+   */
+  private ITextRenderer createRenderer() {
+    ITextRenderer renderer = new ITextRenderer();
+
+    // the Pebble stylesheet is read straight from the web application, rather than over HTTP
+    ITextUserAgent userAgent = new ITextUserAgent(renderer.getOutputDevice()) {
+      protected InputStream resolveAndOpenStream(String uri) {
+        String stylesheet = SEP + THEMES_PATH + SEP + SYSTEM_THEME_PATH + SEP + PDF_CSS;
+        String webApplicationRoot = PebbleContext.getInstance().getWebApplicationRoot();
+        if (uri != null && uri.endsWith(stylesheet) && webApplicationRoot != null) {
+          try {
+            return new FileInputStream(new File(webApplicationRoot + stylesheet));
+          } catch (IOException ioe) {
+            log.warn("Could not read " + PDF_CSS + ": " + ioe);
+            return null;
+          }
+        }
+
+        return super.resolveAndOpenStream(uri);
+      }
+    };
+    userAgent.setSharedContext(renderer.getSharedContext());
+    renderer.getSharedContext().setUserAgentCallback(userAgent);
+
+    if (font != null) {
+      try {
+        //You should always embed TrueType fonts.
+        renderer.getFontResolver().addFont(font.getAbsolutePath(), BaseFont.IDENTITY_H, BaseFont.EMBEDDED);
+      } catch (Exception e) {
+        log.error("Could not add font " + font.getAbsolutePath() + ": " + e);
+      }
+    }
+
+    return renderer;
+  }
+
+  /**
+   * Gets TTF or OTF font file from the font directory in the system theme folder.
+   *
+   * @return  a File, or null if there are no fonts
+   */
+  private static File findFont() {
+    //<pebble_root> + / + themes + / + _pebble + / + fonts
+    File fontDir = new File(PebbleContext.getInstance().getWebApplicationRoot() + SEP + THEMES_PATH + SEP + SYSTEM_THEME_PATH + SEP + FONTS_PATH);
+    if (fontDir.isDirectory()) {
+      File[] files = fontDir.listFiles(new FilenameFilter() {
+        public boolean accept(File dir, String name) {
+          String lower = name.toLowerCase();
+
+          //Load TTF or OTF files
+          return lower.endsWith(".otf") || lower.endsWith(".ttf");
+        }
+      });
+
+      if (files != null && files.length > 0) {
+        log.info("Using font: " + files[0].getAbsolutePath());
+        return files[0];
+      }
+    }
+
+    return null;
+  }
+
+  private static String getFontFamilyName(File font) {
+    if (font == null) {
+      return "";
+    }
+
+    try {
+      //Get font family name from the BaseFont object. All this work just to get font family name
+      BaseFont baseFont = BaseFont.createFont(font.getAbsolutePath(), BaseFont.IDENTITY_H, BaseFont.NOT_EMBEDDED);
+      return TrueTypeUtil.getFamilyName(baseFont);
+    } catch (Exception e) {
+      log.error("Could not read font family name from " + font.getAbsolutePath() + ": " + e);
+      return "";
+    }
+  }
+
+  /**
+   * Builds valid XHTML source from the blog entry, for parsing.
+   *
+   * @param entry   a BlogEntry instance
+   * @return  the XHTML as a String
+   */
+  String buildXhtml(BlogEntry entry) {
+    String author = entry.getUser().getName();
+    String title = entry.getTitle();
+    String subtitle = entry.getSubtitle();
+    String body = entry.getBody();
+    String blogName = entry.getBlog().getName();
+    String entryPermalink = entry.getPermalink();
+    String entryDescription = entry.getBlog().getDescription();
+
+    //Some of the HTML entities need to be escaped to Unicode notation \\uXXXX for XHTML markup to validate
+    title = StringUtils.transformHTML(title);
+    subtitle = StringUtils.transformHTML(subtitle);
+    body = StringUtils.unescapeHTMLEntities(body);
+
+    //Get blog entry tags for PDF metadata 'keywords', seperated by comma
+    StringBuilder tags = new StringBuilder();
+    Iterator<Tag> currentEntryTags = entry.getAllTags().iterator();
+    while (currentEntryTags.hasNext()) {
+      Tag currentTag = currentEntryTags.next();
+      if (currentTag.getName() != null && !currentTag.getName().equals("")) {
+        tags.append(currentTag.getName());
+        if (currentEntryTags.hasNext()) {
+          tags.append(",");
+        }
+      }
+    }
+
+    StringBuilder buf = new StringBuilder();
+    buf.append("<html>");
+    buf.append("<head>");
+    buf.append("<meta name=\"title\" content=\"" + title + " - " + blogName + "\"/>");
+    buf.append("<meta name=\"subject\" content=\"" + title + "\"/>");
+    buf.append("<meta name=\"keywords\" content=\"" + tags.toString().trim() + "\"/>");
+    buf.append("<meta name=\"author\" content=\"" + author + "\"/>");
+    buf.append("<meta name=\"creator\" content=\"Pebble (by pebble.sourceforge.net)\"/>");
+    buf.append("<meta name=\"producer\" content=\"Flying Saucer (by xhtmlrenderer.dev.java.net)\"/>");
+    buf.append("<link rel='stylesheet' type='text/css' href='" + entry.getBlog().getUrl() +
+        THEMES_PATH + SEP + SYSTEM_THEME_PATH + SEP + PDF_CSS + "' media='print' />");
+    buf.append("</head>");
+    buf.append("<body>");
+    buf.append("<div id=\"header\" style=\"\">" + blogName + " - " + entryDescription + "</div>");
+    buf.append("<p>");
+
+    if (!fontFamilyName.equals("")) {
+      //Wrap DIV with font family name around the content of the blog entry
+      author = "<div style=\"font-family: " + fontFamilyName + ";\">" + author + "</div>";
+      title = "<div style=\"font-family: " + fontFamilyName + ";\">" + title + "</div>";
+      subtitle = "<div style=\"font-family: " + fontFamilyName + ";\">" + subtitle + "</div>";
+      body = "<div style=\"font-family: " + fontFamilyName + ";\">" + body + "</div>";
+    }
+
+    buf.append("<h1>" + title  + "</h1>");
+    buf.append("<h2>" + subtitle + "</h2>");
+    buf.append("</p>");
+    buf.append("<p>" + body + "</p>");
+    buf.append("<p><br /><br /><br />");
+    buf.append("<i>Published by " + author + "</i><br />");
+    buf.append("<i>" + entry.getDate().toString() + "</i><br />");
+    buf.append("<i><a href=\"" + entryPermalink + "\" title=\"" + entryPermalink + "\">" + entryPermalink + "</a></i>");
+    buf.append("</p>");
+    buf.append("</body>");
+    buf.append("</html>");
+
+    return buf.toString();
+  }
+
+}
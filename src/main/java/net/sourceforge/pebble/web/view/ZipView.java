@@ -31,32 +31,48 @@
  */
 package net.sourceforge.pebble.web.view;
 
-import net.sourceforge.pebble.domain.FileMetaData;
-
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.BufferedOutputStream;
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.List;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 /**
  * Represents a binary view component and prepares the model for display.
+ * The directory is walked as the ZIP file is written, so only one file
+ * is open at any time however big the directory is.
  *
  * @author    Simon Brown
  */
 public class ZipView extends BinaryView {
 
-  private List files;
+  /** the size of the buffer used to copy files into the ZIP stream */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private File root;
+  private File directory;
   private String filename;
 
-  public ZipView(List files, String filename) {
-    this.files = files;
+  /**
+   * Creates a new view.
+   *
+   * @param root        the root directory, entry names are relative to this
+   * @param directory   the directory (underneath root) to be zipped
+   * @param filename    the name of the ZIP file
+   */
+  public ZipView(File root, File directory, String filename) {
+    this.root = root;
+    this.directory = directory;
     this.filename = filename;
   }
 
@@ -83,24 +99,30 @@ public class ZipView extends BinaryView {
   public void dispatch(HttpServletRequest request, HttpServletResponse response, ServletContext context) throws ServletException {
     try {
       response.setHeader("Content-Disposition", "filename=" + filename);
-      byte[] buf = new byte[1024];
-      ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(response.getOutputStream()));
-      Iterator it = files.iterator();
-      while (it.hasNext()) {
-        FileMetaData file = (FileMetaData)it.next();
-        if (file.isDirectory()) {
-          continue;
-        }
+      final byte[] buf = new byte[BUFFER_SIZE];
+      final Path rootPath = root.toPath();
+      final ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(response.getOutputStream(), BUFFER_SIZE));
+
+      Files.walkFileTree(directory.toPath(), new SimpleFileVisitor<Path>() {
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+          if (!attrs.isRegularFile()) {
+            return FileVisitResult.CONTINUE;
+          }
 
-        FileInputStream in = new FileInputStream(file.getFile());
-        out.putNextEntry(new ZipEntry(file.getAbsolutePath().substring(1)));
-        int len;
-        while ((len = in.read(buf)) > 0) {
-          out.write(buf, 0, len);
+          String name = rootPath.relativize(file).toString().replace(File.separatorChar, '/');
+          ZipEntry entry = new ZipEntry(name);
+          entry.setTime(attrs.lastModifiedTime().toMillis());
+          out.putNextEntry(entry);
+          try (InputStream in = Files.newInputStream(file)) {
+            int len;
+            while ((len = in.read(buf)) > 0) {
+              out.write(buf, 0, len);
+            }
+          }
+          out.closeEntry();
+          return FileVisitResult.CONTINUE;
         }
-        out.closeEntry();
-        in.close();
-      }
+      });
 
       out.close();
     } catch (IOException ioe) {
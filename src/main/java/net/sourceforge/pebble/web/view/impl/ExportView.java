@@ -0,0 +1,406 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.view.impl;
+
+import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.domain.*;
+import net.sourceforge.pebble.web.view.View;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Exports an entire blog as RSS 2.0, Atom 1.0 or RDF 1.0. Unlike the regular
+ * feed views, blog entries are loaded one at a time and written straight
+ * out with a streaming XML writer, so memory use doesn't depend on the
+ * size of the blog. If the client goes away, the resulting I/O error
+ * stops the export.
+ *
+ * @author    Simon Brown
+ */
+public class ExportView extends View {
+
+  private static final Log log = LogFactory.getLog(ExportView.class);
+
+  public static final String RSS = "rss";
+  public static final String ATOM = "atom";
+  public static final String RDF = "rdf";
+
+  /** how many blog entries are written between flushes/progress reports */
+  private static final int PROGRESS_INTERVAL = 50;
+
+  private static final String ATOM_NAMESPACE = "http://www.w3.org/2005/Atom";
+  private static final String CONTENT_NAMESPACE = "http://purl.org/rss/1.0/modules/content/";
+  private static final String DC_NAMESPACE = "http://purl.org/dc/elements/1.1/";
+  private static final String RDF_NAMESPACE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+  private static final String RSS1_NAMESPACE = "http://purl.org/rss/1.0/";
+
+  private static final DateTimeFormatter RFC_822 = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+  private static final DateTimeFormatter RFC_3339 = DateTimeFormatter.ISO_INSTANT;
+  private static final DateTimeFormatter ID_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd").withZone(ZoneOffset.UTC);
+
+  private static final XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
+
+  private final String flavor;
+
+  public ExportView(String flavor) {
+    this.flavor = flavor;
+  }
+
+  /**
+   * Gets the content type of this view.
+   *
+   * @return the content type as a String
+   */
+  public String getContentType() {
+    AbstractBlog blog = (AbstractBlog)getModel().get(Constants.BLOG_KEY);
+    String contentType = ATOM.equals(flavor) ? "application/atom+xml" : "application/xml";
+    return contentType + "; charset=" + blog.getCharacterEncoding();
+  }
+
+  public String getFlavor() {
+    return flavor;
+  }
+
+  /**
+   * Dispatches this view.
+   *
+   * @param request  the HttpServletRequest instance
+   * @param response the HttpServletResponse instance
+   * @param context  the ServletContext instance
+   */
+  @SuppressWarnings("unchecked")
+  public void dispatch(HttpServletRequest request, HttpServletResponse response, ServletContext context) throws ServletException {
+    Blog blog = (Blog)getModel().get(Constants.BLOG_KEY);
+    List<String> blogEntryIds = (List<String>)getModel().get(Constants.BLOG_ENTRY_IDS);
+
+    try {
+      Writer writer = response.getWriter();
+      XMLStreamWriter xml = xmlOutputFactory.createXMLStreamWriter(writer);
+      xml.writeStartDocument(blog.getCharacterEncoding(), "1.0");
+
+      if (ATOM.equals(flavor)) {
+        writeAtom(xml, writer, blog, blogEntryIds);
+      } else if (RDF.equals(flavor)) {
+        writeRdf(xml, writer, blog, blogEntryIds);
+      } else {
+        writeRss(xml, writer, blog, blogEntryIds);
+      }
+
+      xml.writeEndDocument();
+      xml.close();
+      writer.flush();
+    } catch (XMLStreamException e) {
+      throw new ServletException("Error exporting blog", e);
+    } catch (IOException e) {
+      // most likely the client has cancelled the download
+      log.info("Export of " + blog.getId() + " stopped : " + e.getMessage());
+    } catch (BlogServiceException e) {
+      throw new ServletException("Error exporting blog", e);
+    }
+  }
+
+  private void writeRss(XMLStreamWriter xml, Writer writer, Blog blog, List<String> blogEntryIds) throws XMLStreamException, IOException, BlogServiceException {
+    xml.writeStartElement("rss");
+    xml.writeAttribute("version", "2.0");
+    xml.writeNamespace("content", CONTENT_NAMESPACE);
+    xml.writeNamespace("dc", DC_NAMESPACE);
+    xml.writeStartElement("channel");
+    writeElement(xml, "title", blog.getName());
+    writeElement(xml, "link", blog.getUrl());
+    writeElement(xml, "description", blog.getDescription());
+    writeElement(xml, "pubDate", rfc822(blog.getLastModified()));
+
+    BlogService service = new BlogService();
+    int count = 0;
+    for (String blogEntryId : blogEntryIds) {
+      BlogEntry blogEntry = loadBlogEntry(service, blog, blogEntryId);
+      if (blogEntry != null) {
+        xml.writeStartElement("item");
+        writeElement(xml, "title", blogEntry.getTitle());
+        writeElement(xml, "link", blogEntry.getPermalink());
+        writeElement(xml, "description", getSummary(blogEntry));
+        xml.writeStartElement(CONTENT_NAMESPACE, "encoded");
+        xml.writeCharacters(nullToEmpty(blogEntry.getBody()));
+        xml.writeEndElement();
+        xml.writeStartElement(DC_NAMESPACE, "creator");
+        xml.writeCharacters(nullToEmpty(blogEntry.getAuthor()));
+        xml.writeEndElement();
+        for (Category category : blogEntry.getCategories()) {
+          xml.writeStartElement("category");
+          xml.writeAttribute("domain", category.getPermalink());
+          xml.writeCharacters(category.getName());
+          xml.writeEndElement();
+        }
+        for (Tag tag : blogEntry.getAllTags()) {
+          xml.writeStartElement("category");
+          xml.writeAttribute("domain", tag.getPermalink());
+          xml.writeCharacters(tag.getName());
+          xml.writeEndElement();
+        }
+        if (blogEntry.getAttachment() != null) {
+          Attachment attachment = blogEntry.getAttachment();
+          xml.writeEmptyElement("enclosure");
+          xml.writeAttribute("url", attachment.getUrl());
+          xml.writeAttribute("length", "" + attachment.getSize());
+          xml.writeAttribute("type", nullToEmpty(attachment.getType()));
+        }
+        xml.writeStartElement("guid");
+        xml.writeAttribute("isPermaLink", "false");
+        xml.writeCharacters(generateId(blog, blogEntry.getDate(), blogEntry.getId()));
+        xml.writeEndElement();
+        writeElement(xml, "pubDate", rfc822(blogEntry.getDate()));
+        xml.writeEndElement();
+      }
+      progress(xml, writer, blog, ++count, blogEntryIds.size());
+    }
+
+    xml.writeEndElement();
+    xml.writeEndElement();
+  }
+
+  private void writeAtom(XMLStreamWriter xml, Writer writer, Blog blog, List<String> blogEntryIds) throws XMLStreamException, IOException, BlogServiceException {
+    xml.setDefaultNamespace(ATOM_NAMESPACE);
+    xml.writeStartElement(ATOM_NAMESPACE, "feed");
+    xml.writeDefaultNamespace(ATOM_NAMESPACE);
+    writeElement(xml, "title", blog.getName());
+    writeElement(xml, "subtitle", blog.getDescription());
+    writeLink(xml, "alternate", "text/html", blog.getUrl());
+    writeElement(xml, "id", generateId(blog, null, null));
+    writeElement(xml, "updated", rfc3339(blog.getLastModified()));
+    xml.writeStartElement("author");
+    writeElement(xml, "name", blog.getAuthor());
+    xml.writeEndElement();
+
+    BlogService service = new BlogService();
+    int count = 0;
+    for (String blogEntryId : blogEntryIds) {
+      BlogEntry blogEntry = loadBlogEntry(service, blog, blogEntryId);
+      if (blogEntry != null) {
+        xml.writeStartElement("entry");
+        writeElement(xml, "title", blogEntry.getTitle());
+        writeLink(xml, "alternate", "text/html", blogEntry.getPermalink());
+        writeElement(xml, "id", generateId(blog, blogEntry.getDate(), blogEntry.getId()));
+        writeElement(xml, "published", rfc3339(blogEntry.getDate()));
+        writeElement(xml, "updated", rfc3339(blogEntry.getLastModified() != null ? blogEntry.getLastModified() : blogEntry.getDate()));
+        xml.writeStartElement("author");
+        writeElement(xml, "name", blogEntry.getAuthor());
+        xml.writeEndElement();
+        for (Category category : blogEntry.getCategories()) {
+          writeCategory(xml, category.getName(), category.getPermalink());
+        }
+        for (Tag tag : blogEntry.getAllTags()) {
+          writeCategory(xml, tag.getName(), tag.getPermalink());
+        }
+        if (blogEntry.getExcerpt() != null && blogEntry.getExcerpt().length() > 0) {
+          xml.writeStartElement("summary");
+          xml.writeAttribute("type", "html");
+          xml.writeCharacters(blogEntry.getExcerpt());
+          xml.writeEndElement();
+        }
+        xml.writeStartElement("content");
+        xml.writeAttribute("type", "html");
+        xml.writeCharacters(nullToEmpty(blogEntry.getBody()));
+        xml.writeEndElement();
+        if (blogEntry.getAttachment() != null) {
+          Attachment attachment = blogEntry.getAttachment();
+          xml.writeEmptyElement("link");
+          xml.writeAttribute("rel", "enclosure");
+          xml.writeAttribute("type", nullToEmpty(attachment.getType()));
+          xml.writeAttribute("length", "" + attachment.getSize());
+          xml.writeAttribute("href", attachment.getUrl());
+        }
+        xml.writeEndElement();
+      }
+      progress(xml, writer, blog, ++count, blogEntryIds.size());
+    }
+
+    xml.writeEndElement();
+  }
+
+  /**
+   * RDF lists every item in the channel before the items themselves, so the
+   * items are identified by URIs that can be worked out from the blog entry
+   * ids alone. The sequence is written from the ids, and then each blog
+   * entry is loaded once and written straight out.
+   */
+  private void writeRdf(XMLStreamWriter xml, Writer writer, Blog blog, List<String> blogEntryIds) throws XMLStreamException, IOException, BlogServiceException {
+    xml.setPrefix("rdf", RDF_NAMESPACE);
+    xml.setDefaultNamespace(RSS1_NAMESPACE);
+    xml.writeStartElement(RDF_NAMESPACE, "RDF");
+    xml.writeNamespace("rdf", RDF_NAMESPACE);
+    xml.writeDefaultNamespace(RSS1_NAMESPACE);
+    xml.writeStartElement(RSS1_NAMESPACE, "channel");
+    xml.writeAttribute(RDF_NAMESPACE, "about", blog.getUrl());
+    writeElement(xml, "title", blog.getName());
+    writeElement(xml, "link", blog.getUrl());
+    writeElement(xml, "description", blog.getDescription());
+
+    xml.writeStartElement(RSS1_NAMESPACE, "items");
+    xml.writeStartElement(RDF_NAMESPACE, "Seq");
+    for (String blogEntryId : blogEntryIds) {
+      xml.writeEmptyElement(RDF_NAMESPACE, "li");
+      xml.writeAttribute(RDF_NAMESPACE, "resource", generateId(blog, blogEntryId));
+    }
+    xml.writeEndElement();
+    xml.writeEndElement();
+    xml.writeEndElement();
+
+    BlogService service = new BlogService();
+    int count = 0;
+    for (String blogEntryId : blogEntryIds) {
+      BlogEntry blogEntry = loadBlogEntry(service, blog, blogEntryId);
+      if (blogEntry != null) {
+        xml.writeStartElement(RSS1_NAMESPACE, "item");
+        xml.writeAttribute(RDF_NAMESPACE, "about", generateId(blog, blogEntryId));
+        writeElement(xml, "title", blogEntry.getTitle());
+        writeElement(xml, "link", blogEntry.getPermalink());
+        writeElement(xml, "description", getSummary(blogEntry));
+        xml.writeEndElement();
+      }
+      progress(xml, writer, blog, ++count, blogEntryIds.size());
+    }
+
+    xml.writeEndElement();
+  }
+
+  /**
+   * Loads and decorates a single blog entry.
+   */
+  private BlogEntry loadBlogEntry(BlogService service, Blog blog, String blogEntryId) throws BlogServiceException {
+    BlogEntry blogEntry = service.getBlogEntry(blog, blogEntryId);
+    if (blogEntry != null) {
+      ContentDecoratorContext context = new ContentDecoratorContext();
+      context.setView(ContentDecoratorContext.SUMMARY_VIEW);
+      context.setMedia(ContentDecoratorContext.NEWS_FEED);
+      blog.getContentDecoratorChain().decorate(context, blogEntry);
+    }
+    return blogEntry;
+  }
+
+  /**
+   * Periodically pushes what has been written so far to the client (so the
+   * download visibly progresses) and reports progress in the log.
+   */
+  private void progress(XMLStreamWriter xml, Writer writer, Blog blog, int count, int total) throws XMLStreamException, IOException {
+    if (Thread.currentThread().isInterrupted()) {
+      throw new IOException("Export interrupted");
+    }
+
+    if (count % PROGRESS_INTERVAL == 0 || count == total) {
+      xml.flush();
+      writer.flush();
+      log.debug("Exported " + count + " of " + total + " blog entries from " + blog.getId());
+    }
+  }
+
+  private String getSummary(BlogEntry blogEntry) {
+    if (blogEntry.getExcerpt() == null || blogEntry.getExcerpt().length() == 0) {
+      return blogEntry.getBody();
+    } else {
+      return blogEntry.getExcerpt();
+    }
+  }
+
+  /**
+   * Generates the id of a blog entry from its id alone, which is the time
+   * that it was created.
+   */
+  private String generateId(AbstractBlog blog, String blogEntryId) {
+    try {
+      return generateId(blog, new Date(Long.parseLong(blogEntryId)), blogEntryId);
+    } catch (NumberFormatException nfe) {
+      return generateId(blog, null, blogEntryId);
+    }
+  }
+
+  private String generateId(AbstractBlog blog, Date date, String contentId) {
+    StringBuilder id = new StringBuilder("tag:");
+    id.append(blog.getDomainName()).append(",");
+    if (date != null) {
+      id.append(ID_DATE.format(date.toInstant()));
+    } else {
+      id.append("0000-00-00");
+    }
+    id.append(":").append(blog.getId());
+    if (contentId != null) {
+      id.append("/").append(contentId);
+    }
+    return id.toString();
+  }
+
+  private static void writeElement(XMLStreamWriter xml, String name, String value) throws XMLStreamException {
+    xml.writeStartElement(name);
+    xml.writeCharacters(nullToEmpty(value));
+    xml.writeEndElement();
+  }
+
+  private static void writeLink(XMLStreamWriter xml, String rel, String type, String href) throws XMLStreamException {
+    xml.writeEmptyElement("link");
+    xml.writeAttribute("rel", rel);
+    xml.writeAttribute("type", type);
+    xml.writeAttribute("href", nullToEmpty(href));
+  }
+
+  private static void writeCategory(XMLStreamWriter xml, String term, String scheme) throws XMLStreamException {
+    xml.writeEmptyElement("category");
+    xml.writeAttribute("term", nullToEmpty(term));
+    xml.writeAttribute("scheme", nullToEmpty(scheme));
+  }
+
+  private static String rfc822(Date date) {
+    return date == null ? "" : RFC_822.format(date.toInstant());
+  }
+
+  private static String rfc3339(Date date) {
+    return date == null ? "" : RFC_3339.format(date.toInstant());
+  }
+
+  private static String nullToEmpty(String s) {
+    return s == null ? "" : s;
+  }
+
+}
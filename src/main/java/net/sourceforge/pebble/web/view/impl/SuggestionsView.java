@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.view.impl;
+
+import net.sourceforge.pebble.search.Suggestion;
+import net.sourceforge.pebble.web.view.View;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes search suggestions as JSON, in the form
+ * {"query":"...","suggestions":[{"text":"...","type":"title","permalink":"..."}]}.
+ * This is written directly rather than via a JSP, because it is requested
+ * on every key press.
+ *
+ * @author    Simon Brown
+ */
+public class SuggestionsView extends View {
+
+  /**
+   * Gets the content type of this view.
+   *
+   * @return the content type as a String
+   */
+  public String getContentType() {
+    return "application/json; charset=UTF-8";
+  }
+
+  /**
+   * Dispatches this view.
+   *
+   * @param request  the HttpServletRequest instance
+   * @param response the HttpServletResponse instance
+   * @param context  the ServletContext instance
+   */
+  @SuppressWarnings("unchecked")
+  public void dispatch(HttpServletRequest request, HttpServletResponse response, ServletContext context) throws ServletException {
+    String query = (String)getModel().get("query");
+    List<Suggestion> suggestions = (List<Suggestion>)getModel().get("suggestions");
+
+    StringBuilder buf = new StringBuilder();
+    buf.append("{\"query\":");
+    appendString(buf, query);
+    buf.append(",\"suggestions\":[");
+    for (int i = 0; i < suggestions.size(); i++) {
+      Suggestion suggestion = suggestions.get(i);
+      if (i > 0) {
+        buf.append(',');
+      }
+      buf.append("{\"text\":");
+      appendString(buf, suggestion.getText());
+      buf.append(",\"type\":");
+      appendString(buf, suggestion.getType());
+      buf.append(",\"permalink\":");
+      appendString(buf, suggestion.getPermalink());
+      buf.append('}');
+    }
+    buf.append("]}");
+
+    try {
+      response.setHeader("Cache-Control", "no-cache");
+      Writer writer = response.getWriter();
+      writer.write(buf.toString());
+      writer.flush();
+    } catch (IOException ioe) {
+      throw new ServletException(ioe);
+    }
+  }
+
+  /**
+   * Appends a JSON string (or null) to the buffer.
+   */
+  private void appendString(StringBuilder buf, String s) {
+    if (s == null) {
+      buf.append("null");
+      return;
+    }
+
+    buf.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '"':
+          buf.append("\\\"");
+          break;
+        case '\\':
+          buf.append("\\\\");
+          break;
+        case '\n':
+          buf.append("\\n");
+          break;
+        case '\r':
+          buf.append("\\r");
+          break;
+        case '\t':
+          buf.append("\\t");
+          break;
+        case '<':
+          // so that the JSON can't close a script element it is embedded in
+          buf.append("\\u003c");
+          break;
+        default:
+          if (c < 0x20) {
+            buf.append(String.format("\\u%04x", (int)c));
+          } else {
+            buf.append(c);
+          }
+      }
+    }
+    buf.append('"');
+  }
+
+}
@@ -33,10 +33,10 @@ package net.sourceforge.pebble.webservice;
 
 import net.sourceforge.pebble.domain.BlogManager;
 import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.security.CredentialCache;
 import net.sourceforge.pebble.util.SecurityUtils;
 import org.apache.xmlrpc.XmlRpcException;
 import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -71,7 +71,8 @@ public abstract class AbstractAPIHandler {
    */
   protected void authenticate(Blog blog, String username, String password) throws XmlRpcAuthenticationException {
     try {
-      Authentication auth = authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(username, password));
+      // recently verified credentials are cached, since clients tend to make lots of calls at once
+      Authentication auth = CredentialCache.getInstance().authenticate(authenticationManager, username, password);
       SecurityContextHolder.getContext().setAuthentication(auth);
 
       if (blog != null && !SecurityUtils.isUserAuthorisedForBlogAsBlogContributor(blog)) {
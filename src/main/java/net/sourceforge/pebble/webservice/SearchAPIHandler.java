@@ -40,12 +40,9 @@ import java.util.Map;
 import java.util.Vector;
 
 import net.sourceforge.pebble.domain.Blog;
-import net.sourceforge.pebble.domain.BlogEntry;
-import net.sourceforge.pebble.domain.BlogService;
-import net.sourceforge.pebble.domain.Category;
+import net.sourceforge.pebble.index.SearchIndex;
 import net.sourceforge.pebble.search.SearchHit;
 import net.sourceforge.pebble.search.SearchResults;
-import net.sourceforge.pebble.util.Pageable;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -98,21 +95,11 @@ public class SearchAPIHandler extends AbstractAPIHandler {
         try {
 
             Blog blog = getBlogWithBlogId(blogid);
-            SearchResults result = blog.getSearchIndex().search( searchString );
-
-            if ( sortBy != null && sortBy.equalsIgnoreCase("date") ) {
-                result.sortByDateDescending();
-            } else {
-                result.sortByScoreDescending();
-            }
+            SearchResults result = blog.getSearchIndex().search(searchString, sortBy, 1, SearchIndex.MAXIMUM_NUMBER_OF_HITS);
 
             List<SearchHit> hits = result.getHits();
-            BlogService service = new BlogService();
-
             for (SearchHit hit : hits) {
-                BlogEntry entry = service.getBlogEntry(hit.getBlog(), hit.getId());
-                adaptBlogEntry(entry);
-                posts.add(adaptBlogEntry(entry));
+                posts.add(adaptSearchHit(hit));
             }
             posts.add( searchResultSummary(hits, sortBy, searchString, 0, 0) );
 
@@ -142,31 +129,64 @@ public class SearchAPIHandler extends AbstractAPIHandler {
         try {
 
             Blog blog = getBlogWithBlogId(blogid);
-            SearchResults result = blog.getSearchIndex().search( searchString );
-            
-            if ( sortBy != null && sortBy.equalsIgnoreCase("date") ) {
-                result.sortByDateDescending();
-            } else {
-                result.sortByScoreDescending();
-            }
 
             if ( pageSize <= 0 ) 
                 pageSize = PAGE_SIZE;
 
+            // offset is the page number
+            SearchResults result = blog.getSearchIndex().search(searchString, sortBy, offset, pageSize);
             List<SearchHit> hits = result.getHits();
-            Pageable pageable = new Pageable(hits);
-            pageable.setPageSize(pageSize);
-            pageable.setPage(offset);
-            List<SearchHit> subList = pageable.getListForPage();
 
-            BlogService service = new BlogService();
+            for (SearchHit hit : hits) {
+                posts.add(adaptSearchHit(hit));
+            }
+            posts.add( searchResultSummary(hits, sortBy, searchString, pageSize, offset) );
+
+        } catch (Exception ex) {
+            log.error(ex);
+        }
+        return posts;
+    }
 
-            for (SearchHit hit : subList ) {
-                BlogEntry entry = service.getBlogEntry(hit.getBlog(), hit.getId());
-                adaptBlogEntry(entry);
-                posts.add(adaptBlogEntry(entry));
+    /**
+     * Search blog for specific string, returning the page of results
+     * after the given cursor. The summary at the end of the results
+     * contains the cursor for the next page (if there is one).
+     *
+     * @param blogid    the ID of the blog (ignored)
+     * @param username  the username used for logging in via XML-RPC
+     * @param password  the password used for logging in via XML-RPC
+     * @param cursor    the cursor from the previous page, or an empty string for the first page
+     */
+    public Vector search(String blogid, String username, String password,
+                        String searchString, String sortBy, int pageSize, String cursor) {
+        log.debug("search.search(" +
+            blogid + ", " +
+            username + ", xxxxxx, \"" +
+            searchString + "," +
+            sortBy + "," +
+            cursor + "\")");
+
+        Vector posts = new Vector();
+        try {
+
+            Blog blog = getBlogWithBlogId(blogid);
+
+            if ( pageSize <= 0 )
+                pageSize = PAGE_SIZE;
+
+            SearchResults result = blog.getSearchIndex().searchAfter(searchString, sortBy, cursor, pageSize);
+            List<SearchHit> hits = result.getHits();
+
+            for (SearchHit hit : hits) {
+                posts.add(adaptSearchHit(hit));
+            }
+            Map summary = searchResultSummary(hits, sortBy, searchString, pageSize, result.getOffset());
+            summary.put("total", result.getNumberOfHits());
+            if (result.getNextPageCursor() != null) {
+                summary.put("cursor", result.getNextPageCursor());
             }
-            posts.add( searchResultSummary(subList, sortBy, searchString, pageSize, offset) );
+            posts.add(summary);
 
         } catch (Exception ex) {
             log.error(ex);
@@ -175,29 +195,33 @@ public class SearchAPIHandler extends AbstractAPIHandler {
     }
 
     /**
-     * Helper method to adapt a blog entry into an XML-RPC compatible struct.
+     * Helper method to adapt a search hit into an XML-RPC compatible struct,
+     * using only the information stored in the search index.
      * Since the Blogger API doesn't support titles, the title is wrapped in
      * &lt;title&gt;&lt;/title&gt; tags.
      *
-     * @param entry   the BlogEntry to adapt
-     * @return  a Hashtable representing the major properties of the entry
+     * @param hit   the SearchHit to adapt
+     * @return  a Hashtable representing the major properties of the hit
      */
-    private Hashtable adaptBlogEntry(BlogEntry entry) {
+    private Hashtable adaptSearchHit(SearchHit hit) {
         Hashtable post = new Hashtable();
-        String categories = "";
-        Iterator it = entry.getCategories().iterator();
+        StringBuilder categories = new StringBuilder();
+        Iterator<String> it = hit.getCategoryIds().iterator();
         while (it.hasNext()) {
-            Category category = (Category)it.next();
-            categories += category.getId();
+            categories.append(it.next());
             if (it.hasNext()) {
-                categories += ",";
+                categories.append(",");
             }
         }
-        post.put(DATE_CREATED, entry.getDate());
-        post.put(USER_ID, entry.getAuthor());
-        post.put(POST_ID, formatPostId(entry.getBlog().getId(), entry.getId()));
-        post.put(CONTENT, TITLE_START_DELIMITER + entry.getTitle() + TITLE_END_DELIMITER
-                + CATEGORY_START_DELIMITER + categories + CATEGORY_END_DELIMITER + entry.getBody());
+        if (hit.getDate() != null) {
+            post.put(DATE_CREATED, hit.getDate());
+        }
+        if (hit.getAuthor() != null) {
+            post.put(USER_ID, hit.getAuthor());
+        }
+        post.put(POST_ID, formatPostId(hit.getBlog().getId(), hit.getId()));
+        post.put(CONTENT, TITLE_START_DELIMITER + hit.getTitle() + TITLE_END_DELIMITER
+                + CATEGORY_START_DELIMITER + categories + CATEGORY_END_DELIMITER + hit.getExcerpt());
 
         return post;
     }
@@ -0,0 +1,74 @@
+<%--
+  renders a page of blog entries for a tag or category, as a list of titles
+  and summaries
+--%>
+<div class="contentItem">
+
+  <c:choose>
+    <c:when test="${not empty tag}">
+      <h1><fmt:message key="tag.tags" /></h1>
+      <h2><c:out value="${tag.name}" escapeXml="true"/></h2>
+    </c:when>
+    <c:otherwise>
+      <h1><fmt:message key="category.categories" /></h1>
+      <h2><c:out value="${category.name}" escapeXml="true"/></h2>
+    </c:otherwise>
+  </c:choose>
+
+  <div class="contentItemBody">
+    <c:choose>
+      <c:when test="${not empty blogEntries}">
+
+        <jsp:include page="/WEB-INF/fragments/pageable.jsp">
+          <jsp:param name="url" value="${pageableUrl}" />
+        </jsp:include>
+        <br />
+
+        <table class="searchResults" width="99%" cellspacing="0" cellpadding="4">
+          <thead>
+            <tr>
+              <th></th>
+              <th><fmt:message key="search.header.titleAndSummary" /></th>
+              <th align="right"><fmt:message key="search.header.dateTime" /></th>
+            </tr>
+          </thead>
+          <tbody>
+          <c:forEach var="blogEntry" items="${blogEntries}" varStatus="status">
+            <c:choose>
+              <c:when test="${status.count % 2 == 0}">
+                <tr class="even small">
+              </c:when>
+              <c:otherwise>
+                  <tr class="odd small">
+              </c:otherwise>
+            </c:choose>
+            <td class="searchResultNumber" width="2%" valign="top">
+              <fmt:formatNumber value="${((pageable.page - 1) * pageable.pageSize) + status.count}"/>
+              <br />
+            </td>
+            <td valign="top">
+              <div class="searchResultTitle"><a href="${url:rewrite(blogEntry.permalink)}">${blogEntry.title}</a></div>
+              <c:if test="${not empty blogEntry.subtitle}"><div class="searchResultSubTitle"><a href="${url:rewrite(blogEntry.permalink)}">${blogEntry.subtitle}</a></div></c:if>
+              <div class="searchResultExcerpt">${blogEntry.truncatedContent}</div>
+            </td>
+            <td class="searchResultDatetime" align="right" valign="top" width="15%">
+              <div><fmt:formatDate value="${blogEntry.date}" type="date" dateStyle="medium" /></div>
+              <div><fmt:formatDate value="${blogEntry.date}" type="time" dateStyle="medium" /></div>
+            </td>
+          </tr>
+          </c:forEach>
+          </tbody>
+        </table>
+
+        <br />
+        <jsp:include page="/WEB-INF/fragments/pageable.jsp">
+          <jsp:param name="url" value="${pageableUrl}" />
+        </jsp:include>
+
+      </c:when>
+      <c:otherwise>
+          <div class="noResults"><fmt:message key="blogentry.noBlogEntries" /></div>
+      </c:otherwise>
+    </c:choose>
+  </div>
+</div>
@@ -7,7 +7,21 @@
     <c:choose>
       <c:when test="${searchResults.numberOfHits > 0}">
 
-        <c:set var="pageableUrl" value="search.action?query=${query}&amp;sort=${param.sort}" scope="request" />
+        <div class="searchFacets">
+          <c:forEach var="facet" items="${searchResults.facets}">
+            <c:if test="${empty drillDowns[facet.key]}">
+            <div class="searchFacet small">
+              <fmt:message key="search.facet.${facet.key}" /> :
+              <c:forEach var="count" items="${facet.value}" varStatus="status">
+                <a href="search.action?query=${query}&amp;sort=${param.sort}${drillDownParameters}&amp;${facet.key}=${url:urlEncode(count.key)}"><c:out value="${count.key}"/></a> (${count.value})<c:if test="${not status.last}">, </c:if>
+              </c:forEach>
+            </div>
+            </c:if>
+          </c:forEach>
+        </div>
+        <br />
+
+        <c:set var="pageableUrl" value="search.action?query=${query}&amp;sort=${param.sort}${drillDownParameters}" scope="request" />
         <jsp:include page="/WEB-INF/fragments/pageable.jsp">
           <jsp:param name="url" value="${pageableUrl}" />
         </jsp:include>
@@ -36,9 +50,12 @@
               <br />
             </td>
             <td valign="top">
-              <div class="searchResultTitle"><a href="${url:rewrite(hit.permalink)}" title="${hit.score}">${hit.title}</a></div>
+              <div class="searchResultTitle"><a href="${url:rewrite(hit.permalink)}" title="${hit.score}"><c:choose><c:when test="${not empty hit.highlightedTitle}">${hit.highlightedTitle}</c:when><c:otherwise>${hit.title}</c:otherwise></c:choose></a></div>
               <c:if test="${not empty hit.subtitle}"><div class="searchResultSubTitle"><a href="${url:rewrite(hit.permalink)}" title="${hit.score}">${hit.subtitle}</a></div></c:if>
-              <div class="searchResultExcerpt">${hit.excerpt}</div>
+              <c:choose>
+                <c:when test="${not empty hit.highlightedExcerpt}"><div class="searchResultExcerpt">${hit.highlightedExcerpt}</div></c:when>
+                <c:otherwise><div class="searchResultExcerpt">${hit.excerpt}</div></c:otherwise>
+              </c:choose>
             </td>
             <td class="searchResultDatetime" align="right" valign="top" width="15%">
               <div><fmt:formatDate value="${hit.date}" type="date" dateStyle="medium" /></div>
@@ -50,7 +67,7 @@
         </table>
 
         <br />
-        <c:set var="pageableUrl" value="search.action?query=${query}&amp;sort=${param.sort}" scope="request" />
+        <c:set var="pageableUrl" value="search.action?query=${query}&amp;sort=${param.sort}${drillDownParameters}" scope="request" />
         <jsp:include page="/WEB-INF/fragments/pageable.jsp">
           <jsp:param name="url" value="${requestScope.pageableUrl}" />
         </jsp:include>
@@ -58,6 +75,9 @@
       </c:when>
       <c:otherwise>
           <div class="noResults"><fmt:message key="search.noResults" /></div>
+          <c:if test="${not empty searchResults.suggestedQuery}">
+          <div class="didYouMean"><fmt:message key="search.didYouMean" /> <a href="search.action?query=${url:urlEncode(searchResults.suggestedQuery)}"><c:out value="${searchResults.suggestedQuery}" /></a></div>
+          </c:if>
       </c:otherwise>
     </c:choose>
   </div>
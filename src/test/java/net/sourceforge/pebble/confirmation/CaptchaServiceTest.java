@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.confirmation;
+
+import com.octo.captcha.Captcha;
+import junit.framework.TestCase;
+import net.sourceforge.pebble.mock.MockHttpSession;
+
+/**
+ * Tests for the CaptchaService class.
+ *
+ * @author    Simon Brown
+ */
+public class CaptchaServiceTest extends TestCase {
+
+  private CaptchaService service;
+  private MockHttpSession session;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    service = new CaptchaService();
+    session = new MockHttpSession();
+  }
+
+  public void testCaptchaRenderedOnDemandWhenPoolIsEmpty() throws Exception {
+    byte[] jpeg = service.issueChallenge(session);
+    assertTrue(jpeg.length > 0);
+    assertEquals((byte)0xFF, jpeg[0]);
+    assertEquals((byte)0xD8, jpeg[1]);
+    assertEquals(0, service.getHits());
+    assertEquals(1, service.getMisses());
+    assertNotNull(session.getAttribute(CaptchaService.CAPTCHA_KEY));
+  }
+
+  public void testCaptchasAreIssuedFromThePool() throws Exception {
+    service.refill();
+    service.refill();
+    assertEquals(2, service.getPoolSize());
+
+    byte[] jpeg = service.issueChallenge(session);
+    assertTrue(jpeg.length > 0);
+    assertEquals(1, service.getHits());
+    assertEquals(0, service.getMisses());
+    assertEquals(1, service.getPoolSize());
+  }
+
+  public void testPoolIsBounded() throws Exception {
+    service.start(2, 1, 0);
+    service.stop();
+    for (int i = 0; i < 5; i++) {
+      service.refill();
+    }
+    assertEquals(2, service.getPoolSize());
+  }
+
+  public void testCaptchaCanOnlyBeAnsweredOnce() throws Exception {
+    session.setAttribute(CaptchaService.CAPTCHA_KEY, new StubCaptcha());
+    assertFalse(service.validateResponse(session, "wrong"));
+    assertNull(session.getAttribute(CaptchaService.CAPTCHA_KEY));
+
+    session.setAttribute(CaptchaService.CAPTCHA_KEY, new StubCaptcha());
+    assertTrue(service.validateResponse(session, "answer"));
+    assertFalse(service.validateResponse(session, "answer"));
+  }
+
+  public void testNoCaptchaIssued() {
+    assertFalse(service.validateResponse(session, "answer"));
+  }
+
+  private static class StubCaptcha implements Captcha {
+
+    public String getQuestion() {
+      return "question";
+    }
+
+    public Object getChallenge() {
+      return null;
+    }
+
+    public Boolean validateResponse(Object response) {
+      return Boolean.valueOf("answer".equals(response));
+    }
+
+    public void disposeChallenge() {
+    }
+
+    public Boolean hasGetChalengeBeenCalled() {
+      return Boolean.TRUE;
+    }
+
+  }
+
+}
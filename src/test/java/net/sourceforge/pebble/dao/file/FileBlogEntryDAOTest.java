@@ -34,8 +34,10 @@ package net.sourceforge.pebble.dao.file;
 import net.sourceforge.pebble.dao.BlogEntryDAO;
 import net.sourceforge.pebble.domain.*;
 import net.sourceforge.pebble.util.FileUtils;
+import net.sourceforge.pebble.util.Utilities;
 
 import java.io.File;
+import java.nio.file.Files;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
@@ -167,4 +169,141 @@ public class FileBlogEntryDAOTest extends SingleBlogTestCase {
     assertEquals("A title", loaded.getComments().get(0).getTitle());
   }
 
+  public void testResponsesAreLoadedWhenFirstNeeded() throws Exception {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setDate(new Date(1000000));
+    blogEntry.addComment(blogEntry.createComment("Title", "Comment 1", "Author", "", "", "", "127.0.0.1", new Date(2000000), State.APPROVED));
+    blogEntry.addComment(blogEntry.createComment("Title", "Comment 2", "Author", "", "", "", "127.0.0.1", new Date(3000000), State.PENDING));
+    blogEntry.addTrackBack(blogEntry.createTrackBack("Title", "Excerpt", "http://www.domain.com", "Blog", "127.0.0.1", new Date(4000000), State.APPROVED));
+    dao.storeBlogEntry(blogEntry);
+
+    BlogEntry loaded = dao.loadBlogEntry(blog, blogEntry.getId());
+    assertFalse(loaded.isResponsesLoaded());
+    assertEquals(2, loaded.getNumberOfComments());
+    assertEquals(1, loaded.getNumberOfTrackBacks());
+    assertEquals(3, loaded.getNumberOfResponses());
+    assertEquals(new Date(4000000), loaded.getLastModified());
+    assertFalse(loaded.isResponsesLoaded());
+
+    // clones load the responses themselves when they need them, rather
+    // than from the original, which can change
+    BlogEntry clone = (BlogEntry)loaded.clone();
+    assertFalse(clone.isResponsesLoaded());
+    assertEquals(2, clone.getComments().size());
+    assertTrue(clone.getComment(2000000).isApproved());
+    assertTrue(clone.getComment(3000000).isPending());
+    assertEquals("Excerpt", clone.getTrackBack(4000000).getExcerpt());
+    assertFalse(loaded.isResponsesLoaded());
+    assertNotSame(loaded.getComment(2000000), clone.getComment(2000000));
+    assertSame(clone, clone.getComment(2000000).getBlogEntry());
+  }
+
+  public void testClonesDoNotSeeResponsesAddedToTheOriginal() throws Exception {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setDate(new Date(1000000));
+    blogEntry.addComment(blogEntry.createComment("Title", "Comment 1", "Author", "", "", "", "127.0.0.1", new Date(2000000), State.APPROVED));
+    dao.storeBlogEntry(blogEntry);
+
+    BlogEntry loaded = dao.loadBlogEntry(blog, blogEntry.getId());
+    BlogEntry clone = (BlogEntry)loaded.clone();
+    loaded.addComment(loaded.createComment("Title", "Comment 2", "Author", "", "", "", "127.0.0.1", new Date(3000000), State.APPROVED));
+
+    assertEquals(2, loaded.getComments().size());
+    assertEquals(1, clone.getComments().size());
+    assertNull(clone.getComment(3000000));
+  }
+
+  public void testNewResponsesAreAppended() throws Exception {
+    FileBlogEntryDAO dao = new FileBlogEntryDAO();
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setDate(new Date(1000000));
+    blogEntry.addComment(blogEntry.createComment("Title", "Comment 1", "Author", "", "", "", "127.0.0.1", new Date(2000000), State.APPROVED));
+    dao.storeBlogEntry(blogEntry);
+    File responsesFile = dao.getResponsesFile(blogEntry);
+    String responses = new String(Files.readAllBytes(responsesFile.toPath()), "UTF-8");
+
+    BlogEntry loaded = dao.loadBlogEntry(blog, blogEntry.getId());
+    Comment reply = loaded.createComment("Title", "Comment 2", "Author", "", "", "", "127.0.0.1", new Date(3000000), State.APPROVED);
+    reply.setParent(loaded.getComment(2000000));
+    loaded.addComment(reply);
+    dao.storeBlogEntry(loaded);
+    assertTrue(new String(Files.readAllBytes(responsesFile.toPath()), "UTF-8").startsWith(responses));
+
+    loaded = dao.loadBlogEntry(blog, blogEntry.getId());
+    assertEquals(2, loaded.getNumberOfComments());
+    assertEquals(1, loaded.getComment(2000000).getComments().size());
+
+    // removing a response rewrites the responses
+    loaded.removeComment(2000000);
+    dao.storeBlogEntry(loaded);
+    loaded = dao.loadBlogEntry(blog, blogEntry.getId());
+    assertEquals(0, loaded.getNumberOfComments());
+    assertTrue(loaded.getComments().isEmpty());
+    assertFalse(responsesFile.exists());
+  }
+
+  public void testChangedResponsesAreRewritten() throws Exception {
+    FileBlogEntryDAO dao = new FileBlogEntryDAO();
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setDate(new Date(1000000));
+    blogEntry.addComment(blogEntry.createComment("Title", "Comment 1", "Author", "", "", "", "127.0.0.1", new Date(2000000), State.PENDING));
+    dao.storeBlogEntry(blogEntry);
+    File responsesFile = dao.getResponsesFile(blogEntry);
+    long length = responsesFile.length();
+
+    // storing again without changes leaves the file alone
+    BlogEntry loaded = dao.loadBlogEntry(blog, blogEntry.getId());
+    loaded.getComments();
+    dao.storeBlogEntry(loaded);
+    assertEquals(length, responsesFile.length());
+
+    loaded.getComment(2000000).setApproved();
+    dao.storeBlogEntry(loaded);
+    loaded = dao.loadBlogEntry(blog, blogEntry.getId());
+    assertEquals(1, loaded.getComments().size());
+    assertTrue(loaded.getComment(2000000).isApproved());
+  }
+
+  public void testResponsesAreRewrittenWhenTheFileHasChangedSinceTheyWereLoaded() throws Exception {
+    FileBlogEntryDAO dao = new FileBlogEntryDAO();
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setDate(new Date(1000000));
+    blogEntry.addComment(blogEntry.createComment("Title", "Comment 1", "Author", "", "", "", "127.0.0.1", new Date(2000000), State.APPROVED));
+    dao.storeBlogEntry(blogEntry);
+
+    BlogEntry loaded = dao.loadBlogEntry(blog, blogEntry.getId());
+    loaded.getComments();
+
+    // somebody else stores another response in the meantime
+    blogEntry.addComment(blogEntry.createComment("Title", "Comment 2", "Author", "", "", "", "127.0.0.1", new Date(3000000), State.APPROVED));
+    dao.storeBlogEntry(blogEntry);
+
+    loaded.addComment(loaded.createComment("Title", "Comment 3", "Author", "", "", "", "127.0.0.1", new Date(4000000), State.APPROVED));
+    dao.storeBlogEntry(loaded);
+    loaded = dao.loadBlogEntry(blog, blogEntry.getId());
+    assertEquals(2, loaded.getComments().size());
+    assertNotNull(loaded.getComment(2000000));
+    assertNotNull(loaded.getComment(4000000));
+  }
+
+  public void testResponsesAreMovedOutOfExistingBlogEntries() throws Exception {
+    File source = new File(TEST_RESOURCE_LOCATION, "1081203335000.xml");
+    File destination = new File(blog.getRoot(), "2004/04/05/");
+    destination.mkdirs();
+    FileUtils.copyFile(source, new File(destination, "1081203335000.xml"));
+
+    BlogEntry blogEntry = dao.loadBlogEntry(blog, "1081203335000");
+    assertTrue(blogEntry.isResponsesLoaded());
+
+    Utilities.storeResponsesSeparately(blog);
+
+    blogEntry = dao.loadBlogEntry(blog, "1081203335000");
+    assertFalse(blogEntry.isResponsesLoaded());
+    assertEquals(2, blogEntry.getNumberOfComments());
+    assertEquals(2, blogEntry.getNumberOfTrackBacks());
+    assertEquals("Comment author 1", blogEntry.getComments().get(0).getAuthor());
+    assertEquals("Blog name 2", blogEntry.getTrackBacks().get(1).getBlogName());
+    assertTrue(blogEntry.getComments().get(1).isAuthenticated());
+  }
+
 }
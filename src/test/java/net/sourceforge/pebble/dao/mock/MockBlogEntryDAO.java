@@ -49,6 +49,9 @@ public class MockBlogEntryDAO implements BlogEntryDAO {
 
   private Map blogEntries = new HashMap();
 
+  /** the number of times that each blog entry has been stored */
+  private Map<String,Integer> stores = new HashMap<String,Integer>();
+
   /**
    * Loads a specific blog entry.
    *
@@ -77,6 +80,15 @@ public class MockBlogEntryDAO implements BlogEntryDAO {
     return list;
   }
 
+  /**
+   * Loads the comments and TrackBacks for a blog entry. These are never
+   * deferred by this DAO, so there is nothing to do.
+   *
+   * @param blogEntry   the blog entry to add the responses to
+   */
+  public void loadResponses(BlogEntry blogEntry) throws PersistenceException {
+  }
+
   /**
    * Stores the specified blog entry.
    *
@@ -85,6 +97,19 @@ public class MockBlogEntryDAO implements BlogEntryDAO {
    */
   public void storeBlogEntry(BlogEntry blogEntry) throws PersistenceException {
     blogEntries.put(blogEntry.getId(), blogEntry);
+    Integer count = stores.get(blogEntry.getId());
+    stores.put(blogEntry.getId(), (count != null) ? count + 1 : 1);
+  }
+
+  /**
+   * Gets the number of times that the specified blog entry has been stored.
+   *
+   * @param blogEntryId   the blog entry ID
+   * @return  an int
+   */
+  public int getNumberOfStores(String blogEntryId) {
+    Integer count = stores.get(blogEntryId);
+    return (count != null) ? count : 0;
   }
 
   /**
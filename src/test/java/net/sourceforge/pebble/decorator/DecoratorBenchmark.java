@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.decorator;
+
+import net.sourceforge.pebble.api.decorator.ContentDecorator;
+import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+/**
+ * Measures the throughput of the excerpt, read more and photo decorators.
+ * This isn't run as part of the build; run its main method from the test
+ * classpath.
+ *
+ * @author    Simon Brown
+ */
+public class DecoratorBenchmark extends SingleBlogTestCase {
+
+  public static void main(String[] args) throws Exception {
+    DecoratorBenchmark benchmark = new DecoratorBenchmark();
+    benchmark.setUp();
+    try {
+      benchmark.runBenchmark();
+    } finally {
+      benchmark.tearDown();
+    }
+  }
+
+  private void runBenchmark() {
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < 50; i++) {
+      body.append("<p>Paragraph ").append(i).append(" with <a href=\"http://www.example.com/\">a link</a> &amp; <b>some</b> text.</p>\n");
+    }
+    body.append("<script type=\"text/javascript\">var a = 1;</script><!-- a comment -->");
+    ExcerptDecorator excerptDecorator = new ExcerptDecorator();
+    excerptDecorator.setBlog(blog);
+    measure("ExcerptDecorator", excerptDecorator, new ContentDecoratorContext(), body.toString(), null, 10000);
+
+    ReadMoreDecorator readMoreDecorator = new ReadMoreDecorator();
+    readMoreDecorator.setBlog(blog);
+    ContentDecoratorContext summaryContext = new ContentDecoratorContext();
+    summaryContext.setView(ContentDecoratorContext.SUMMARY_VIEW);
+    measure("ReadMoreDecorator", readMoreDecorator, summaryContext, "<p>Body</p>", "<p>Excerpt</p>", 100000);
+
+    StringBuilder galleries = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      galleries.append("<p>Gallery ").append(i).append("</p>\n");
+      galleries.append("<PHOTOS>\n./images/a").append(i).append(".jpg|caption $1 \\ a\n\n./images/b").append(i).append(".jpg\n</PHOTOS>\n");
+    }
+    measure("PhotoDecorator", new PhotoDecorator(), new ContentDecoratorContext(), galleries.toString(), null, 20);
+  }
+
+  private void measure(String name, ContentDecorator decorator, ContentDecoratorContext context, String body, String excerpt, int iterations) {
+    // warm up
+    decorate(decorator, context, body, excerpt, iterations);
+
+    long start = System.nanoTime();
+    decorate(decorator, context, body, excerpt, iterations);
+    long nanos = System.nanoTime() - start;
+
+    System.out.println(name + " : " + (iterations * 1000000000L / nanos) + " blog entries/second");
+  }
+
+  private void decorate(ContentDecorator decorator, ContentDecoratorContext context, String body, String excerpt, int iterations) {
+    for (int i = 0; i < iterations; i++) {
+      BlogEntry blogEntry = new BlogEntry(blog);
+      blogEntry.setBody(body);
+      blogEntry.setExcerpt(excerpt);
+      decorator.decorate(context, blogEntry);
+    }
+  }
+
+}
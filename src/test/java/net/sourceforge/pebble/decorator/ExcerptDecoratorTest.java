@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.decorator;
+
+import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+/**
+ * Tests for the ExcerptDecorator class.
+ *
+ * @author    Simon Brown
+ */
+public class ExcerptDecoratorTest extends SingleBlogTestCase {
+
+  private ExcerptDecorator decorator;
+  private ContentDecoratorContext context;
+  private BlogEntry blogEntry;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    decorator = new ExcerptDecorator();
+    decorator.setBlog(blog);
+    blogEntry = new BlogEntry(blog);
+    context = new ContentDecoratorContext();
+  }
+
+  public void testExcerptCreatedFromBody() {
+    blogEntry.setBody("<p>Some <b>body</b> text.</p>");
+    decorator.decorate(context, blogEntry);
+    assertEquals("Some body text.", blogEntry.getExcerpt());
+  }
+
+  public void testExistingExcerptIsLeftAlone() {
+    blogEntry.setBody("<p>Some body text.</p>");
+    blogEntry.setExcerpt("<p>An excerpt.</p>");
+    decorator.decorate(context, blogEntry);
+    assertEquals("<p>An excerpt.</p>", blogEntry.getExcerpt());
+  }
+
+  public void testMaxLengthPickedUpWhenPropertiesChange() {
+    blogEntry.setBody("<p>one two three four five six</p>");
+    decorator.decorate(context, blogEntry);
+    assertEquals("one two three four five six", blogEntry.getExcerpt());
+
+    blog.getPluginProperties().setProperty(ExcerptDecorator.MAX_LENGTH_KEY, "10");
+    blogEntry.setExcerpt("");
+    decorator.decorate(context, blogEntry);
+    assertEquals("one two ...", blogEntry.getExcerpt());
+
+    blog.getPluginProperties().setProperty(ExcerptDecorator.MAX_LENGTH_KEY, "abc");
+    blogEntry.setExcerpt("");
+    decorator.decorate(context, blogEntry);
+    assertEquals("one two three four five six", blogEntry.getExcerpt());
+  }
+
+  public void testExcerptOfALongBody() {
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < 50; i++) {
+      body.append("<p>Paragraph ").append(i).append(" with <a href=\"http://www.example.com/\">a link</a> &amp; <b>some</b> text.</p>\n");
+    }
+    body.append("<script type=\"text/javascript\">var a = 1;</script><!-- a comment -->");
+
+    blogEntry.setBody(body.toString());
+    decorator.decorate(context, blogEntry);
+    String excerpt = blogEntry.getExcerpt();
+    assertTrue(excerpt.startsWith("Paragraph 0 with a link &amp; some text."));
+    assertTrue(excerpt.endsWith("..."));
+    assertEquals(-1, excerpt.indexOf('<'));
+    assertEquals(-1, excerpt.indexOf("var a"));
+
+    // and the same body always gives the same excerpt
+    BlogEntry anotherBlogEntry = new BlogEntry(blog);
+    anotherBlogEntry.setBody(body.toString());
+    decorator.decorate(context, anotherBlogEntry);
+    assertEquals(excerpt, anotherBlogEntry.getExcerpt());
+  }
+
+}
@@ -208,4 +208,24 @@ public class PhotoDecoratorTest extends SingleBlogTestCase {
         "After", staticPage.getBody());
   }
 
+  /**
+   * Tests that a large number of galleries in a single blog entry are all
+   * marked up.
+   */
+  public void testManyGalleries() throws Exception {
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      body.append("<p>Gallery ").append(i).append("</p>\n");
+      body.append("<PHOTOS>\n./images/a").append(i).append(".jpg|caption $1 \\ a\n\n./images/b").append(i).append(".jpg\n</PHOTOS>\n");
+    }
+
+    blogEntry.setBody(body.toString());
+    decorator.decorate(context, blogEntry);
+
+    String markup = blogEntry.getBody();
+    assertEquals(-1, markup.toLowerCase().indexOf("<photos>"));
+    assertTrue(markup.startsWith("<p>Gallery 0</p>\n<div class=\"photos\">\n<div>\n<img src=\"./images/a0.jpg\" class=\"photo\" alt=\"caption $1 \\ a\" />\n</div>\n<div>\n<img src=\"./images/b0.jpg\" class=\"photo\" alt=\"\" />\n</div>\n</div>\n<p>Gallery 1</p>"));
+    assertTrue(markup.endsWith("<img src=\"./images/b499.jpg\" class=\"photo\" alt=\"\" />\n</div>\n</div>\n"));
+  }
+
 }
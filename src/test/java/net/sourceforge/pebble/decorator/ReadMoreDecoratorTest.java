@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.decorator;
+
+import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+/**
+ * Tests for the ReadMoreDecorator class.
+ *
+ * @author    Simon Brown
+ */
+public class ReadMoreDecoratorTest extends SingleBlogTestCase {
+
+  private ReadMoreDecorator decorator;
+  private ContentDecoratorContext context;
+  private BlogEntry blogEntry;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    decorator = new ReadMoreDecorator();
+    decorator.setBlog(blog);
+    blogEntry = new BlogEntry(blog);
+    blogEntry.setBody("<p>Body</p>");
+    blogEntry.setExcerpt("<p>Excerpt</p>");
+    context = new ContentDecoratorContext();
+  }
+
+  public void testLinkAddedToExcerptInSummaryView() {
+    context.setView(ContentDecoratorContext.SUMMARY_VIEW);
+    decorator.decorate(context, blogEntry);
+    assertEquals("<p>Excerpt</p><p class=\"readMore\"><a href=\"" + blogEntry.getPermalink() + "\">Read more...</a></p>", blogEntry.getExcerpt());
+    assertEquals("<p>Body</p>", blogEntry.getBody());
+  }
+
+  public void testNoLinkAddedInDetailView() {
+    context.setView(ContentDecoratorContext.DETAIL_VIEW);
+    decorator.decorate(context, blogEntry);
+    assertEquals("<p>Excerpt</p>", blogEntry.getExcerpt());
+    assertEquals("<p>Body</p>", blogEntry.getBody());
+  }
+
+  public void testLinkAddedToBodyOfAggregatedBlogEntries() {
+    blogEntry.setOriginalPermalink("http://www.example.com/blog/entry.html");
+    context.setView(ContentDecoratorContext.DETAIL_VIEW);
+    decorator.decorate(context, blogEntry);
+    assertEquals("<p>Body</p><p class=\"readMore\"><a href=\"http://www.example.com/blog/entry.html\">Read more...</a></p>", blogEntry.getBody());
+  }
+
+  public void testLinkAddedOnceToEachBlogEntry() {
+    context.setView(ContentDecoratorContext.SUMMARY_VIEW);
+
+    for (int i = 0; i < 10; i++) {
+      BlogEntry entry = new BlogEntry(blog);
+      entry.setExcerpt("<p>Excerpt</p>");
+      decorator.decorate(context, entry);
+      assertEquals("<p>Excerpt</p><p class=\"readMore\"><a href=\"" + entry.getPermalink() + "\">Read more...</a></p>", entry.getExcerpt());
+    }
+  }
+
+}
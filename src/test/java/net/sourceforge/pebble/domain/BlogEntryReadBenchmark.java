@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.domain;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+
+/**
+ * Measures the time taken, and the memory allocated, by each read of a
+ * cached blog entry with a long body and lots of comments. This isn't run
+ * as part of the build; run its main method from the test classpath. The
+ * allocation is only reported on JVMs that can measure it.
+ *
+ * @author    Simon Brown
+ */
+public class BlogEntryReadBenchmark extends SingleBlogTestCase {
+
+  public static void main(String[] args) throws Exception {
+    BlogEntryReadBenchmark benchmark = new BlogEntryReadBenchmark();
+    benchmark.setUp();
+    try {
+      benchmark.runBenchmark(args.length > 0 ? Integer.parseInt(args[0]) : 10000);
+    } finally {
+      benchmark.tearDown();
+    }
+  }
+
+  private void runBenchmark(int reads) throws Exception {
+    BlogService service = new BlogService();
+    BlogEntry blogEntry = new BlogEntry(blog);
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      body.append("<p>Some body text for paragraph ").append(i).append(".</p>");
+    }
+    blogEntry.setBody(body.toString());
+    blogEntry.setTags("java pebble blogging");
+    long time = blogEntry.getDate().getTime();
+    for (int i = 0; i < 200; i++) {
+      blogEntry.addComment(blogEntry.createComment("title", "Comment body " + i, "author", "email", "website", "avatar", "127.0.0.1", new Date(time + i + 1), State.APPROVED));
+    }
+    service.putBlogEntry(blogEntry);
+
+    // warm up
+    read(service, blogEntry.getId(), reads);
+
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    com.sun.management.ThreadMXBean threadBean = (bean instanceof com.sun.management.ThreadMXBean) ? (com.sun.management.ThreadMXBean)bean : null;
+    long threadId = Thread.currentThread().getId();
+    long allocated = (threadBean != null) ? threadBean.getThreadAllocatedBytes(threadId) : 0;
+    long start = System.nanoTime();
+    read(service, blogEntry.getId(), reads);
+    long nanos = System.nanoTime() - start;
+
+    System.out.println("BlogService.getBlogEntry : " + (nanos / reads) + "ns per read");
+    if (threadBean != null) {
+      allocated = threadBean.getThreadAllocatedBytes(threadId) - allocated;
+      System.out.println("BlogService.getBlogEntry : " + (allocated / reads) + " bytes allocated per read");
+    }
+  }
+
+  private void read(BlogService service, String blogEntryId, int reads) throws Exception {
+    for (int i = 0; i < reads; i++) {
+      service.getBlogEntry(blog, blogEntryId).getNumberOfComments();
+    }
+  }
+
+}
@@ -31,9 +31,14 @@
  */
 package net.sourceforge.pebble.domain;
 
+import net.sourceforge.pebble.dao.BlogEntryDAO;
+import net.sourceforge.pebble.dao.PersistenceException;
+import net.sourceforge.pebble.dao.mock.MockBlogEntryDAO;
+
 import java.beans.PropertyChangeEvent;
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * Tests for the BlogEntry class.
@@ -989,4 +994,40 @@ public class BlogEntryTest extends SingleBlogTestCase {
     assertEquals(0, blogEntry.getNumberOfTrackBacks());
    }
 
+  public void testResponsesAreOnlySeenOnceTheyHaveAllBeenLoaded() throws Exception {
+    final CountDownLatch halfLoaded = new CountDownLatch(1);
+    final CountDownLatch finishLoading = new CountDownLatch(1);
+    BlogEntryDAO dao = new MockBlogEntryDAO() {
+      public void loadResponses(BlogEntry blogEntry) throws PersistenceException {
+        blogEntry.addComment(blogEntry.createComment("", "One", "Author", "", "", "", "127.0.0.1", new Date(123), State.APPROVED));
+        halfLoaded.countDown();
+        try {
+          finishLoading.await();
+        } catch (InterruptedException ie) {
+          throw new PersistenceException(ie.getMessage());
+        }
+        blogEntry.addComment(blogEntry.createComment("", "Two", "Author", "", "", "", "127.0.0.1", new Date(456), State.APPROVED));
+      }
+    };
+    blogEntry.deferResponses(dao, 2, 0, new Date(456));
+
+    Thread loader = new Thread() {
+      public void run() {
+        blogEntry.getComments();
+      }
+    };
+    loader.start();
+    halfLoaded.await();
+
+    // the counts given when loading was deferred are used until they've all been added
+    assertFalse(blogEntry.isResponsesLoaded());
+    assertEquals(2, blogEntry.getNumberOfComments());
+    assertEquals(new Date(456), blogEntry.getLastModified());
+
+    finishLoading.countDown();
+    loader.join();
+    assertTrue(blogEntry.isResponsesLoaded());
+    assertEquals(2, blogEntry.getNumberOfComments());
+  }
+
  }
\ No newline at end of file
@@ -34,10 +34,16 @@ package net.sourceforge.pebble.domain;
 
 import net.sourceforge.pebble.api.event.comment.CommentListener;
 import net.sourceforge.pebble.api.event.comment.CommentEvent;
+import net.sourceforge.pebble.event.comment.CommentListenerSupport;
 import net.sourceforge.pebble.api.event.trackback.TrackBackListener;
 import net.sourceforge.pebble.api.event.trackback.TrackBackEvent;
 import net.sourceforge.pebble.api.event.blogentry.BlogEntryEvent;
 import net.sourceforge.pebble.api.event.blogentry.BlogEntryListener;
+import net.sourceforge.pebble.ContentCache;
+import net.sourceforge.pebble.dao.DAOFactory;
+import net.sourceforge.pebble.dao.file.FileDAOFactory;
+import net.sourceforge.pebble.dao.mock.MockBlogEntryDAO;
+import net.sourceforge.pebble.index.ResponseSummary;
 
 import java.util.*;
 
@@ -529,4 +535,265 @@ public class BlogServiceTest extends SingleBlogTestCase {
     assertEquals(trackBack2, trackBacks.get(1));
     assertEquals(trackBack3, trackBacks.get(2));
   }
+
+  /**
+   * Tests that responses can be approved in bulk, with the events for each
+   * blog entry fired together.
+   */
+  public void testApproveResponses() throws Exception {
+    Comment comment1 = blogEntry.createComment("title", "body", "author", "email", "website", "avatar", "127.0.0.1");
+    Comment comment2 = blogEntry.createComment("title", "body", "author", "email", "website", "avatar", "127.0.0.1");
+    blogEntry.addComment(comment1);
+    blogEntry.addComment(comment2);
+    comment1.setPending();
+    comment2.setPending();
+    service.putBlogEntry(blogEntry);
+    assertEquals(2, blog.getResponseIndex().getNumberOfPendingResponses());
+
+    final List<Comment> comments = new ArrayList<Comment>();
+    CommentListener listener = new CommentListener() {
+      public void commentAdded(CommentEvent event) {
+        fail();
+      }
+
+      public void commentRemoved(CommentEvent event) {
+        fail();
+      }
+
+      public void commentApproved(CommentEvent event) {
+        comments.add(event.getComment());
+      }
+
+      public void commentRejected(CommentEvent event) {
+        fail();
+      }
+    };
+    blog.getEventListenerList().addCommentListener(listener);
+
+    List<Response> responses = service.approveResponses(blog, Arrays.asList(comment1.getGuid(), comment2.getGuid(), "c/1234/5678", "rubbish"));
+    assertEquals(2, responses.size());
+    assertEquals(2, comments.size());
+    assertEquals(0, blog.getResponseIndex().getNumberOfPendingResponses());
+    assertEquals(2, blog.getResponseIndex().getNumberOfApprovedResponses());
+    assertTrue(service.getResponse(blog, comment1.getGuid()).isApproved());
+    assertTrue(service.getResponse(blog, comment2.getGuid()).isApproved());
+  }
+
+  /**
+   * Tests that a blog entry is stored once, however many of its responses
+   * are moderated (and however many times each one is selected).
+   */
+  public void testModeratingResponsesStoresEachBlogEntryOnce() throws Exception {
+    Comment comment1 = blogEntry.createComment("title", "body", "author", "email", "website", "avatar", "127.0.0.1", new Date(1000), State.PENDING);
+    Comment comment2 = blogEntry.createComment("title", "body", "author", "email", "website", "avatar", "127.0.0.1", new Date(2000), State.PENDING);
+    Comment comment3 = blogEntry.createComment("title", "body", "author", "email", "website", "avatar", "127.0.0.1", new Date(3000), State.PENDING);
+    blogEntry.addComment(comment1);
+    blogEntry.addComment(comment2);
+    blogEntry.addComment(comment3);
+    service.putBlogEntry(blogEntry);
+
+    // putting a blog entry stores it before and after its listeners are fired
+    MockBlogEntryDAO dao = (MockBlogEntryDAO)DAOFactory.getConfiguredFactory().getBlogEntryDAO();
+    int stores = dao.getNumberOfStores(blogEntry.getId());
+    service.putBlogEntry(blogEntry);
+    int storesPerPut = dao.getNumberOfStores(blogEntry.getId()) - stores;
+    stores = dao.getNumberOfStores(blogEntry.getId());
+
+    List<Response> responses = service.approveResponses(blog, Arrays.asList(comment1.getGuid(), comment2.getGuid(), comment1.getGuid(), comment3.getGuid()));
+    assertEquals(3, responses.size());
+    assertEquals(stores + storesPerPut, dao.getNumberOfStores(blogEntry.getId()));
+    assertEquals(3, blog.getResponseIndex().getNumberOfApprovedResponses());
+  }
+
+  /**
+   * Tests that responses can be removed in bulk.
+   */
+  public void testRemoveResponses() throws Exception {
+    Comment comment = blogEntry.createComment("title", "body", "author", "email", "website", "avatar", "127.0.0.1");
+    TrackBack trackBack = blogEntry.createTrackBack("title", "excerpt", "url", "blogName", "127.0.0.1");
+    blogEntry.addComment(comment);
+    blogEntry.addTrackBack(trackBack);
+    service.putBlogEntry(blogEntry);
+    assertEquals(2, blog.getResponseIndex().getNumberOfResponses());
+
+    List<Response> responses = service.removeResponses(blog, Arrays.asList(comment.getGuid(), trackBack.getGuid()));
+    assertEquals(2, responses.size());
+    assertEquals(0, blog.getResponseIndex().getNumberOfResponses());
+    assertTrue(service.getBlogEntry(blog, blogEntry.getId()).getResponses().isEmpty());
+  }
+
+  /**
+   * Tests that a backlog of spam spread over many blog entries can be
+   * rejected in one go, with a single event fired per response.
+   */
+  public void testRejectResponsesInBulk() throws Exception {
+    List<String> responseIds = new ArrayList<String>();
+    long time = new Date().getTime();
+    for (int i = 0; i < 20; i++) {
+      BlogEntry be = new BlogEntry(blog);
+      be.setTitle("Entry " + i);
+      be.setDate(new Date(time - (i * 60000)));
+      for (int j = 0; j < 25; j++) {
+        Comment comment = be.createComment("spam", "body", "author", "email", "website", "avatar", "127.0.0.1", new Date(time + (i * 1000) + j), State.PENDING);
+        be.addComment(comment);
+      }
+      service.putBlogEntry(be);
+      for (Comment comment : be.getComments()) {
+        responseIds.add(comment.getGuid());
+      }
+    }
+    assertEquals(500, blog.getResponseIndex().getNumberOfPendingResponses());
+
+    final int[] rejected = new int[1];
+    blog.getEventListenerList().addCommentListener(new CommentListenerSupport() {
+      public void commentRejected(CommentEvent event) {
+        rejected[0]++;
+      }
+    });
+
+    List<Response> responses = service.rejectResponses(blog, responseIds);
+
+    assertEquals(500, responses.size());
+    assertEquals(500, rejected[0]);
+    assertEquals(0, blog.getResponseIndex().getNumberOfPendingResponses());
+    assertEquals(500, blog.getResponseIndex().getNumberOfRejectedResponses());
+  }
+
+  /**
+   * Tests that blog entries can be published and removed in bulk.
+   */
+  public void testPublishAndRemoveBlogEntries() throws Exception {
+    blogEntry.setPublished(false);
+    blogEntry.addComment(blogEntry.createComment("title", "body", "author", "email", "website", "avatar", "127.0.0.1"));
+    service.putBlogEntry(blogEntry);
+    assertEquals(1, blog.getBlogEntryIndex().getNumberOfUnpublishedBlogEntries());
+
+    List<BlogEntry> blogEntries = service.publishBlogEntries(blog, Arrays.asList(blogEntry.getId(), "1234"));
+    assertEquals(1, blogEntries.size());
+    assertEquals(1, blog.getBlogEntryIndex().getNumberOfPublishedBlogEntries());
+
+    blogEntries = service.removeBlogEntries(blog, Arrays.asList(blogEntry.getId()));
+    assertEquals(1, blogEntries.size());
+    assertEquals(0, blog.getBlogEntryIndex().getNumberOfBlogEntries());
+    assertEquals(0, blog.getResponseIndex().getNumberOfResponses());
+  }
+
+  /**
+   * Tests that response summaries come from the response index, and are
+   * filled in from the blog entry when the index doesn't have them.
+   */
+  public void testGetResponseSummaries() throws Exception {
+    Comment comment = blogEntry.createComment("title", "body", "author", "email", "website", "avatar", "127.0.0.1");
+    blogEntry.addComment(comment);
+    service.putBlogEntry(blogEntry);
+
+    List<ResponseSummary> summaries = service.getResponseSummaries(blog, Arrays.asList(comment.getGuid(), "c/1234/5678"));
+    assertEquals(1, summaries.size());
+    assertEquals(comment.getGuid(), summaries.get(0).getGuid());
+    assertEquals("author", summaries.get(0).getSourceName());
+
+    blog.getResponseIndex().clear();
+    assertNull(blog.getResponseIndex().getSummary(comment.getGuid()));
+    summaries = service.getResponseSummaries(blog, Arrays.asList(comment.getGuid()));
+    assertEquals(1, summaries.size());
+    assertEquals(comment.getGuid(), summaries.get(0).getGuid());
+    assertNotNull(blog.getResponseIndex().getSummary(comment.getGuid()));
+  }
+
+  /**
+   * Tests that blog entries are handed out as copies of the cached
+   * snapshot, which can be changed independently of each other.
+   */
+  public void testBlogEntriesAreCopiesOfTheCachedSnapshot() throws Exception {
+    Comment comment = blogEntry.createComment("title", "body", "author", "email", "website", "avatar", "127.0.0.1");
+    blogEntry.addComment(comment);
+    service.putBlogEntry(blogEntry);
+
+    BlogEntry copy1 = service.getBlogEntry(blog, blogEntry.getId());
+    BlogEntry copy2 = service.getBlogEntry(blog, blogEntry.getId());
+    assertNotSame(copy1, copy2);
+    assertFalse(copy1.isResponsesLoaded());
+
+    copy1.setBody("A different body");
+    copy1.setTags("different");
+    copy1.removeComment(comment.getId());
+    assertEquals(0, copy1.getNumberOfComments());
+
+    assertEquals(blogEntry.getBody(), copy2.getBody());
+    assertEquals(blogEntry.getTags(), copy2.getTags());
+    assertEquals(1, copy2.getNumberOfComments());
+    assertSame(copy2, copy2.getComments().get(0).getBlogEntry());
+    assertEquals(1, service.getBlogEntry(blog, blogEntry.getId()).getComments().size());
+  }
+
+  /**
+   * Tests that blog entries can be got in bulk, whether or not they are
+   * cached, in the order that they were asked for.
+   */
+  public void testGetBlogEntries() throws Exception {
+    List<String> blogEntryIds = new ArrayList<String>();
+    long time = blogEntry.getDate().getTime();
+    for (int i = 0; i < 6; i++) {
+      BlogEntry b = new BlogEntry(blog);
+      b.setTitle("Title " + i);
+      b.setDate(new Date(time - (i * 1000)));
+      service.putBlogEntry(b);
+      blogEntryIds.add(b.getId());
+
+      // only some of them are cached
+      if (i % 2 == 0) {
+        ContentCache.getInstance().removeBlogEntry(b);
+      }
+    }
+    blogEntryIds.add(2, "1234");
+
+    List<BlogEntry> blogEntries = service.getBlogEntries(blog, blogEntryIds);
+    assertEquals(6, blogEntries.size());
+    for (int i = 0; i < 6; i++) {
+      assertEquals("Title " + i, blogEntries.get(i).getTitle());
+      assertTrue(blogEntries.get(i).isPersistent());
+    }
+
+    // and they're cached now
+    assertEquals(6, ContentCache.getInstance().getBlogEntries(blog, blogEntryIds).size());
+    assertNotSame(blogEntries.get(0), service.getBlogEntries(blog, blogEntryIds).get(0));
+  }
+
+  /**
+   * Tests that reads of a cached blog entry share its body, and that the
+   * responses are loaded once for the cached snapshot rather than once for
+   * every copy.
+   */
+  public void testResponsesAreLoadedOncePerCachedSnapshot() throws Exception {
+    // the mock DAO doesn't defer loading responses
+    DAOFactory.setConfiguredFactory(new FileDAOFactory());
+
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      body.append("<p>Some body text for paragraph ").append(i).append(".</p>");
+    }
+    blogEntry.setBody(body.toString());
+    long time = blogEntry.getDate().getTime();
+    for (int i = 0; i < 200; i++) {
+      blogEntry.addComment(blogEntry.createComment("title", "Comment body " + i, "author", "email", "website", "avatar", "127.0.0.1", new Date(time + i + 1), State.APPROVED));
+    }
+    service.putBlogEntry(blogEntry);
+    ContentCache.getInstance().removeBlogEntry(blogEntry);
+
+    BlogEntry copy1 = service.getBlogEntry(blog, blogEntry.getId());
+    BlogEntry snapshot = ContentCache.getInstance().getBlogEntry(blog, blogEntry.getId());
+    assertFalse(snapshot.isResponsesLoaded());
+    assertEquals(200, copy1.getNumberOfComments());
+    assertFalse(snapshot.isResponsesLoaded());
+
+    assertEquals(200, copy1.getComments().size());
+    assertTrue(snapshot.isResponsesLoaded());
+
+    BlogEntry copy2 = service.getBlogEntry(blog, blogEntry.getId());
+    assertSame(copy1.getBody(), copy2.getBody());
+    assertEquals(200, copy2.getComments().size());
+    assertNotSame(copy1.getComments().get(0), copy2.getComments().get(0));
+    assertNotSame(snapshot.getComments().get(0), copy2.getComments().get(0));
+    assertSame(copy2, copy2.getComments().get(0).getBlogEntry());
+  }
 }
@@ -41,6 +41,8 @@ import net.sourceforge.pebble.permalink.DefaultPermalinkProvider;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Tests for the Blog class.
@@ -553,4 +555,70 @@ public class BlogTest extends SingleBlogTestCase {
     assertFalse(blog.getRecentApprovedResponses().contains(comment));
   }
 
-}
\ No newline at end of file
+  public void testTimeZoneAndLocaleAreCachedUntilPropertiesChange() {
+    assertSame(blog.getTimeZone(), blog.getTimeZone());
+    assertSame(blog.getLocale(), blog.getLocale());
+
+    blog.setProperty(Blog.TIMEZONE_KEY, "America/New_York");
+    blog.setProperty(Blog.LANGUAGE_KEY, "fr");
+    blog.setProperty(Blog.COUNTRY_KEY, "FR");
+    assertEquals(TimeZone.getTimeZone("America/New_York"), blog.getTimeZone());
+    assertEquals(java.time.ZoneId.of("America/New_York"), blog.getZoneId());
+    assertEquals(new Locale("fr", "FR"), blog.getLocale());
+
+    blog.removeProperty(Blog.COUNTRY_KEY);
+    assertEquals(new Locale("fr", "GB"), blog.getLocale());
+  }
+
+  public void testDateTimeFormatter() {
+    blog.setProperty(Blog.TIMEZONE_KEY, "Asia/Tokyo");
+    java.time.format.DateTimeFormatter formatter = blog.getDateTimeFormatter("yyyy-MM-dd HH:mm");
+    assertSame(formatter, blog.getDateTimeFormatter("yyyy-MM-dd HH:mm"));
+    assertEquals("1970-01-01 09:00", formatter.format(new Date(0).toInstant()));
+
+    blog.setProperty(Blog.LANGUAGE_KEY, "fr");
+    assertEquals("janvier 1970", blog.getDateTimeFormatter("LLLL yyyy").format(java.time.YearMonth.of(1970, 1)));
+  }
+
+  public void testRenderedWidgetsClearedWhenBlogEntriesChange() throws BlogServiceException {
+    assertTrue(blog.putRenderedWidget("calendar", "<div/>", blog.getRenderedWidgetGeneration()));
+    assertEquals("<div/>", blog.getRenderedWidget("calendar"));
+
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("title");
+    blogEntry.setBody("body");
+    blogEntry.setPublished(true);
+    new BlogService().putBlogEntry(blogEntry);
+    assertNull(blog.getRenderedWidget("calendar"));
+
+    for (int i = 0; i < 100; i++) {
+      blog.putRenderedWidget("calendar/" + i, "<div/>", blog.getRenderedWidgetGeneration());
+    }
+    assertNull(blog.getRenderedWidget("calendar/0"));
+    assertEquals("<div/>", blog.getRenderedWidget("calendar/99"));
+  }
+
+  public void testWidgetsRenderedBeforeBeingClearedAreNotStored() {
+    long generation = blog.getRenderedWidgetGeneration();
+    // the blog entries change while the widget is being rendered
+    blog.clearRenderedWidgets();
+    assertFalse(blog.putRenderedWidget("calendar", "<div>stale</div>", generation));
+    assertNull(blog.getRenderedWidget("calendar"));
+
+    assertTrue(blog.putRenderedWidget("calendar", "<div/>", blog.getRenderedWidgetGeneration()));
+    assertEquals("<div/>", blog.getRenderedWidget("calendar"));
+  }
+
+  public void testScheduledTasksCancelledWhenBlogStopped() {
+    ScheduledFuture<?> task = blog.scheduleTask("test", new Runnable() {
+      public void run() {
+      }
+    }, 1, TimeUnit.HOURS);
+    assertFalse(task.isDone());
+    assertNotNull(PebbleContext.getInstance().getScheduler().getStatistics(blog.getId() + "/test"));
+
+    blog.stop();
+    assertTrue(task.isCancelled());
+  }
+
+}
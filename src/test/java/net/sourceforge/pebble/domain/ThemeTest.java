@@ -31,6 +31,8 @@
  */
 package net.sourceforge.pebble.domain;
 
+import org.apache.commons.io.FileUtils;
+
 import java.io.File;
 
 /**
@@ -60,4 +62,66 @@ public class ThemeTest extends SingleBlogTestCase {
     assertEquals(new File("/tmp/themes/custom"), theme.getPathToLiveTheme());
   }
 
+  public void testRestoreCopiesBackupToLiveTheme() throws Exception {
+    File liveThemes = new File(blog.getRoot(), "themes");
+    theme = new Theme(blog, "custom", liveThemes.getAbsolutePath());
+    File backup = new File(theme.getBackupThemeDirectory());
+    FileUtils.writeStringToFile(new File(backup, "screen.css"), "body {}", "UTF-8");
+    FileUtils.writeStringToFile(new File(backup, "images/logo.txt"), "logo", "UTF-8");
+
+    theme.restore();
+
+    assertEquals("body {}", FileUtils.readFileToString(new File(theme.getPathToLiveTheme(), "screen.css"), "UTF-8"));
+    assertEquals("logo", FileUtils.readFileToString(new File(theme.getPathToLiveTheme(), "images/logo.txt"), "UTF-8"));
+  }
+
+  public void testBackupOnlyCopiesChangedFiles() throws Exception {
+    File liveThemes = new File(blog.getRoot(), "themes");
+    theme = new Theme(blog, "custom", liveThemes.getAbsolutePath());
+    File live = theme.getPathToLiveTheme();
+    File backup = new File(theme.getBackupThemeDirectory());
+    FileUtils.writeStringToFile(new File(live, "screen.css"), "body {}", "UTF-8");
+    FileUtils.writeStringToFile(new File(live, "print.css"), "p {}", "UTF-8");
+    theme.backup();
+
+    File unchanged = new File(backup, "print.css");
+    unchanged.setLastModified(unchanged.lastModified() - 60000);
+    FileUtils.writeStringToFile(new File(live, "screen.css"), "body { margin: 0 }", "UTF-8");
+    theme.backup();
+
+    assertEquals("body { margin: 0 }", FileUtils.readFileToString(new File(backup, "screen.css"), "UTF-8"));
+    assertEquals("p {}", FileUtils.readFileToString(unchanged, "UTF-8"));
+    assertEquals(new File(live, "print.css").lastModified(), unchanged.lastModified());
+  }
+
+  public void testBackupRemovesFilesDeletedFromLiveTheme() throws Exception {
+    File liveThemes = new File(blog.getRoot(), "themes");
+    theme = new Theme(blog, "custom", liveThemes.getAbsolutePath());
+    File live = theme.getPathToLiveTheme();
+    File backup = new File(theme.getBackupThemeDirectory());
+    FileUtils.writeStringToFile(new File(live, "screen.css"), "body {}", "UTF-8");
+    FileUtils.writeStringToFile(new File(backup, "old.css"), "p {}", "UTF-8");
+
+    theme.backup();
+
+    assertTrue(new File(backup, "screen.css").exists());
+    assertFalse(new File(backup, "old.css").exists());
+  }
+
+  public void testRestoreUpdatesExistingLiveTheme() throws Exception {
+    File liveThemes = new File(blog.getRoot(), "themes");
+    theme = new Theme(blog, "custom", liveThemes.getAbsolutePath());
+    File live = theme.getPathToLiveTheme();
+    File backup = new File(theme.getBackupThemeDirectory());
+    FileUtils.writeStringToFile(new File(backup, "screen.css"), "body { margin: 0 }", "UTF-8");
+    FileUtils.writeStringToFile(new File(live, "screen.css"), "body {}", "UTF-8");
+
+    theme.restore();
+    // backing up waits for the restore to finish
+    theme.backup();
+
+    assertEquals("body { margin: 0 }", FileUtils.readFileToString(new File(live, "screen.css"), "UTF-8"));
+    assertEquals("body { margin: 0 }", FileUtils.readFileToString(new File(backup, "screen.css"), "UTF-8"));
+  }
+
 }
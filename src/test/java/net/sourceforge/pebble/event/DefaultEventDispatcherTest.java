@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.event;
+
+import net.sourceforge.pebble.api.event.AsynchronousListener;
+import net.sourceforge.pebble.api.event.blogentry.BlogEntryEvent;
+import net.sourceforge.pebble.api.event.comment.CommentEvent;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.Comment;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+import net.sourceforge.pebble.event.blogentry.BlogEntryListenerSupport;
+import net.sourceforge.pebble.event.comment.CommentListenerSupport;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.ArrayList;
+
+/**
+ * Tests for the DefaultEventDispatcher class.
+ *
+ * @author Simon Brown
+ */
+public class DefaultEventDispatcherTest extends SingleBlogTestCase {
+
+  private DefaultEventDispatcher dispatcher;
+  private EventListenerList eventListenerList;
+  private BlogEntry blogEntry;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    eventListenerList = new EventListenerList();
+    dispatcher = new DefaultEventDispatcher();
+    dispatcher.setEventListenerList(eventListenerList);
+    blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("A title");
+  }
+
+  public void testAsynchronousListenersAreCalledOffTheCallingThread() throws Exception {
+    RecordingListener sync = new RecordingListener();
+    AsynchronousRecordingListener async = new AsynchronousRecordingListener();
+    eventListenerList.addBlogEntryListener(async);
+    eventListenerList.addBlogEntryListener(sync);
+
+    dispatcher.fireBlogEntryEvent(new BlogEntryEvent(blogEntry, BlogEntryEvent.BLOG_ENTRY_PUBLISHED));
+    assertTrue(AsynchronousListenerExecutor.getInstance().awaitIdle(5000));
+
+    assertEquals(1, sync.threads.size());
+    assertSame(Thread.currentThread(), sync.threads.get(0));
+    assertEquals(1, async.threads.size());
+    assertNotSame(Thread.currentThread(), async.threads.get(0));
+
+    // and the asynchronous listener gets its own copy of the blog entry
+    assertNotSame(blogEntry, async.blogEntries.get(0));
+    assertEquals("A title", async.blogEntries.get(0).getTitle());
+  }
+
+  public void testEventsForABlogEntryAreDeliveredInOrder() throws Exception {
+    AsynchronousRecordingListener async = new AsynchronousRecordingListener();
+    eventListenerList.addBlogEntryListener(async);
+
+    for (int i = 0; i < 20; i++) {
+      blogEntry.setTitle("Title " + i);
+      dispatcher.fireBlogEntryEvent(new BlogEntryEvent(blogEntry, BlogEntryEvent.BLOG_ENTRY_PUBLISHED));
+    }
+    assertTrue(AsynchronousListenerExecutor.getInstance().awaitIdle(5000));
+
+    assertEquals(20, async.blogEntries.size());
+    for (int i = 0; i < 20; i++) {
+      assertEquals("Title " + i, async.blogEntries.get(i).getTitle());
+    }
+  }
+
+  public void testVetoedEventsAreNotPassedToAsynchronousListeners() throws Exception {
+    AsynchronousRecordingListener async = new AsynchronousRecordingListener();
+    eventListenerList.addBlogEntryListener(new BlogEntryListenerSupport() {
+      public void blogEntryPublished(BlogEntryEvent event) {
+        event.veto();
+      }
+    });
+    eventListenerList.addBlogEntryListener(async);
+
+    dispatcher.fireBlogEntryEvent(new BlogEntryEvent(blogEntry, BlogEntryEvent.BLOG_ENTRY_PUBLISHED));
+    assertTrue(AsynchronousListenerExecutor.getInstance().awaitIdle(5000));
+
+    assertTrue(async.blogEntries.isEmpty());
+  }
+
+  public void testAsynchronousCommentListenersGetACopyOfTheComment() throws Exception {
+    Comment comment = blogEntry.createComment("Title", "Body", "Author", null, null, null, "127.0.0.1");
+    blogEntry.addComment(comment);
+    final List<Comment> comments = Collections.synchronizedList(new ArrayList<Comment>());
+    eventListenerList.addCommentListener(new AsynchronousCommentListener() {
+      public void commentAdded(CommentEvent event) {
+        comments.add(event.getComment());
+      }
+    });
+
+    CommentEvent event = new CommentEvent(comment, CommentEvent.COMMENT_ADDED);
+    dispatcher.fireCommentEvent(event);
+    comment.setBody("Changed by the caller");
+    assertTrue(AsynchronousListenerExecutor.getInstance().awaitIdle(5000));
+
+    assertEquals(1, comments.size());
+    assertNotSame(comment, comments.get(0));
+    assertNotSame(blogEntry, comments.get(0).getBlogEntry());
+    assertEquals(comment.getId(), comments.get(0).getId());
+    assertEquals("Body", comments.get(0).getBody());
+  }
+
+  public void testListenerStatisticsAreRecorded() throws Exception {
+    RecordingListener sync = new RecordingListener();
+    eventListenerList.addBlogEntryListener(sync);
+    long before = ListenerStatistics.getStatistics(RecordingListener.class).getInvocations();
+
+    dispatcher.fireBlogEntryEvent(new BlogEntryEvent(blogEntry, BlogEntryEvent.BLOG_ENTRY_PUBLISHED));
+
+    assertEquals(before + 1, ListenerStatistics.getStatistics(RecordingListener.class).getInvocations());
+  }
+
+  static class RecordingListener extends BlogEntryListenerSupport {
+    List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+    List<BlogEntry> blogEntries = Collections.synchronizedList(new ArrayList<BlogEntry>());
+
+    public void blogEntryPublished(BlogEntryEvent event) {
+      threads.add(Thread.currentThread());
+      blogEntries.add(event.getBlogEntry());
+    }
+  }
+
+  static class AsynchronousRecordingListener extends RecordingListener implements AsynchronousListener {
+  }
+
+  static class AsynchronousCommentListener extends CommentListenerSupport implements AsynchronousListener {
+  }
+
+}
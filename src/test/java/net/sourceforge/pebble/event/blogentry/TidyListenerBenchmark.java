@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.event.blogentry;
+
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how long it takes to tidy a corpus of posts, and then to
+ * recognise and skip the posts once they have been tidied. This isn't run
+ * as part of the build; run its main method from the test classpath.
+ *
+ * @author    Simon Brown
+ */
+public class TidyListenerBenchmark extends SingleBlogTestCase {
+
+  public static void main(String[] args) throws Exception {
+    TidyListenerBenchmark benchmark = new TidyListenerBenchmark();
+    benchmark.setUp();
+    try {
+      benchmark.runBenchmark(args.length > 0 ? Integer.parseInt(args[0]) : 500);
+    } finally {
+      benchmark.tearDown();
+    }
+  }
+
+  private void runBenchmark(int numberOfPosts) {
+    List<String> corpus = new ArrayList<String>();
+    for (int i = 0; i < numberOfPosts; i++) {
+      StringBuilder post = new StringBuilder();
+      for (int p = 0; p < 10; p++) {
+        post.append("<p>Paragraph ").append(p).append(" of post ").append(i).append(" with <b>bold and <i>italic text, ");
+        post.append("a <a href=\"http://www.example.com/").append(i).append("\">link</a> & an entity<br>");
+        post.append("<ul><li>one<li>two</ul>");
+      }
+      corpus.add(post.toString());
+    }
+
+    // warm up, with a different listener so that nothing is skipped below
+    TidyListener warmUp = new TidyListener();
+    for (String post : corpus) {
+      warmUp.tidy(post);
+    }
+
+    TidyListener listener = new TidyListener();
+    List<String> tidied = new ArrayList<String>();
+    long start = System.nanoTime();
+    for (String post : corpus) {
+      tidied.add(listener.tidy(post));
+    }
+    long firstPass = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    for (String post : tidied) {
+      listener.tidy(post);
+    }
+    long secondPass = System.nanoTime() - start;
+
+    System.out.println("TidyListener : tidied " + corpus.size() + " posts in " + (firstPass / 1000000) + "ms");
+    System.out.println("TidyListener : skipped " + tidied.size() + " unchanged posts in " + (secondPass / 1000000) + "ms");
+  }
+
+}
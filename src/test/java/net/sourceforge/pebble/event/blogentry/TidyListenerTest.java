@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.event.blogentry;
+
+import net.sourceforge.pebble.api.event.blogentry.BlogEntryEvent;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+import java.beans.PropertyChangeEvent;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for the TidyListener class.
+ *
+ * @author Simon Brown
+ */
+public class TidyListenerTest extends SingleBlogTestCase {
+
+  private TidyListener listener;
+  private BlogEntry blogEntry;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    listener = new TidyListener();
+    blogEntry = new BlogEntry(blog);
+  }
+
+  public void testBlogEntryAdded() {
+    blogEntry.setExcerpt("<p>Some <b>excerpt");
+    blogEntry.setBody("<ul><li>one<li>two</ul><img src=\"a.png\">");
+    listener.blogEntryAdded(new BlogEntryEvent(blogEntry, BlogEntryEvent.BLOG_ENTRY_ADDED));
+
+    assertEquals("<p>Some <b>excerpt</b></p>", blogEntry.getExcerpt());
+    assertEquals("<ul>\n<li>one</li>\n\n<li>two</li>\n</ul>\n\n<img src=\"a.png\" />", blogEntry.getBody());
+  }
+
+  public void testEmptyContent() {
+    assertEquals("", listener.tidy(null));
+    assertEquals("", listener.tidy(""));
+  }
+
+  public void testNonAsciiCharactersArePreserved() {
+    assertEquals("<p>café — “quoted” 日本</p>", listener.tidy("<p>café — “quoted” 日本"));
+  }
+
+  public void testTidiedContentIsNotTidiedAgain() {
+    String tidied = listener.tidy("<p>Some <i>body");
+    assertSame(tidied, listener.tidy(tidied));
+    String copy = new String(tidied);
+    assertSame(copy, listener.tidy(copy));
+  }
+
+  public void testBlogEntryChangedOnlyTidiesExcerptAndBody() {
+    blogEntry.setBody("<p>Some body");
+    List<PropertyChangeEvent> propertyChangeEvents = new ArrayList<PropertyChangeEvent>();
+    propertyChangeEvents.add(new PropertyChangeEvent(blogEntry, BlogEntry.TITLE_PROPERTY, "old", "new"));
+    listener.blogEntryChanged(new BlogEntryEvent(blogEntry, propertyChangeEvents));
+    assertEquals("<p>Some body", blogEntry.getBody());
+
+    propertyChangeEvents.add(new PropertyChangeEvent(blogEntry, BlogEntry.BODY_PROPERTY, "old", "<p>Some body"));
+    listener.blogEntryChanged(new BlogEntryEvent(blogEntry, propertyChangeEvents));
+    assertEquals("<p>Some body</p>", blogEntry.getBody());
+  }
+
+  public void testConcurrentUse() throws Exception {
+    final List<Throwable> failures = new ArrayList<Throwable>();
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      final int n = t;
+      threads[t] = new Thread() {
+        public void run() {
+          try {
+            for (int i = 0; i < 50; i++) {
+              assertEquals("<p>thread " + n + " post " + i + "</p>", listener.tidy("<p>thread " + n + " post " + i));
+            }
+          } catch (Throwable e) {
+            synchronized (failures) {
+              failures.add(e);
+            }
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertTrue(failures.toString(), failures.isEmpty());
+  }
+
+  /**
+   * Tidies a corpus of posts, as an import would, and then saves them
+   * again unchanged.
+   */
+  public void testTidyingACorpusOfPosts() {
+    List<String> corpus = new ArrayList<String>();
+    for (int i = 0; i < 50; i++) {
+      StringBuilder post = new StringBuilder();
+      for (int p = 0; p < 10; p++) {
+        post.append("<p>Paragraph ").append(p).append(" of post ").append(i).append(" with <b>bold and <i>italic text, ");
+        post.append("a <a href=\"http://www.example.com/").append(i).append("\">link</a> & an entity &copy;<br>");
+      }
+      post.append("<ul><li>one<li>two<li>three</ul><pre>  some\n  code</pre>");
+      corpus.add(post.toString());
+    }
+
+    List<String> tidied = new ArrayList<String>();
+    for (String post : corpus) {
+      String s = listener.tidy(post);
+      assertTrue(s.contains("</b>"));
+      assertTrue(s.contains("&amp; an entity"));
+      assertTrue(s.contains("</li>"));
+      assertTrue(s.contains("<br />"));
+      tidied.add(s);
+    }
+
+    // the tidied posts are recognised, and left alone
+    for (String post : tidied) {
+      assertSame(post, listener.tidy(post));
+    }
+
+    // and reusing pooled Tidy instances gives the same output every time
+    TidyListener anotherListener = new TidyListener();
+    for (int i = corpus.size() - 1; i >= 0; i--) {
+      assertEquals(tidied.get(i), anotherListener.tidy(corpus.get(i)));
+    }
+  }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.domain.*;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tests for the BlogEntryIndex class.
+ *
+ * @author    Simon Brown
+ */
+public class BlogEntryIndexTest extends SingleBlogTestCase {
+
+  private BlogEntryIndex index;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    this.index = new BlogEntryIndex(blog);
+  }
+
+  /**
+   * Tests that blog entries are kept in order, most recent first.
+   */
+  public void testBlogEntriesAreOrdered() throws Exception {
+    BlogEntry blogEntry1 = createBlogEntry(1, true);
+    BlogEntry blogEntry2 = createBlogEntry(2, false);
+    BlogEntry blogEntry3 = createBlogEntry(3, true);
+    index.index(blogEntry2);
+    index.index(blogEntry1);
+    index.index(blogEntry3);
+
+    assertEquals(Arrays.asList(blogEntry3.getId(), blogEntry2.getId(), blogEntry1.getId()), index.getBlogEntries());
+    assertEquals(Arrays.asList(blogEntry3.getId(), blogEntry1.getId()), index.getPublishedBlogEntries());
+    assertEquals(Arrays.asList(blogEntry2.getId()), index.getUnpublishedBlogEntries());
+
+    index.unindex(blogEntry3);
+    assertEquals(Arrays.asList(blogEntry2.getId(), blogEntry1.getId()), index.getBlogEntries());
+    assertEquals(Arrays.asList(blogEntry1.getId()), index.getPublishedBlogEntries());
+
+    // and the index is read back in the same order
+    index = new BlogEntryIndex(blog);
+    assertEquals(Arrays.asList(blogEntry2.getId(), blogEntry1.getId()), index.getBlogEntries());
+  }
+
+  /**
+   * Tests that the lists handed out don't change, or get copied, as blog
+   * entries are indexed.
+   */
+  public void testBlogEntriesAreReadOnlySnapshots() throws Exception {
+    BlogEntry blogEntry1 = createBlogEntry(1, true);
+    index.index(blogEntry1);
+
+    List<String> blogEntries = index.getPublishedBlogEntries();
+    assertSame(blogEntries, index.getPublishedBlogEntries());
+    try {
+      blogEntries.add("1234");
+      fail();
+    } catch (UnsupportedOperationException uoe) {
+      // expected
+    }
+
+    index.index(createBlogEntry(2, true));
+    assertEquals(1, blogEntries.size());
+    assertEquals(2, index.getPublishedBlogEntries().size());
+  }
+
+  private BlogEntry createBlogEntry(int n, boolean published) {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setDate(new Date(1000000000000L + n * 1000L));
+    blogEntry.setPublished(published);
+    return blogEntry;
+  }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.PebbleContext;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+import net.sourceforge.pebble.util.TaskStatistics;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tests for the EmailSubscriptionList class.
+ *
+ * @author    Simon Brown
+ */
+public class EmailSubscriptionListTest extends SingleBlogTestCase {
+
+  private EmailSubscriptionList list;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    this.list = new EmailSubscriptionList(blog);
+    list.clear();
+  }
+
+  public void testAddAndRemoveEmailAddresses() throws Exception {
+    list.addEmailAddress("b@domain.com");
+    list.addEmailAddress("a@domain.com");
+    list.addEmailAddress("a@domain.com");
+    assertEquals(Arrays.asList("a@domain.com", "b@domain.com"), list.getEmailAddresses());
+    assertTrue(list.isSubscribed("a@domain.com"));
+
+    list.removeEmailAddress("a@domain.com");
+    assertEquals(Arrays.asList("b@domain.com"), list.getEmailAddresses());
+    assertFalse(list.isSubscribed("a@domain.com"));
+  }
+
+  public void testInvalidEmailAddressesIgnored() throws Exception {
+    list.addEmailAddress(null);
+    list.addEmailAddress(" ");
+    list.addEmailAddress("a@domain.com\nb@domain.com");
+    assertEquals(0, list.getNumberOfEmailAddresses());
+  }
+
+  public void testChangesAreReplayedFromTheLog() throws Exception {
+    list.addEmailAddress("a@domain.com");
+    list.addEmailAddress("b@domain.com");
+    list.removeEmailAddress("a@domain.com");
+
+    EmailSubscriptionList reloaded = new EmailSubscriptionList(blog);
+    assertEquals(Arrays.asList("b@domain.com"), reloaded.getEmailAddresses());
+  }
+
+  public void testCompaction() throws Exception {
+    list.addEmailAddress("a@domain.com");
+    list.addEmailAddress("b@domain.com");
+    list.compact();
+
+    File logFile = new File(blog.getIndexesDirectory(), "email-subscriptions.log");
+    assertFalse(logFile.exists());
+
+    list.removeEmailAddress("a@domain.com");
+    list.addEmailAddress("c@domain.com");
+    assertTrue(logFile.exists());
+
+    EmailSubscriptionList reloaded = new EmailSubscriptionList(blog);
+    assertEquals(Arrays.asList("b@domain.com", "c@domain.com"), reloaded.getEmailAddresses());
+  }
+
+  public void testInterruptedCompactionIsReplayedBeforeTheLog() throws Exception {
+    list.addEmailAddress("a@domain.com");
+    list.addEmailAddress("b@domain.com");
+
+    // a compaction that moved the log aside, but didn't write the index
+    File logFile = new File(blog.getIndexesDirectory(), "email-subscriptions.log");
+    File compactingLogFile = new File(blog.getIndexesDirectory(), "email-subscriptions.log.compacting");
+    assertTrue(logFile.renameTo(compactingLogFile));
+    list.removeEmailAddress("a@domain.com");
+    list.addEmailAddress("c@domain.com");
+
+    EmailSubscriptionList reloaded = new EmailSubscriptionList(blog);
+    assertEquals(Arrays.asList("b@domain.com", "c@domain.com"), reloaded.getEmailAddresses());
+
+    reloaded.compact();
+    assertFalse(compactingLogFile.exists());
+    assertFalse(logFile.exists());
+    reloaded = new EmailSubscriptionList(blog);
+    assertEquals(Arrays.asList("b@domain.com", "c@domain.com"), reloaded.getEmailAddresses());
+  }
+
+  public void testCompactionIsScheduledOnceTheLogIsBigEnough() throws Exception {
+    String taskName = blog.getId() + "/email-subscriptions";
+    TaskStatistics stats = PebbleContext.getInstance().getScheduler().getStatistics(taskName);
+    long runs = (stats != null ? stats.getRuns() : 0);
+    for (int i = 0; i < 1000; i++) {
+      list.addEmailAddress("user" + i + "@domain.com");
+    }
+
+    stats = PebbleContext.getInstance().getScheduler().getStatistics(taskName);
+    assertNotNull(stats);
+    for (int i = 0; i < 500 && stats.getRuns() == runs; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(runs + 1, stats.getRuns());
+    assertFalse(new File(blog.getIndexesDirectory(), "email-subscriptions.log").exists());
+  }
+
+  public void testClearIsNotUndoneByCompaction() throws Exception {
+    list.addEmailAddress("a@domain.com");
+    list.clear();
+    list.compact();
+
+    EmailSubscriptionList reloaded = new EmailSubscriptionList(blog);
+    assertEquals(0, reloaded.getNumberOfEmailAddresses());
+  }
+
+  public void testIteration() throws Exception {
+    list.addEmailAddress("a@domain.com");
+    list.addEmailAddress("b@domain.com");
+
+    Set<String> emailAddresses = new HashSet<String>();
+    for (String emailAddress : list) {
+      emailAddresses.add(emailAddress);
+    }
+    assertEquals(new HashSet<String>(list.getEmailAddresses()), emailAddresses);
+  }
+
+  public void testDoubleOptIn() throws Exception {
+    String token = list.requestSubscription("a@domain.com");
+    assertNotNull(token);
+    assertFalse(list.isSubscribed("a@domain.com"));
+
+    // the pending subscription should survive a reload
+    list = new EmailSubscriptionList(blog);
+    assertNull(list.confirmSubscription("unknown"));
+    assertEquals("a@domain.com", list.confirmSubscription(token));
+    assertTrue(list.isSubscribed("a@domain.com"));
+
+    // and tokens can only be used once
+    assertNull(list.confirmSubscription(token));
+  }
+
+  public void testExpiredPendingSubscriptionsAreForgotten() throws Exception {
+    long expired = System.currentTimeMillis() - EmailSubscriptionList.PENDING_SUBSCRIPTION_EXPIRY - 1000;
+    Writer writer = new FileWriter(new File(blog.getIndexesDirectory(), "email-subscriptions.log"));
+    writer.write("?oldtoken " + expired + " a@domain.com\n");
+    writer.close();
+
+    list = new EmailSubscriptionList(blog);
+    assertEquals(0, list.getNumberOfPendingSubscriptions());
+    assertNull(list.confirmSubscription("oldtoken"));
+
+    list.requestSubscription("b@domain.com");
+    assertEquals(1, list.getNumberOfPendingSubscriptions());
+  }
+
+  public void testManySubscribers() throws Exception {
+    for (int i = 0; i < 5000; i++) {
+      list.addEmailAddress("user" + i + "@domain.com");
+    }
+    list.compact();
+
+    EmailSubscriptionList reloaded = new EmailSubscriptionList(blog);
+    assertEquals(5000, reloaded.getNumberOfEmailAddresses());
+    assertTrue(reloaded.isSubscribed("user4999@domain.com"));
+  }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.PebbleContext;
+import net.sourceforge.pebble.domain.*;
+import net.sourceforge.pebble.util.TaskStatistics;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.Date;
+
+/**
+ * Tests for the ResponseIndex class.
+ *
+ * @author    Simon Brown
+ */
+public class ResponseIndexTest extends SingleBlogTestCase {
+
+  private ResponseIndex index;
+  private BlogEntry blogEntry;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    this.index = new ResponseIndex(blog);
+    this.blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("Title");
+  }
+
+  /**
+   * Tests that indexing a response stores a summary of it.
+   */
+  public void testIndexResponseStoresSummary() throws Exception {
+    Comment comment = blogEntry.createComment("title", "Some\tbody\nhere", "author", "me@domain.com", "http://www.domain.com", "", "127.0.0.1");
+    comment.setApproved();
+    index.index(comment);
+
+    ResponseSummary summary = index.getSummary(comment.getGuid());
+    assertEquals(comment.getGuid(), summary.getGuid());
+    assertEquals(blogEntry.getId(), summary.getBlogEntryId());
+    assertEquals(comment.getId(), summary.getId());
+    assertEquals(comment.getDate(), summary.getDate());
+    assertTrue(summary.isComment());
+    assertTrue(summary.isApproved());
+    assertEquals("title", summary.getTitle());
+    assertEquals("author", summary.getSourceName());
+    assertEquals("http://www.domain.com", summary.getSourceLink());
+    assertEquals("me@domain.com", summary.getEmail());
+    assertTrue(summary.isHasEmail());
+    assertEquals("127.0.0.1", summary.getIpAddress());
+    assertEquals(comment.getTruncatedContent(), summary.getTruncatedContent());
+    assertEquals(blog.getUrl() + "viewBlogEntry.action?entry=" + blogEntry.getId() + "#comment" + comment.getId(), summary.getPermalink());
+  }
+
+  /**
+   * Tests that summaries survive the index being reloaded.
+   */
+  public void testSummariesAreReloaded() throws Exception {
+    Comment comment1 = blogEntry.createComment("title", "Some\tbody\nhere", "author", "", "", "", "127.0.0.1", new Date(1000), State.PENDING);
+    index.index(comment1);
+    TrackBack trackBack = blogEntry.createTrackBack("title", "excerpt", "http://www.domain.com", "Some blog", "127.0.0.1", new Date(2000), State.PENDING);
+    index.index(trackBack);
+    Comment comment2 = blogEntry.createComment("title", "body", "author", "", "", "", "127.0.0.1", new Date(3000), State.PENDING);
+    index.index(comment2);
+    index.unindex(comment2);
+    comment1.setApproved();
+    index.unindex(comment1);
+    index.index(comment1);
+
+    index = new ResponseIndex(blog);
+    ResponseSummary summary = index.getSummary(comment1.getGuid());
+    assertTrue(summary.isApproved());
+    assertEquals(comment1.getTruncatedContent(), summary.getTruncatedContent());
+    assertNull(summary.getEmail());
+    assertFalse(summary.isHasEmail());
+    assertNull(index.getSummary(comment2.getGuid()));
+
+    summary = index.getSummary(trackBack.getGuid());
+    assertFalse(summary.isComment());
+    assertEquals("Some blog", summary.getSourceName());
+    assertEquals("http://www.domain.com", summary.getSourceLink());
+  }
+
+  /**
+   * Tests that a bulk update only holds back the changes made by the thread
+   * that started it.
+   */
+  public void testBulkUpdateDoesNotHoldBackOtherThreads() throws Exception {
+    Comment comment1 = blogEntry.createComment("title", "body", "author", "", "", "", "127.0.0.1", new Date(1000), State.PENDING);
+    final Comment comment2 = blogEntry.createComment("title", "body", "author", "", "", "", "127.0.0.1", new Date(2000), State.PENDING);
+
+    index.beginUpdate();
+    try {
+      index.index(comment1);
+      Thread thread = new Thread() {
+        public void run() {
+          index.index(comment2);
+        }
+      };
+      thread.start();
+      thread.join();
+
+      // the other thread's change (which includes this one's) has been written
+      assertEquals(2, new ResponseIndex(blog).getNumberOfPendingResponses());
+    } finally {
+      index.endUpdate();
+    }
+
+    // and the index is written again once the bulk update has ended
+    index.beginUpdate();
+    index.unindex(comment1);
+    assertEquals(2, new ResponseIndex(blog).getNumberOfPendingResponses());
+    index.endUpdate();
+    assertEquals(1, new ResponseIndex(blog).getNumberOfPendingResponses());
+  }
+
+  /**
+   * Tests that the summary file is compacted once it has grown to be much
+   * bigger than the summaries it holds.
+   */
+  public void testSummariesAreCompactedOnceTheFileIsBigEnough() throws Exception {
+    index.clear();
+    String taskName = blog.getId() + "/response-summaries";
+    TaskStatistics stats = PebbleContext.getInstance().getScheduler().getStatistics(taskName);
+    long runs = (stats != null ? stats.getRuns() : 0);
+
+    Comment comment = blogEntry.createComment("title", "body", "author", "", "", "", "127.0.0.1");
+    for (int i = 0; i < 1000; i++) {
+      index.summarize(comment);
+    }
+
+    stats = PebbleContext.getInstance().getScheduler().getStatistics(taskName);
+    assertNotNull(stats);
+    for (int i = 0; i < 500 && stats.getRuns() == runs; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(runs + 1, stats.getRuns());
+
+    File summaryFile = new File(blog.getIndexesDirectory(), "responses-summary.index");
+    BufferedReader reader = new BufferedReader(new FileReader(summaryFile));
+    int lines = 0;
+    while (reader.readLine() != null) {
+      lines++;
+    }
+    reader.close();
+    assertEquals(1, lines);
+    assertNotNull(new ResponseIndex(blog).getSummary(comment.getGuid()));
+  }
+
+  /**
+   * Tests that clearing the index removes the summaries.
+   */
+  public void testClearRemovesSummaries() throws Exception {
+    Comment comment = blogEntry.createComment("title", "body", "author", "", "", "", "127.0.0.1");
+    index.index(comment);
+    index.clear();
+
+    assertNull(index.getSummary(comment.getGuid()));
+    assertNull(new ResponseIndex(blog).getSummary(comment.getGuid()));
+  }
+
+}
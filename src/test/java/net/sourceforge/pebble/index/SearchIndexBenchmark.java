@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Measures the average latency of some typical queries, and of the
+ * suggestions, against a reasonably sized blog. This isn't run as part of
+ * the build; run its main method from the test classpath.
+ *
+ * @author    Simon Brown
+ */
+public class SearchIndexBenchmark extends SingleBlogTestCase {
+
+  private static final String[] QUERIES = { "java", "lucene search", "title:spring", "tag:tomcat", "servlet AND xml" };
+  private static final String[] PREFIXES = { "ent", "entry 1", "jav", "luc", "spr" };
+
+  private SearchIndex index;
+
+  public static void main(String[] args) throws Exception {
+    SearchIndexBenchmark benchmark = new SearchIndexBenchmark();
+    benchmark.setUp();
+    try {
+      benchmark.runBenchmark(args.length > 0 ? Integer.parseInt(args[0]) : 2000, 50);
+    } finally {
+      benchmark.tearDown();
+    }
+  }
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    index = new SearchIndex(blog);
+    index.clear();
+  }
+
+  protected void tearDown() throws Exception {
+    index.close();
+
+    super.tearDown();
+  }
+
+  private void runBenchmark(int numberOfBlogEntries, int iterations) throws Exception {
+    String[] words = { "java", "lucene", "search", "index", "blog", "spring", "tomcat", "servlet", "jsp", "xml" };
+    List<BlogEntry> blogEntries = new ArrayList<BlogEntry>();
+    long time = new Date().getTime() - (numberOfBlogEntries * 3600000L);
+    for (int i = 0; i < numberOfBlogEntries; i++) {
+      BlogEntry blogEntry = new BlogEntry(blog);
+      blogEntry.setDate(new Date(time + (i * 3600000L)));
+      blogEntry.setTitle("Entry " + i + " about " + words[i % words.length]);
+      StringBuilder body = new StringBuilder();
+      for (int j = 0; j < 200; j++) {
+        body.append(words[(i * 7 + j * 3) % words.length]);
+        body.append(j % 10 == 0 ? ". " : " ");
+      }
+      blogEntry.setBody(body.toString());
+      blogEntry.setTags(words[i % words.length] + " " + words[(i + 3) % words.length]);
+      blogEntry.setPublished(true);
+      blogEntries.add(blogEntry);
+    }
+    long start = System.nanoTime();
+    index.indexBlogEntries(blogEntries);
+    System.out.println("Indexed " + numberOfBlogEntries + " blog entries in " + ((System.nanoTime() - start) / 1000000) + "ms");
+
+    // warm up
+    for (int i = 0; i < iterations; i++) {
+      for (String query : QUERIES) {
+        index.search(query, SearchIndex.SORT_BY_SCORE, 1, 20);
+      }
+      for (String prefix : PREFIXES) {
+        index.suggest(prefix, 10);
+      }
+    }
+
+    for (String sort : new String[] { SearchIndex.SORT_BY_SCORE, SearchIndex.SORT_BY_DATE }) {
+      start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        for (String query : QUERIES) {
+          index.search(query, sort, 1 + (i % 3), 20);
+        }
+      }
+      long micros = (System.nanoTime() - start) / 1000 / (iterations * QUERIES.length);
+      System.out.println("Average query latency (sorted by " + sort + ") : " + micros + "us");
+    }
+
+    start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      for (String prefix : PREFIXES) {
+        index.suggest(prefix, 10);
+      }
+    }
+    long micros = (System.nanoTime() - start) / 1000 / (iterations * PREFIXES.length);
+    System.out.println("Average suggestion latency : " + micros + "us");
+  }
+
+}
@@ -32,7 +32,29 @@
 package net.sourceforge.pebble.index;
 
 import net.sourceforge.pebble.domain.*;
+import net.sourceforge.pebble.search.SearchHit;
 import net.sourceforge.pebble.search.SearchResults;
+import net.sourceforge.pebble.search.Suggestion;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Tests for the SearchResults class.
@@ -50,6 +72,12 @@ public class SearchIndexTest extends SingleBlogTestCase {
     index.clear();
   }
 
+  protected void tearDown() throws Exception {
+    index.close();
+
+    super.tearDown();
+  }
+
   /**
    * Tests that a search can be performed on a blog entry title.
    */
@@ -184,4 +212,433 @@ public class SearchIndexTest extends SingleBlogTestCase {
      }
    }
 
+   /**
+    * Creates and indexes some blog entries, returning their IDs, newest first.
+    */
+   private List<String> indexBlogEntries(int number) {
+     List<BlogEntry> blogEntries = new ArrayList<BlogEntry>();
+     List<String> ids = new ArrayList<String>();
+     long time = new Date().getTime() - (number * 60000L);
+     for (int i = 0; i < number; i++) {
+       BlogEntry blogEntry = new BlogEntry(blog);
+       blogEntry.setDate(new Date(time + (i * 60000L)));
+       blogEntry.setTitle("Entry " + i + " about Java");
+       // make some entries more relevant than others
+       blogEntry.setBody((i % 3 == 0) ? "Java, java and more java" : "Some text about java and other things");
+       blogEntry.setPublished(true);
+       blogEntries.add(blogEntry);
+       ids.add(0, blogEntry.getId());
+     }
+     index.indexBlogEntries(blogEntries);
+
+     return ids;
+   }
+
+   private List<String> getIds(SearchResults results) {
+     List<String> ids = new ArrayList<String>();
+     for (Object o : results.getHits()) {
+       ids.add(((SearchHit)o).getId());
+     }
+
+     return ids;
+   }
+
+   public void testPagingByDate() throws Exception {
+     List<String> ids = indexBlogEntries(25);
+
+     SearchResults results = index.search("java", SearchIndex.SORT_BY_DATE, 1, 10);
+     assertEquals(25, results.getNumberOfHits());
+     assertEquals(0, results.getOffset());
+     assertEquals(ids.subList(0, 10), getIds(results));
+     assertEquals(1, ((SearchHit)results.getHits().get(0)).getNumber());
+
+     results = index.search("java", SearchIndex.SORT_BY_DATE, 2, 10);
+     assertEquals(25, results.getNumberOfHits());
+     assertEquals(10, results.getOffset());
+     assertEquals(ids.subList(10, 20), getIds(results));
+     assertEquals(11, ((SearchHit)results.getHits().get(0)).getNumber());
+
+     // pages beyond the last page return the last page
+     results = index.search("java", SearchIndex.SORT_BY_DATE, 99, 10);
+     assertEquals(20, results.getOffset());
+     assertEquals(ids.subList(20, 25), getIds(results));
+   }
+
+   public void testPagingByScore() throws Exception {
+     indexBlogEntries(12);
+
+     SearchResults all = index.search("java");
+     assertEquals(12, all.getNumberOfHits());
+     float previousScore = Float.MAX_VALUE;
+     for (Object o : all.getHits()) {
+       SearchHit hit = (SearchHit)o;
+       assertTrue(hit.getScore() <= previousScore);
+       previousScore = hit.getScore();
+     }
+
+     List<String> ids = getIds(all);
+     assertEquals(ids.subList(0, 5), getIds(index.search("java", SearchIndex.SORT_BY_SCORE, 1, 5)));
+     assertEquals(ids.subList(5, 10), getIds(index.search("java", SearchIndex.SORT_BY_SCORE, 2, 5)));
+     assertEquals(ids.subList(10, 12), getIds(index.search("java", SearchIndex.SORT_BY_SCORE, 3, 5)));
+   }
+
+   public void testPagingWithCursor() throws Exception {
+     for (String sort : new String[] { SearchIndex.SORT_BY_DATE, SearchIndex.SORT_BY_SCORE }) {
+       index.clear();
+       indexBlogEntries(23);
+       List<String> expected = getIds(index.search("java", sort, 1, 100));
+
+       List<String> ids = new ArrayList<String>();
+       String cursor = null;
+       int pages = 0;
+       do {
+         SearchResults results = index.searchAfter("java", sort, cursor, 5);
+         assertEquals(23, results.getNumberOfHits());
+         assertEquals(ids.size(), results.getOffset());
+         ids.addAll(getIds(results));
+         cursor = results.getNextPageCursor();
+         pages++;
+       } while (cursor != null);
+
+       assertEquals(5, pages);
+       assertEquals(expected, ids);
+     }
+   }
+
+   public void testHitsAreCreatedFromStoredFields() throws Exception {
+     blog.addCategory(new Category("/category1", "Category 1"));
+     BlogEntry blogEntry = new BlogEntry(blog);
+     blogEntry.setTitle("Title");
+     blogEntry.setSubtitle("Subtitle");
+     blogEntry.setBody("Some body text about lucene");
+     blogEntry.setAuthor("simon");
+     blogEntry.addCategory(blog.getCategory("/category1"));
+     blogEntry.setPublished(true);
+     index.index(blogEntry);
+
+     SearchHit hit = (SearchHit)index.search("lucene").getHits().get(0);
+     assertEquals(blogEntry.getId(), hit.getId());
+     assertEquals("Title", hit.getTitle());
+     assertEquals("Subtitle", hit.getSubtitle());
+     assertEquals(blogEntry.getDate(), hit.getDate());
+     assertEquals("simon", hit.getAuthor());
+     assertEquals(Collections.singletonList("/category1"), hit.getCategoryIds());
+     assertEquals(blogEntry.getTruncatedContent(), hit.getExcerpt());
+   }
+
+   public void testIndexCreatedByOlderVersionIsStillSearchable() throws Exception {
+     Directory dir = FSDirectory.open(new File(blog.getSearchIndexDirectory()).toPath());
+     IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer());
+     config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+     IndexWriter writer = new IndexWriter(dir, config);
+     Document document = new Document();
+     document.add(new StringField("id", "123", Field.Store.YES));
+     document.add(new StoredField("date", 123L));
+     document.add(new TextField("blogEntry", "some text about java", Field.Store.NO));
+     writer.addDocument(document);
+     writer.close();
+     dir.close();
+
+     assertFalse(index.isUpToDate());
+     SearchResults results = index.search("java", SearchIndex.SORT_BY_DATE, 1, 10);
+     assertEquals(1, results.getNumberOfHits());
+
+     index.clear();
+     indexBlogEntries(1);
+     assertTrue(index.isUpToDate());
+   }
+
+   private void indexBlogEntry(String title, String tags, String author, int year) {
+     Calendar cal = blog.getCalendar();
+     cal.set(year, Calendar.JUNE, 1);
+     BlogEntry blogEntry = new BlogEntry(blog);
+     blogEntry.setDate(cal.getTime());
+     blogEntry.setTitle(title);
+     blogEntry.setBody("Some text about " + title);
+     blogEntry.setTags(tags);
+     blogEntry.setAuthor(author);
+     blogEntry.setPublished(true);
+     index.index(blogEntry);
+   }
+
+   public void testFacetsAreCountedForAllHits() throws Exception {
+     indexBlogEntry("Java one", "java lucene", "simon", 2010);
+     indexBlogEntry("Java two", "java", "simon", 2011);
+     indexBlogEntry("Java three", "java spring", "bob", 2011);
+     indexBlogEntry("Ruby", "ruby", "bob", 2011);
+
+     // the counts cover all of the hits, not just the page that is returned
+     SearchResults results = index.search("java", SearchIndex.SORT_BY_DATE, 1, 1);
+     assertEquals(3, results.getNumberOfHits());
+     assertEquals(1, results.getHits().size());
+
+     Map<String, Integer> tags = results.getFacet(SearchIndex.FACET_TAG);
+     assertEquals(Integer.valueOf(3), tags.get("java"));
+     assertEquals(Integer.valueOf(1), tags.get("lucene"));
+     assertEquals(Integer.valueOf(1), tags.get("spring"));
+     assertNull(tags.get("ruby"));
+     assertEquals("java", tags.keySet().iterator().next());
+
+     Map<String, Integer> authors = results.getFacet(SearchIndex.FACET_AUTHOR);
+     assertEquals(Integer.valueOf(2), authors.get("simon"));
+     assertEquals(Integer.valueOf(1), authors.get("bob"));
+
+     Map<String, Integer> years = results.getFacet(SearchIndex.FACET_YEAR);
+     assertEquals(Integer.valueOf(1), years.get("2010"));
+     assertEquals(Integer.valueOf(2), years.get("2011"));
+
+     assertTrue(results.getFacet(SearchIndex.FACET_CATEGORY).isEmpty());
+   }
+
+   public void testDrillDown() throws Exception {
+     indexBlogEntry("Java one", "java lucene", "simon", 2010);
+     indexBlogEntry("Java two", "java", "simon", 2011);
+     indexBlogEntry("Java three", "java spring", "bob", 2011);
+
+     Map<String, String> drillDowns = new HashMap<String, String>();
+     drillDowns.put(SearchIndex.FACET_YEAR, "2011");
+     SearchResults results = index.search("java", SearchIndex.SORT_BY_DATE, 1, 10, drillDowns);
+     assertEquals(2, results.getNumberOfHits());
+     assertEquals(Integer.valueOf(1), results.getFacet(SearchIndex.FACET_AUTHOR).get("simon"));
+     assertEquals(Integer.valueOf(1), results.getFacet(SearchIndex.FACET_AUTHOR).get("bob"));
+
+     drillDowns.put(SearchIndex.FACET_AUTHOR, "bob");
+     results = index.search("java", SearchIndex.SORT_BY_DATE, 1, 10, drillDowns);
+     assertEquals(1, results.getNumberOfHits());
+     assertEquals("Java three", ((SearchHit)results.getHits().get(0)).getTitle());
+
+     // unknown facets are ignored
+     drillDowns.clear();
+     drillDowns.put("unknown", "value");
+     assertEquals(3, index.search("java", SearchIndex.SORT_BY_DATE, 1, 10, drillDowns).getNumberOfHits());
+   }
+
+   public void testMatchesAreHighlighted() throws Exception {
+     BlogEntry blogEntry = new BlogEntry(blog);
+     blogEntry.setTitle("Searching with Lucene");
+     blogEntry.setBody("<p>This is a post about <i>indexing</i> & searching with Lucene.</p>");
+     blogEntry.setPublished(true);
+     index.index(blogEntry);
+
+     SearchHit hit = (SearchHit)index.search("lucene").getHits().get(0);
+     assertEquals("Searching with <b>Lucene</b>", hit.getHighlightedTitle());
+     assertEquals("This is a post about indexing &amp; searching with <b>Lucene</b>.", hit.getHighlightedExcerpt());
+
+     // fields without a match aren't highlighted
+     hit = (SearchHit)index.search("indexing").getHits().get(0);
+     assertNull(hit.getHighlightedTitle());
+     assertEquals("This is a post about <b>indexing</b> &amp; searching with Lucene.", hit.getHighlightedExcerpt());
+   }
+
+   public void testHighlightedTitlesAreEscapedOnce() throws Exception {
+     BlogEntry blogEntry = new BlogEntry(blog);
+     blogEntry.setTitle("Tom &amp; Jerry & <friends>");
+     blogEntry.setBody("Cartoons");
+     blogEntry.setPublished(true);
+     index.index(blogEntry);
+
+     SearchHit hit = (SearchHit)index.search("jerry").getHits().get(0);
+     assertEquals("Tom &amp; <b>Jerry</b> &amp; &lt;friends&gt;", hit.getHighlightedTitle());
+   }
+
+   public void testFullTextIsAnalyzedForTheLanguageOfTheBlog() throws Exception {
+     BlogEntry blogEntry = new BlogEntry(blog);
+     blogEntry.setTitle("Indexing blogs");
+     blogEntry.setBody("The searches were running quickly");
+     blogEntry.setPublished(true);
+     index.index(blogEntry);
+
+     assertEquals(1, index.search("index").getNumberOfHits());
+     assertEquals(1, index.search("search").getNumberOfHits());
+     assertEquals(1, index.search("title:blog").getNumberOfHits());
+     assertEquals(0, index.search("the").getNumberOfHits());
+
+     blog.setProperty(Blog.LANGUAGE_KEY, "de");
+     index.clear();
+     blogEntry.setTitle("Die schnellen Suchen");
+     index.index(blogEntry);
+     assertEquals(1, index.search("suche").getNumberOfHits());
+     assertEquals(0, index.search("die").getNumberOfHits());
+   }
+
+   public void testKeywordFieldsMatchWholeValues() throws Exception {
+     indexBlogEntry("Java one", "java-ee lucene", "simon", 2010);
+
+     assertEquals(1, index.search("tag:java-ee").getNumberOfHits());
+     assertEquals(0, index.search("tag:java").getNumberOfHits());
+     assertEquals(1, index.search("author:Simon").getNumberOfHits());
+
+     // tags are also searched when no field is given
+     assertEquals(1, index.search("lucene").getNumberOfHits());
+   }
+
+   public void testIndexIsOutOfDateWhenTheAnalyzerChanges() throws Exception {
+     indexBlogEntries(1);
+     assertTrue(index.isUpToDate());
+
+     blog.setProperty(Blog.LANGUAGE_KEY, "fr");
+     assertFalse(index.isUpToDate());
+
+     index.clear();
+     assertTrue(index.isUpToDate());
+
+     blog.setProperty(Blog.LUCENE_ANALYZER_KEY, "org.apache.lucene.analysis.standard.StandardAnalyzer");
+     assertFalse(index.isUpToDate());
+   }
+
+   public void testTitlesAndTagsAreSuggestedAsTheyAreTyped() throws Exception {
+     indexBlogEntry("Lucene in action", "lucene", "simon", 2010);
+     indexBlogEntry("Tuning Lucene queries", "performance", "simon", 2011);
+
+     List<Suggestion> suggestions = index.suggest("luc", 10);
+     assertEquals(3, suggestions.size());
+     // the most recent comes first
+     assertEquals("Tuning Lucene queries", suggestions.get(0).getText());
+     assertEquals(Suggestion.TITLE, suggestions.get(0).getType());
+
+     suggestions = index.suggest("perf", 10);
+     assertEquals(1, suggestions.size());
+     assertEquals("performance", suggestions.get(0).getText());
+     assertEquals(Suggestion.TAG, suggestions.get(0).getType());
+     assertEquals(blog.getUrl() + "tags/performance/", suggestions.get(0).getPermalink());
+
+     assertTrue(index.suggest("", 10).isEmpty());
+     assertTrue(index.suggest("xyz", 10).isEmpty());
+   }
+
+   public void testMisspeltWordsAreCorrectedWhenNothingIsSuggested() throws Exception {
+     indexBlogEntry("Searching with Lucene", "", "simon", 2010);
+
+     assertEquals("lucene", index.correctSpelling("lucane"));
+     assertEquals("title:lucene AND searching", index.correctSpelling("title:lucene AND serching"));
+     assertNull(index.correctSpelling("lucene"));
+
+     List<Suggestion> suggestions = index.suggest("lucane", 10);
+     assertEquals(1, suggestions.size());
+     assertEquals("Searching with Lucene", suggestions.get(0).getText());
+   }
+
+   public void testSearchWithNoHitsSuggestsACorrectedQuery() throws Exception {
+     indexBlogEntry("Searching with Lucene", "", "simon", 2010);
+
+     SearchResults results = index.search("lucane");
+     assertEquals(0, results.getNumberOfHits());
+     assertEquals("lucene", results.getSuggestedQuery());
+
+     results = index.search("lucene");
+     assertEquals(1, results.getNumberOfHits());
+     assertNull(results.getSuggestedQuery());
+   }
+
+   public void testSuggestionsAreSeenAsSoonAsTheyAreIndexed() throws Exception {
+     indexBlogEntry("Lucene in action", "", "simon", 2010);
+     assertEquals(1, index.suggest("luc", 10).size());
+
+     // the suggester stays open, so later changes have to be refreshed into it
+     indexBlogEntry("Tuning Lucene queries", "", "simon", 2011);
+     assertEquals(2, index.suggest("luc", 10).size());
+
+     index.clear();
+     assertTrue(index.suggest("luc", 10).isEmpty());
+
+     indexBlogEntry("Lucene in action", "", "simon", 2010);
+     assertEquals(1, index.suggest("luc", 10).size());
+   }
+
+   public void testRemovedBlogEntriesAreNoLongerSuggested() throws Exception {
+     BlogEntry blogEntry = new BlogEntry(blog);
+     blogEntry.setTitle("Lucene in action");
+     blogEntry.setPublished(true);
+     index.index(blogEntry);
+     assertEquals(1, index.suggest("lucene", 10).size());
+
+     index.unindex(blogEntry);
+     assertTrue(index.suggest("lucene", 10).isEmpty());
+   }
+
+   public void testTitlesAndTagsAreSuggestedUntilNothingHasThem() throws Exception {
+     BlogEntry first = new BlogEntry(blog);
+     first.setTitle("Lucene in action");
+     first.setTags("lucene solr");
+     first.setPublished(true);
+     index.index(first);
+
+     BlogEntry second = new BlogEntry(blog);
+     second.setDate(new Date(first.getDate().getTime() + 1000));
+     second.setTitle("Lucene in action");
+     second.setTags("lucene");
+     second.setPublished(true);
+     index.index(second);
+     assertEquals(2, index.suggest("luc", 10).size());
+     assertEquals(1, index.suggest("sol", 10).size());
+
+     // the title and tag are still used by the second blog entry
+     index.unindex(first);
+     List<Suggestion> suggestions = index.suggest("luc", 10);
+     assertEquals(2, suggestions.size());
+     assertEquals(second.getPermalink(), suggestions.get(0).getPermalink());
+     assertTrue(index.suggest("sol", 10).isEmpty());
+
+     index.unindex(second);
+     assertTrue(index.suggest("luc", 10).isEmpty());
+   }
+
+   public void testAnalyzerIsReusedUntilTheConfigurationChanges() throws Exception {
+     Analyzer analyzer = index.getAnalyzer();
+     assertSame(analyzer, index.getAnalyzer());
+
+     blog.setProperty(Blog.LANGUAGE_KEY, "de");
+     Analyzer germanAnalyzer = index.getAnalyzer();
+     assertNotSame(analyzer, germanAnalyzer);
+     assertSame(germanAnalyzer, index.getAnalyzer());
+
+     blog.setProperty(Blog.LUCENE_ANALYZER_KEY, "org.apache.lucene.analysis.standard.StandardAnalyzer");
+     assertNotSame(germanAnalyzer, index.getAnalyzer());
+   }
+
+   /**
+    * Searches, pages through and suggests from a reasonably sized blog.
+    */
+   public void testSearchingALargerBlog() throws Exception {
+     String[] words = { "java", "lucene", "search", "index", "blog", "spring", "tomcat", "servlet", "jsp", "xml" };
+     List<BlogEntry> blogEntries = new ArrayList<BlogEntry>();
+     long time = new Date().getTime() - (2000 * 3600000L);
+     for (int i = 0; i < 2000; i++) {
+       BlogEntry blogEntry = new BlogEntry(blog);
+       blogEntry.setDate(new Date(time + (i * 3600000L)));
+       blogEntry.setTitle("Entry " + i + " about " + words[i % words.length]);
+       StringBuilder body = new StringBuilder();
+       for (int j = 0; j < 200; j++) {
+         body.append(words[(i * 7 + j * 3) % words.length]);
+         body.append(j % 10 == 0 ? ". " : " ");
+       }
+       blogEntry.setBody(body.toString());
+       blogEntry.setTags(words[i % words.length] + " " + words[(i + 3) % words.length]);
+       blogEntry.setPublished(true);
+       blogEntries.add(blogEntry);
+     }
+     index.indexBlogEntries(blogEntries);
+
+     assertEquals(200, index.search("title:spring", SearchIndex.SORT_BY_SCORE, 1, 20).getNumberOfHits());
+     assertEquals(400, index.search("tag:tomcat", SearchIndex.SORT_BY_SCORE, 1, 20).getNumberOfHits());
+
+     // the same query gives the same results each time
+     for (String sort : new String[] { SearchIndex.SORT_BY_SCORE, SearchIndex.SORT_BY_DATE }) {
+       SearchResults results = index.search("lucene search", sort, 2, 20);
+       assertEquals(20, results.getHits().size());
+       assertEquals(results.getNumberOfHits(), index.search("lucene search", sort, 2, 20).getNumberOfHits());
+     }
+
+     // pages by date follow on from each other
+     SearchResults page = index.search("title:spring", SearchIndex.SORT_BY_DATE, 1, 20);
+     assertEquals("Entry 1995 about spring", ((SearchHit)page.getHits().get(0)).getTitle());
+     page = index.search("title:spring", SearchIndex.SORT_BY_DATE, 2, 20);
+     assertEquals("Entry 1795 about spring", ((SearchHit)page.getHits().get(0)).getTitle());
+
+     for (String prefix : new String[] { "ent", "jav", "luc", "spr" }) {
+       List<Suggestion> suggestions = index.suggest(prefix, 10);
+       assertEquals(10, suggestions.size());
+     }
+   }
+
 }
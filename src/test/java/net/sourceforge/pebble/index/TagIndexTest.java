@@ -33,6 +33,9 @@ package net.sourceforge.pebble.index;
 
 import net.sourceforge.pebble.domain.*;
 
+import java.io.File;
+import java.util.Date;
+
 /**
  * Tests for the TagIndex class.
  *
@@ -77,6 +80,110 @@ public class TagIndexTest extends SingleBlogTestCase {
     assertEquals(0, index.getTags().size());
   }
 
+  /**
+   * Tests that a blog entry is unindexed from the tags it was indexed with,
+   * even if its tags have since changed.
+   */
+  public void testUnindexBlogEntryAfterItsTagsHaveChanged() throws Exception {
+    BlogEntry blogEntry = createBlogEntry(1, "junit java");
+    index.index(blogEntry);
+
+    blogEntry.setTags("lucene");
+    index.unindex(blogEntry);
+    index.index(blogEntry);
+
+    assertEquals(0, index.getTag("junit").getNumberOfBlogEntries());
+    assertEquals(0, index.getTag("java").getNumberOfBlogEntries());
+    assertEquals(1, index.getTag("lucene").getNumberOfBlogEntries());
+    assertEquals(1, index.getTags().size());
+  }
+
+  /**
+   * Tests that the ranks maintained as blog entries are indexed and
+   * unindexed are the same as those calculated from scratch.
+   */
+  public void testRanksAreMaintainedIncrementally() throws Exception {
+    BlogEntry[] blogEntries = new BlogEntry[10];
+    for (int i = 0; i < blogEntries.length; i++) {
+      blogEntries[i] = createBlogEntry(i, i == 0 ? "java lucene" : "java");
+      index.index(blogEntries[i]);
+    }
+    assertEquals(10, index.getTag("java").getRank());
+    assertEquals(1, index.getTag("lucene").getRank());
+
+    // the maximum changes, so all ranks change
+    for (int i = 5; i < blogEntries.length; i++) {
+      index.unindex(blogEntries[i]);
+    }
+    assertEquals(9, index.getTag("java").getRank());
+
+    // the maximum doesn't change
+    index.index(createBlogEntry(20, "lucene"));
+    assertEquals(3, index.getTag("lucene").getRank());
+
+    TagIndex recalculated = new TagIndex(blog);
+    for (Tag tag : recalculated.getTags()) {
+      assertEquals(tag.getName(), tag.getRank(), index.getTag(tag.getName()).getRank());
+    }
+    assertEquals(recalculated.getTags(), index.getTags());
+  }
+
+  /**
+   * Tests that changes are appended to a log, which is replayed and
+   * compacted into the index when the index is next read.
+   */
+  public void testChangesAreLoggedAndCompacted() throws Exception {
+    File indexFile = new File(blog.getIndexesDirectory(), "tags.index");
+    File logFile = new File(blog.getIndexesDirectory(), "tags.log");
+
+    BlogEntry blogEntry1 = createBlogEntry(1, "junit");
+    BlogEntry blogEntry2 = createBlogEntry(2, "junit java");
+    index.index(blogEntry1);
+    index.index(blogEntry2);
+    index.unindex(blogEntry1);
+    long length = indexFile.length();
+    assertTrue(logFile.exists());
+
+    index = new TagIndex(blog);
+    assertFalse(logFile.exists());
+    assertTrue(indexFile.length() > length);
+    assertEquals(1, index.getTag("junit").getNumberOfBlogEntries());
+    assertEquals(blogEntry2.getId(), index.getTag("java").getBlogEntries().get(0));
+    assertEquals(2, index.getTags().size());
+  }
+
+  /**
+   * Tests that the log is only deleted once the index has been replaced.
+   */
+  public void testLogIsKeptWhenTheIndexCannotBeWritten() throws Exception {
+    File indexFile = new File(blog.getIndexesDirectory(), "tags.index");
+    File logFile = new File(blog.getIndexesDirectory(), "tags.log");
+    File tempFile = new File(blog.getIndexesDirectory(), "tags.index.tmp");
+
+    index.index(createBlogEntry(1, "junit"));
+    long length = indexFile.length();
+
+    // the temporary file can't be written while there's a directory in the way
+    tempFile.mkdirs();
+    index.compact();
+    assertTrue(logFile.exists());
+    assertEquals(length, indexFile.length());
+
+    tempFile.delete();
+    index.compact();
+    assertFalse(logFile.exists());
+    assertFalse(tempFile.exists());
+    assertTrue(indexFile.length() > length);
+  }
+
+  private BlogEntry createBlogEntry(int n, String tags) {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setDate(new Date(1000000000000L + n * 1000L));
+    blogEntry.setTags(tags);
+    blogEntry.setPublished(true);
+    return blogEntry;
+  }
+
 //  /**
 //   * Tests that category/tag statistics are updated.
 //   */
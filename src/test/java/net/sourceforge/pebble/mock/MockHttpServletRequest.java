@@ -66,6 +66,7 @@ public class MockHttpServletRequest implements HttpServletRequest {
 
   private String contextPath;
   private String requestUri = "";
+  private String method;
   private StringBuffer requestUrl = new StringBuffer();
   private RequestDispatcher requestDispatcher;
 
@@ -113,7 +114,11 @@ public class MockHttpServletRequest implements HttpServletRequest {
   }
 
   public String getMethod() {
-    return null;
+    return this.method;
+  }
+
+  public void setMethod(String method) {
+    this.method = method;
   }
 
   public String getPathInfo() {
@@ -32,8 +32,10 @@
 package net.sourceforge.pebble.mock;
 
 import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -59,6 +61,7 @@ public class MockHttpServletResponse implements HttpServletResponse {
   private Properties headers = new Properties();
 
   private PrintWriter writer = new PrintWriter(new StringWriter());
+  private ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
   private String sendRedirect;
 
   public void addCookie(Cookie cookie) {
@@ -144,7 +147,22 @@ public class MockHttpServletResponse implements HttpServletResponse {
   }
 
   public ServletOutputStream getOutputStream() throws IOException {
-    return null;
+    return new ServletOutputStream() {
+      public void write(int b) throws IOException {
+        outputStream.write(b);
+      }
+
+      public boolean isReady() {
+        return true;
+      }
+
+      public void setWriteListener(WriteListener writeListener) {
+      }
+    };
+  }
+
+  public byte[] getOutputStreamContent() {
+    return outputStream.toByteArray();
   }
 
   public PrintWriter getWriter() throws IOException {
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.security;
+
+import junit.framework.TestCase;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the CredentialCache class.
+ *
+ * @author    Simon Brown
+ */
+public class CredentialCacheTest extends TestCase {
+
+  private CredentialCache cache;
+  private CountingAuthenticationManager authenticationManager;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    cache = new CredentialCache(CredentialCache.DEFAULT_TIME_TO_LIVE, 2);
+    authenticationManager = new CountingAuthenticationManager("password");
+  }
+
+  public void testVerifiedCredentialsAreCached() {
+    Authentication auth = cache.authenticate(authenticationManager, "username", "password");
+    assertSame(auth, cache.authenticate(authenticationManager, "username", "password"));
+    assertEquals(1, authenticationManager.count.get());
+  }
+
+  public void testDifferentPasswordIsVerifiedAgain() {
+    cache.authenticate(authenticationManager, "username", "password");
+    try {
+      cache.authenticate(authenticationManager, "username", "wrong");
+      fail();
+    } catch (AuthenticationException ae) {
+    }
+    assertEquals(2, authenticationManager.count.get());
+  }
+
+  public void testFailuresAreNotCached() {
+    for (int i = 0; i < 2; i++) {
+      try {
+        cache.authenticate(authenticationManager, "username", "wrong");
+        fail();
+      } catch (AuthenticationException ae) {
+      }
+    }
+    assertEquals(2, authenticationManager.count.get());
+  }
+
+  public void testInvalidatedCredentialsAreVerifiedAgain() {
+    cache.authenticate(authenticationManager, "username", "password");
+    cache.invalidate("username");
+    cache.authenticate(authenticationManager, "username", "password");
+    assertEquals(2, authenticationManager.count.get());
+
+    cache.invalidateAll();
+    cache.authenticate(authenticationManager, "username", "password");
+    assertEquals(3, authenticationManager.count.get());
+  }
+
+  public void testExpiredCredentialsAreVerifiedAgain() {
+    cache = new CredentialCache(0, 2);
+    cache.authenticate(authenticationManager, "username", "password");
+    cache.authenticate(authenticationManager, "username", "password");
+    assertEquals(2, authenticationManager.count.get());
+  }
+
+  public void testCredentialsAreOnlyTrustedByTheSameAuthenticationManager() {
+    cache.authenticate(authenticationManager, "username", "password");
+    CountingAuthenticationManager other = new CountingAuthenticationManager("password");
+    cache.authenticate(other, "username", "password");
+    assertEquals(1, other.count.get());
+  }
+
+  public void testCacheIsBounded() {
+    cache.authenticate(authenticationManager, "user1", "password");
+    cache.authenticate(authenticationManager, "user2", "password");
+    cache.authenticate(authenticationManager, "user3", "password");
+    cache.authenticate(authenticationManager, "user1", "password");
+    assertEquals(4, authenticationManager.count.get());
+  }
+
+  public void testConcurrentAuthenticationsForTheSameUserOnlyVerifyOnce() throws Exception {
+    final CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread() {
+        public void run() {
+          try {
+            start.await();
+            cache.authenticate(authenticationManager, "username", "password");
+          } catch (InterruptedException e) {
+          }
+        }
+      };
+      threads[i].start();
+    }
+
+    authenticationManager.delay = 50;
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(1, authenticationManager.count.get());
+  }
+
+  private static class CountingAuthenticationManager implements AuthenticationManager {
+
+    private final String password;
+    private final AtomicInteger count = new AtomicInteger();
+    private volatile long delay = 0;
+
+    private CountingAuthenticationManager(String password) {
+      this.password = password;
+    }
+
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+      count.incrementAndGet();
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+      }
+
+      if (password.equals(authentication.getCredentials())) {
+        return new TestingAuthenticationToken(authentication.getPrincipal(), authentication.getCredentials());
+      } else {
+        throw new BadCredentialsException("Wrong password");
+      }
+    }
+
+  }
+
+}
@@ -41,6 +41,8 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.util.*;
 
 /**
@@ -123,4 +125,67 @@ public class DefaultSecurityRealmTest extends SingleBlogTestCase {
     assertNull(user);
   }
 
+  public void testChangesToReturnedUserAreNotCached() throws Exception {
+    PebbleUserDetails pud = new PebbleUserDetails("testuser", "password", "name", "emailAddress", "website", "profile", new String[]{Constants.BLOG_OWNER_ROLE}, new HashMap<String,String>(), true);
+    realm.createUser(pud);
+
+    PebbleUserDetails user = realm.getUser("testuser");
+    user.setName("another name");
+    assertEquals("name", realm.getUser("testuser").getName());
+
+    realm.updateUser(user);
+    assertEquals("another name", realm.getUser("testuser").getName());
+  }
+
+  public void testUsersCreatedOutsideOfRealmArePickedUp() throws Exception {
+    realm.setRefreshInterval(0);
+    assertNull(realm.getUser("external"));
+
+    Properties props = new Properties();
+    props.setProperty(DefaultSecurityRealm.PASSWORD, "password");
+    props.setProperty(DefaultSecurityRealm.ROLES, Constants.BLOG_OWNER_ROLE);
+    props.setProperty(DefaultSecurityRealm.NAME, "External User");
+    File file = new File(realm.getFileForRealm(), "external.properties");
+    FileOutputStream out = new FileOutputStream(file);
+    props.store(out, null);
+    out.close();
+
+    PebbleUserDetails user = realm.getUser("external");
+    assertNotNull(user);
+    assertEquals("External User", user.getName());
+    assertEquals(2, realm.getUsers().size());
+
+    file.delete();
+    assertNull(realm.getUser("external"));
+  }
+
+  public void testUsersChangedOutsideOfRealmArePickedUpAfterAnotherUserIsUpdated() throws Exception {
+    realm.setRefreshInterval(60000);
+    assertNull(realm.getUser("external"));
+
+    Properties props = new Properties();
+    props.setProperty(DefaultSecurityRealm.PASSWORD, "password");
+    props.setProperty(DefaultSecurityRealm.ROLES, Constants.BLOG_OWNER_ROLE);
+    props.setProperty(DefaultSecurityRealm.NAME, "External User");
+    File file = new File(realm.getFileForRealm(), "external.properties");
+    FileOutputStream out = new FileOutputStream(file);
+    props.store(out, null);
+    out.close();
+
+    try {
+      // updating one user mustn't mark the other files as having been read
+      PebbleUserDetails pud = new PebbleUserDetails("testuser", "password", "name", "emailAddress", "website", "profile", new String[]{Constants.BLOG_OWNER_ROLE}, new HashMap<String,String>(), true);
+      realm.createUser(pud);
+      assertNotNull(realm.getUser("testuser"));
+
+      realm.setRefreshInterval(0);
+      PebbleUserDetails user = realm.getUser("external");
+      assertNotNull(user);
+      assertEquals("External User", user.getName());
+    } finally {
+      file.delete();
+      realm.removeUser("testuser");
+    }
+  }
+
 }
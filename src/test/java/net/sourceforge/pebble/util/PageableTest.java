@@ -187,4 +187,20 @@ public class PageableTest extends TestCase {
     assertEquals(13, pageable.getMaxPageRange());
   }
 
+  public void testPagingOverPartOfAList() {
+    // the list only contains the items for page 3
+    pageable = new Pageable(list.subList(0, 10), 20, 45);
+    pageable.setPageSize(10);
+    pageable.setPage(3);
+
+    assertEquals(5, pageable.getMaxPages());
+    assertEquals(2, pageable.getPreviousPage());
+    assertEquals(4, pageable.getNextPage());
+    assertEquals(list.subList(0, 10), pageable.getListForPage());
+
+    // pages that aren't available are empty
+    pageable.setPage(1);
+    assertTrue(pageable.getListForPage().isEmpty());
+  }
+
 }
@@ -110,6 +110,49 @@ public class StringUtilsTest extends TestCase {
     assertEquals("Here is some style 2", StringUtils.filterHTML("<STYLE>body { color: red;}</stYle>Here is some style 2"));
   }
   
+  public void testFilterHTMLWithUnclosedTags() {
+    assertEquals("Some <b text", StringUtils.filterHTML("Some <b text"));
+    assertEquals("Some text", StringUtils.filterHTML("Some <b>text"));
+    assertEquals("var i=2; Some text", StringUtils.filterHTML("<script>var i=2; Some text"));
+    assertEquals("Some text<!-- no end", StringUtils.filterHTML("Some text<!-- no end"));
+    assertEquals("Some text", StringUtils.filterHTML("Some text<!-- no end, but a tag>"));
+  }
+
+  public void testFilterHTMLWithMixedCaseScriptAndStyle() {
+    assertEquals("Some text", StringUtils.filterHTML("<SCRIPT type=\"text/javascript\">var i=2;</ScRiPt>Some text"));
+    assertEquals("Some text", StringUtils.filterHTML("<Style>p { color: red; }</STYLE>Some text"));
+    assertEquals("Some more text", StringUtils.filterHTML("Some <sCrIpT>a</script><script>b</SCRIPT>more text"));
+  }
+
+  public void testFilterHTMLWithCommentsContainingGreaterThan() {
+    assertEquals("Here is some text.", StringUtils.filterHTML("Here is <!-- a > b -->some text."));
+    assertEquals("Here is some text.", StringUtils.filterHTML("Here is <!-- <p>a</p> > -->some <b>text</b>."));
+  }
+
+  public void testTruncate() {
+    assertEquals("", StringUtils.truncate(null));
+    assertEquals("Some text", StringUtils.truncate("<p>Some <b>text</b></p>"));
+    assertEquals("one two ...", StringUtils.truncate("<p>one two three</p>", 10));
+  }
+
+  public void testTruncateExactlyAtTheBoundary() {
+    assertEquals("one two three", StringUtils.truncate("one two three", 13));
+    assertEquals("one two three", StringUtils.truncate("<b>one</b> two three  ", 13));
+    assertEquals("one two ...", StringUtils.truncate("one two three", 12));
+    assertEquals("12345678901234567890", StringUtils.truncate("12345678901234567890"));
+    assertEquals("12345678901234567890...", StringUtils.truncate("123456789012345678901"));
+  }
+
+  public void testTruncateDoesNotSplitEntities() {
+    // the entity would be split by the limit, so the word is left out altogether
+    assertEquals("one two ...", StringUtils.truncate("one two caf&eacute;", 14));
+    assertEquals("one two caf&eacute;", StringUtils.truncate("one two caf&eacute;", 19));
+
+    // and long words are cut before an entity, rather than part way through it
+    assertEquals("abcdefghijklmnopq...", StringUtils.truncate("abcdefghijklmnopq&amp;rstuvwxyz"));
+    assertEquals("abcdefghijklmno&amp;...", StringUtils.truncate("abcdefghijklmno&amp;rstuvwxyz"));
+  }
+
   public void testFindThumbnailUrl() {
     assertEquals(null, StringUtils.findThumbnailUrl("<img src=\"booba.jpg\">"));
     assertEquals("http://google.fr/booba.jpg", StringUtils.findThumbnailUrl("<img src=\"http://google.fr/booba.jpg\">"));
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.util;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the TaskScheduler class.
+ *
+ * @author    Simon Brown
+ */
+public class TaskSchedulerTest extends TestCase {
+
+  private TaskScheduler scheduler;
+
+  protected void setUp() throws Exception {
+    scheduler = new TaskScheduler(2);
+  }
+
+  protected void tearDown() throws Exception {
+    scheduler.shutdown();
+  }
+
+  public void testFailingPeriodicTaskKeepsRunning() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(3);
+    ScheduledFuture<?> future = scheduler.scheduleAtFixedRate("failing", new Runnable() {
+      public void run() {
+        latch.countDown();
+        throw new RuntimeException("Expected failure");
+      }
+    }, 0, 10, TimeUnit.MILLISECONDS);
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    future.cancel(false);
+
+    TaskStatistics stats = scheduler.getStatistics("failing");
+    assertTrue(stats.getRuns() >= 3);
+    assertEquals(stats.getRuns(), stats.getFailures());
+    assertTrue(stats.getLastRun() > 0);
+  }
+
+  public void testStatisticsAreRecordedPerTask() throws Exception {
+    scheduler.execute("a", new Runnable() {
+      public void run() {
+      }
+    }).get();
+    scheduler.execute("a", new Runnable() {
+      public void run() {
+      }
+    }).get();
+    scheduler.execute("b", new Runnable() {
+      public void run() {
+      }
+    }).get();
+
+    assertEquals(2, scheduler.getStatistics("a").getRuns());
+    assertEquals(1, scheduler.getStatistics("b").getRuns());
+    assertEquals(0, scheduler.getStatistics("a").getFailures());
+    assertEquals(2, scheduler.getAllStatistics().size());
+    assertNull(scheduler.getStatistics("c"));
+  }
+
+  public void testConcurrencyIsBounded() throws Exception {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final CountDownLatch latch = new CountDownLatch(10);
+    for (int i = 0; i < 10; i++) {
+      scheduler.execute("slow", new Runnable() {
+        public void run() {
+          int n = running.incrementAndGet();
+          synchronized (maxRunning) {
+            maxRunning.set(Math.max(maxRunning.get(), n));
+          }
+          try {
+            Thread.sleep(20);
+          } catch (InterruptedException e) {
+            // ignore
+          }
+          running.decrementAndGet();
+          latch.countDown();
+        }
+      });
+    }
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertTrue(maxRunning.get() <= 2);
+  }
+
+  public void testJitteredTasksStartWithinTheFirstPeriod() throws Exception {
+    for (int i = 0; i < 20; i++) {
+      ScheduledFuture<?> future = scheduler.scheduleWithJitter("jittered", new Runnable() {
+        public void run() {
+        }
+      }, 1, TimeUnit.HOURS);
+      long delay = future.getDelay(TimeUnit.MILLISECONDS);
+      assertTrue(delay >= 0 && delay <= TimeUnit.HOURS.toMillis(1));
+    }
+  }
+
+  public void testCancelledTasksAreRemoved() {
+    ScheduledFuture<?> future = scheduler.scheduleWithJitter("cancelled", new Runnable() {
+      public void run() {
+      }
+    }, 1, TimeUnit.HOURS);
+    assertEquals(1, scheduler.getNumberOfScheduledTasks());
+
+    future.cancel(false);
+    assertEquals(0, scheduler.getNumberOfScheduledTasks());
+  }
+
+  public void testShutdownCancelsTasks() {
+    ScheduledFuture<?> future = scheduler.scheduleWithJitter("periodic", new Runnable() {
+      public void run() {
+      }
+    }, 1, TimeUnit.HOURS);
+
+    scheduler.shutdown();
+    assertTrue(scheduler.isShutdown());
+    assertTrue(future.isDone());
+  }
+
+}
@@ -33,6 +33,12 @@ package net.sourceforge.pebble.web.action;
 
 import net.sourceforge.pebble.domain.PebbleTestCase;
 
+import net.sourceforge.pebble.service.DefaultLastModifiedService;
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.lang.reflect.Field;
+
 /**
  * Tests for the ActionFactory class.
  *
@@ -57,6 +63,28 @@ public class ActionFactoryTest extends PebbleTestCase {
     assertTrue(factory.getAction("viewDay") instanceof ViewDayAction);
   }
 
+  public void testActionsAreNotShared() throws Exception {
+    assertNotSame(factory.getAction("viewDay"), factory.getAction("viewDay"));
+  }
+
+  public void testActionDependenciesAreInjected() throws Exception {
+    GenericApplicationContext context = new GenericApplicationContext();
+    AnnotationConfigUtils.registerAnnotationConfigProcessors(context);
+    context.registerBean(DefaultLastModifiedService.class);
+    context.refresh();
+
+    DefaultActionFactory factory = new DefaultActionFactory();
+    factory.setApplicationContext(context);
+    factory.setActionMappingFileName("action.properties");
+    factory.init();
+
+    FeedAction action = (FeedAction)factory.getAction("feed");
+    Field field = FeedAction.class.getDeclaredField("lastModifiedService");
+    field.setAccessible(true);
+    assertNotNull(field.get(action));
+    assertNotNull(field.get(factory.getAction("feed")));
+  }
+
   public void testActionNotFound() {
     try {
       assertNotNull(factory.getAction("SomeUnknownAction"));
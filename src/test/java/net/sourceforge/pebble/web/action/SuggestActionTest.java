@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package net.sourceforge.pebble.web.action;
+
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.BlogService;
+import net.sourceforge.pebble.search.Suggestion;
+import net.sourceforge.pebble.web.view.View;
+import net.sourceforge.pebble.web.view.impl.SuggestionsView;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+
+/**
+ * Tests for the SuggestAction class.
+ *
+ * @author    Simon Brown
+ */
+public class SuggestActionTest extends SingleBlogActionTestCase {
+
+  protected void setUp() throws Exception {
+    action = new SuggestAction();
+
+    super.setUp();
+  }
+
+  public void testSuggestionsAreWrittenAsJson() throws Exception {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("Lucene \"in\" action");
+    blogEntry.setTags("lucene");
+    blogEntry.setPublished(true);
+    BlogService service = new BlogService();
+    service.putBlogEntry(blogEntry);
+
+    request.setParameter("query", "luc");
+    View view = action.process(request, response);
+    assertTrue(view instanceof SuggestionsView);
+
+    List<Suggestion> suggestions = (List<Suggestion>)action.getModel().get("suggestions");
+    assertEquals(2, suggestions.size());
+
+    StringWriter out = new StringWriter();
+    response.setWriter(new PrintWriter(out));
+    view.setModel(action.getModel());
+    view.dispatch(request, response, null);
+
+    String json = out.toString();
+    assertTrue(json.startsWith("{\"query\":\"luc\",\"suggestions\":[{"));
+    assertTrue(json.contains("{\"text\":\"Lucene \\\"in\\\" action\",\"type\":\"title\",\"permalink\":\"" + blogEntry.getPermalink() + "\"}"));
+    assertTrue(json.contains("{\"text\":\"lucene\",\"type\":\"tag\",\"permalink\":\"" + blog.getUrl() + "tags/lucene/\"}"));
+  }
+
+  public void testNoQuery() throws Exception {
+    View view = action.process(request, response);
+    assertTrue(view instanceof SuggestionsView);
+
+    StringWriter out = new StringWriter();
+    response.setWriter(new PrintWriter(out));
+    view.setModel(action.getModel());
+    view.dispatch(request, response, null);
+    assertEquals("{\"query\":\"\",\"suggestions\":[]}", out.toString());
+  }
+
+}
@@ -35,6 +35,7 @@ import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.domain.Comment;
 import net.sourceforge.pebble.domain.BlogService;
+import net.sourceforge.pebble.index.ResponseSummary;
 import net.sourceforge.pebble.util.Pageable;
 import net.sourceforge.pebble.web.view.View;
 import net.sourceforge.pebble.web.view.impl.ResponsesView;
@@ -101,6 +102,8 @@ public class ViewResponsesActionTest extends SecureActionTestCase {
     Pageable pageable = (Pageable)model.get("pageable");
     assertNotNull("pageable", pageable);
     assertEquals(numberOfComments, pageable.getList().size());
+    assertEquals(numberOfComments, pageable.getListForPage().size());
+    assertTrue(pageable.getListForPage().get(0) instanceof ResponseSummary);
     assertEquals(1, pageable.getPage());
     assertEquals(1, pageable.getMaxPages());
     assertEquals(0, pageable.getPreviousPage());
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.action;
+
+import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.BlogService;
+import net.sourceforge.pebble.util.Pageable;
+import net.sourceforge.pebble.web.view.RedirectView;
+import net.sourceforge.pebble.web.view.View;
+import net.sourceforge.pebble.web.view.impl.BlogEntriesByTagView;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tests for the ViewTagAction class.
+ *
+ * @author    Simon Brown
+ */
+public class ViewTagActionTest extends SingleBlogActionTestCase {
+
+  protected void setUp() throws Exception {
+    action = new ViewTagAction();
+
+    super.setUp();
+  }
+
+  public void testNoBlogEntriesForTag() throws Exception {
+    request.setParameter("tag", "unknown");
+    View view = action.process(request, response);
+
+    assertTrue(view instanceof BlogEntriesByTagView);
+    assertTrue(((List)model.get(Constants.BLOG_ENTRIES)).isEmpty());
+    assertTrue(blog.getTagIndex().getTags().isEmpty());
+  }
+
+  public void testRedirectedWhenOnlyOneBlogEntryForTag() throws Exception {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTags("java");
+    blogEntry.setPublished(true);
+    new BlogService().putBlogEntry(blogEntry);
+
+    request.setParameter("tag", "java");
+    View view = action.process(request, response);
+
+    assertTrue(view instanceof RedirectView);
+  }
+
+  public void testBlogEntriesArePagedFromTheTagIndex() throws Exception {
+    BlogService service = new BlogService();
+    long time = new Date().getTime();
+    for (int i = 0; i < SearchAction.PAGE_SIZE + 5; i++) {
+      BlogEntry blogEntry = new BlogEntry(blog);
+      blogEntry.setTitle("Entry " + i);
+      blogEntry.setDate(new Date(time - (i * 60000)));
+      blogEntry.setTags("java");
+      blogEntry.setPublished(true);
+      service.putBlogEntry(blogEntry);
+    }
+
+    request.setParameter("tag", "java");
+    request.setParameter("page", "2");
+    View view = action.process(request, response);
+
+    assertTrue(view instanceof BlogEntriesByTagView);
+    Pageable pageable = (Pageable)model.get("pageable");
+    assertEquals(2, pageable.getMaxPages());
+    List<BlogEntry> blogEntries = (List<BlogEntry>)model.get(Constants.BLOG_ENTRIES);
+    assertEquals(5, blogEntries.size());
+    assertEquals("Entry " + SearchAction.PAGE_SIZE, blogEntries.get(0).getTitle());
+    assertEquals("viewTag.action?tag=java", model.get("pageableUrl"));
+  }
+
+}
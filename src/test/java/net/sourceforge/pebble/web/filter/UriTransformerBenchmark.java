@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.filter;
+
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+/**
+ * Measures how long the compiled routing table takes to route the most
+ * common URL shapes. This isn't run as part of the build; run its main
+ * method from the test classpath.
+ *
+ * @author    Simon Brown
+ */
+public class UriTransformerBenchmark extends SingleBlogTestCase {
+
+  private static final String[] URIS = {
+      "/", "/rss.xml", "/atom.xml", "/2003/11/24.html", "/2003/11.html",
+      "/categories/category1/", "/tags/java/rss.xml", "/images/myImage.jpg",
+      "/theme/screen.css", "/pages/some-story.html", "/blogentries/2.html",
+      "/somerandompage.html"
+  };
+
+  public static void main(String[] args) throws Exception {
+    UriTransformerBenchmark benchmark = new UriTransformerBenchmark();
+    benchmark.setUp();
+    try {
+      benchmark.runBenchmark(args.length > 0 ? Integer.parseInt(args[0]) : 100000);
+    } finally {
+      benchmark.tearDown();
+    }
+  }
+
+  private void runBenchmark(int iterations) throws Exception {
+    UriTransformer transformer = new UriTransformer();
+
+    // warm up
+    route(transformer, iterations);
+
+    long start = System.nanoTime();
+    route(transformer, iterations);
+    long nanos = System.nanoTime() - start;
+
+    System.out.println("UriTransformer : " + (nanos / (iterations * (long)URIS.length)) + "ns per URI");
+  }
+
+  private void route(UriTransformer transformer, int iterations) throws Exception {
+    for (int i = 0; i < iterations; i++) {
+      for (String uri : URIS) {
+        transformer.getUri(uri, blog);
+      }
+    }
+  }
+
+}
@@ -231,4 +231,44 @@ public class UriTransformerTest extends SingleBlogTestCase {
     assertEquals("/about.action", transformer.getUri("/about.html", blog));
   }
 
+  public void testThemeAndHelpUrlsForSingleUserBlog() throws Exception {
+    assertEquals("/file.action?type=" + FileMetaData.THEME_FILE + "&name=/screen.css", transformer.getUri("/theme/screen.css", blog));
+    assertEquals("/viewHelp.secureaction?name=configuration", transformer.getUri("/help/configuration.html", blog));
+    assertEquals("/viewHelp.secureaction?name=index", transformer.getUri("/help/", blog));
+    assertEquals("/help/some/page", transformer.getUri("/help/some/page", blog));
+  }
+
+  public void testPrefixesAreNotMatchedPartially() throws Exception {
+    assertEquals("/image/myImage.jpg", transformer.getUri("/image/myImage.jpg", blog));
+    assertEquals("/tagsandmore", transformer.getUri("/tagsandmore", blog));
+    assertEquals("/atom", transformer.getUri("/atom", blog));
+  }
+
+  /**
+   * Routes the most common URL shapes, twice, to check that the compiled
+   * routing table gives the same answer each time.
+   */
+  public void testRoutingCommonUrlShapes() throws Exception {
+    String[][] routes = {
+        { "/", "/viewHomePage.action" },
+        { "/rss.xml", "/feed.action?flavor=rss20" },
+        { "/atom.xml", "/feed.action?flavor=atom" },
+        { "/2003/11/24.html", "/viewDay.action?year=2003&month=11&day=24" },
+        { "/2003/11.html", "/viewMonth.action?year=2003&month=11" },
+        { "/categories/category1/", "/viewCategory.action?category=/category1" },
+        { "/tags/java/rss.xml", "/feed.action?tag=java&flavor=rss20" },
+        { "/images/myImage.jpg", "/file.action?type=" + FileMetaData.BLOG_IMAGE + "&name=/myImage.jpg" },
+        { "/theme/screen.css", "/file.action?type=" + FileMetaData.THEME_FILE + "&name=/screen.css" },
+        { "/pages/some-story.html", "/viewStaticPage.action?name=some-story" },
+        { "/blogentries/2.html", "/viewBlogEntriesByPage.action?page=2" },
+        { "/somerandompage.html", "/somerandompage.html" }
+    };
+
+    for (int i = 0; i < 2; i++) {
+      for (String[] route : routes) {
+        assertEquals(route[1], transformer.getUri(route[0], blog));
+      }
+    }
+  }
+
 }
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.view;
+
+import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+import net.sourceforge.pebble.mock.MockHttpServletRequest;
+import net.sourceforge.pebble.mock.MockHttpServletResponse;
+import net.sourceforge.pebble.web.model.Model;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Tests for the FileView class.
+ *
+ * @author    Simon Brown
+ */
+public class FileViewTest extends SingleBlogTestCase {
+
+  private File file;
+  private FileView view;
+  private MockHttpServletRequest request;
+  private MockHttpServletResponse response;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    file = new File(blog.getFilesDirectory(), "test.txt");
+    file.getParentFile().mkdirs();
+    FileOutputStream out = new FileOutputStream(file);
+    out.write("0123456789".getBytes(StandardCharsets.US_ASCII));
+    out.close();
+
+    view = new FileView(file);
+    Model model = new Model();
+    model.put(Constants.BLOG_KEY, blog);
+    view.setModel(model);
+
+    request = new MockHttpServletRequest();
+    request.setAttribute(Constants.EXTERNAL_URI, "/files/test.txt");
+    response = new MockHttpServletResponse();
+  }
+
+  public void testWholeFileIsSent() throws Exception {
+    view.dispatch(request, response, null);
+    assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    assertEquals("0123456789", content());
+  }
+
+  public void testNothingIsSentForHeadRequests() throws Exception {
+    request.setMethod("HEAD");
+    view.dispatch(request, response, null);
+    assertEquals(0, response.getOutputStreamContent().length);
+  }
+
+  public void testETagIsWeakAndDerivedFromSizeAndLastModified() {
+    assertTrue(view.getETag().startsWith("W/\"a-"));
+    assertTrue(view.getETag().endsWith(Long.toHexString(view.getLastModified()) + "\""));
+  }
+
+  public void testNotModifiedWhenETagMatches() {
+    request.setHeader("If-None-Match", "\"other\", " + view.getETag());
+    assertTrue(view.checkNotModified(request, response));
+    assertEquals(view.getETag(), response.getHeader("ETag"));
+  }
+
+  public void testModifiedWhenETagDoesNotMatch() {
+    request.setHeader("If-None-Match", "W/\"other\"");
+    request.setDateHeader("If-Modified-Since", view.getLastModified());
+    assertFalse(view.checkNotModified(request, response));
+  }
+
+  public void testNotModifiedSinceLastModifiedDate() {
+    request.setDateHeader("If-Modified-Since", view.getLastModified());
+    assertTrue(view.checkNotModified(request, response));
+  }
+
+  public void testCacheControlIsSetFromMaxAge() {
+    view.setMaxAge(3600);
+    view.checkNotModified(request, response);
+    assertEquals("public, max-age=3600", response.getHeader("Cache-Control"));
+  }
+
+  public void testSingleRange() throws Exception {
+    request.setHeader("Range", "bytes=2-5");
+    view.dispatch(request, response, null);
+    assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+    assertEquals("bytes 2-5/10", response.getHeader("Content-Range"));
+    assertEquals("2345", content());
+  }
+
+  public void testOpenEndedAndSuffixRanges() throws Exception {
+    request.setHeader("Range", "bytes=7-");
+    view.dispatch(request, response, null);
+    assertEquals("789", content());
+
+    response = new MockHttpServletResponse();
+    request.setHeader("Range", "bytes=-2");
+    view.dispatch(request, response, null);
+    assertEquals("bytes 8-9/10", response.getHeader("Content-Range"));
+    assertEquals("89", content());
+  }
+
+  public void testMultipleRanges() throws Exception {
+    request.setHeader("Range", "bytes=0-1,8-9");
+    view.dispatch(request, response, null);
+    assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+    assertTrue(response.getContentType().startsWith("multipart/byteranges"));
+    String content = content();
+    assertTrue(content.contains("Content-Range: bytes 0-1/10\r\n\r\n01\r\n"));
+    assertTrue(content.contains("Content-Range: bytes 8-9/10\r\n\r\n89\r\n"));
+  }
+
+  public void testUnsatisfiableRange() throws Exception {
+    request.setHeader("Range", "bytes=20-30");
+    view.dispatch(request, response, null);
+    assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatus());
+    assertEquals("bytes */10", response.getHeader("Content-Range"));
+  }
+
+  public void testRangeIgnoredWhenIfRangeDoesNotMatch() throws Exception {
+    request.setHeader("Range", "bytes=2-5");
+    request.setHeader("If-Range", "W/\"stale\"");
+    view.dispatch(request, response, null);
+    assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    assertEquals("0123456789", content());
+  }
+
+  public void testOverlappingAndAdjacentRangesAreMerged() throws Exception {
+    request.setHeader("Range", "bytes=4-6,0-2,3-3,5-7");
+    view.dispatch(request, response, null);
+    assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+    assertEquals("bytes 0-7/10", response.getHeader("Content-Range"));
+    assertEquals("01234567", content());
+  }
+
+  public void testDisjointRangesAreSorted() {
+    request.setHeader("Range", "bytes=8-9,0-1");
+    List<long[]> ranges = view.getRanges(request, 10);
+    assertEquals(2, ranges.size());
+    assertEquals(0, ranges.get(0)[0]);
+    assertEquals(8, ranges.get(1)[0]);
+  }
+
+  public void testWholeFileIsSentWhenTooManyRangesAreRequested() throws Exception {
+    StringBuilder header = new StringBuilder("bytes=0-0");
+    for (int i = 0; i < FileView.MAXIMUM_NUMBER_OF_RANGES; i++) {
+      header.append(",").append(i % 10).append("-").append(i % 10);
+    }
+    request.setHeader("Range", header.toString());
+    view.dispatch(request, response, null);
+    assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    assertEquals("0123456789", content());
+  }
+
+  public void testRangeIgnoredWhenIfRangeIsWeak() throws Exception {
+    request.setHeader("Range", "bytes=2-5");
+    request.setHeader("If-Range", view.getETag());
+    view.dispatch(request, response, null);
+    assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    assertEquals("0123456789", content());
+  }
+
+  public void testRangeHonouredWhenIfRangeDateMatches() throws Exception {
+    request.setHeader("Range", "bytes=2-5");
+    request.setDateHeader("If-Range", view.getLastModified());
+    view.dispatch(request, response, null);
+    assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+    assertEquals("2345", content());
+  }
+
+  private String content() {
+    return new String(response.getOutputStreamContent(), StandardCharsets.US_ASCII);
+  }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.view;
+
+import net.sourceforge.pebble.PebbleContext;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.BlogService;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+import net.sourceforge.pebble.security.PebbleUserDetails;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+
+/**
+ * Tests for the PdfRenderer class.
+ *
+ * @author    Simon Brown
+ */
+public class PdfRendererTest extends SingleBlogTestCase {
+
+  private PdfRenderer renderer;
+  private BlogEntry blogEntry;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    // the stylesheet is read from the web application rather than over HTTP
+    PebbleContext.getInstance().setWebApplicationRoot(new File("src/main/webapp").getAbsolutePath());
+    renderer = new PdfRenderer(1);
+    blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("A title");
+    blogEntry.setSubtitle("A subtitle");
+    blogEntry.setBody("<p>Some body text.</p>");
+    blogEntry.setTags("pdf");
+    blogEntry.setAuthor("sbrown");
+    PebbleContext.getInstance().getConfiguration().getSecurityRealm().createUser(
+        new PebbleUserDetails("sbrown", "password", "Simon Brown", "", "", "", new String[0], null, false));
+  }
+
+  protected void tearDown() throws Exception {
+    PebbleContext.getInstance().setWebApplicationRoot(null);
+
+    super.tearDown();
+  }
+
+  public void testPdfIsRenderedAndCached() throws Exception {
+    File pdf = renderer.getPdf(blogEntry);
+    assertTrue(pdf.exists());
+    assertTrue(pdf.getName().startsWith(blogEntry.getId() + "-"));
+    assertEquals("%PDF", new String(Files.readAllBytes(pdf.toPath()), "ISO-8859-1").substring(0, 4));
+
+    // the cached file is used next time, without being rendered again
+    long lastModified = pdf.lastModified();
+    pdf.setLastModified(lastModified - 10000);
+    assertEquals(pdf, renderer.getPdf(blogEntry));
+    assertEquals(lastModified - 10000, pdf.lastModified());
+  }
+
+  public void testChangedBlogEntryIsRenderedAgain() throws Exception {
+    File pdf = renderer.getPdf(blogEntry);
+
+    blogEntry.setBody("<p>Some different body text.</p>");
+    File changedPdf = renderer.getPdf(blogEntry);
+    assertFalse(pdf.equals(changedPdf));
+    assertTrue(changedPdf.exists());
+    assertFalse(pdf.exists());
+  }
+
+  public void testOlderVersionsAreRemovedButNewerOnesAreKept() throws Exception {
+    File pdf = renderer.getPdf(blogEntry);
+
+    // a newer version, rendered from another copy of the blog entry
+    File newer = new File(pdf.getParentFile(), blogEntry.getId() + "-newer.pdf");
+    Files.write(newer.toPath(), new byte[0]);
+    newer.setLastModified(System.currentTimeMillis() + 60000);
+
+    blogEntry.setBody("<p>Some different body text.</p>");
+    File changedPdf = renderer.getPdf(blogEntry);
+    assertTrue(changedPdf.exists());
+    assertFalse(pdf.exists());
+    assertTrue(newer.exists());
+  }
+
+  public void testPdfThatHasBeenRemovedIsRenderedAgainWhenOpened() throws Exception {
+    File pdf = renderer.getPdf(blogEntry);
+    FileChannel channel = renderer.openPdf(blogEntry);
+    try {
+      // replaced by another version while it's being read
+      assertTrue(pdf.delete());
+      assertTrue(channel.size() > 0);
+      ByteBuffer buffer = ByteBuffer.allocate(4);
+      channel.read(buffer, 0);
+      assertEquals("%PDF", new String(buffer.array(), "ISO-8859-1"));
+    } finally {
+      channel.close();
+    }
+
+    channel = renderer.openPdf(blogEntry);
+    channel.close();
+    assertTrue(pdf.exists());
+  }
+
+  public void testPdfsAreRemovedWithTheBlogEntry() throws Exception {
+    BlogService service = new BlogService();
+    service.putBlogEntry(blogEntry);
+    File pdf = renderer.getPdf(blogEntry);
+    assertTrue(pdf.exists());
+
+    service.removeBlogEntry(blogEntry);
+    assertFalse(pdf.exists());
+  }
+
+}
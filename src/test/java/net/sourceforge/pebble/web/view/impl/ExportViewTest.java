@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.view.impl;
+
+import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.BlogService;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+import net.sourceforge.pebble.mock.MockHttpServletRequest;
+import net.sourceforge.pebble.mock.MockHttpServletResponse;
+import net.sourceforge.pebble.web.model.Model;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Date;
+
+/**
+ * Tests for the ExportView class.
+ *
+ * @author    Simon Brown
+ */
+public class ExportViewTest extends SingleBlogTestCase {
+
+  private Model model;
+  private MockHttpServletResponse response;
+  private StringWriter out;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    BlogService service = new BlogService();
+    for (int i = 1; i <= 3; i++) {
+      BlogEntry blogEntry = new BlogEntry(blog);
+      blogEntry.setTitle("Title " + i);
+      blogEntry.setBody("Body " + i + " & more");
+      blogEntry.setAuthor("simon");
+      blogEntry.setDate(new Date(i * 1000L));
+      service.putBlogEntry(blogEntry);
+    }
+
+    model = new Model();
+    model.put(Constants.BLOG_KEY, blog);
+    model.put(Constants.BLOG_ENTRY_IDS, blog.getBlogEntryIndex().getBlogEntries());
+
+    out = new StringWriter();
+    response = new MockHttpServletResponse();
+    response.setWriter(new PrintWriter(out));
+  }
+
+  public void testRssExportContainsEveryBlogEntry() throws Exception {
+    ExportView view = new ExportView(ExportView.RSS);
+    view.setModel(model);
+    view.dispatch(new MockHttpServletRequest(), response, null);
+
+    String xml = out.toString();
+    assertTrue(xml.contains("<rss version=\"2.0\""));
+    assertTrue(xml.indexOf("<title>Title 3</title>") < xml.indexOf("<title>Title 1</title>"));
+    assertTrue(xml.contains("<title>Title 2</title>"));
+    assertTrue(xml.contains("Body 1 &amp; more"));
+    assertTrue(xml.endsWith("</channel></rss>"));
+  }
+
+  public void testAtomExport() throws Exception {
+    ExportView view = new ExportView(ExportView.ATOM);
+    view.setModel(model);
+    view.dispatch(new MockHttpServletRequest(), response, null);
+
+    String xml = out.toString();
+    assertTrue(xml.contains("<feed xmlns=\"http://www.w3.org/2005/Atom\">"));
+    assertTrue(xml.contains("<id>tag:www.yourdomain.com,1970-01-01:default/"));
+    assertTrue(xml.endsWith("</feed>"));
+  }
+
+  public void testRdfExport() throws Exception {
+    ExportView view = new ExportView(ExportView.RDF);
+    view.setModel(model);
+    view.dispatch(new MockHttpServletRequest(), response, null);
+
+    String xml = out.toString();
+    assertTrue(xml.contains("<rdf:li rdf:resource=\"tag:www.yourdomain.com,"));
+    // each item is identified by the same URI that the channel lists it by
+    String about = xml.substring(xml.indexOf("<item rdf:about=\"") + 16, xml.indexOf("\"", xml.indexOf("<item rdf:about=\"") + 17) + 1);
+    assertTrue(xml.contains("<rdf:li rdf:resource=" + about));
+    assertTrue(xml.contains("<title>Title 1</title>"));
+    assertTrue(xml.indexOf("</channel>") < xml.indexOf("<item rdf:about="));
+    assertTrue(xml.endsWith("</item></rdf:RDF>"));
+  }
+
+}